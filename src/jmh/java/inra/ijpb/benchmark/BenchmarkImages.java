@@ -0,0 +1,349 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.benchmark;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.binary.BinaryImages;
+
+/**
+ * Creates the synthetic images used by the benchmarks, and provides the
+ * benchmark states that hold them.
+ * 
+ * <p>
+ * Images are generated from a fixed seed, so that successive runs (and
+ * successive releases) process exactly the same data. Grayscale images are
+ * made of a sum of Gaussian blobs, rescaled to the range of the requested bit
+ * depth. Binary images are made of possibly overlapping discs or balls, and
+ * label images are obtained by connected component labeling of the binary
+ * images.
+ * </p>
+ * 
+ * @author David Legland
+ */
+public class BenchmarkImages
+{
+	/**
+	 * The seed used for generating all the synthetic images.
+	 */
+	public static final long SEED = 1234L;
+	
+	/**
+	 * Holds a 2D grayscale image, together with the marker used for
+	 * geodesic reconstructions.
+	 */
+	@State(Scope.Benchmark)
+	public static class GrayImage
+	{
+		/** The size of the image in each direction */
+		@Param({"512"})
+		public int size;
+		
+		/** The bit depth of the image, either 8, 16 or 32 */
+		@Param({"8", "16", "32"})
+		public int bitDepth;
+		
+		public ImageProcessor image;
+		public ImageProcessor marker;
+		
+		@Setup
+		public void setup()
+		{
+			image = createGrayImage(size, size, bitDepth);
+			marker = subtract(image, 0.2 * maxValue(bitDepth));
+		}
+	}
+	
+	/**
+	 * Holds a 3D grayscale image, together with the marker used for
+	 * geodesic reconstructions.
+	 */
+	@State(Scope.Benchmark)
+	public static class GrayStack
+	{
+		/** The size of the image in each direction */
+		@Param({"96"})
+		public int size;
+		
+		/** The bit depth of the image, either 8, 16 or 32 */
+		@Param({"8", "16", "32"})
+		public int bitDepth;
+		
+		public ImageStack image;
+		public ImageStack marker;
+		
+		@Setup
+		public void setup()
+		{
+			image = createGrayStack(size, size, size, bitDepth);
+			marker = subtract(image, 0.2 * maxValue(bitDepth));
+		}
+	}
+	
+	/**
+	 * Holds a 2D binary image, and the corresponding label image.
+	 */
+	@State(Scope.Benchmark)
+	public static class BinaryImage
+	{
+		/** The size of the image in each direction */
+		@Param({"512"})
+		public int size;
+		
+		public ImageProcessor image;
+		public ImageProcessor labels;
+		
+		@Setup
+		public void setup()
+		{
+			image = createBinaryImage(size, size);
+			labels = BinaryImages.componentsLabeling(image, 4, 16);
+		}
+	}
+	
+	/**
+	 * Holds a 3D binary image, and the corresponding label image.
+	 */
+	@State(Scope.Benchmark)
+	public static class BinaryStack
+	{
+		/** The size of the image in each direction */
+		@Param({"96"})
+		public int size;
+		
+		public ImageStack image;
+		public ImageStack labels;
+		
+		@Setup
+		public void setup()
+		{
+			image = createBinaryStack(size, size, size);
+			labels = BinaryImages.componentsLabeling(image, 6, 16);
+		}
+	}
+	
+	/**
+	 * Returns the value used for the brightest pixels of the synthetic images
+	 * with the given bit depth.
+	 * 
+	 * @param bitDepth
+	 *            the bit depth of the image, either 8, 16 or 32
+	 * @return the maximum value within synthetic images
+	 */
+	public static final double maxValue(int bitDepth)
+	{
+		switch (bitDepth)
+		{
+		case 8: return 255;
+		case 16: return 4095;
+		case 32: return 1.0;
+		default:
+			throw new IllegalArgumentException("Bit depth must be 8, 16 or 32, not " + bitDepth);
+		}
+	}
+	
+	/**
+	 * Creates a grayscale image made of a sum of Gaussian blobs.
+	 * 
+	 * @param sizeX
+	 *            the width of the image
+	 * @param sizeY
+	 *            the height of the image
+	 * @param bitDepth
+	 *            the bit depth of the image, either 8, 16 or 32
+	 * @return a new grayscale image
+	 */
+	public static final ImageProcessor createGrayImage(int sizeX, int sizeY, int bitDepth)
+	{
+		ImageStack stack = createGrayStack(sizeX, sizeY, 1, bitDepth);
+		return stack.getProcessor(1);
+	}
+	
+	/**
+	 * Creates a 3D grayscale image made of a sum of Gaussian blobs.
+	 * 
+	 * @param sizeX
+	 *            the width of the image
+	 * @param sizeY
+	 *            the height of the image
+	 * @param sizeZ
+	 *            the depth of the image
+	 * @param bitDepth
+	 *            the bit depth of the image, either 8, 16 or 32
+	 * @return a new 3D grayscale image
+	 */
+	public static final ImageStack createGrayStack(int sizeX, int sizeY, int sizeZ, int bitDepth)
+	{
+		double maxValue = maxValue(bitDepth);
+		Random random = new Random(SEED);
+		
+		// blobs with random position, radius and amplitude
+		int nBlobs = 20;
+		double[][] blobs = new double[nBlobs][5];
+		int maxSize = Math.max(Math.max(sizeX, sizeY), sizeZ);
+		for (int i = 0; i < nBlobs; i++)
+		{
+			blobs[i][0] = random.nextDouble() * sizeX;
+			blobs[i][1] = random.nextDouble() * sizeY;
+			blobs[i][2] = random.nextDouble() * sizeZ;
+			double sigma = maxSize * (0.03 + 0.07 * random.nextDouble());
+			blobs[i][3] = 1.0 / (2 * sigma * sigma);
+			blobs[i][4] = 0.3 + 0.7 * random.nextDouble();
+		}
+		
+		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, bitDepth);
+		for (int z = 0; z < sizeZ; z++)
+		{
+			ImageProcessor slice = result.getProcessor(z + 1);
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					double value = 0;
+					for (double[] blob : blobs)
+					{
+						double dx = x - blob[0], dy = y - blob[1], dz = z - blob[2];
+						value += blob[4] * Math.exp(-(dx * dx + dy * dy + dz * dz) * blob[3]);
+					}
+					// add some noise to avoid large plateaus
+					value = Math.min(value + 0.02 * random.nextDouble(), 1.0);
+					slice.setf(x, y, (float) (bitDepth == 32 ? value * maxValue : Math.round(value * maxValue)));
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Creates a binary image made of possibly overlapping discs.
+	 * 
+	 * @param sizeX
+	 *            the width of the image
+	 * @param sizeY
+	 *            the height of the image
+	 * @return a new binary image, with 255 for the pixels within discs
+	 */
+	public static final ImageProcessor createBinaryImage(int sizeX, int sizeY)
+	{
+		ImageStack stack = createBinaryStack(sizeX, sizeY, 1);
+		return stack.getProcessor(1);
+	}
+
+	/**
+	 * Creates a 3D binary image made of possibly overlapping balls.
+	 * 
+	 * @param sizeX
+	 *            the width of the image
+	 * @param sizeY
+	 *            the height of the image
+	 * @param sizeZ
+	 *            the depth of the image
+	 * @return a new 3D binary image, with 255 for the voxels within balls
+	 */
+	public static final ImageStack createBinaryStack(int sizeX, int sizeY, int sizeZ)
+	{
+		Random random = new Random(SEED);
+		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, 8);
+		
+		int minSize = Math.min(sizeX, sizeY);
+		if (sizeZ > 1)
+		{
+			minSize = Math.min(minSize, sizeZ);
+		}
+		int nBalls = 40;
+		for (int i = 0; i < nBalls; i++)
+		{
+			int xc = random.nextInt(sizeX);
+			int yc = random.nextInt(sizeY);
+			int zc = random.nextInt(sizeZ);
+			double radius = minSize * (0.03 + 0.07 * random.nextDouble());
+			int r = (int) Math.ceil(radius);
+			for (int z = Math.max(zc - r, 0); z <= Math.min(zc + r, sizeZ - 1); z++)
+			{
+				ImageProcessor slice = result.getProcessor(z + 1);
+				for (int y = Math.max(yc - r, 0); y <= Math.min(yc + r, sizeY - 1); y++)
+				{
+					for (int x = Math.max(xc - r, 0); x <= Math.min(xc + r, sizeX - 1); x++)
+					{
+						double dx = x - xc, dy = y - yc, dz = z - zc;
+						if (dx * dx + dy * dy + dz * dz <= radius * radius)
+						{
+							slice.set(x, y, 255);
+						}
+					}
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Subtracts a value from each pixel of an image, keeping only positive
+	 * values.
+	 * 
+	 * @param image
+	 *            the input image
+	 * @param value
+	 *            the value to subtract
+	 * @return a new image with the same type as the input image
+	 */
+	public static final ImageProcessor subtract(ImageProcessor image, double value)
+	{
+		ImageProcessor result = image.duplicate();
+		for (int i = 0; i < result.getPixelCount(); i++)
+		{
+			result.setf(i, (float) Math.max(result.getf(i) - value, 0));
+		}
+		return result;
+	}
+
+	/**
+	 * Subtracts a value from each voxel of a 3D image, keeping only positive
+	 * values.
+	 * 
+	 * @param image
+	 *            the input 3D image
+	 * @param value
+	 *            the value to subtract
+	 * @return a new 3D image with the same type as the input image
+	 */
+	public static final ImageStack subtract(ImageStack image, double value)
+	{
+		ImageStack result = image.duplicate();
+		for (int z = 0; z < result.getSize(); z++)
+		{
+			ImageProcessor slice = result.getProcessor(z + 1);
+			for (int i = 0; i < slice.getPixelCount(); i++)
+			{
+				slice.setf(i, (float) Math.max(slice.getf(i) - value, 0));
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,65 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.benchmark.BenchmarkImages.BinaryImage;
+import inra.ijpb.benchmark.BenchmarkImages.BinaryStack;
+import inra.ijpb.binary.conncomp.FloodFillComponentsLabeling;
+import inra.ijpb.binary.conncomp.FloodFillComponentsLabeling3D;
+import inra.ijpb.binary.conncomp.UnionFindComponentsLabeling3D;
+
+/**
+ * Connected component labeling of 2D and 3D binary images.
+ * 
+ * @author David Legland
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ComponentsLabelingBenchmark
+{
+	@Benchmark
+	public ImageProcessor floodFill(BinaryImage image)
+	{
+		return new FloodFillComponentsLabeling(4, 16).computeLabels(image.image);
+	}
+	
+	@Benchmark
+	public ImageStack floodFill3D(BinaryStack image)
+	{
+		return new FloodFillComponentsLabeling3D(6, 16).computeLabels(image.image);
+	}
+	
+	@Benchmark
+	public ImageStack unionFind3D(BinaryStack image)
+	{
+		return new UnionFindComponentsLabeling3D(6, 16).computeLabels(image.image);
+	}
+}
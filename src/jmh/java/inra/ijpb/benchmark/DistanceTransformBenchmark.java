@@ -0,0 +1,287 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.benchmark.BenchmarkImages.BinaryImage;
+import inra.ijpb.benchmark.BenchmarkImages.BinaryStack;
+import inra.ijpb.binary.distmap.DistanceTransform3D4WeightsFloat;
+import inra.ijpb.binary.distmap.DistanceTransform3D4WeightsShort;
+import inra.ijpb.binary.distmap.DistanceTransform3DFloat;
+import inra.ijpb.binary.distmap.DistanceTransform3DShort;
+import inra.ijpb.binary.distmap.DistanceTransform3x3Float;
+import inra.ijpb.binary.distmap.DistanceTransform3x3Short;
+import inra.ijpb.binary.distmap.DistanceTransform5x5Float;
+import inra.ijpb.binary.distmap.DistanceTransform5x5Short;
+import inra.ijpb.binary.distmap.EuclideanDistanceTransform;
+import inra.ijpb.binary.distmap.EuclideanDistanceTransform3D;
+import inra.ijpb.binary.geodesic.GeodesicDistanceTransform3DFloat;
+import inra.ijpb.binary.geodesic.GeodesicDistanceTransform3DFloatPropagation;
+import inra.ijpb.binary.geodesic.GeodesicDistanceTransformFloat;
+import inra.ijpb.binary.geodesic.GeodesicDistanceTransformFloat5x5;
+import inra.ijpb.binary.geodesic.GeodesicDistanceTransformFloatPropagation;
+import inra.ijpb.binary.geodesic.GeodesicDistanceTransformShort;
+import inra.ijpb.binary.geodesic.GeodesicDistanceTransformShort5x5;
+import inra.ijpb.binary.geodesic.GeodesicDistanceTransformShortPropagation;
+import inra.ijpb.label.distmap.ChamferLabelDistanceTransform;
+import inra.ijpb.label.distmap.ChamferLabelDistanceTransform3D;
+import inra.ijpb.label.distmap.EuclideanLabelDistanceTransform;
+import inra.ijpb.label.distmap.EuclideanLabelDistanceTransform3D;
+
+/**
+ * Distance transforms of binary and label images, and geodesic distance
+ * transforms, in 2D and 3D.
+ * 
+ * @author David Legland
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DistanceTransformBenchmark
+{
+	private static final short[] SHORT_WEIGHTS_3x3 = new short[]{3, 4};
+	private static final float[] FLOAT_WEIGHTS_3x3 = new float[]{3, 4};
+	private static final short[] SHORT_WEIGHTS_5x5 = new short[]{5, 7, 11};
+	private static final float[] FLOAT_WEIGHTS_5x5 = new float[]{5, 7, 11};
+	private static final short[] SHORT_WEIGHTS_3D = new short[]{3, 4, 5};
+	private static final float[] FLOAT_WEIGHTS_3D = new float[]{3, 4, 5};
+	private static final short[] SHORT_WEIGHTS_3D_4 = new short[]{3, 4, 5, 7};
+	private static final float[] FLOAT_WEIGHTS_3D_4 = new float[]{3, 4, 5, 7};
+	
+	/**
+	 * Holds the marker of the geodesic distance transforms, made of the
+	 * foreground pixels located within the left eighth of the 2D binary image.
+	 */
+	@State(Scope.Benchmark)
+	public static class Marker2D
+	{
+		public ImageProcessor marker;
+		
+		@Setup
+		public void setup(BinaryImage image)
+		{
+			marker = image.image.duplicate();
+			int sizeX = marker.getWidth();
+			for (int y = 0; y < marker.getHeight(); y++)
+			{
+				for (int x = sizeX / 8; x < sizeX; x++)
+				{
+					marker.set(x, y, 0);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Holds the marker of the 3D geodesic distance transforms, made of the
+	 * foreground voxels located within the left eighth of the 3D binary image.
+	 */
+	@State(Scope.Benchmark)
+	public static class Marker3D
+	{
+		public ImageStack marker;
+		
+		@Setup
+		public void setup(BinaryStack image)
+		{
+			marker = image.image.duplicate();
+			int sizeX = marker.getWidth();
+			for (int z = 0; z < marker.getSize(); z++)
+			{
+				ImageProcessor slice = marker.getProcessor(z + 1);
+				for (int y = 0; y < marker.getHeight(); y++)
+				{
+					for (int x = sizeX / 8; x < sizeX; x++)
+					{
+						slice.set(x, y, 0);
+					}
+				}
+			}
+		}
+	}
+	
+	
+	// ==================================================
+	// Distance transforms of 2D binary images
+	
+	@Benchmark
+	public ImageProcessor chamfer3x3Short(BinaryImage image)
+	{
+		return new DistanceTransform3x3Short(SHORT_WEIGHTS_3x3, true).distanceMap(image.image);
+	}
+	
+	@Benchmark
+	public ImageProcessor chamfer3x3Float(BinaryImage image)
+	{
+		return new DistanceTransform3x3Float(FLOAT_WEIGHTS_3x3, true).distanceMap(image.image);
+	}
+	
+	@Benchmark
+	public ImageProcessor chamfer5x5Short(BinaryImage image)
+	{
+		return new DistanceTransform5x5Short(SHORT_WEIGHTS_5x5, true).distanceMap(image.image);
+	}
+	
+	@Benchmark
+	public ImageProcessor chamfer5x5Float(BinaryImage image)
+	{
+		return new DistanceTransform5x5Float(FLOAT_WEIGHTS_5x5, true).distanceMap(image.image);
+	}
+	
+	@Benchmark
+	public ImageProcessor euclidean(BinaryImage image)
+	{
+		return new EuclideanDistanceTransform().distanceMap(image.image);
+	}
+	
+	
+	// ==================================================
+	// Distance transforms of 3D binary images
+	
+	@Benchmark
+	public ImageStack chamfer3DShort(BinaryStack image)
+	{
+		return new DistanceTransform3DShort(SHORT_WEIGHTS_3D, true).distanceMap(image.image);
+	}
+	
+	@Benchmark
+	public ImageStack chamfer3DFloat(BinaryStack image)
+	{
+		return new DistanceTransform3DFloat(FLOAT_WEIGHTS_3D, true).distanceMap(image.image);
+	}
+	
+	@Benchmark
+	public ImageStack chamfer3D4WeightsShort(BinaryStack image)
+	{
+		return new DistanceTransform3D4WeightsShort(SHORT_WEIGHTS_3D_4, true).distanceMap(image.image);
+	}
+	
+	@Benchmark
+	public ImageStack chamfer3D4WeightsFloat(BinaryStack image)
+	{
+		return new DistanceTransform3D4WeightsFloat(FLOAT_WEIGHTS_3D_4, true).distanceMap(image.image);
+	}
+	
+	@Benchmark
+	public ImageStack euclidean3D(BinaryStack image)
+	{
+		return new EuclideanDistanceTransform3D().distanceMap(image.image);
+	}
+	
+	
+	// ==================================================
+	// Distance transforms of label images
+	
+	@Benchmark
+	public ImageProcessor labelChamfer(BinaryImage image)
+	{
+		return new ChamferLabelDistanceTransform(FLOAT_WEIGHTS_5x5, true).distanceMap(image.labels);
+	}
+	
+	@Benchmark
+	public ImageProcessor labelEuclidean(BinaryImage image)
+	{
+		return new EuclideanLabelDistanceTransform().distanceMap(image.labels);
+	}
+	
+	@Benchmark
+	public ImageStack labelChamfer3D(BinaryStack image)
+	{
+		return new ChamferLabelDistanceTransform3D(FLOAT_WEIGHTS_3D, true).distanceMap(image.labels);
+	}
+	
+	@Benchmark
+	public ImageStack labelEuclidean3D(BinaryStack image)
+	{
+		return new EuclideanLabelDistanceTransform3D().distanceMap(image.labels);
+	}
+	
+	
+	// ==================================================
+	// Geodesic distance transforms
+	
+	@Benchmark
+	public ImageProcessor geodesicShort(BinaryImage image, Marker2D marker)
+	{
+		return new GeodesicDistanceTransformShort(SHORT_WEIGHTS_3x3, true)
+				.geodesicDistanceMap(marker.marker, image.image);
+	}
+	
+	@Benchmark
+	public ImageProcessor geodesicFloat(BinaryImage image, Marker2D marker)
+	{
+		return new GeodesicDistanceTransformFloat(FLOAT_WEIGHTS_3x3, true)
+				.geodesicDistanceMap(marker.marker, image.image);
+	}
+	
+	@Benchmark
+	public ImageProcessor geodesicShort5x5(BinaryImage image, Marker2D marker)
+	{
+		return new GeodesicDistanceTransformShort5x5(SHORT_WEIGHTS_5x5, true)
+				.geodesicDistanceMap(marker.marker, image.image);
+	}
+	
+	@Benchmark
+	public ImageProcessor geodesicFloat5x5(BinaryImage image, Marker2D marker)
+	{
+		return new GeodesicDistanceTransformFloat5x5(FLOAT_WEIGHTS_5x5, true)
+				.geodesicDistanceMap(marker.marker, image.image);
+	}
+	
+	@Benchmark
+	public ImageProcessor geodesicShortPropagation(BinaryImage image, Marker2D marker)
+	{
+		return new GeodesicDistanceTransformShortPropagation(SHORT_WEIGHTS_5x5, true)
+				.geodesicDistanceMap(marker.marker, image.image);
+	}
+	
+	@Benchmark
+	public ImageProcessor geodesicFloatPropagation(BinaryImage image, Marker2D marker)
+	{
+		return new GeodesicDistanceTransformFloatPropagation(FLOAT_WEIGHTS_5x5, true)
+				.geodesicDistanceMap(marker.marker, image.image);
+	}
+	
+	@Benchmark
+	public ImageStack geodesic3DFloat(BinaryStack image, Marker3D marker)
+	{
+		return new GeodesicDistanceTransform3DFloat(FLOAT_WEIGHTS_3D, true)
+				.geodesicDistanceMap(marker.marker, image.image);
+	}
+	
+	@Benchmark
+	public ImageStack geodesic3DFloatPropagation(BinaryStack image, Marker3D marker)
+	{
+		return new GeodesicDistanceTransform3DFloatPropagation(FLOAT_WEIGHTS_3D, true)
+				.geodesicDistanceMap(marker.marker, image.image);
+	}
+}
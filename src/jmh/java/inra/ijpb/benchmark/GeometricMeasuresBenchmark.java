@@ -0,0 +1,168 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ij.measure.ResultsTable;
+import inra.ijpb.benchmark.BenchmarkImages.BinaryImage;
+import inra.ijpb.benchmark.BenchmarkImages.BinaryStack;
+import inra.ijpb.label.LabelImages;
+import inra.ijpb.measure.GeometricMeasures2D;
+import inra.ijpb.measure.GeometricMeasures3D;
+
+/**
+ * Morphometric measures of the regions within 2D and 3D label images.
+ * 
+ * @author David Legland
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GeometricMeasuresBenchmark
+{
+	private static final double[] RESOL_2D = new double[]{1, 1};
+	private static final double[] RESOL_3D = new double[]{1, 1, 1};
+	
+	/**
+	 * Holds the list of labels within the 2D label image.
+	 */
+	@State(Scope.Benchmark)
+	public static class Labels2D
+	{
+		public int[] labels;
+		
+		@Setup
+		public void setup(BinaryImage image)
+		{
+			labels = LabelImages.findAllLabels(image.labels);
+		}
+	}
+	
+	/**
+	 * Holds the list of labels within the 3D label image.
+	 */
+	@State(Scope.Benchmark)
+	public static class Labels3D
+	{
+		public int[] labels;
+		
+		@Setup
+		public void setup(BinaryStack image)
+		{
+			labels = LabelImages.findAllLabels(image.labels);
+		}
+	}
+	
+	
+	// ==================================================
+	// Measures of 2D regions
+	
+	@Benchmark
+	public double[][] boundingBox(BinaryImage image, Labels2D labels)
+	{
+		return GeometricMeasures2D.boundingBox(image.labels, labels.labels);
+	}
+	
+	@Benchmark
+	public double[] area(BinaryImage image, Labels2D labels)
+	{
+		return GeometricMeasures2D.area(image.labels, labels.labels, RESOL_2D);
+	}
+	
+	@Benchmark
+	public double[] croftonPerimeter(BinaryImage image, Labels2D labels)
+	{
+		return GeometricMeasures2D.croftonPerimeter(image.labels, labels.labels, RESOL_2D, 4);
+	}
+	
+	@Benchmark
+	public double[][] centroids(BinaryImage image, Labels2D labels)
+	{
+		return GeometricMeasures2D.centroids(image.labels, labels.labels);
+	}
+	
+	@Benchmark
+	public ResultsTable inertiaEllipse(BinaryImage image)
+	{
+		return GeometricMeasures2D.inertiaEllipse(image.labels);
+	}
+	
+	@Benchmark
+	public ResultsTable maximumInscribedCircle(BinaryImage image)
+	{
+		return GeometricMeasures2D.maximumInscribedCircle(image.labels, RESOL_2D);
+	}
+	
+	
+	// ==================================================
+	// Measures of 3D regions
+	
+	@Benchmark
+	public double[][] boundingBox3D(BinaryStack image, Labels3D labels)
+	{
+		return GeometricMeasures3D.boundingBox(image.labels, labels.labels);
+	}
+	
+	@Benchmark
+	public double[] volume(BinaryStack image, Labels3D labels)
+	{
+		return GeometricMeasures3D.volume(image.labels, labels.labels, RESOL_3D);
+	}
+	
+	@Benchmark
+	public double[] surfaceArea(BinaryStack image, Labels3D labels)
+	{
+		return GeometricMeasures3D.surfaceAreaCrofton(image.labels, labels.labels, RESOL_3D, 13);
+	}
+	
+	@Benchmark
+	public double[] eulerNumber(BinaryStack image, Labels3D labels)
+	{
+		return GeometricMeasures3D.eulerNumber(image.labels, labels.labels, 6);
+	}
+	
+	@Benchmark
+	public double[][] centroids3D(BinaryStack image, Labels3D labels)
+	{
+		return GeometricMeasures3D.centroids(image.labels, labels.labels);
+	}
+	
+	@Benchmark
+	public double[][] inertiaEllipsoid(BinaryStack image, Labels3D labels)
+	{
+		return GeometricMeasures3D.inertiaEllipsoid(image.labels, labels.labels, RESOL_3D);
+	}
+	
+	@Benchmark
+	public double[][] maximumInscribedSphere(BinaryStack image, Labels3D labels)
+	{
+		return GeometricMeasures3D.maximumInscribedSphere(image.labels, labels.labels, RESOL_3D);
+	}
+}
@@ -0,0 +1,146 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import ij.ImageStack;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.Images3D;
+import inra.ijpb.data.image.MappedImage3D;
+import inra.ijpb.morphology.geodrec.GeodesicReconstruction3DHybrid0Gray8;
+import inra.ijpb.morphology.geodrec.GeodesicReconstruction3DHybrid1Image3D;
+import inra.ijpb.morphology.geodrec.GeodesicReconstructionType;
+
+/**
+ * Geodesic reconstructions by dilation of 8-bit stacks, comparing the hybrid
+ * algorithm working on Image3D instances (stack wrappers and memory-mapped
+ * images) with its twin working on byte arrays.
+ * 
+ * @author David Legland
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class Image3DReconstructionBenchmark
+{
+	private static final GeodesicReconstructionType TYPE = GeodesicReconstructionType.BY_DILATION;
+	
+	/**
+	 * Holds a 8-bit stack and its marker, both in memory and within
+	 * memory-mapped files, together with a mapped image for the result.
+	 */
+	@State(Scope.Benchmark)
+	public static class Gray8Stack
+	{
+		/** The size of the image in each direction */
+		@Param({"96"})
+		public int size;
+		
+		/** The connectivity of the reconstruction, either 6 or 26 */
+		@Param({"6", "26"})
+		public int connectivity;
+		
+		public ImageStack image;
+		public ImageStack marker;
+		
+		public MappedImage3D mappedImage;
+		public MappedImage3D mappedMarker;
+		public MappedImage3D mappedResult;
+		File[] files;
+		
+		@Setup
+		public void setup() throws IOException
+		{
+			image = BenchmarkImages.createGrayStack(size, size, size, 8);
+			marker = BenchmarkImages.subtract(image, 0.2 * BenchmarkImages.maxValue(8));
+			
+			files = new File[3];
+			for (int i = 0; i < 3; i++)
+			{
+				files[i] = File.createTempFile("reconstruction", ".raw");
+			}
+			mappedImage = Images3D.createMapped(files[0], size, size, size, 8);
+			mappedMarker = Images3D.createMapped(files[1], size, size, size, 8);
+			mappedResult = Images3D.createMapped(files[2], size, size, size, 8);
+			copy(Images3D.createWrapper(image), mappedImage);
+			copy(Images3D.createWrapper(marker), mappedMarker);
+		}
+		
+		@TearDown
+		public void tearDown() throws IOException
+		{
+			mappedImage.close();
+			mappedMarker.close();
+			mappedResult.close();
+			for (File file : files)
+			{
+				file.delete();
+			}
+		}
+		
+		private static final void copy(Image3D source, Image3D target)
+		{
+			for (int z = 0; z < source.getSize(2); z++)
+			{
+				for (int y = 0; y < source.getSize(1); y++)
+				{
+					for (int x = 0; x < source.getSize(0); x++)
+					{
+						target.set(x, y, z, source.get(x, y, z));
+					}
+				}
+			}
+		}
+	}
+	
+	@Benchmark
+	public ImageStack gray8(Gray8Stack image)
+	{
+		return new GeodesicReconstruction3DHybrid0Gray8(TYPE, image.connectivity).applyTo(image.marker, image.image);
+	}
+	
+	@Benchmark
+	public ImageStack image3D(Gray8Stack image)
+	{
+		return new GeodesicReconstruction3DHybrid1Image3D(TYPE, image.connectivity).applyTo(image.marker, image.image);
+	}
+	
+	@Benchmark
+	public Image3D mapped(Gray8Stack image)
+	{
+		new GeodesicReconstruction3DHybrid1Image3D(TYPE, image.connectivity).applyTo(
+				image.mappedMarker, image.mappedImage, image.mappedResult);
+		return image.mappedResult;
+	}
+}
@@ -0,0 +1,106 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.benchmark.BenchmarkImages.GrayImage;
+import inra.ijpb.benchmark.BenchmarkImages.GrayStack;
+import inra.ijpb.morphology.geodrec.GeodesicReconstruction3DAlgo;
+import inra.ijpb.morphology.geodrec.GeodesicReconstruction3DHybrid0Float;
+import inra.ijpb.morphology.geodrec.GeodesicReconstruction3DHybrid0Gray16;
+import inra.ijpb.morphology.geodrec.GeodesicReconstruction3DHybrid0Gray8;
+import inra.ijpb.morphology.geodrec.GeodesicReconstruction3DHybrid1Image3D;
+import inra.ijpb.morphology.geodrec.GeodesicReconstruction3DParallel;
+import inra.ijpb.morphology.geodrec.GeodesicReconstructionByDilation3DScanning;
+import inra.ijpb.morphology.geodrec.GeodesicReconstructionHybrid;
+import inra.ijpb.morphology.geodrec.GeodesicReconstructionScanning;
+import inra.ijpb.morphology.geodrec.GeodesicReconstructionType;
+
+/**
+ * Geodesic reconstructions by dilation of grayscale images, comparing the
+ * scanning, hybrid and parallel algorithms. The marker is obtained by
+ * subtracting a constant from the mask.
+ * 
+ * @author David Legland
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReconstructionBenchmark
+{
+	private static final GeodesicReconstructionType TYPE = GeodesicReconstructionType.BY_DILATION;
+	
+	@Benchmark
+	public ImageProcessor scanning(GrayImage image)
+	{
+		return new GeodesicReconstructionScanning(TYPE, 4).applyTo(image.marker, image.image);
+	}
+	
+	@Benchmark
+	public ImageProcessor hybrid(GrayImage image)
+	{
+		return new GeodesicReconstructionHybrid(TYPE, 4).applyTo(image.marker, image.image);
+	}
+	
+	@Benchmark
+	public ImageStack scanning3D(GrayStack image)
+	{
+		return new GeodesicReconstructionByDilation3DScanning(6).applyTo(image.marker, image.image);
+	}
+	
+	@Benchmark
+	public ImageStack hybrid3D(GrayStack image)
+	{
+		return new GeodesicReconstruction3DHybrid1Image3D(TYPE, 6).applyTo(image.marker, image.image);
+	}
+	
+	@Benchmark
+	public ImageStack hybrid3DPrimitive(GrayStack image)
+	{
+		GeodesicReconstruction3DAlgo algo;
+		switch (image.bitDepth)
+		{
+		case 8:
+			algo = new GeodesicReconstruction3DHybrid0Gray8(TYPE, 6);
+			break;
+		case 16:
+			algo = new GeodesicReconstruction3DHybrid0Gray16(TYPE, 6);
+			break;
+		default:
+			algo = new GeodesicReconstruction3DHybrid0Float(TYPE, 6);
+		}
+		return algo.applyTo(image.marker, image.image);
+	}
+	
+	@Benchmark
+	public ImageStack parallel3D(GrayStack image)
+	{
+		return new GeodesicReconstruction3DParallel(TYPE, 6).applyTo(image.marker, image.image);
+	}
+}
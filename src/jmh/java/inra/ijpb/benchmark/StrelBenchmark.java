@@ -0,0 +1,119 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.benchmark.BenchmarkImages.GrayImage;
+import inra.ijpb.benchmark.BenchmarkImages.GrayStack;
+import inra.ijpb.morphology.Strel;
+import inra.ijpb.morphology.Strel3D;
+
+/**
+ * Dilation and erosion of grayscale images, for each shape of 2D and 3D
+ * structuring elements.
+ * 
+ * @author David Legland
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StrelBenchmark
+{
+	/**
+	 * Holds a planar structuring element. All the shapes are processed by
+	 * default.
+	 */
+	@State(Scope.Benchmark)
+	public static class Strel2DState
+	{
+		@Param({})
+		public Strel.Shape shape;
+		
+		@Param({"5"})
+		public int radius;
+		
+		public Strel strel;
+		
+		@Setup
+		public void setup()
+		{
+			strel = shape.fromRadius(radius);
+		}
+	}
+	
+	/**
+	 * Holds a 3D structuring element. All the shapes are processed by
+	 * default.
+	 */
+	@State(Scope.Benchmark)
+	public static class Strel3DState
+	{
+		@Param({})
+		public Strel3D.Shape shape;
+		
+		@Param({"2"})
+		public int radius;
+		
+		public Strel3D strel;
+		
+		@Setup
+		public void setup()
+		{
+			strel = shape.fromRadius(radius);
+		}
+	}
+	
+	@Benchmark
+	public ImageProcessor dilation(GrayImage image, Strel2DState state)
+	{
+		return state.strel.dilation(image.image);
+	}
+	
+	@Benchmark
+	public ImageProcessor erosion(GrayImage image, Strel2DState state)
+	{
+		return state.strel.erosion(image.image);
+	}
+	
+	@Benchmark
+	public ImageStack dilation3D(GrayStack image, Strel3DState state)
+	{
+		return state.strel.dilation(image.image);
+	}
+	
+	@Benchmark
+	public ImageStack erosion3D(GrayStack image, Strel3DState state)
+	{
+		return state.strel.erosion(image.image);
+	}
+}
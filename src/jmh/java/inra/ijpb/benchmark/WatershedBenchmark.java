@@ -0,0 +1,124 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.benchmark.BenchmarkImages.GrayImage;
+import inra.ijpb.benchmark.BenchmarkImages.GrayStack;
+import inra.ijpb.binary.BinaryImages;
+import inra.ijpb.morphology.MinimaAndMaxima;
+import inra.ijpb.morphology.MinimaAndMaxima3D;
+import inra.ijpb.watershed.ExtendedMinimaWatershed;
+import inra.ijpb.watershed.Watershed;
+
+/**
+ * Watershed segmentations of grayscale images in 2D and 3D: classical
+ * watershed, marker-controlled watershed using the regional minima as
+ * markers, and watershed from extended minima.
+ * 
+ * @author David Legland
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WatershedBenchmark
+{
+	/**
+	 * Holds the labels of the regional minima of the 2D grayscale image.
+	 */
+	@State(Scope.Benchmark)
+	public static class Markers2D
+	{
+		public ImageProcessor markers;
+		
+		@Setup
+		public void setup(GrayImage image)
+		{
+			ImageProcessor minima = MinimaAndMaxima.regionalMinima(image.image, 4);
+			markers = BinaryImages.componentsLabeling(minima, 4, 32);
+		}
+	}
+	
+	/**
+	 * Holds the labels of the regional minima of the 3D grayscale image.
+	 */
+	@State(Scope.Benchmark)
+	public static class Markers3D
+	{
+		public ImageStack markers;
+		
+		@Setup
+		public void setup(GrayStack image)
+		{
+			ImageStack minima = MinimaAndMaxima3D.regionalMinima(image.image, 6);
+			markers = BinaryImages.componentsLabeling(minima, 6, 32);
+		}
+	}
+	
+	@Benchmark
+	public ImageProcessor watershed(GrayImage image)
+	{
+		return Watershed.computeWatershed(image.image, null, 4);
+	}
+	
+	@Benchmark
+	public ImageProcessor markerControlled(GrayImage image, Markers2D markers)
+	{
+		return Watershed.computeWatershed(image.image, markers.markers, 4, true);
+	}
+	
+	@Benchmark
+	public ImageProcessor extendedMinima(GrayImage image)
+	{
+		int dynamic = (int) Math.max(0.05 * BenchmarkImages.maxValue(image.bitDepth), 1);
+		return ExtendedMinimaWatershed.extendedMinimaWatershed(image.image, dynamic, 4);
+	}
+	
+	@Benchmark
+	public ImageStack watershed3D(GrayStack image)
+	{
+		return Watershed.computeWatershed(image.image, null, 6);
+	}
+	
+	@Benchmark
+	public ImageStack markerControlled3D(GrayStack image, Markers3D markers)
+	{
+		return Watershed.computeWatershed(image.image, markers.markers, 6, true);
+	}
+	
+	@Benchmark
+	public ImageStack extendedMinima3D(GrayStack image)
+	{
+		int dynamic = (int) Math.max(0.05 * BenchmarkImages.maxValue(image.bitDepth), 1);
+		return ExtendedMinimaWatershed.extendedMinimaWatershed(image.image, dynamic, 6);
+	}
+}
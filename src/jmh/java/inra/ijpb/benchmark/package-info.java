@@ -0,0 +1,35 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+/**
+ * <p>JMH benchmarks of the core operators of the library, run on synthetic
+ * images with configurable size and bit depth.</p>
+ * 
+ * <p>The benchmarks are compiled only within the "benchmark" Maven profile.
+ * Example of use, restricting the strel benchmarks to 1024x1024 images and
+ * measuring allocation rates:
+ * <pre><code>
+ *	mvn -P benchmark package
+ *	java -jar target/MorphoLibJ_-1.3.4-SNAPSHOT-benchmarks.jar StrelBenchmark -p size=1024 -prof gc
+ * </code></pre>
+ */
+package inra.ijpb.benchmark;
+
@@ -32,6 +32,7 @@ import inra.ijpb.binary.conncomp.ConnectedComponentsLabeling;
 import inra.ijpb.binary.conncomp.ConnectedComponentsLabeling3D;
 import inra.ijpb.binary.conncomp.FloodFillComponentsLabeling;
 import inra.ijpb.binary.conncomp.FloodFillComponentsLabeling3D;
+import inra.ijpb.binary.conncomp.UnionFindComponentsLabeling3D;
 import inra.ijpb.binary.distmap.DistanceTransform;
 import inra.ijpb.binary.distmap.DistanceTransform3D;
 import inra.ijpb.binary.distmap.DistanceTransform3DFloat;
@@ -41,10 +42,10 @@ import inra.ijpb.binary.distmap.DistanceTransform3x3Short;
 import inra.ijpb.binary.distmap.DistanceTransform5x5Float;
 import inra.ijpb.binary.distmap.DistanceTransform5x5Short;
 import inra.ijpb.binary.geodesic.GeodesicDistanceTransform;
-import inra.ijpb.binary.geodesic.GeodesicDistanceTransformFloat;
 import inra.ijpb.binary.geodesic.GeodesicDistanceTransformFloat5x5;
-import inra.ijpb.binary.geodesic.GeodesicDistanceTransformShort;
+import inra.ijpb.binary.geodesic.GeodesicDistanceTransformFloatPropagation;
 import inra.ijpb.binary.geodesic.GeodesicDistanceTransformShort5x5;
+import inra.ijpb.binary.geodesic.GeodesicDistanceTransformShortPropagation;
 import inra.ijpb.label.LabelImages;
 
 /**
@@ -259,6 +260,45 @@ public class BinaryImages
 		return algo.computeLabels(image);
 	}
 
+	/**
+	 * Computes the labels of the connected components in the given 3D binary
+	 * image. The type of result is controlled by the bitDepth option.
+	 * 
+	 * Uses either a Flood-fill type algorithm, or a multi-threaded union-find
+	 * algorithm operating on slabs of slices. Both algorithms return the same
+	 * label image.
+	 * 
+	 * @param image
+	 *            contains the 3D binary image (any type is accepted)
+	 * @param conn
+	 *            the connectivity, either 6 or 26
+	 * @param bitDepth
+	 *            the number of bits used to create the result stack (8, 16 or
+	 *            32)
+	 * @param parallel
+	 *            if true, uses the multi-threaded union-find algorithm,
+	 *            otherwise uses the flood-fill algorithm
+	 * @return a new instance of ImageStack containing the label of each
+	 *         connected component.
+	 * @throws RuntimeException
+	 *             if the number of labels reaches the maximum number that can
+	 *             be represented with this bitDepth
+	 *             
+	 * @see inra.ijpb.binary.conncomp.FloodFillComponentsLabeling3D     
+	 * @see inra.ijpb.binary.conncomp.UnionFindComponentsLabeling3D     
+	 */
+	public final static ImageStack componentsLabeling(ImageStack image,
+			int conn, int bitDepth, boolean parallel)
+	{
+		ConnectedComponentsLabeling3D algo;
+		if (parallel)
+			algo = new UnionFindComponentsLabeling3D(conn, bitDepth);
+		else
+			algo = new FloodFillComponentsLabeling3D(conn, bitDepth);
+		DefaultAlgoListener.monitor(algo);
+		return algo.computeLabels(image);
+	}
+
 	/**
 	 * Computes the distance map (or distance transform) from a binary image
 	 * processor. Distance is computed for each foreground (white) pixel or
@@ -498,9 +538,12 @@ public class BinaryImages
 		switch (weights.length) 
 		{
 		case 2:
-			algo = new GeodesicDistanceTransformShort(weights, normalize);
+			// propagate distances from the marker
+			algo = new GeodesicDistanceTransformShortPropagation(weights, normalize);
 			break;
 		case 3:
+			// keep the scans, that use a reduced mask on the two outermost
+			// rows and columns, so that results do not change near borders
 			algo = new GeodesicDistanceTransformShort5x5(weights, normalize);
 			break;
 		default:
@@ -534,9 +577,12 @@ public class BinaryImages
 		switch (weights.length) 
 		{
 		case 2:
-			algo = new GeodesicDistanceTransformFloat(weights, normalize);
+			// propagate distances from the marker
+			algo = new GeodesicDistanceTransformFloatPropagation(weights, normalize);
 			break;
 		case 3:
+			// keep the scans, that use a reduced mask on the two outermost
+			// rows and columns, so that results do not change near borders
 			algo = new GeodesicDistanceTransformFloat5x5(weights, normalize);
 			break;
 		default:
@@ -0,0 +1,497 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.conncomp;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ij.ImageStack;
+import ij.Prefs;
+import ij.process.ImageProcessor;
+import ij.util.ThreadUtil;
+import inra.ijpb.algo.AlgoStub;
+
+/**
+ * Computes the labels of the connected components in a 3D binary image, using
+ * several threads. The type of result is controlled by the bitDepth option.
+ * 
+ * The stack is split into slabs of consecutive slices, one slab per thread.
+ * Each slab is labeled independently with a two-pass union-find algorithm,
+ * then the equivalences between the labels on each side of slab borders are
+ * merged. The final labels are numbered in the order of the first voxel of
+ * each component in a raster scan of the image, so the result is independent
+ * of the number of threads, and identical to the result of the
+ * FloodFillComponentsLabeling3D class.
+ * 
+ * The algorithm requires an additional int array with the same number of
+ * elements as the input image for storing provisional labels.
+ * 
+ * @see FloodFillComponentsLabeling3D
+ * 
+ * @author dlegland
+ */
+public class UnionFindComponentsLabeling3D extends AlgoStub implements
+		ConnectedComponentsLabeling3D
+{
+	/** 
+	 * The connectivity of the components, either 6 (default) or 26.
+	 */
+	int connectivity = 6;
+	
+	/**
+	 * The number of bits for representing the result label image. Can be 8, 16
+	 * (default), or 32.
+	 */
+	int bitDepth = 16;
+	
+	/**
+	 * The number of threads used for computation. Default is the number of
+	 * threads specified in ImageJ preferences.
+	 */
+	int nThreads = Prefs.getThreads();
+	
+	/**
+	 * Constructor with default connectivity 6 and default output bitdepth equal to 16.  
+	 */
+	public UnionFindComponentsLabeling3D()
+	{
+	}
+	
+	/**
+	 * Constructor specifying the connectivity and using default output bitdepth equal to 16.  
+	 * 
+	 * @param connectivity
+	 *            the connectivity of connected components (6 or 26)
+	 */
+	public UnionFindComponentsLabeling3D(int connectivity)
+	{
+		this.connectivity = connectivity;
+	}
+	
+	/**
+	 * Constructor specifying the connectivity and the bitdepth of result label
+	 * image
+	 * 
+	 * @param connectivity
+	 *            the connectivity of connected components (6 or 26)
+	 * @param bitDepth
+	 *            the bit depth of the result (8, 16, or 32)
+	 */
+	public UnionFindComponentsLabeling3D(int connectivity, int bitDepth)
+	{
+	    this.connectivity = connectivity;
+	    this.bitDepth = bitDepth;
+	}
+
+	/**
+	 * @return the number of threads used for computation
+	 */
+	public int getNumberOfThreads()
+	{
+		return this.nThreads;
+	}
+	
+	/**
+	 * @param nThreads
+	 *            the number of threads used for computation (at least 1)
+	 */
+	public void setNumberOfThreads(int nThreads)
+	{
+		if (nThreads < 1)
+		{
+			throw new IllegalArgumentException("Number of threads must be at least 1");
+		}
+		this.nThreads = nThreads;
+	}
+	
+	/* (non-Javadoc)
+	 * @see inra.ijpb.binary.conncomp.ConnectedComponentsLabeling3D#computeLabels(ij.ImageStack)
+	 */
+	@Override
+	public ImageStack computeLabels(final ImageStack image)
+	{
+		if ( Thread.currentThread().isInterrupted() )					
+			return null;
+		
+		if (this.connectivity != 6 && this.connectivity != 26)
+		{
+			throw new IllegalArgumentException("Connectivity must be 6 or 26, not " + this.connectivity);
+		}
+		
+		// identify the maximum label index
+		int maxLabel;
+		switch (this.bitDepth) {
+		case 8: 
+			maxLabel = 255;
+			break; 
+		case 16: 
+			maxLabel = 65535;
+			break;
+		case 32:
+			maxLabel = 0x01 << 23;
+			break;
+		default:
+			throw new IllegalArgumentException(
+					"Bit Depth should be 8, 16 or 32.");
+		}
+
+		// get image size
+		final int sizeX = image.getWidth();
+		final int sizeY = image.getHeight();
+		final int sizeZ = image.getSize();
+
+		// initialize result image
+		fireStatusChanged(this, "Allocate memory...");
+		final ImageStack labels = ImageStack.create(sizeX, sizeY, sizeZ, bitDepth);
+		final int[][] provLabels = new int[sizeZ][];
+
+		// split the stack into slabs of consecutive slices
+		final int nSlabs = Math.max(Math.min(this.nThreads, sizeZ), 1);
+		final int[] slabStarts = new int[nSlabs + 1];
+		for (int k = 0; k <= nSlabs; k++)
+		{
+			slabStarts[k] = (int) (((long) sizeZ * k) / nSlabs);
+		}
+		final Slab[] slabs = new Slab[nSlabs];
+		
+		// first pass: label each slab independently
+		fireStatusChanged(this, "Label slabs...");
+		final AtomicInteger ai = new AtomicInteger(0);
+		Thread[] threads = ThreadUtil.createThreadArray(nSlabs);
+		for (int ithread = 0; ithread < threads.length; ithread++)
+		{
+			threads[ithread] = new Thread()
+			{
+				public void run()
+				{
+					for (int k = ai.getAndIncrement(); k < nSlabs; k = ai.getAndIncrement())
+					{
+						slabs[k] = labelSlab(image, slabStarts[k], slabStarts[k + 1], provLabels);
+					}
+				}
+			};
+		}
+		ThreadUtil.startAndJoin(threads);
+		if (Thread.currentThread().isInterrupted())
+			return null;
+		fireProgressChanged(this, 1, 3);
+		
+		// compute the offset of each slab within the global array of provisional labels
+		final int[] offsets = new int[nSlabs];
+		int nProvLabels = 0;
+		for (int k = 0; k < nSlabs; k++)
+		{
+			offsets[k] = nProvLabels;
+			nProvLabels += slabs[k].labelCount;
+		}
+		
+		// merge the equivalence tables of the slabs into a global table
+		fireStatusChanged(this, "Merge slabs...");
+		int[] parent = new int[nProvLabels + 1];
+		for (int k = 0; k < nSlabs; k++)
+		{
+			Slab slab = slabs[k];
+			for (int label = 1; label <= slab.labelCount; label++)
+			{
+				parent[label + offsets[k]] = find(slab.parent, label) + offsets[k];
+			}
+		}
+		
+		// add equivalences between labels on each side of slab borders
+		for (int k = 1; k < nSlabs; k++)
+		{
+			int z = slabStarts[k];
+			int[] currSlice = provLabels[z];
+			int[] prevSlice = provLabels[z - 1];
+			int offset = offsets[k];
+			int prevOffset = offsets[k - 1];
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					int label = currSlice[y * sizeX + x];
+					if (label == 0)
+						continue;
+					label += offset;
+					
+					if (this.connectivity == 6)
+					{
+						int label2 = prevSlice[y * sizeX + x];
+						if (label2 > 0)
+							union(parent, label, label2 + prevOffset);
+						continue;
+					}
+					
+					for (int y2 = Math.max(y - 1, 0); y2 <= Math.min(y + 1, sizeY - 1); y2++)
+					{
+						for (int x2 = Math.max(x - 1, 0); x2 <= Math.min(x + 1, sizeX - 1); x2++)
+						{
+							int label2 = prevSlice[y2 * sizeX + x2];
+							if (label2 > 0)
+								union(parent, label, label2 + prevOffset);
+						}
+					}
+				}
+			}
+		}
+		
+		// Compute final labels. As provisional labels are created in raster
+		// order, and as union always keeps the smallest label as root, the
+		// order of roots corresponds to the order of the components in the
+		// raster scan.
+		final int[] finalLabels = new int[nProvLabels + 1];
+		int nLabels = 0;
+		for (int label = 1; label <= nProvLabels; label++)
+		{
+			int root = find(parent, label);
+			if (root == label)
+			{
+				if (nLabels == maxLabel)
+				{
+					throw new RuntimeException("Max number of label reached (" + maxLabel + ")");
+				}
+				finalLabels[label] = ++nLabels;
+			}
+			else
+			{
+				finalLabels[label] = finalLabels[root];
+			}
+		}
+		fireProgressChanged(this, 2, 3);
+		
+		// second pass: write final labels into result image
+		fireStatusChanged(this, "Relabel...");
+		final AtomicInteger ai2 = new AtomicInteger(0);
+		threads = ThreadUtil.createThreadArray(nSlabs);
+		for (int ithread = 0; ithread < threads.length; ithread++)
+		{
+			threads[ithread] = new Thread()
+			{
+				public void run()
+				{
+					for (int k = ai2.getAndIncrement(); k < nSlabs; k = ai2.getAndIncrement())
+					{
+						int offset = offsets[k];
+						for (int z = slabStarts[k]; z < slabStarts[k + 1]; z++)
+						{
+							int[] slice = provLabels[z];
+							ImageProcessor labelSlice = labels.getProcessor(z + 1);
+							for (int i = 0; i < slice.length; i++)
+							{
+								if (slice[i] > 0)
+								{
+									labelSlice.setf(i, finalLabels[slice[i] + offset]);
+								}
+							}
+							// release memory as soon as possible
+							provLabels[z] = null;
+						}
+					}
+				}
+			};
+		}
+		ThreadUtil.startAndJoin(threads);
+		
+		fireStatusChanged(this, "");
+		fireProgressChanged(this, 1, 1);
+		return labels;
+	}
+	
+	/**
+	 * Computes provisional labels of the voxels within a slab, by considering
+	 * only neighbors within the slab.
+	 * 
+	 * @param image
+	 *            the binary image
+	 * @param z0
+	 *            the index of the first slice of the slab (inclusive)
+	 * @param z1
+	 *            the index of the last slice of the slab (exclusive)
+	 * @param provLabels
+	 *            the array of provisional labels, filled for the slices of
+	 *            the slab
+	 * @return the equivalence table of the slab
+	 */
+	private Slab labelSlab(ImageStack image, int z0, int z1, int[][] provLabels)
+	{
+		int sizeX = image.getWidth();
+		int sizeY = image.getHeight();
+		int sizeXY = sizeX * sizeY;
+		
+		Slab slab = new Slab();
+		
+		for (int z = z0; z < z1; z++)
+		{
+			if (Thread.currentThread().isInterrupted())
+				return slab;
+			
+			ImageProcessor binarySlice = image.getProcessor(z + 1);
+			int[] slice = new int[sizeXY];
+			int[] prevSlice = z > z0 ? provLabels[z - 1] : null;
+			
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					int index = y * sizeX + x;
+					if (binarySlice.getf(index) == 0)
+						continue;
+					
+					// identify smallest root among labels of already visited neighbors
+					int label = 0;
+					if (this.connectivity == 6)
+					{
+						if (x > 0)
+							label = slab.merge(label, slice[index - 1]);
+						if (y > 0)
+							label = slab.merge(label, slice[index - sizeX]);
+						if (prevSlice != null)
+							label = slab.merge(label, prevSlice[index]);
+					}
+					else
+					{
+						int xmin = Math.max(x - 1, 0);
+						int xmax = Math.min(x + 1, sizeX - 1);
+						int ymin = Math.max(y - 1, 0);
+						int ymax = Math.min(y + 1, sizeY - 1);
+						
+						if (prevSlice != null)
+						{
+							for (int y2 = ymin; y2 <= ymax; y2++)
+							{
+								for (int x2 = xmin; x2 <= xmax; x2++)
+								{
+									label = slab.merge(label, prevSlice[y2 * sizeX + x2]);
+								}
+							}
+						}
+						if (y > 0)
+						{
+							for (int x2 = xmin; x2 <= xmax; x2++)
+							{
+								label = slab.merge(label, slice[index - sizeX + x2 - x]);
+							}
+						}
+						if (x > 0)
+							label = slab.merge(label, slice[index - 1]);
+					}
+					
+					// create a new provisional label if no neighbor was labeled
+					if (label == 0)
+					{
+						label = slab.newLabel();
+					}
+					slice[index] = label;
+				}
+			}
+			
+			provLabels[z] = slice;
+		}
+		
+		return slab;
+	}
+	
+	/**
+	 * Returns the root of the specified label, and compresses the path from
+	 * the label to the root.
+	 */
+	private static final int find(int[] parent, int label)
+	{
+		int root = label;
+		while (parent[root] != root)
+		{
+			root = parent[root];
+		}
+		
+		// path compression
+		while (parent[label] != root)
+		{
+			int next = parent[label];
+			parent[label] = root;
+			label = next;
+		}
+		return root;
+	}
+	
+	/**
+	 * Merges the trees of the two labels, using the smallest root as new root.
+	 * 
+	 * @return the root of the merged tree
+	 */
+	private static final int union(int[] parent, int label1, int label2)
+	{
+		int root1 = find(parent, label1);
+		int root2 = find(parent, label2);
+		if (root1 < root2)
+		{
+			parent[root2] = root1;
+			return root1;
+		}
+		parent[root1] = root2;
+		return root2;
+	}
+	
+	/**
+	 * The equivalence table of the provisional labels within a slab.
+	 */
+	private static final class Slab
+	{
+		/** the parent of each label, with parent[0] unused */
+		int[] parent = new int[256];
+		
+		/** the number of provisional labels created within the slab */
+		int labelCount = 0;
+		
+		/**
+		 * Creates a new provisional label, that is its own root.
+		 */
+		int newLabel()
+		{
+			labelCount++;
+			if (labelCount == parent.length)
+			{
+				int[] newParent = new int[parent.length * 2];
+				System.arraycopy(parent, 0, newParent, 0, parent.length);
+				parent = newParent;
+			}
+			parent[labelCount] = labelCount;
+			return labelCount;
+		}
+		
+		/**
+		 * Merges the current label with the label of a neighbor, if any.
+		 * 
+		 * @param label
+		 *            the current label, or 0 if no label was found yet
+		 * @param neighborLabel
+		 *            the label of the neighbor voxel, or 0 for background
+		 * @return the root of the merged labels
+		 */
+		int merge(int label, int neighborLabel)
+		{
+			if (neighborLabel == 0)
+				return label;
+			if (label == 0)
+				return find(parent, neighborLabel);
+			return union(parent, label, neighborLabel);
+		}
+	}
+}
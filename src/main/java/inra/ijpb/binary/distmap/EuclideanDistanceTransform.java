@@ -0,0 +1,301 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.distmap;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ij.Prefs;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.util.ThreadUtil;
+import inra.ijpb.algo.AlgoStub;
+
+/**
+ * Computes exact Euclidean distance maps of planar binary images, using the
+ * separable algorithm of Felzenszwalb and Huttenlocher. Squared distances are
+ * first computed along each row, then along each column by computing the
+ * lower envelope of parabolas rooted at each pixel. The complexity is linear
+ * with the number of pixels, and each pass is computed in parallel over
+ * rows or columns.
+ * 
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	DistanceTransform dt = new EuclideanDistanceTransform(0.5, 0.5);
+ *	ImageProcessor result = dt.distanceMap(inputImage);
+ *}</pre>
+ * 
+ * <p>
+ * References:
+ * <ul>
+ * <li>Felzenszwalb, P. F. and Huttenlocher, D. P. (2012). Distance Transforms
+ * of Sampled Functions. Theory of Computing, 8, 415-428.</li>
+ * <li>Meijster, A., Roerdink, J. B. T. M. and Hesselink, W. H. (2000). A
+ * General Algorithm for Computing Distance Transforms in Linear Time.
+ * Mathematical Morphology and its Applications to Image and Signal
+ * Processing, 331-340.</li>
+ * </ul>
+ * 
+ * @see inra.ijpb.binary.distmap.DistanceTransform
+ * @see inra.ijpb.binary.distmap.EuclideanDistanceTransform3D
+ * 
+ * @author David Legland
+ */
+public class EuclideanDistanceTransform extends AlgoStub implements
+		DistanceTransform 
+{
+	/**
+	 * The spacing between pixels in the x and y directions.
+	 */
+	private double[] spacing = new double[] {1.0, 1.0};
+	
+	/**
+	 * The number of threads used for computation. Default is the number of
+	 * threads specified in ImageJ preferences.
+	 */
+	int nThreads = Prefs.getThreads();
+
+	/**
+	 * Default constructor, assuming isotropic pixels with unit size.
+	 */
+	public EuclideanDistanceTransform() 
+	{
+	}
+
+	/**
+	 * Constructor specifying the size of pixels.
+	 * 
+	 * @param spacingX
+	 *            the pixel size in the x direction
+	 * @param spacingY
+	 *            the pixel size in the y direction
+	 */
+	public EuclideanDistanceTransform(double spacingX, double spacingY) 
+	{
+		if (spacingX <= 0 || spacingY <= 0)
+		{
+			throw new IllegalArgumentException("Pixel spacing must be positive");
+		}
+		this.spacing = new double[] {spacingX, spacingY};
+	}
+
+	/**
+	 * @return the number of threads used for computation
+	 */
+	public int getNumberOfThreads()
+	{
+		return this.nThreads;
+	}
+	
+	/**
+	 * @param nThreads
+	 *            the number of threads used for computation (at least 1)
+	 */
+	public void setNumberOfThreads(int nThreads)
+	{
+		if (nThreads < 1)
+		{
+			throw new IllegalArgumentException("Number of threads must be at least 1");
+		}
+		this.nThreads = nThreads;
+	}
+
+	/**
+	 * Computes the Euclidean distance map of the distance to the nearest
+	 * background pixel. The function returns a new Float processor the same
+	 * size as the input, with values greater or equal to zero. Foreground
+	 * pixels of images without background are set to Float.MAX_VALUE.
+	 * 
+	 * @param image a binary image with non zero pixels as foreground
+	 * @return a new instance of FloatProcessor containing: <ul>
+	 * <li> 0 for each background pixel </li>
+	 * <li> the distance to the nearest background pixel otherwise</li>
+	 * </ul>
+	 */
+	public FloatProcessor distanceMap(final ImageProcessor image)
+	{
+		// size of image
+		final int sizeX = image.getWidth();
+		final int sizeY = image.getHeight();
+		
+		// create the result image, that stores squared distances until the end
+		final FloatProcessor result = new FloatProcessor(sizeX, sizeY);
+		final float[] buffer = (float[]) result.getPixels();
+		
+		// Compute squared distances along each row
+		fireStatusChanged(this, "Process rows...");
+		final AtomicInteger rowIndex = new AtomicInteger(0);
+		runThreads(new Runnable()
+		{
+			public void run()
+			{
+				double[] f = new double[sizeX];
+				double[] d = new double[sizeX];
+				int[] v = new int[sizeX];
+				double[] z = new double[sizeX + 1];
+				for (int y = rowIndex.getAndIncrement(); y < sizeY; y = rowIndex.getAndIncrement())
+				{
+					int offset = y * sizeX;
+					for (int x = 0; x < sizeX; x++)
+					{
+						f[x] = image.getf(offset + x) == 0 ? 0 : Double.POSITIVE_INFINITY;
+					}
+					squaredDistances1d(f, sizeX, spacing[0], d, v, z);
+					for (int x = 0; x < sizeX; x++)
+					{
+						buffer[offset + x] = (float) d[x];
+					}
+				}
+			}
+		});
+		fireProgressChanged(this, 1, 2);
+		
+		// Compute squared distances along each column, then the square root
+		fireStatusChanged(this, "Process columns...");
+		final AtomicInteger colIndex = new AtomicInteger(0);
+		runThreads(new Runnable()
+		{
+			public void run()
+			{
+				double[] f = new double[sizeY];
+				double[] d = new double[sizeY];
+				int[] v = new int[sizeY];
+				double[] z = new double[sizeY + 1];
+				for (int x = colIndex.getAndIncrement(); x < sizeX; x = colIndex.getAndIncrement())
+				{
+					for (int y = 0; y < sizeY; y++)
+					{
+						f[y] = buffer[y * sizeX + x];
+					}
+					squaredDistances1d(f, sizeY, spacing[1], d, v, z);
+					for (int y = 0; y < sizeY; y++)
+					{
+						buffer[y * sizeX + x] = toDistance(d[y]);
+					}
+				}
+			}
+		});
+		
+		fireStatusChanged(this, "");
+		fireProgressChanged(this, 1, 1);
+		return result;
+	}
+	
+	private void runThreads(Runnable task)
+	{
+		Thread[] threads = ThreadUtil.createThreadArray(this.nThreads);
+		for (int i = 0; i < threads.length; i++)
+		{
+			threads[i] = new Thread(task);
+		}
+		ThreadUtil.startAndJoin(threads);
+	}
+
+	/**
+	 * Converts a squared distance into a distance, using Float.MAX_VALUE for
+	 * infinite distances.
+	 *
+	 * @param squaredDist
+	 *            the squared distance, possibly infinite
+	 * @return the corresponding distance, as a float value
+	 */
+	public static final float toDistance(double squaredDist)
+	{
+		if (squaredDist == Double.POSITIVE_INFINITY)
+			return Float.MAX_VALUE;
+		return (float) Math.sqrt(squaredDist);
+	}
+	
+	/**
+	 * Computes the one-dimensional squared distance transform of a sampled
+	 * function, defined as the lower envelope of the parabolas rooted at each
+	 * sample. Samples with infinite values are ignored.
+	 * 
+	 * @param f
+	 *            the values of the sampled function, possibly infinite
+	 * @param n
+	 *            the number of samples
+	 * @param spacing
+	 *            the distance between two consecutive samples
+	 * @param d
+	 *            the array used to store the result
+	 * @param v
+	 *            buffer for the indices of the parabolas within the envelope
+	 *            (at least n elements)
+	 * @param z
+	 *            buffer for the boundaries between parabolas (at least n+1
+	 *            elements)
+	 */
+	public static final void squaredDistances1d(double[] f, int n, double spacing,
+			double[] d, int[] v, double[] z)
+	{
+		// compute lower envelope
+		int k = -1;
+		for (int q = 0; q < n; q++)
+		{
+			if (f[q] == Double.POSITIVE_INFINITY)
+				continue;
+			
+			double pq = q * spacing;
+			double s = Double.NEGATIVE_INFINITY;
+			while (k >= 0)
+			{
+				double pv = v[k] * spacing;
+				s = ((f[q] + pq * pq) - (f[v[k]] + pv * pv)) / (2 * (pq - pv));
+				if (s > z[k])
+					break;
+				k--;
+			}
+			if (k < 0)
+			{
+				s = Double.NEGATIVE_INFINITY;
+			}
+			k++;
+			v[k] = q;
+			z[k] = s;
+			z[k + 1] = Double.POSITIVE_INFINITY;
+		}
+		
+		// case of no finite sample
+		if (k < 0)
+		{
+			for (int q = 0; q < n; q++)
+			{
+				d[q] = Double.POSITIVE_INFINITY;
+			}
+			return;
+		}
+		
+		// fill in values of distance transform
+		k = 0;
+		for (int q = 0; q < n; q++)
+		{
+			double pq = q * spacing;
+			while (z[k + 1] < pq)
+			{
+				k++;
+			}
+			double dp = pq - v[k] * spacing;
+			d[q] = dp * dp + f[v[k]];
+		}
+	}
+}
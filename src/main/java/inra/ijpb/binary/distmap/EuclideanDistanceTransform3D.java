@@ -0,0 +1,252 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.distmap;
+
+import static inra.ijpb.binary.distmap.EuclideanDistanceTransform.squaredDistances1d;
+import static inra.ijpb.binary.distmap.EuclideanDistanceTransform.toDistance;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ij.ImageStack;
+import ij.Prefs;
+import ij.process.ImageProcessor;
+import ij.util.ThreadUtil;
+import inra.ijpb.algo.AlgoStub;
+import inra.ijpb.data.image.Images3D;
+
+/**
+ * Computes exact Euclidean distance maps of 3D binary images, using the
+ * separable algorithm of Felzenszwalb and Huttenlocher. Squared distances are
+ * computed successively along the x, y and z directions. The complexity is
+ * linear with the number of voxels, and each pass is computed in parallel over
+ * the lines of the corresponding direction.
+ * 
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	Calibration calib = imagePlus.getCalibration();
+ *	DistanceTransform3D dt = new EuclideanDistanceTransform3D(
+ *		calib.pixelWidth, calib.pixelHeight, calib.pixelDepth);
+ *	ImageStack result = dt.distanceMap(imagePlus.getStack());
+ *}</pre>
+ * 
+ * @see inra.ijpb.binary.distmap.DistanceTransform3D
+ * @see inra.ijpb.binary.distmap.EuclideanDistanceTransform
+ * 
+ * @author David Legland
+ */
+public class EuclideanDistanceTransform3D extends AlgoStub implements
+		DistanceTransform3D 
+{
+	/**
+	 * The spacing between voxels in the x, y and z directions.
+	 */
+	private double[] spacing = new double[] {1.0, 1.0, 1.0};
+	
+	/**
+	 * The number of threads used for computation. Default is the number of
+	 * threads specified in ImageJ preferences.
+	 */
+	int nThreads = Prefs.getThreads();
+
+	/**
+	 * Default constructor, assuming isotropic voxels with unit size.
+	 */
+	public EuclideanDistanceTransform3D() 
+	{
+	}
+
+	/**
+	 * Constructor specifying the size of voxels.
+	 * 
+	 * @param spacingX
+	 *            the voxel size in the x direction
+	 * @param spacingY
+	 *            the voxel size in the y direction
+	 * @param spacingZ
+	 *            the voxel size in the z direction
+	 */
+	public EuclideanDistanceTransform3D(double spacingX, double spacingY, double spacingZ) 
+	{
+		if (spacingX <= 0 || spacingY <= 0 || spacingZ <= 0)
+		{
+			throw new IllegalArgumentException("Voxel spacing must be positive");
+		}
+		this.spacing = new double[] {spacingX, spacingY, spacingZ};
+	}
+
+	/**
+	 * @return the number of threads used for computation
+	 */
+	public int getNumberOfThreads()
+	{
+		return this.nThreads;
+	}
+	
+	/**
+	 * @param nThreads
+	 *            the number of threads used for computation (at least 1)
+	 */
+	public void setNumberOfThreads(int nThreads)
+	{
+		if (nThreads < 1)
+		{
+			throw new IllegalArgumentException("Number of threads must be at least 1");
+		}
+		this.nThreads = nThreads;
+	}
+
+	/**
+	 * Computes the Euclidean distance map from a 3D binary image. Distance is
+	 * computed for each foreground voxel, as the distance to the nearest
+	 * background voxel. Foreground voxels of images without background are
+	 * set to Float.MAX_VALUE.
+	 * 
+	 * @param image
+	 *            a 3D binary image with non zero voxels as foreground
+	 * @return a new 32-bit 3D image containing:
+	 *         <ul>
+	 *         <li>0 for each background voxel</li>
+	 *         <li>the distance to the nearest background voxel otherwise</li>
+	 *         </ul>
+	 */
+	public ImageStack distanceMap(final ImageStack image) 
+	{
+		// size of image
+		final int sizeX = image.getWidth();
+		final int sizeY = image.getHeight();
+		final int sizeZ = image.getSize();
+		
+		// create the result image, that stores squared distances until the end
+		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, 32);
+		final float[][] buffer = Images3D.getFloatArrays(result);
+		
+		// Compute squared distances along x, processing each slice in parallel
+		fireStatusChanged(this, "Process x direction...");
+		final AtomicInteger sliceIndex = new AtomicInteger(0);
+		runThreads(new Runnable()
+		{
+			public void run()
+			{
+				double[] f = new double[sizeX];
+				double[] d = new double[sizeX];
+				int[] v = new int[sizeX];
+				double[] z = new double[sizeX + 1];
+				for (int k = sliceIndex.getAndIncrement(); k < sizeZ; k = sliceIndex.getAndIncrement())
+				{
+					ImageProcessor slice = image.getProcessor(k + 1);
+					float[] resSlice = buffer[k];
+					for (int y = 0; y < sizeY; y++)
+					{
+						int offset = y * sizeX;
+						for (int x = 0; x < sizeX; x++)
+						{
+							f[x] = slice.getf(offset + x) == 0 ? 0 : Double.POSITIVE_INFINITY;
+						}
+						squaredDistances1d(f, sizeX, spacing[0], d, v, z);
+						for (int x = 0; x < sizeX; x++)
+						{
+							resSlice[offset + x] = (float) d[x];
+						}
+					}
+				}
+			}
+		});
+		fireProgressChanged(this, 1, 3);
+		
+		// Compute squared distances along y, processing each slice in parallel
+		fireStatusChanged(this, "Process y direction...");
+		final AtomicInteger sliceIndex2 = new AtomicInteger(0);
+		runThreads(new Runnable()
+		{
+			public void run()
+			{
+				double[] f = new double[sizeY];
+				double[] d = new double[sizeY];
+				int[] v = new int[sizeY];
+				double[] z = new double[sizeY + 1];
+				for (int k = sliceIndex2.getAndIncrement(); k < sizeZ; k = sliceIndex2.getAndIncrement())
+				{
+					float[] resSlice = buffer[k];
+					for (int x = 0; x < sizeX; x++)
+					{
+						for (int y = 0; y < sizeY; y++)
+						{
+							f[y] = resSlice[y * sizeX + x];
+						}
+						squaredDistances1d(f, sizeY, spacing[1], d, v, z);
+						for (int y = 0; y < sizeY; y++)
+						{
+							resSlice[y * sizeX + x] = (float) d[y];
+						}
+					}
+				}
+			}
+		});
+		fireProgressChanged(this, 2, 3);
+
+		// Compute squared distances along z, processing each row in parallel,
+		// and convert to distances
+		fireStatusChanged(this, "Process z direction...");
+		final AtomicInteger rowIndex = new AtomicInteger(0);
+		runThreads(new Runnable()
+		{
+			public void run()
+			{
+				double[] f = new double[sizeZ];
+				double[] d = new double[sizeZ];
+				int[] v = new int[sizeZ];
+				double[] z = new double[sizeZ + 1];
+				for (int y = rowIndex.getAndIncrement(); y < sizeY; y = rowIndex.getAndIncrement())
+				{
+					for (int x = 0; x < sizeX; x++)
+					{
+						int index = y * sizeX + x;
+						for (int k = 0; k < sizeZ; k++)
+						{
+							f[k] = buffer[k][index];
+						}
+						squaredDistances1d(f, sizeZ, spacing[2], d, v, z);
+						for (int k = 0; k < sizeZ; k++)
+						{
+							buffer[k][index] = toDistance(d[k]);
+						}
+					}
+				}
+			}
+		});
+		
+		fireStatusChanged(this, "");
+		fireProgressChanged(this, 1, 1);
+		return result;
+	}
+	
+	private void runThreads(Runnable task)
+	{
+		Thread[] threads = ThreadUtil.createThreadArray(this.nThreads);
+		for (int i = 0; i < threads.length; i++)
+		{
+			threads[i] = new Thread(task);
+		}
+		ThreadUtil.startAndJoin(threads);
+	}
+}
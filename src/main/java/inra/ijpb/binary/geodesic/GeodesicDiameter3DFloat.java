@@ -21,16 +21,15 @@
  */
 package inra.ijpb.binary.geodesic;
 
-import ij.IJ;
 import ij.ImageStack;
 import ij.measure.ResultsTable;
 import inra.ijpb.algo.AlgoEvent;
 import inra.ijpb.algo.AlgoListener;
 import inra.ijpb.algo.AlgoStub;
-import inra.ijpb.binary.BinaryImages;
 import inra.ijpb.binary.ChamferWeights3D;
 import inra.ijpb.data.Cursor3D;
 import inra.ijpb.data.image.Images3D;
+import inra.ijpb.label.CroppedLabelExecutor;
 import inra.ijpb.label.LabelImages;
 
 /**
@@ -122,84 +121,26 @@ public class GeodesicDiameter3DFloat extends AlgoStub implements GeodesicDiamete
 		int[] labels = LabelImages.findAllLabels(labelImage);
 		int nbLabels = labels.length;
 		
-		// Create calculator for propagating distances
-		GeodesicDistanceTransform3D geodDistMapAlgo;
-		geodDistMapAlgo = new GeodesicDistanceTransform3DFloat(weights, false);
-		geodDistMapAlgo.addAlgoListener(this);
-
-		// The array that stores Chamfer distances 
-		ImageStack distanceMap;
-		
-		Cursor3D[] posCenter;
-		Cursor3D[] pos1;
-		Cursor3D[] pos2;
-		
-		// Initialize mask as binarisation of labels
-		ImageStack mask = BinaryImages.binarize(labelImage);
-		
-		// Initialize marker as complement of all labels
-		ImageStack marker = createMarkerOutsideLabels(labelImage);
-
-		this.currentStep = "initCenters";
-		this.fireStatusChanged(this, "Initializing pseudo geodesic centers...");
-
-		// first distance propagation to find an arbitrary center
-		distanceMap = geodDistMapAlgo.geodesicDistanceMap(marker, mask);
-		
-		// Extract position of maxima
-		posCenter = findPositionOfMaxValues(distanceMap, labelImage, labels);
-		
-		float[] radii = findMaxValues(distanceMap, labelImage, labels);
-		
-		// Create new marker image with position of maxima
-		Images3D.fill(marker, 0);
-		for (int i = 0; i < nbLabels; i++) 
+		// process each label within its bounding box
+		this.currentStep = "labels";
+		this.fireStatusChanged(this, "Computing geodesic diameters...");
+		CroppedLabelExecutor executor = new CroppedLabelExecutor(1);
+		executor.addAlgoListener(this);
+		double[][] results = executor.process(labelImage, labels, new CroppedLabelExecutor.Operation3D()
 		{
-			Cursor3D pos = posCenter[i];
-			if (pos.getX() == -1) 
+			@Override
+			public double[] process(ImageStack mask, int label, int x0, int y0, int z0)
 			{
-				IJ.showMessage("Particle Not Found", 
-						"Could not find maximum for particle label " + i);
-				continue;
-			}
-			marker.setVoxel(pos.getX(), pos.getY(), pos.getZ(), 255);
-		}
-		
-		this.currentStep = "firstEnds";
-		this.fireStatusChanged(this, "Computing first geodesic extremities...");
-
-		// Second distance propagation from first maximum
-		distanceMap = geodDistMapAlgo.geodesicDistanceMap(marker, mask);
-
-		// find position of maximal value,
-		// this is expected to correspond to a geodesic extremity 
-		pos1 = findPositionOfMaxValues(distanceMap, labelImage, labels);
-		
-		// Create new marker image with position of maxima
-		Images3D.fill(marker, 0);
-		for (int i = 0; i < nbLabels; i++) 
-		{
-			Cursor3D pos = pos1[i];
-			if (pos.getX() == -1) 
-			{
-				IJ.showMessage("Particle Not Found", 
-						"Could not find maximum for particle label " + i);
-				continue;
+				double[] res = processLabel(mask);
+				for (int k = 2; k < res.length; k += 3)
+				{
+					res[k] += x0;
+					res[k + 1] += y0;
+					res[k + 2] += z0;
+				}
+				return res;
 			}
-			marker.setVoxel(pos.getX(), pos.getY(), pos.getZ(), 255);
-		}
-		
-		this.currentStep = "secondEnds";
-		this.fireStatusChanged(this, "Computing second geodesic extremities...");
-
-		// third distance propagation from second maximum
-		distanceMap = geodDistMapAlgo.geodesicDistanceMap(marker, mask);
-		
-		// compute max distance constrained to each label,
-		float[] values = findMaxValues(distanceMap, labelImage, labels);
-		//System.out.println("value: " + value);
-		pos2 = findPositionOfMaxValues(distanceMap, labelImage, labels);
-		
+		});
 		
 		// Initialize a new results table
 		ResultsTable table = new ResultsTable();
@@ -207,9 +148,11 @@ public class GeodesicDiameter3DFloat extends AlgoStub implements GeodesicDiamete
 		// populate the results table with features of each label
 		for (int i = 0; i < nbLabels; i++) 
 		{
+			double[] res = results[i];
+			
 			// Small conversion to normalize to pixel distances
-			double radius = ((double) radii[i]) / weights[0];
-			double value = ((double) values[i]) / weights[0];
+			double radius = res[0] / weights[0];
+			double value = res[1] / weights[0];
 			
 			// add an entry to the resulting data table
 			table.incrementCounter();
@@ -217,15 +160,15 @@ public class GeodesicDiameter3DFloat extends AlgoStub implements GeodesicDiamete
 			table.addValue("Geod. Diam.", value);
 			table.addValue("Radius", radius);
 			table.addValue("Geod. Elong.", Math.max(value / (radius * 2), 1.0));
-			table.addValue("xi", posCenter[i].getX());
-			table.addValue("yi", posCenter[i].getY());
-			table.addValue("zi", posCenter[i].getZ());
-			table.addValue("x1", pos1[i].getX());
-			table.addValue("y1", pos1[i].getY());
-			table.addValue("z1", pos1[i].getZ());
-			table.addValue("x2", pos2[i].getX());
-			table.addValue("y2", pos2[i].getY());
-			table.addValue("z2", pos2[i].getZ());
+			table.addValue("xi", res[2]);
+			table.addValue("yi", res[3]);
+			table.addValue("zi", res[4]);
+			table.addValue("x1", res[5]);
+			table.addValue("y1", res[6]);
+			table.addValue("z1", res[7]);
+			table.addValue("x2", res[8]);
+			table.addValue("y2", res[9]);
+			table.addValue("z2", res[10]);
 		}
 
 		return table;
@@ -235,93 +178,91 @@ public class GeodesicDiameter3DFloat extends AlgoStub implements GeodesicDiamete
 	// Private processing methods
 	
 	/**
-	 * Create the binary image with value 255 for mask pixels equal to 0, 
-	 * and value 0 for any other value of mask.
+	 * Computes the geodesic diameter of a single particle, given as a binary
+	 * image with a background border.
+	 * 
+	 * @return an array containing the radius, the geodesic diameter (both
+	 *         not normalized), and the coordinates of the center and of the
+	 *         two geodesic extremities
 	 */
-	private ImageStack createMarkerOutsideLabels(ImageStack mask) 
+	private double[] processLabel(ImageStack mask)
 	{
-		// Extract image size
+		// Create calculator for propagating distances
+		GeodesicDistanceTransform3D geodDistMapAlgo = new GeodesicDistanceTransform3DFloatPropagation(weights, false);
+		
+		// Initialize marker as complement of the particle
 		int sizeX = mask.getWidth();
 		int sizeY = mask.getHeight();
 		int sizeZ = mask.getSize();
-		
-		// Create result image
 		ImageStack marker = ImageStack.create(sizeX, sizeY, sizeZ, 8);
-		
-		// Fill result image to either 255 or 0.
-		for(int z = 0; z < sizeZ; z++) 
+		for (int z = 0; z < sizeZ; z++)
 		{
-			for(int y = 0; y < sizeY; y++) 
+			byte[] maskSlice = (byte[]) mask.getPixels(z + 1);
+			byte[] markerSlice = (byte[]) marker.getPixels(z + 1);
+			for (int i = 0; i < maskSlice.length; i++)
 			{
-				for(int x = 0; x < sizeX; x++) 
-				{				
-					marker.setVoxel(x, y, z, mask.getVoxel(x, y, z) == 0 ? 255 : 0);
-				}
+				markerSlice[i] = maskSlice[i] == 0 ? (byte) 255 : 0;
 			}
 		}
 		
-		// Return result
-		return marker;
+		// first distance propagation to find an arbitrary center
+		ImageStack distanceMap = geodDistMapAlgo.geodesicDistanceMap(marker, mask);
+		Cursor3D posCenter = findPositionOfMaxValue(distanceMap, mask);
+		double radius = distanceMap.getVoxel(posCenter.getX(), posCenter.getY(), posCenter.getZ());
+		
+		// Second distance propagation from first maximum
+		Images3D.fill(marker, 0);
+		marker.setVoxel(posCenter.getX(), posCenter.getY(), posCenter.getZ(), 255);
+		distanceMap = geodDistMapAlgo.geodesicDistanceMap(marker, mask);
+		
+		// find position of maximal value,
+		// this is expected to correspond to a geodesic extremity 
+		Cursor3D pos1 = findPositionOfMaxValue(distanceMap, mask);
+		
+		// third distance propagation from second maximum
+		Images3D.fill(marker, 0);
+		marker.setVoxel(pos1.getX(), pos1.getY(), pos1.getZ(), 255);
+		distanceMap = geodDistMapAlgo.geodesicDistanceMap(marker, mask);
+		
+		// compute max distance constrained to the particle
+		Cursor3D pos2 = findPositionOfMaxValue(distanceMap, mask);
+		double value = distanceMap.getVoxel(pos2.getX(), pos2.getY(), pos2.getZ());
+		
+		return new double[] { radius, value, 
+				posCenter.getX(), posCenter.getY(), posCenter.getZ(), 
+				pos1.getX(), pos1.getY(), pos1.getZ(), 
+				pos2.getX(), pos2.getY(), pos2.getZ() };
 	}
 
 	/**
-	 * Find one position for each label. 
+	 * Finds the first position of the maximum value within the binary mask,
+	 * in raster order.
 	 */
-	private Cursor3D[] findPositionOfMaxValues(ImageStack image, 
-			ImageStack labelImage, int[] labels)
+	private static final Cursor3D findPositionOfMaxValue(ImageStack image, ImageStack mask)
 	{
 		// extract image size
-		int sizeX 	= labelImage.getWidth();
-		int sizeY 	= labelImage.getHeight();
-		int sizeZ 	= labelImage.getSize();
+		int sizeX 	= mask.getWidth();
+		int sizeY 	= mask.getHeight();
+		int sizeZ 	= mask.getSize();
 		
-		// Compute value of greatest label
-		int nbLabel = labels.length;
-		int maxLabel = 0;
-		for (int i = 0; i < nbLabel; i++)
-			maxLabel = Math.max(maxLabel, labels[i]);
-		
-		// init index of each label
-		// to make correspondence between label value and label index
-		int[] labelIndex = new int[maxLabel+1];
-		for (int i = 0; i < nbLabel; i++)
-			labelIndex[labels[i]] = i;
-//		int[] inds = LabelImages.mapLabelIndices(...)
-				
-		// Init Position and value of maximum for each label
-		Cursor3D[] posMax 	= new Cursor3D[nbLabel];
-		float[] maxValues = new float[nbLabel];
-		for (int i = 0; i < nbLabel; i++) 
-		{
-			maxValues[i] = -1;
-			posMax[i] = new Cursor3D(-1, -1, -1);
-		}
-		
-		// store current value
-		float value;
-		int index;
-		
-		// iterate on image pixels
+		Cursor3D posMax = new Cursor3D(-1, -1, -1);
+		float maxValue = -1;
 		for (int z = 0; z < sizeZ; z++) 
 		{
 			for (int y = 0; y < sizeY; y++) 
 			{
 				for (int x = 0; x < sizeX; x++) 
 				{
-					int label = (int) labelImage.getVoxel(x, y, z);
-
-					// do not process pixels that do not belong to particle
-					if (label==0)
+					// do not process voxels that do not belong to particle
+					if (mask.getVoxel(x, y, z) == 0)
 						continue;
 
-					index = labelIndex[label];
-
-					// update values and positions
-					value = (float) image.getVoxel(x, y, z);
-					if (value > maxValues[index]) 
+					// update value and position
+					float value = (float) image.getVoxel(x, y, z);
+					if (value > maxValue) 
 					{
-						posMax[index] = new Cursor3D(x, y, z);
-						maxValues[index] = value;
+						posMax = new Cursor3D(x, y, z);
+						maxValue = value;
 					}
 				}
 			}
@@ -330,63 +271,6 @@ public class GeodesicDiameter3DFloat extends AlgoStub implements GeodesicDiamete
 		return posMax;
 	}
 
-	/**
-	 * Finds maximum value within each label.
-	 */
-	private float[] findMaxValues(ImageStack image, 
-			ImageStack labelImage, int[] labels) 
-	{
-		// extract image size
-		int sizeX 	= labelImage.getWidth();
-		int sizeY 	= labelImage.getHeight();
-		int sizeZ 	= labelImage.getSize();
-		
-		// Compute value of greatest label
-		int nbLabel = labels.length;
-		int maxLabel = 0;
-		for (int i = 0; i < nbLabel; i++)
-			maxLabel = Math.max(maxLabel, labels[i]);
-		
-		// init index of each label
-		// to make correspondence between label value and label index
-		int[] labelIndex = new int[maxLabel+1];
-		for (int i = 0; i < nbLabel; i++)
-			labelIndex[labels[i]] = i;
-				
-		// Init Position and value of maximum for each label
-		float[] maxValues = new float[nbLabel];
-		for (int i = 0; i < nbLabel; i++)
-			maxValues[i] = Float.MIN_VALUE;
-		
-		// store current value
-		float value;
-		int index;
-		
-		// iterate on image pixels
-		for (int z = 0; z < sizeZ; z++)
-		{
-			for (int y = 0; y < sizeY; y++)
-			{
-				for (int x = 0; x < sizeX; x++) 
-				{
-					int label = (int) labelImage.getVoxel(x, y, z);
-
-					// do not process voxels that do not belong to particle
-					if (label == 0)
-						continue;
-
-					index = labelIndex[label];
-
-					// update values and positions
-					value = (float) image.getVoxel(x, y, z);
-					if (value > maxValues[index])
-						maxValues[index] = value;
-				}
-			}
-		}	
-		return maxValues;
-	}
-
 	// ==================================================
 	// Implementation of AlgoListener interface 
 	
@@ -23,10 +23,14 @@ package inra.ijpb.binary.geodesic;
 
 import ij.IJ;
 import ij.measure.ResultsTable;
+import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
+import inra.ijpb.algo.AlgoEvent;
+import inra.ijpb.algo.AlgoListener;
 import inra.ijpb.algo.AlgoStub;
 import inra.ijpb.binary.BinaryImages;
 import inra.ijpb.binary.ChamferWeights;
+import inra.ijpb.label.CroppedLabelExecutor;
 
 import java.awt.Point;
 import java.util.ArrayList;
@@ -40,9 +44,10 @@ import java.util.TreeSet;
  * Computes geodesic diameter of a set of labeled particles or regions, using 
  * floating point values for propagating chamfer distances.
  * 
- * This version uses optimized algorithm, that propagates distances of all
- * particles during each pass. This reduces computation overhead due to 
- * iteration over particles.
+ * The geodesic diameter of each particle is computed within the bounding box
+ * of the particle, and particles are processed in parallel. This makes the
+ * computation time proportional to the total area of the bounding boxes,
+ * instead of the number of particles times the image size.
  * 
  * <p>
  * Example of use:
@@ -117,6 +122,76 @@ public class GeodesicDiameterFloat extends AlgoStub implements GeodesicDiameter
 		int[] labels = findAllLabels(labelImage);
 		int nbLabels = labels.length;
 		
+		// process each label within its bounding box
+		this.fireStatusChanged(this, "Computing geodesic diameters...");
+		CroppedLabelExecutor executor = new CroppedLabelExecutor(1);
+		executor.addAlgoListener(new AlgoListener()
+		{
+			@Override
+			public void algoProgressChanged(AlgoEvent evt)
+			{
+				fireProgressChanged(GeodesicDiameterFloat.this, evt.getCurrentProgress(), evt.getTotalProgress());
+			}
+			
+			@Override
+			public void algoStatusChanged(AlgoEvent evt)
+			{
+			}
+		});
+		double[][] results = executor.process(labelImage, labels, new CroppedLabelExecutor.Operation2D()
+		{
+			@Override
+			public double[] process(ImageProcessor mask, int label, int x0, int y0)
+			{
+				double[] res = processLabel(mask);
+				for (int k = 2; k < res.length; k += 2)
+				{
+					res[k] += x0;
+					res[k + 1] += y0;
+				}
+				return res;
+			}
+		});
+
+		// Initialize a new result table
+		ResultsTable table = new ResultsTable();
+
+		// Small conversion to normalize with weights
+		for (int i = 0; i < nbLabels; i++) 
+		{
+			double[] res = results[i];
+			
+			// convert to pixel distance
+			double radius = res[0] / weights[0];
+			double value = res[1] / weights[0];
+			
+			// add an entry to the resulting data table
+			table.incrementCounter();
+			table.addValue("Label", labels[i]);
+			table.addValue("Geod. Diam", value);
+			table.addValue("Radius", radius);
+			table.addValue("Geod. Elong.", Math.max(value / (radius * 2), 1.0));
+			table.addValue("xi", res[2]);
+			table.addValue("yi", res[3]);
+			table.addValue("x1", res[4]);
+			table.addValue("y1", res[5]);
+			table.addValue("x2", res[6]);
+			table.addValue("y2", res[7]);
+		}
+
+		return table;
+	}
+	
+	/**
+	 * Computes the geodesic diameter of a single particle, given as a binary
+	 * image with a background border.
+	 * 
+	 * @return an array containing the radius, the geodesic diameter (both
+	 *         not normalized), and the coordinates of the center and of the
+	 *         two geodesic extremities
+	 */
+	private double[] processLabel(ImageProcessor mask)
+	{
 		// Create calculator for propagating distances
 		GeodesicDistanceTransform calculator;
 		if (weights.length == 3)
@@ -125,105 +200,69 @@ public class GeodesicDiameterFloat extends AlgoStub implements GeodesicDiameter
 		} 
 		else 
 		{
-			calculator = new GeodesicDistanceTransformFloat(weights, false);
+			calculator = new GeodesicDistanceTransformFloatPropagation(weights, false);
 		}
-			
-		// Initialize a new result table
-		ResultsTable table = new ResultsTable();
-
-		// The array that stores Chamfer distances 
-		ImageProcessor distance;
-		
-		Point[] posCenter;
-		Point[] pos1;
-		Point[] pos2;
 		
-		// Initialize mask as binarisation of labels
-		ImageProcessor mask = BinaryImages.binarize(labelImage);
-		
-		// Initialize marker as complement of all labels
-		ImageProcessor marker = BinaryImages.binarizeBackground(labelImage);
-
-		this.fireStatusChanged(this, "Initializing pseudo geodesic centers...");
+		// Initialize marker as complement of the particle
+		ImageProcessor marker = new ByteProcessor(mask.getWidth(), mask.getHeight());
+		for (int i = 0; i < mask.getPixelCount(); i++)
+		{
+			marker.set(i, mask.get(i) == 0 ? 255 : 0);
+		}
 
 		// first distance propagation to find an arbitrary center
-		distance = calculator.geodesicDistanceMap(marker, mask);
-		
-		// Extract position of maxima
-		posCenter = findPositionOfMaxValues(distance, labelImage, labels);
-		
-		float[] radii = findMaxValues(distance, labelImage, labels);
+		ImageProcessor distance = calculator.geodesicDistanceMap(marker, mask);
+		Point posCenter = findPositionOfMaxValue(distance, mask);
+		float radius = distance.getf(posCenter.x, posCenter.y);
 		
-		// Create new marker image with position of maxima
+		// Second distance propagation from first maximum
 		marker.setValue(0);
 		marker.fill();
-		for (int i = 0; i < nbLabels; i++) 
-		{
-			if (posCenter[i].x == -1) 
-			{
-				IJ.showMessage("Particle Not Found", 
-						"Could not find maximum for particle label " + i);
-				continue;
-			}
-			marker.set(posCenter[i].x, posCenter[i].y, 255);
-		}
-		
-		
-		this.fireStatusChanged(this, "Computing first geodesic extremities...");
-
-		// Second distance propagation from first maximum
+		marker.set(posCenter.x, posCenter.y, 255);
 		distance = calculator.geodesicDistanceMap(marker, mask);
 
 		// find position of maximal value,
 		// this is expected to correspond to a geodesic extremity 
-		pos1 = findPositionOfMaxValues(distance, labelImage, labels);
+		Point pos1 = findPositionOfMaxValue(distance, mask);
 		
-		// Create new marker image with position of maxima
+		// third distance propagation from second maximum
 		marker.setValue(0);
 		marker.fill();
-		for (int i = 0; i < nbLabels; i++) 
-		{
-			if (pos1[i].x == -1) 
-			{
-				IJ.showMessage("Particle Not Found", 
-						"Could not find maximum for particle label " + i);
-				continue;
-			}
-			marker.set(pos1[i].x, pos1[i].y, 255);
-		}
-		
-		this.fireStatusChanged(this, "Computing second geodesic extremities...");
-
-		// third distance propagation from second maximum
+		marker.set(pos1.x, pos1.y, 255);
 		distance = calculator.geodesicDistanceMap(marker, mask);
 		
-		// compute max distance constrained to each label,
-		float[] values = findMaxValues(distance, labelImage, labels);
-		//System.out.println("value: " + value);
-		pos2 = findPositionOfMaxValues(distance, labelImage, labels);
+		// compute max distance constrained to the particle
+		Point pos2 = findPositionOfMaxValue(distance, mask);
+		float value = distance.getf(pos2.x, pos2.y);
 		
-		// Small conversion to normalize with weights
-		for (int i = 0; i < nbLabels; i++) 
+		return new double[] { radius, value, 
+				posCenter.x, posCenter.y, pos1.x, pos1.y, pos2.x, pos2.y };
+	}
+	
+	/**
+	 * Finds the first position of the maximum value within the binary mask,
+	 * in raster order.
+	 */
+	private static final Point findPositionOfMaxValue(ImageProcessor image, ImageProcessor mask)
+	{
+		Point posMax = new Point(-1, -1);
+		float maxValue = -1;
+		for (int y = 0; y < mask.getHeight(); y++)
 		{
-			// convert to pixel distance
-			double radius = ((double) radii[i]) / weights[0];
-			double value = ((double) values[i]) / weights[0];
-			
-			// add an entry to the resulting data table
-			table.incrementCounter();
-			table.addValue("Label", labels[i]);
-			table.addValue("Geod. Diam", value);
-			table.addValue("Radius", radius);
-			table.addValue("Geod. Elong.", Math.max(value / (radius * 2), 1.0));
-			table.addValue("xi", posCenter[i].x);
-			table.addValue("yi", posCenter[i].y);
-			table.addValue("x1", pos1[i].x);
-			table.addValue("y1", pos1[i].y);
-			table.addValue("x2", pos2[i].x);
-			table.addValue("y2", pos2[i].y);
+			for (int x = 0; x < mask.getWidth(); x++)
+			{
+				if (mask.get(x, y) == 0)
+					continue;
+				
+				float value = image.getf(x, y);
+				if (value > maxValue)
+				{
+					posMax.setLocation(x, y);
+					maxValue = value;
+				}
+			}
 		}
-
-		return table;
+		return posMax;
 	}
 	
 	/**
@@ -508,58 +547,4 @@ public class GeodesicDiameterFloat extends AlgoStub implements GeodesicDiameter
 				
 		return posMax;
 	}
-
-	/**
-	 * Finds maximum value within each label.
-	 */
-	private float[] findMaxValues(ImageProcessor image, 
-			ImageProcessor labelImage, int[] labels) 
-	{
-		int width 	= labelImage.getWidth();
-		int height 	= labelImage.getHeight();
-		
-		// Compute value of greatest label
-		int nbLabel = labels.length;
-		int maxLabel = 0;
-		for (int i = 0; i < nbLabel; i++)
-			maxLabel = Math.max(maxLabel, labels[i]);
-		
-		// init index of each label
-		// to make correspondence between label value and label index
-		int[] labelIndex = new int[maxLabel+1];
-		for (int i = 0; i < nbLabel; i++)
-			labelIndex[labels[i]] = i;
-				
-		// Init Position and value of maximum for each label
-		float[] maxValues = new float[nbLabel];
-		for (int i = 0; i < nbLabel; i++)
-			maxValues[i] = Float.MIN_VALUE;
-		
-		// store current value
-		float value;
-		int index;
-		
-		// iterate on image pixels
-		for (int y = 0; y < height; y++)
-		{
-			for (int x = 0; x < width; x++) 
-			{
-				int label = labelImage.get(x, y);
-				
-				// do not process pixels that do not belong to particle
-				if (label == 0)
-					continue;
-
-				index = labelIndex[label];
-				
-				// update values and positions
-				value = image.getf(x, y);
-				if (value > maxValues[index])
-					maxValues[index] = value;
-			}
-		}
-				
-		return maxValues;
-	}
-
 }
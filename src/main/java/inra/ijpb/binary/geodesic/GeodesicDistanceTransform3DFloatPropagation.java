@@ -0,0 +1,213 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.geodesic;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.algo.AlgoStub;
+import inra.ijpb.binary.ChamferWeights3D;
+import inra.ijpb.data.IndexedMinHeap;
+import inra.ijpb.data.image.Images3D;
+
+/**
+ * Computation of geodesic distance transform for 3D images, using floating
+ * point computation, by propagating a front from the marker voxels.
+ * 
+ * Voxels are processed by increasing distance using an indexed heap, so that
+ * each voxel is settled only once, whatever the tortuosity of the mask. The
+ * result is the same as for the iterated chamfer scans of the
+ * GeodesicDistanceTransform3DFloat class, using the 26 neighbors and the
+ * first three weights.
+ * 
+ * @see GeodesicDistanceTransform3DFloat
+ * 
+ * @author dlegland
+ *
+ */
+public class GeodesicDistanceTransform3DFloatPropagation extends AlgoStub implements GeodesicDistanceTransform3D
+{
+	private final static int DEFAULT_MASK_LABEL = 255;
+
+	// ==================================================
+	// Class variables
+	
+	float[] weights;
+	
+	/**
+	 * Flag for dividing final distance map by the value first weight. 
+	 * This results in distance map values closer to euclidean, but with non integer values. 
+	 */
+	boolean normalizeMap = true;
+	
+	/** 
+	 * The value assigned to result voxels that do not belong to the mask. 
+	 * Default is Float.POSITIVE_INFINITY.
+	 */
+	float backgroundValue = Float.POSITIVE_INFINITY;
+	
+	int maskLabel = DEFAULT_MASK_LABEL;
+
+	
+	// ==================================================
+	// Constructors
+	
+	public GeodesicDistanceTransform3DFloatPropagation(float[] weights)
+	{
+		this(weights, true);
+	}
+
+	public GeodesicDistanceTransform3DFloatPropagation(float[] weights, boolean normalizeMap)
+	{
+		if (weights.length < 3)
+		{
+			throw new IllegalArgumentException("Requires weight array with at least 3 elements");
+		}
+		this.weights = weights;
+		this.normalizeMap = normalizeMap;
+	}
+
+	public GeodesicDistanceTransform3DFloatPropagation(ChamferWeights3D weights, boolean normalizeMap)
+	{
+		this(weights.getFloatWeights(), normalizeMap);
+	}
+
+
+	// ==================================================
+	// Methods
+	
+	/* (non-Javadoc)
+	 * @see inra.ijpb.binary.geodesic.GeodesicDistanceTransform3D#geodesicDistanceMap(ij.ImageStack, ij.ImageStack)
+	 */
+	@Override
+	public ImageStack geodesicDistanceMap(ImageStack marker, ImageStack mask)
+	{
+		int sizeX = mask.getWidth();
+		int sizeY = mask.getHeight();
+		int sizeZ = mask.getSize();
+		int sliceSize = sizeX * sizeY;
+		long nVoxels = ((long) sliceSize) * sizeZ;
+		if (nVoxels > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("Can not process images with more than " + Integer.MAX_VALUE + " voxels");
+		}
+		
+		// create the 26 neighbors, with the weight depending on the number of shifted coordinates
+		int[][] shifts = new int[26][];
+		float[] shiftWeights = new float[26];
+		int k = 0;
+		for (int dz = -1; dz <= 1; dz++)
+		{
+			for (int dy = -1; dy <= 1; dy++)
+			{
+				for (int dx = -1; dx <= 1; dx++)
+				{
+					int nShifts = Math.abs(dx) + Math.abs(dy) + Math.abs(dz);
+					if (nShifts == 0)
+						continue;
+					shifts[k] = new int[] {dx, dy, dz};
+					shiftWeights[k] = weights[nShifts - 1];
+					k++;
+				}
+			}
+		}
+		
+		fireStatusChanged(this, "Initialization..."); 
+		
+		// create new empty image, and fill it with black
+		ImageStack resultStack = ImageStack.create(sizeX, sizeY, sizeZ, 32);
+		float[][] slices = Images3D.getFloatArrays(resultStack);
+		ImageProcessor[] maskSlices = new ImageProcessor[sizeZ];
+		
+		// initialize empty image with either 0 (foreground) or Inf (background)
+		IndexedMinHeap heap = new IndexedMinHeap((int) nVoxels);
+		for (int z = 0; z < sizeZ; z++)
+		{
+			maskSlices[z] = mask.getProcessor(z + 1);
+			ImageProcessor markerSlice = marker.getProcessor(z + 1);
+			for (int i = 0; i < sliceSize; i++)
+			{
+				if (markerSlice.getf(i) == 0)
+				{
+					slices[z][i] = backgroundValue;
+				}
+				else
+				{
+					heap.update(z * sliceSize + i, 0);
+				}
+			}
+		}
+		
+		// process voxels by increasing distance
+		fireStatusChanged(this, "Propagate distances"); 
+		long count = 0;
+		while (!heap.isEmpty())
+		{
+			int index = heap.poll();
+			int z = index / sliceSize;
+			int i = index % sliceSize;
+			int x = i % sizeX;
+			int y = i / sizeX;
+			float dist = slices[z][i];
+			if (++count % sliceSize == 0)
+			{
+				fireProgressChanged(this, count, nVoxels);
+			}
+			
+			for (k = 0; k < shifts.length; k++)
+			{
+				int x2 = x + shifts[k][0];
+				int y2 = y + shifts[k][1];
+				int z2 = z + shifts[k][2];
+				if (x2 < 0 || x2 >= sizeX || y2 < 0 || y2 >= sizeY || z2 < 0 || z2 >= sizeZ)
+					continue;
+				
+				int i2 = y2 * sizeX + x2;
+				if (maskSlices[z2].getf(i2) != maskLabel)
+					continue;
+				
+				float newDist = dist + shiftWeights[k];
+				if (newDist < slices[z2][i2])
+				{
+					slices[z2][i2] = newDist;
+					heap.update(z2 * sliceSize + i2, newDist);
+				}
+			}
+		}
+		fireProgressChanged(this, 1, 1);
+
+		// Normalize values by the first weight value
+		if (this.normalizeMap) 
+		{
+			fireStatusChanged(this, "Normalize map"); 
+			for (int z = 0; z < sizeZ; z++)
+			{
+				float[] slice = slices[z];
+				for (int i = 0; i < sliceSize; i++)
+				{
+					slice[i] /= weights[0];
+				}
+			}
+		}
+
+		return resultStack;
+	}
+}
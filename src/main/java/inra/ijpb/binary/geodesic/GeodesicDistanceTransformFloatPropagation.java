@@ -0,0 +1,221 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.geodesic;
+
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.algo.AlgoStub;
+import inra.ijpb.data.IndexedMinHeap;
+
+/**
+ * Computation of Chamfer geodesic distances using floating point array for
+ * storing result, by propagating a front from the marker pixels.
+ * 
+ * Pixels are processed by increasing distance using an indexed heap, so that
+ * each pixel is settled only once, whatever the tortuosity of the mask. The
+ * result is the same as for the iterated chamfer scans of the
+ * GeodesicDistanceTransformFloat and GeodesicDistanceTransformFloat5x5
+ * classes.
+ * 
+ * The chamfer mask is 3-by-3 when two weights are given (orthogonal and
+ * diagonal moves), and 5-by-5 when three weights are given (the third weight
+ * corresponds to knight moves).
+ * 
+ * @see GeodesicDistanceTransformFloat
+ * @see GeodesicDistanceTransformFloat5x5
+ * 
+ * @author David Legland
+ * 
+ */
+public class GeodesicDistanceTransformFloatPropagation extends AlgoStub implements
+		GeodesicDistanceTransform
+{
+	private final static int DEFAULT_MASK_LABEL = 255;
+
+	float[] weights;
+	
+	/**
+	 * Flag for dividing final distance map by the value first weight. 
+	 * This results in distance map values closer to euclidean, but with non integer values. 
+	 */
+	boolean normalizeMap = true;
+	
+	int maskLabel = DEFAULT_MASK_LABEL;
+
+	/** 
+	 * The value assigned to result pixels that do not belong to the mask. 
+	 * Default is Float.POSITIVE_INFINITY.
+	 */
+	float backgroundValue = Float.POSITIVE_INFINITY;
+	
+	public GeodesicDistanceTransformFloatPropagation(float[] weights)
+	{
+		this(weights, true);
+	}
+
+	public GeodesicDistanceTransformFloatPropagation(float[] weights, boolean normalizeMap)
+	{
+		if (weights.length != 2 && weights.length != 3)
+		{
+			throw new IllegalArgumentException("Requires weight array with 2 or 3 elements");
+		}
+		this.weights = weights;
+		this.normalizeMap = normalizeMap;
+	}
+
+	/**
+	 * @return the backgroundValue
+	 */
+	public float getBackgroundValue() 
+	{
+		return backgroundValue;
+	}
+
+	/**
+	 * @param backgroundValue the backgroundValue to set
+	 */
+	public void setBackgroundValue(float backgroundValue) 
+	{
+		this.backgroundValue = backgroundValue;
+	}
+
+	public int getMaskLabel() 
+	{
+		return maskLabel;
+	}
+
+	public void setMaskLabel(int maskLabel) 
+	{
+		this.maskLabel = maskLabel;
+	}
+
+	/**
+	 * Computes the geodesic distance function for each pixel in mask, using
+	 * the given mask. Mask and marker should be ImageProcessor the same size 
+	 * and containing float values.
+	 * The function returns a new Float processor the same size as the input,
+	 * with values greater or equal to zero. 
+	 */
+	@Override
+	public FloatProcessor geodesicDistanceMap(ImageProcessor marker,
+			ImageProcessor mask) 
+	{
+		// size of image
+		int width = mask.getWidth();
+		int height = mask.getHeight();
+		
+		// create the neighborhood of the chamfer mask
+		int[][] shifts = GeodesicDistanceTransformShortPropagation.createShifts(weights.length);
+		float[] shiftWeights = new float[shifts.length];
+		for (int k = 0; k < shifts.length; k++)
+		{
+			shiftWeights[k] = weights[shifts[k][2]];
+		}
+
+		// initialize empty image with either 0 (foreground) or Inf (background)
+		fireStatusChanged(this, "Initialization..."); 
+		FloatProcessor result = new FloatProcessor(width, height);
+		float[] array = (float[]) result.getPixels();
+		IndexedMinHeap heap = new IndexedMinHeap(width * height);
+		int nPixels = 0;
+		for (int y = 0; y < height; y++) 
+		{
+			for (int x = 0; x < width; x++) 
+			{
+				int index = y * width + x;
+				if ((marker.get(x, y) & 0x00ff) == 0)
+				{
+					array[index] = backgroundValue;
+				}
+				else
+				{
+					heap.update(index, 0);
+				}
+				if (mask.get(x, y) == maskLabel)
+				{
+					nPixels++;
+				}
+			}
+		}
+		
+		// process pixels by increasing distance
+		fireStatusChanged(this, "Propagate distances"); 
+		int count = 0;
+		while (!heap.isEmpty())
+		{
+			int index = heap.poll();
+			float dist = array[index];
+			if (++count % width == 0)
+			{
+				fireProgressChanged(this, count, nPixels);
+			}
+			
+			int x = index % width;
+			int y = index / width;
+			for (int k = 0; k < shifts.length; k++)
+			{
+				int x2 = x + shifts[k][0];
+				int y2 = y + shifts[k][1];
+				if (x2 < 0 || x2 >= width || y2 < 0 || y2 >= height)
+					continue;
+				if (mask.get(x2, y2) != maskLabel)
+					continue;
+				
+				int index2 = y2 * width + x2;
+				float newDist = dist + shiftWeights[k];
+				if (newDist < array[index2])
+				{
+					array[index2] = newDist;
+					heap.update(index2, newDist);
+				}
+			}
+		}
+		fireProgressChanged(this, 1, 1); 
+
+		// Normalize values by the first weight
+		if (this.normalizeMap) 
+		{
+			fireStatusChanged(this, "Normalize map"); 
+			for (int i = 0; i < array.length; i++)
+			{
+				array[i] /= this.weights[0];
+			}
+		}
+
+		// Compute max value within the mask
+		fireStatusChanged(this, "Normalize display"); 
+		float maxVal = 0;
+		for (int i = 0; i < array.length; i++)
+		{
+			float val = array[i];
+			if (Float.isFinite(val))
+				maxVal = Math.max(maxVal, val);
+		}
+
+		// update and return resulting Image processor
+		result.setMinAndMax(0, maxVal);
+		// Forces the display to non-inverted LUT
+		if (result.isInvertedLut())
+			result.invertLut();
+		return result;
+	}
+}
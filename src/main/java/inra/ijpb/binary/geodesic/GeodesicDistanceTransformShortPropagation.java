@@ -0,0 +1,268 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.geodesic;
+
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import inra.ijpb.algo.AlgoStub;
+import inra.ijpb.data.BucketQueue;
+
+/**
+ * Computation of Chamfer geodesic distances using short integer array for
+ * storing result, by propagating a front from the marker pixels.
+ * 
+ * Pixels are processed by increasing distance using a bucket queue, so that
+ * each pixel is settled only once, whatever the tortuosity of the mask. The
+ * result is the same as for the iterated chamfer scans of the
+ * GeodesicDistanceTransformShort and GeodesicDistanceTransformShort5x5
+ * classes.
+ * 
+ * The chamfer mask is 3-by-3 when two weights are given (orthogonal and
+ * diagonal moves), and 5-by-5 when three weights are given (the third weight
+ * corresponds to knight moves).
+ * 
+ * The maximum propagated distance is limited to Short.MAX_VALUE.
+ * 
+ * @see GeodesicDistanceTransformShort
+ * @see GeodesicDistanceTransformShort5x5
+ * 
+ * @author David Legland
+ * 
+ */
+public class GeodesicDistanceTransformShortPropagation extends AlgoStub implements GeodesicDistanceTransform 
+{
+	private final static int DEFAULT_MASK_LABEL = 255;
+
+	short[] weights;
+
+	/**
+	 * Flag for dividing final distance map by the value first weight. 
+	 * This results in distance map values closer to Euclidean distance. 
+	 */
+	boolean normalizeMap = true;
+
+	int maskLabel = DEFAULT_MASK_LABEL;
+
+	/** 
+	 * The value assigned to result pixels that do not belong to the mask. 
+	 * Default is Short.MAX_VALUE.
+	 */
+	short backgroundValue = Short.MAX_VALUE;
+	
+	public GeodesicDistanceTransformShortPropagation(short[] weights)
+	{
+		this(weights, true);
+	}
+
+	public GeodesicDistanceTransformShortPropagation(short[] weights, boolean normalizeMap) 
+	{
+		if (weights.length != 2 && weights.length != 3)
+		{
+			throw new IllegalArgumentException("Requires weight array with 2 or 3 elements");
+		}
+		this.weights = weights;
+		this.normalizeMap = normalizeMap;
+	}
+
+	/**
+	 * @return the backgroundValue
+	 */
+	public short getBackgroundValue() 
+	{
+		return backgroundValue;
+	}
+
+	/**
+	 * @param backgroundValue the backgroundValue to set
+	 */
+	public void setBackgroundValue(short backgroundValue) 
+	{
+		this.backgroundValue = backgroundValue;
+	}
+	
+	public int getMaskLabel() 
+	{
+		return maskLabel;
+	}
+
+	public void setMaskLabel(int maskLabel) 
+	{
+		this.maskLabel = maskLabel;
+	}
+
+	/**
+	 * Computes the geodesic distance function for each pixel in mask, using
+	 * the given mask. Mask and marker should be ImageProcessor the same size 
+	 * and containing integer values.
+	 * The function returns a new ShortProcessor the same size as the input,
+	 * with values greater or equal to zero. 
+	 */
+	public ShortProcessor geodesicDistanceMap(ImageProcessor marker, 
+			ImageProcessor mask) 
+	{
+		// size of image
+		int width = mask.getWidth();
+		int height = mask.getHeight();
+		
+		// create the neighborhood of the chamfer mask
+		int[][] shifts = createShifts(weights.length);
+		int[] shiftWeights = new int[shifts.length];
+		int maxWeight = 0;
+		for (int k = 0; k < shifts.length; k++)
+		{
+			shiftWeights[k] = weights[shifts[k][2]];
+			maxWeight = Math.max(maxWeight, shiftWeights[k]);
+		}
+		
+		// initialize empty image with either 0 (foreground) or Inf (background)
+		fireStatusChanged(this, "Initialization..."); 
+		ShortProcessor buffer = new ShortProcessor(width, height);
+		short[] pixels = (short[]) buffer.getPixels();
+		BucketQueue queue = new BucketQueue(maxWeight);
+		int nPixels = 0;
+		for (int y = 0; y < height; y++) 
+		{
+			for (int x = 0; x < width; x++) 
+			{
+				int index = y * width + x;
+				if ((marker.get(x, y) & 0x00ff) == 0)
+				{
+					pixels[index] = backgroundValue;
+				}
+				else
+				{
+					queue.add(index, 0);
+				}
+				if (mask.get(x, y) == maskLabel)
+				{
+					nPixels++;
+				}
+			}
+		}
+		
+		// process pixels by increasing distance
+		fireStatusChanged(this, "Propagate distances"); 
+		int count = 0;
+		while (!queue.isEmpty())
+		{
+			int index = (int) queue.poll();
+			int dist = queue.currentPriority();
+			
+			// pixels updated after having been queued are processed later
+			if ((pixels[index] & 0x00FFFF) != dist)
+			{
+				continue;
+			}
+			if (++count % width == 0)
+			{
+				fireProgressChanged(this, count, nPixels);
+			}
+			
+			int x = index % width;
+			int y = index / width;
+			for (int k = 0; k < shifts.length; k++)
+			{
+				int x2 = x + shifts[k][0];
+				int y2 = y + shifts[k][1];
+				if (x2 < 0 || x2 >= width || y2 < 0 || y2 >= height)
+					continue;
+				if (mask.get(x2, y2) != maskLabel)
+					continue;
+				
+				int index2 = y2 * width + x2;
+				int newDist = dist + shiftWeights[k];
+				if (newDist < (pixels[index2] & 0x00FFFF))
+				{
+					pixels[index2] = (short) newDist;
+					queue.add(index2, newDist);
+				}
+			}
+		}
+		fireProgressChanged(this, 1, 1); 
+
+		// Normalize values by the first weight
+		if (this.normalizeMap) 
+		{
+			fireStatusChanged(this, "Normalize map"); 
+			for (int i = 0; i < pixels.length; i++)
+			{
+				short val = pixels[i];
+				if (val != this.backgroundValue)
+				{
+					pixels[i] = (short) (val / this.weights[0]);
+				}
+			}
+		}
+		
+		// Compute max value within the mask
+		fireStatusChanged(this, "Normalize display"); 
+		float maxVal = 0;
+		for (int i = 0; i < pixels.length; i++)
+		{
+			short val = pixels[i];
+			if (val != this.backgroundValue)
+			{
+				maxVal = Math.max(maxVal, val);
+			}
+		}
+
+		// update and return resulting Image processor
+		buffer.setMinAndMax(0, maxVal);
+		// Forces the display to non-inverted LUT
+		if (buffer.isInvertedLut())
+		{
+			buffer.invertLut();
+		}
+		
+		return buffer;
+	}
+	
+	/**
+	 * Creates the shifts of the neighbors within the chamfer mask, given as
+	 * (dx, dy, weight index) triplets.
+	 * 
+	 * @param nWeights
+	 *            the number of weights, 2 for 3-by-3 masks and 3 for 5-by-5
+	 *            masks
+	 * @return the shifts of the neighbors
+	 */
+	static final int[][] createShifts(int nWeights)
+	{
+		int[][] shifts3x3 = new int[][] {
+			{-1, 0, 0}, {+1, 0, 0}, {0, -1, 0}, {0, +1, 0},
+			{-1, -1, 1}, {+1, -1, 1}, {-1, +1, 1}, {+1, +1, 1}
+		};
+		if (nWeights == 2)
+		{
+			return shifts3x3;
+		}
+		
+		int[][] shifts5x5 = new int[16][];
+		System.arraycopy(shifts3x3, 0, shifts5x5, 0, 8);
+		int[][] knightMoves = new int[][] {
+			{-1, -2, 2}, {+1, -2, 2}, {-2, -1, 2}, {+2, -1, 2},
+			{-2, +1, 2}, {+2, +1, 2}, {-1, +2, 2}, {+1, +2, 2}
+		};
+		System.arraycopy(knightMoves, 0, shifts5x5, 8, 8);
+		return shifts5x5;
+	}
+}
@@ -0,0 +1,141 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.data;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Priority queue of element indices associated to integer priorities, that
+ * retrieves elements by increasing priority.
+ * 
+ * The priority of an added element may not be smaller than the priority of
+ * the last retrieved element, and may not exceed it by more than the maximal
+ * step given at construction. This is the case for front propagation
+ * algorithms with integer weights (Dial's algorithm), for which the queue
+ * provides constant-time insertion and retrieval, using a circular array of
+ * buckets. Elements with the same priority are retrieved in insertion order.
+ * 
+ * @see IndexQueue
+ * @see IndexedMinHeap
+ * 
+ * @author David Legland
+ */
+public class BucketQueue
+{
+	/** the buckets containing the elements, indexed by priority modulo number of buckets */
+	private final IndexQueue[] buckets;
+	
+	/** the priority of the last retrieved element */
+	private int current = 0;
+	
+	/** total number of elements in the queue */
+	private long size = 0;
+
+	/**
+	 * Creates a new empty queue.
+	 * 
+	 * @param maxStep
+	 *            the maximal difference between the priority of an added
+	 *            element and the priority of the last retrieved element
+	 */
+	public BucketQueue(int maxStep)
+	{
+		if (maxStep < 1)
+		{
+			throw new IllegalArgumentException("Maximal step must be at least 1");
+		}
+		this.buckets = new IndexQueue[maxStep + 1];
+		for (int i = 0; i <= maxStep; i++)
+		{
+			this.buckets[i] = new IndexQueue();
+		}
+	}
+
+	/**
+	 * Adds an element with the specified priority.
+	 * 
+	 * @param index
+	 *            the index of the element
+	 * @param priority
+	 *            the priority of the element, between the priority of the
+	 *            last retrieved element and this priority plus the maximal
+	 *            step
+	 */
+	public void add(long index, int priority)
+	{
+		if (priority < current || priority - current >= buckets.length)
+		{
+			throw new IllegalArgumentException("Priority " + priority
+					+ " is out of the range allowed by the current priority " + current);
+		}
+		buckets[priority % buckets.length].add(index);
+		size++;
+	}
+
+	/**
+	 * Retrieves and removes an element with the lowest priority. The priority
+	 * of the element can then be obtained with the
+	 * <code>currentPriority()</code> method.
+	 * 
+	 * @return the index of the removed element
+	 * @throws NoSuchElementException
+	 *             if the queue is empty
+	 */
+	public long poll()
+	{
+		if (size == 0)
+			throw new NoSuchElementException("Bucket queue is empty");
+
+		IndexQueue bucket = buckets[current % buckets.length];
+		while (bucket.isEmpty())
+		{
+			current++;
+			bucket = buckets[current % buckets.length];
+		}
+		size--;
+		return bucket.poll();
+	}
+
+	/**
+	 * @return the priority of the last retrieved element
+	 */
+	public int currentPriority()
+	{
+		return current;
+	}
+
+	/**
+	 * @return the number of elements in the queue
+	 */
+	public long size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return true if the queue does not contain any element
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+}
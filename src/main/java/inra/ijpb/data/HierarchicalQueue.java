@@ -0,0 +1,207 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.data;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Hierarchical queue (also known as bucket queue) of element indices,
+ * ordered by integer priority levels.
+ * 
+ * Elements are identified by an integer index (typically the linear index of
+ * a pixel or a voxel), and each priority level is stored as a FIFO of
+ * primitive integers. Elements are retrieved by increasing level, and
+ * elements with the same level are retrieved in insertion order. This gives
+ * the same ordering as a priority queue whose ties are broken by a sequence
+ * number, but without allocating an object for each element.
+ * 
+ * Elements can be added at a level lower than the level of the last
+ * retrieved element; in that case they will be the next ones to be
+ * retrieved.
+ * 
+ * Reference: F. Meyer, "Un algorithme optimal de ligne de partage des eaux",
+ * 8e congres AFCET, Lyon-Villeurbanne, France, 1991.
+ * 
+ * @see QuantizedHierarchicalQueue
+ * 
+ * @author Ignacio Arganda-Carreras
+ */
+public class HierarchicalQueue
+{
+	/** initial capacity of the FIFO of each level */
+	static final int INITIAL_CAPACITY = 16;
+
+	/** element indices stored for each level (allocated on demand) */
+	private final int[][] buckets;
+	/** position of the first element within the FIFO of each level */
+	private final int[] heads;
+	/** position after the last element within the FIFO of each level */
+	private final int[] tails;
+
+	/** lowest level that may contain elements */
+	private int lowestLevel;
+	/** total number of elements in the queue */
+	private int size = 0;
+
+	/**
+	 * Creates a new empty hierarchical queue.
+	 * 
+	 * @param levelCount
+	 *            the number of priority levels (for instance 256 for 8-bit
+	 *            images and 65536 for 16-bit images)
+	 */
+	public HierarchicalQueue( int levelCount )
+	{
+		if ( levelCount < 1 )
+			throw new IllegalArgumentException( "Number of levels must be positive, not " + levelCount );
+		this.buckets = new int[ levelCount ][];
+		this.heads = new int[ levelCount ];
+		this.tails = new int[ levelCount ];
+		this.lowestLevel = levelCount;
+	}
+
+	/**
+	 * Adds an element at the end of the FIFO of the specified level.
+	 * 
+	 * @param index
+	 *            the index of the element
+	 * @param level
+	 *            the priority level of the element, between 0 and
+	 *            levelCount-1
+	 */
+	public void add( int index, int level )
+	{
+		int[] bucket = buckets[ level ];
+		int tail = tails[ level ];
+		if ( bucket == null )
+		{
+			bucket = new int[ INITIAL_CAPACITY ];
+			buckets[ level ] = bucket;
+		}
+		else if ( tail == bucket.length )
+		{
+			bucket = ensureCapacity( level );
+			tail = tails[ level ];
+		}
+
+		bucket[ tail ] = index;
+		tails[ level ] = tail + 1;
+		size++;
+
+		if ( level < lowestLevel )
+			lowestLevel = level;
+	}
+
+	/**
+	 * Makes room at the end of the FIFO of the specified level, either by
+	 * moving the remaining elements to the beginning of the array, or by
+	 * allocating a larger array.
+	 */
+	private int[] ensureCapacity( int level )
+	{
+		final int[] bucket = buckets[ level ];
+		final int head = heads[ level ];
+		final int count = tails[ level ] - head;
+
+		int[] result = bucket;
+		if ( head < bucket.length / 2 )
+		{
+			if ( bucket.length == Integer.MAX_VALUE - 8 )
+				throw new IllegalStateException( "Hierarchical queue level " + level + " is full" );
+			int newLength = (int) Math.min( 2L * bucket.length, Integer.MAX_VALUE - 8 );
+			result = new int[ newLength ];
+		}
+		System.arraycopy( bucket, head, result, 0, count );
+
+		buckets[ level ] = result;
+		heads[ level ] = 0;
+		tails[ level ] = count;
+		return result;
+	}
+
+	/**
+	 * Retrieves and removes the first element of the lowest non-empty level.
+	 * 
+	 * @return the index of the removed element
+	 * @throws NoSuchElementException
+	 *             if the queue is empty
+	 */
+	public int poll()
+	{
+		if ( size == 0 )
+			throw new NoSuchElementException( "Hierarchical queue is empty" );
+
+		while ( heads[ lowestLevel ] == tails[ lowestLevel ] )
+			lowestLevel++;
+
+		final int level = lowestLevel;
+		final int index = buckets[ level ][ heads[ level ]++ ];
+		size--;
+
+		// reuse the array of the level once it becomes empty
+		if ( heads[ level ] == tails[ level ] )
+		{
+			heads[ level ] = 0;
+			tails[ level ] = 0;
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the lowest level that currently contains elements, or the
+	 * number of levels if the queue is empty.
+	 * 
+	 * @return the level of the next element to be retrieved
+	 */
+	public int getCurrentLevel()
+	{
+		if ( size == 0 )
+			return buckets.length;
+		while ( heads[ lowestLevel ] == tails[ lowestLevel ] )
+			lowestLevel++;
+		return lowestLevel;
+	}
+
+	/**
+	 * @return the number of priority levels of this queue
+	 */
+	public int getLevelCount()
+	{
+		return buckets.length;
+	}
+
+	/**
+	 * @return the number of elements in the queue
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return true if the queue does not contain any element
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+}
@@ -0,0 +1,160 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.data;
+
+import java.util.NoSuchElementException;
+
+/**
+ * First-in first-out queue of element indices, typically the linear indices
+ * of pixels or voxels.
+ * 
+ * Indices are stored as primitive long values within fixed-size chunks,
+ * linked to form a ring buffer that grows one chunk at a time. Chunks
+ * emptied by retrieval are recycled, so that a queue whose size remains
+ * bounded does not allocate memory once it reached its maximal size.
+ * 
+ * @see HierarchicalQueue
+ * 
+ * @author David Legland
+ */
+public class IndexQueue
+{
+	/** the number of indices within each chunk */
+	static final int CHUNK_SIZE = 4096;
+
+	/** the chunk containing the first element */
+	private Chunk head;
+	/** the chunk containing the last element */
+	private Chunk tail;
+	/** a chunk available for reuse, or null */
+	private Chunk spare = null;
+
+	/** position of the first element within the head chunk */
+	private int headPos = 0;
+	/** position after the last element within the tail chunk */
+	private int tailPos = 0;
+
+	/** total number of elements in the queue */
+	private long size = 0;
+
+	/**
+	 * Creates a new empty queue.
+	 */
+	public IndexQueue()
+	{
+		this.head = new Chunk();
+		this.tail = head;
+	}
+
+	/**
+	 * Adds an element at the end of the queue.
+	 * 
+	 * @param index
+	 *            the index of the element
+	 */
+	public void add(long index)
+	{
+		if (tailPos == CHUNK_SIZE)
+		{
+			Chunk chunk = spare;
+			if (chunk == null)
+				chunk = new Chunk();
+			else
+				spare = null;
+			tail.next = chunk;
+			tail = chunk;
+			tailPos = 0;
+		}
+		tail.values[tailPos++] = index;
+		size++;
+	}
+
+	/**
+	 * Retrieves and removes the first element of the queue.
+	 * 
+	 * @return the index of the removed element
+	 * @throws NoSuchElementException
+	 *             if the queue is empty
+	 */
+	public long poll()
+	{
+		if (size == 0)
+			throw new NoSuchElementException("Index queue is empty");
+
+		if (headPos == CHUNK_SIZE)
+		{
+			// keep the emptied chunk for reuse
+			Chunk chunk = head;
+			head = chunk.next;
+			chunk.next = null;
+			spare = chunk;
+			headPos = 0;
+		}
+		long index = head.values[headPos++];
+		size--;
+
+		// restart from the beginning of the chunk once the queue is empty
+		if (size == 0)
+		{
+			headPos = 0;
+			tailPos = 0;
+		}
+		return index;
+	}
+
+	/**
+	 * Removes all the elements of the queue.
+	 */
+	public void clear()
+	{
+		head.next = null;
+		tail = head;
+		headPos = 0;
+		tailPos = 0;
+		size = 0;
+	}
+
+	/**
+	 * @return the number of elements in the queue
+	 */
+	public long size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return true if the queue does not contain any element
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * A fixed-size array of indices, linked to the next chunk of the queue.
+	 */
+	private static final class Chunk
+	{
+		final long[] values = new long[CHUNK_SIZE];
+		Chunk next = null;
+	}
+}
@@ -0,0 +1,217 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.data;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Binary min-heap of element indices associated to floating point keys, that
+ * keeps track of the position of each element within the heap.
+ * 
+ * Each element index, between 0 and the capacity of the heap, is contained at
+ * most once. Updating the key of an element already in the heap moves it to
+ * its new position in logarithmic time, making it possible to implement front
+ * propagation algorithms with real weights (Dijkstra's algorithm) without
+ * duplicate entries.
+ * 
+ * @see BucketQueue
+ * 
+ * @author David Legland
+ */
+public class IndexedMinHeap
+{
+	/** the element indices, in heap order */
+	private int[] elements;
+	
+	/** the keys of the elements, in heap order */
+	private float[] keys;
+	
+	/** the position of each element index within the heap, or -1 */
+	private final int[] positions;
+	
+	/** the number of elements in the heap */
+	private int size = 0;
+
+	/**
+	 * Creates a new empty heap.
+	 * 
+	 * @param capacity
+	 *            the number of possible element indices
+	 */
+	public IndexedMinHeap(int capacity)
+	{
+		this.positions = new int[capacity];
+		Arrays.fill(this.positions, -1);
+		this.elements = new int[16];
+		this.keys = new float[16];
+	}
+
+	/**
+	 * Adds an element with the specified key, or updates its key if the
+	 * element is already in the heap.
+	 * 
+	 * @param index
+	 *            the index of the element
+	 * @param key
+	 *            the new key of the element
+	 */
+	public void update(int index, float key)
+	{
+		int pos = positions[index];
+		if (pos < 0)
+		{
+			if (size == elements.length)
+			{
+				int newLength = elements.length * 2;
+				elements = Arrays.copyOf(elements, newLength);
+				keys = Arrays.copyOf(keys, newLength);
+			}
+			pos = size++;
+			elements[pos] = index;
+			keys[pos] = key;
+			positions[index] = pos;
+			siftUp(pos);
+		}
+		else if (key < keys[pos])
+		{
+			keys[pos] = key;
+			siftUp(pos);
+		}
+		else if (key > keys[pos])
+		{
+			keys[pos] = key;
+			siftDown(pos);
+		}
+	}
+
+	/**
+	 * Retrieves and removes an element with the smallest key.
+	 * 
+	 * @return the index of the removed element
+	 * @throws NoSuchElementException
+	 *             if the heap is empty
+	 */
+	public int poll()
+	{
+		if (size == 0)
+			throw new NoSuchElementException("Heap is empty");
+		
+		int index = elements[0];
+		positions[index] = -1;
+		size--;
+		if (size > 0)
+		{
+			elements[0] = elements[size];
+			keys[0] = keys[size];
+			positions[elements[0]] = 0;
+			siftDown(0);
+		}
+		return index;
+	}
+
+	/**
+	 * @return the smallest key within the heap
+	 * @throws NoSuchElementException
+	 *             if the heap is empty
+	 */
+	public float minKey()
+	{
+		if (size == 0)
+			throw new NoSuchElementException("Heap is empty");
+		return keys[0];
+	}
+
+	/**
+	 * @param index
+	 *            the index of an element
+	 * @return true if the element is currently in the heap
+	 */
+	public boolean contains(int index)
+	{
+		return positions[index] >= 0;
+	}
+
+	/**
+	 * @return the number of elements in the heap
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return true if the heap does not contain any element
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	private void siftUp(int pos)
+	{
+		int index = elements[pos];
+		float key = keys[pos];
+		while (pos > 0)
+		{
+			int parent = (pos - 1) >> 1;
+			if (keys[parent] <= key)
+				break;
+			move(parent, pos);
+			pos = parent;
+		}
+		elements[pos] = index;
+		keys[pos] = key;
+		positions[index] = pos;
+	}
+
+	private void siftDown(int pos)
+	{
+		int index = elements[pos];
+		float key = keys[pos];
+		int half = size >> 1;
+		while (pos < half)
+		{
+			int child = 2 * pos + 1;
+			if (child + 1 < size && keys[child + 1] < keys[child])
+				child++;
+			if (key <= keys[child])
+				break;
+			move(child, pos);
+			pos = child;
+		}
+		elements[pos] = index;
+		keys[pos] = key;
+		positions[index] = pos;
+	}
+
+	/**
+	 * Moves the element at the source position to the target position.
+	 */
+	private void move(int source, int target)
+	{
+		int index = elements[source];
+		elements[target] = index;
+		keys[target] = keys[source];
+		positions[index] = target;
+	}
+}
@@ -0,0 +1,288 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.data;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Hierarchical queue of element indices associated to floating point values.
+ * 
+ * The range of values is quantized into a finite number of levels. Within a
+ * level, elements are kept in a binary heap of primitive arrays ordered by
+ * value, and elements with the same value are ordered by insertion rank.
+ * Elements are therefore retrieved exactly in the order of a priority queue
+ * sorting on (value, insertion order), whatever the quantization step.
+ * 
+ * Values are compared using the same total order as
+ * <code>Float.compare</code>. Values outside of the quantization range, as
+ * well as NaN values, are put into the first or the last level.
+ * 
+ * @see HierarchicalQueue
+ * 
+ * @author Ignacio Arganda-Carreras
+ */
+public class QuantizedHierarchicalQueue
+{
+	/** default number of quantization levels */
+	public static final int DEFAULT_LEVEL_COUNT = 65536;
+
+	/** initial capacity of the heap of each level */
+	static final int INITIAL_CAPACITY = 16;
+
+	/** lower bound of the quantization range */
+	private final float minValue;
+	/** factor converting a value offset into a level */
+	private final double scale;
+	/** number of levels */
+	private final int levelCount;
+
+	/** element indices of the heap of each level (allocated on demand) */
+	private final int[][] indices;
+	/** element values of the heap of each level */
+	private final float[][] values;
+	/** insertion rank of elements, used to break ties */
+	private final int[][] ranks;
+	/** number of elements within each level */
+	private final int[] counts;
+
+	/** lowest level that may contain elements */
+	private int lowestLevel;
+	/** total number of elements in the queue */
+	private int size = 0;
+	/** insertion counter */
+	private int rank = 0;
+
+	/**
+	 * Creates a new empty queue, using the default number of levels.
+	 * 
+	 * @param minValue
+	 *            the lowest value expected in the queue
+	 * @param maxValue
+	 *            the largest value expected in the queue
+	 */
+	public QuantizedHierarchicalQueue( float minValue, float maxValue )
+	{
+		this( minValue, maxValue, DEFAULT_LEVEL_COUNT );
+	}
+
+	/**
+	 * Creates a new empty queue.
+	 * 
+	 * @param minValue
+	 *            the lowest value expected in the queue
+	 * @param maxValue
+	 *            the largest value expected in the queue
+	 * @param levelCount
+	 *            the number of quantization levels
+	 */
+	public QuantizedHierarchicalQueue( float minValue, float maxValue, int levelCount )
+	{
+		if ( levelCount < 1 )
+			throw new IllegalArgumentException( "Number of levels must be positive, not " + levelCount );
+
+		// degenerate ranges result in a single heap
+		double range = (double) maxValue - (double) minValue;
+		if ( Double.isNaN( range ) || Double.isInfinite( range ) || range <= 0 )
+			levelCount = 1;
+
+		this.minValue = minValue;
+		this.levelCount = levelCount;
+		this.scale = levelCount > 1 ? (levelCount - 1) / range : 0;
+
+		this.indices = new int[ levelCount ][];
+		this.values = new float[ levelCount ][];
+		this.ranks = new int[ levelCount ][];
+		this.counts = new int[ levelCount ];
+		this.lowestLevel = levelCount;
+	}
+
+	/**
+	 * Computes the quantization level of a value. The function is monotonic
+	 * with respect to <code>Float.compare</code>.
+	 */
+	private int levelOf( float value )
+	{
+		if ( levelCount == 1 )
+			return 0;
+		if ( Float.isNaN( value ) )
+			return levelCount - 1;
+		double level = ( (double) value - minValue ) * scale;
+		if ( level <= 0 )
+			return 0;
+		if ( level >= levelCount - 1 )
+			return levelCount - 1;
+		return (int) level;
+	}
+
+	/**
+	 * Adds an element to the queue.
+	 * 
+	 * @param index
+	 *            the index of the element
+	 * @param value
+	 *            the value associated to the element
+	 */
+	public void add( int index, float value )
+	{
+		final int level = levelOf( value );
+		int count = counts[ level ];
+		if ( indices[ level ] == null )
+		{
+			indices[ level ] = new int[ INITIAL_CAPACITY ];
+			values[ level ] = new float[ INITIAL_CAPACITY ];
+			ranks[ level ] = new int[ INITIAL_CAPACITY ];
+		}
+		else if ( count == indices[ level ].length )
+		{
+			grow( level );
+		}
+
+		final int[] heapIndices = indices[ level ];
+		final float[] heapValues = values[ level ];
+		final int[] heapRanks = ranks[ level ];
+		final int newRank = rank++;
+
+		// sift up
+		int pos = count;
+		while ( pos > 0 )
+		{
+			int parent = ( pos - 1 ) >>> 1;
+			if ( !isLower( value, newRank, heapValues[ parent ], heapRanks[ parent ] ) )
+				break;
+			heapIndices[ pos ] = heapIndices[ parent ];
+			heapValues[ pos ] = heapValues[ parent ];
+			heapRanks[ pos ] = heapRanks[ parent ];
+			pos = parent;
+		}
+		heapIndices[ pos ] = index;
+		heapValues[ pos ] = value;
+		heapRanks[ pos ] = newRank;
+
+		counts[ level ] = count + 1;
+		size++;
+		if ( level < lowestLevel )
+			lowestLevel = level;
+	}
+
+	private void grow( int level )
+	{
+		final int length = indices[ level ].length;
+		if ( length == Integer.MAX_VALUE - 8 )
+			throw new IllegalStateException( "Hierarchical queue level " + level + " is full" );
+		final int newLength = (int) Math.min( 2L * length, Integer.MAX_VALUE - 8 );
+
+		int[] newIndices = new int[ newLength ];
+		System.arraycopy( indices[ level ], 0, newIndices, 0, length );
+		indices[ level ] = newIndices;
+		float[] newValues = new float[ newLength ];
+		System.arraycopy( values[ level ], 0, newValues, 0, length );
+		values[ level ] = newValues;
+		int[] newRanks = new int[ newLength ];
+		System.arraycopy( ranks[ level ], 0, newRanks, 0, length );
+		ranks[ level ] = newRanks;
+	}
+
+	/**
+	 * Retrieves and removes the element with the lowest value. If several
+	 * elements have the same value, the first inserted one is returned.
+	 * 
+	 * @return the index of the removed element
+	 * @throws NoSuchElementException
+	 *             if the queue is empty
+	 */
+	public int poll()
+	{
+		if ( size == 0 )
+			throw new NoSuchElementException( "Hierarchical queue is empty" );
+
+		while ( counts[ lowestLevel ] == 0 )
+			lowestLevel++;
+
+		final int level = lowestLevel;
+		final int[] heapIndices = indices[ level ];
+		final float[] heapValues = values[ level ];
+		final int[] heapRanks = ranks[ level ];
+
+		final int result = heapIndices[ 0 ];
+		final int count = --counts[ level ];
+		size--;
+
+		// move the last element to the root and sift it down
+		final int lastIndex = heapIndices[ count ];
+		final float lastValue = heapValues[ count ];
+		final int lastRank = heapRanks[ count ];
+		int pos = 0;
+		int half = count >>> 1;
+		while ( pos < half )
+		{
+			int child = 2 * pos + 1;
+			int right = child + 1;
+			if ( right < count && isLower( heapValues[ right ], heapRanks[ right ],
+					heapValues[ child ], heapRanks[ child ] ) )
+				child = right;
+			if ( !isLower( heapValues[ child ], heapRanks[ child ], lastValue, lastRank ) )
+				break;
+			heapIndices[ pos ] = heapIndices[ child ];
+			heapValues[ pos ] = heapValues[ child ];
+			heapRanks[ pos ] = heapRanks[ child ];
+			pos = child;
+		}
+		heapIndices[ pos ] = lastIndex;
+		heapValues[ pos ] = lastValue;
+		heapRanks[ pos ] = lastRank;
+
+		return result;
+	}
+
+	/**
+	 * Compares two elements on their value, then on their insertion rank.
+	 */
+	private static final boolean isLower( float value1, int rank1, float value2, int rank2 )
+	{
+		int res = Float.compare( value1, value2 );
+		return res < 0 || ( res == 0 && rank1 < rank2 );
+	}
+
+	/**
+	 * @return the number of quantization levels of this queue
+	 */
+	public int getLevelCount()
+	{
+		return levelCount;
+	}
+
+	/**
+	 * @return the number of elements in the queue
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return true if the queue does not contain any element
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+}
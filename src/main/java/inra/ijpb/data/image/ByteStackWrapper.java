@@ -42,7 +42,7 @@ import inra.ijpb.data.Cursor3D;
  * @author David Legland
  *
  */
-public class ByteStackWrapper implements Image3D 
+public class ByteStackWrapper implements ByteImage3D 
 {
 	byte[][] slices;
 	
@@ -50,6 +50,9 @@ public class ByteStackWrapper implements Image3D
 	int sizeY;
 	int sizeZ;
 	
+	/** number of voxels within a slice, used to convert linear indices */
+	int sliceSize;
+	
 	public ByteStackWrapper(ImageStack stack) 
 	{
 		// Check type
@@ -62,6 +65,7 @@ public class ByteStackWrapper implements Image3D
 		this.sizeX = stack.getWidth();
 		this.sizeY = stack.getHeight();
 		this.sizeZ = stack.getSize();
+		this.sliceSize = this.sizeX * this.sizeY;
 
 		// Convert slices type
 		this.slices = new byte[sizeZ][];
@@ -140,4 +144,87 @@ public class ByteStackWrapper implements Image3D
 	{
 		setValue(pos.getX(), pos.getY(), pos.getZ(), value);
 	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#get(long)
+	 */
+	@Override
+	public int get(long index)
+	{
+		return slices[(int) (index / sliceSize)][(int) (index % sliceSize)] & 0x00FF;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#set(long, int)
+	 */
+	@Override
+	public void set(long index, int value)
+	{
+		slices[(int) (index / sliceSize)][(int) (index % sliceSize)] = (byte) value;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getValue(long)
+	 */
+	@Override
+	public double getValue(long index)
+	{
+		return slices[(int) (index / sliceSize)][(int) (index % sliceSize)] & 0x00FF;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setValue(long, double)
+	 */
+	@Override
+	public void setValue(long index, double value)
+	{
+		slices[(int) (index / sliceSize)][(int) (index % sliceSize)] = (byte) (value + .5);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getRowValues(int, int, double[])
+	 */
+	@Override
+	public void getRowValues(int y, int z, double[] values)
+	{
+		byte[] slice = slices[z];
+		int offset = y * sizeX;
+		for (int x = 0; x < sizeX; x++)
+		{
+			values[x] = slice[offset + x] & 0x00FF;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setRowValues(int, int, double[])
+	 */
+	@Override
+	public void setRowValues(int y, int z, double[] values)
+	{
+		byte[] slice = slices[z];
+		int offset = y * sizeX;
+		for (int x = 0; x < sizeX; x++)
+		{
+			double value = values[x];
+			slice[offset + x] = (byte) (value + .5);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.ByteImage3D#getRow(int, int, byte[])
+	 */
+	@Override
+	public void getRow(int y, int z, byte[] row)
+	{
+		System.arraycopy(slices[z], y * sizeX, row, 0, sizeX);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.ByteImage3D#setRow(int, int, byte[])
+	 */
+	@Override
+	public void setRow(int y, int z, byte[] row)
+	{
+		System.arraycopy(row, 0, slices[z], y * sizeX, sizeX);
+	}
 }
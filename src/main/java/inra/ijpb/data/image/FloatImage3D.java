@@ -0,0 +1,79 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.data.image;
+
+/**
+ * Specialization of the Image3D interface for images containing 32-bit
+ * floating point values stored as floats. Provides bulk access to rows of
+ * voxels using arrays of floats.
+ * 
+ * @see Image3D
+ * 
+ * @author David Legland
+ *
+ */
+public interface FloatImage3D extends Image3D
+{
+	/**
+	 * Copies the values of a row of voxels into the specified array.
+	 * 
+	 * @param y
+	 *            the y-coordinate of the row
+	 * @param z
+	 *            the z-coordinate of the row
+	 * @param row
+	 *            the array used to store the values, with at least sizeX
+	 *            elements
+	 */
+	public void getRow(int y, int z, float[] row);
+	
+	/**
+	 * Changes the values of a row of voxels.
+	 * 
+	 * @param y
+	 *            the y-coordinate of the row
+	 * @param z
+	 *            the z-coordinate of the row
+	 * @param row
+	 *            the new values of the row, with at least sizeX elements
+	 */
+	public void setRow(int y, int z, float[] row);
+	
+	/**
+	 * Returns the value at the specified linear index as a float.
+	 * 
+	 * @param index
+	 *            the linear index of the voxel
+	 * @return the value at the specified position
+	 */
+	public float getFloat(long index);
+	
+	/**
+	 * Changes the value at the specified linear index.
+	 * 
+	 * @param index
+	 *            the linear index of the voxel
+	 * @param value
+	 *            the new value at the specified position
+	 */
+	public void setFloat(long index, float value);
+}
@@ -42,7 +42,7 @@ import inra.ijpb.data.Cursor3D;
  * @author David Legland
  *
  */
-public class FloatStackWrapper implements Image3D
+public class FloatStackWrapper implements FloatImage3D
 {
 	float[][] slices;
 	
@@ -50,6 +50,9 @@ public class FloatStackWrapper implements Image3D
 	int sizeY;
 	int sizeZ;
 	
+	/** number of voxels within a slice, used to convert linear indices */
+	int sliceSize;
+	
 	public FloatStackWrapper(ImageStack stack) 
 	{
 		// Check type
@@ -62,6 +65,7 @@ public class FloatStackWrapper implements Image3D
 		this.sizeX = stack.getWidth();
 		this.sizeY = stack.getHeight();
 		this.sizeZ = stack.getSize();
+		this.sliceSize = this.sizeX * this.sizeY;
 
 		// Convert slices type
 		this.slices = new float[sizeZ][];
@@ -133,4 +137,104 @@ public class FloatStackWrapper implements Image3D
 		setValue(pos.getX(), pos.getY(), pos.getZ(), value);
 	}
 
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#get(long)
+	 */
+	@Override
+	public int get(long index)
+	{
+		return (int) slices[(int) (index / sliceSize)][(int) (index % sliceSize)];
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#set(long, int)
+	 */
+	@Override
+	public void set(long index, int value)
+	{
+		slices[(int) (index / sliceSize)][(int) (index % sliceSize)] = (float) value;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getValue(long)
+	 */
+	@Override
+	public double getValue(long index)
+	{
+		return slices[(int) (index / sliceSize)][(int) (index % sliceSize)];
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setValue(long, double)
+	 */
+	@Override
+	public void setValue(long index, double value)
+	{
+		slices[(int) (index / sliceSize)][(int) (index % sliceSize)] = (float) value;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getRowValues(int, int, double[])
+	 */
+	@Override
+	public void getRowValues(int y, int z, double[] values)
+	{
+		float[] slice = slices[z];
+		int offset = y * sizeX;
+		for (int x = 0; x < sizeX; x++)
+		{
+			values[x] = slice[offset + x];
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setRowValues(int, int, double[])
+	 */
+	@Override
+	public void setRowValues(int y, int z, double[] values)
+	{
+		float[] slice = slices[z];
+		int offset = y * sizeX;
+		for (int x = 0; x < sizeX; x++)
+		{
+			double value = values[x];
+			slice[offset + x] = (float) value;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.FloatImage3D#getRow(int, int, float[])
+	 */
+	@Override
+	public void getRow(int y, int z, float[] row)
+	{
+		System.arraycopy(slices[z], y * sizeX, row, 0, sizeX);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.FloatImage3D#setRow(int, int, float[])
+	 */
+	@Override
+	public void setRow(int y, int z, float[] row)
+	{
+		System.arraycopy(row, 0, slices[z], y * sizeX, sizeX);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.FloatImage3D#getFloat(long)
+	 */
+	@Override
+	public float getFloat(long index)
+	{
+		return slices[(int) (index / sliceSize)][(int) (index % sliceSize)];
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.FloatImage3D#setFloat(long, float)
+	 */
+	@Override
+	public void setFloat(long index, float value)
+	{
+		slices[(int) (index / sliceSize)][(int) (index % sliceSize)] = value;
+	}
 }
@@ -26,7 +26,16 @@ import inra.ijpb.data.Cursor3D;
 /**
  * Interface for accessing the values of a 3D stack. Implementations should
  * provide efficient access to the inner data, without checking coordinate
- * bounds. Data can be accessed either as integer or as double. 
+ * bounds. Data can be accessed either as integer or as double, using either
+ * 3D coordinates or linear indices, or by rows of voxels. 
+ * 
+ * Accessors by linear index and by rows have default implementations based
+ * on the accessors by 3D coordinates, that implementations can override with
+ * more efficient versions.
+ * 
+ * Sub-interfaces (ByteImage3D, ShortImage3D, FloatImage3D) provide access
+ * to rows of voxels using primitive arrays of the stored type, so that
+ * algorithms can process inner loops on primitive arrays.
  * 
  * <p>
  * Example of use:
@@ -109,4 +118,113 @@ public interface Image3D
 	public void setValue(int x, int y, int z, double value);
 	
 	public void setValue(Cursor3D pos, double  value);
+	
+	/**
+	 * Returns the value at the specified linear index as an integer. The
+	 * linear index of the voxel at position (x,y,z) is given by
+	 * <code>(z * sizeY + y) * sizeX + x</code>.
+	 * 
+	 * @param index
+	 *            the linear index of the voxel
+	 * @return the value at the specified position
+	 */
+	public default int get(long index)
+	{
+		int sizeX = getSize(0);
+		long sliceSize = ((long) sizeX) * getSize(1);
+		int z = (int) (index / sliceSize);
+		int i = (int) (index - z * sliceSize);
+		return get(i % sizeX, i / sizeX, z);
+	}
+	
+	/**
+	 * Changes the value at the specified linear index, using an integer to
+	 * specify the new value.
+	 * 
+	 * @param index
+	 *            the linear index of the voxel
+	 * @param value
+	 *            the new value at the specified position
+	 */
+	public default void set(long index, int value)
+	{
+		int sizeX = getSize(0);
+		long sliceSize = ((long) sizeX) * getSize(1);
+		int z = (int) (index / sliceSize);
+		int i = (int) (index - z * sliceSize);
+		set(i % sizeX, i / sizeX, z, value);
+	}
+	
+	/**
+	 * Returns the value at the specified linear index as a double.
+	 * 
+	 * @param index
+	 *            the linear index of the voxel
+	 * @return the value at the specified position
+	 */
+	public default double getValue(long index)
+	{
+		int sizeX = getSize(0);
+		long sliceSize = ((long) sizeX) * getSize(1);
+		int z = (int) (index / sliceSize);
+		int i = (int) (index - z * sliceSize);
+		return getValue(i % sizeX, i / sizeX, z);
+	}
+	
+	/**
+	 * Changes the value at the specified linear index, using a double to
+	 * specify the new value.
+	 * 
+	 * @param index
+	 *            the linear index of the voxel
+	 * @param value
+	 *            the new value at the specified position
+	 */
+	public default void setValue(long index, double value)
+	{
+		int sizeX = getSize(0);
+		long sliceSize = ((long) sizeX) * getSize(1);
+		int z = (int) (index / sliceSize);
+		int i = (int) (index - z * sliceSize);
+		setValue(i % sizeX, i / sizeX, z, value);
+	}
+	
+	/**
+	 * Copies the values of a row of voxels into the specified array.
+	 * 
+	 * @param y
+	 *            the y-coordinate of the row
+	 * @param z
+	 *            the z-coordinate of the row
+	 * @param values
+	 *            the array used to store the values, with at least sizeX
+	 *            elements
+	 */
+	public default void getRowValues(int y, int z, double[] values)
+	{
+		int sizeX = getSize(0);
+		for (int x = 0; x < sizeX; x++)
+		{
+			values[x] = getValue(x, y, z);
+		}
+	}
+	
+	/**
+	 * Changes the values of a row of voxels.
+	 * 
+	 * @param y
+	 *            the y-coordinate of the row
+	 * @param z
+	 *            the z-coordinate of the row
+	 * @param values
+	 *            the new values of the row, with at least sizeX elements
+	 */
+	public default void setRowValues(int y, int z, double[] values)
+	{
+		int sizeX = getSize(0);
+		for (int x = 0; x < sizeX; x++)
+		{
+			setValue(x, y, z, values[x]);
+		}
+	}
 }
@@ -21,6 +21,10 @@
  */
 package inra.ijpb.data.image;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+
 import ij.ImagePlus;
 import ij.ImageStack;
 import ij.process.ImageProcessor;
@@ -64,6 +68,65 @@ public class Images3D
 		}
 	}
 	
+	/**
+	 * Creates a new 3D image stored within the specified file, that is mapped
+	 * into memory instead of being stored within the Java heap. The file is
+	 * created or enlarged if necessary, and voxel values are stored using
+	 * the native byte order.
+	 * 
+	 * @param file
+	 *            the file used to store the voxel values
+	 * @param sizeX
+	 *            the number of voxels in the x direction
+	 * @param sizeY
+	 *            the number of voxels in the y direction
+	 * @param sizeZ
+	 *            the number of voxels in the z direction
+	 * @param bitDepth
+	 *            the number of bits of each voxel (8, 16 or 32)
+	 * @return a new instance of MappedImage3D, that must be closed after use
+	 * @throws IOException
+	 *             if the file can not be created or mapped
+	 */
+	public final static MappedImage3D createMapped(File file, int sizeX,
+			int sizeY, int sizeZ, int bitDepth) throws IOException
+	{
+		return MappedImage3D.map(file, sizeX, sizeY, sizeZ, bitDepth, 0,
+				ByteOrder.nativeOrder(), true, MappedImage3D.MAX_CHUNK_SIZE);
+	}
+	
+	/**
+	 * Opens the 3D image stored as raw voxel values within the specified
+	 * file, by mapping the file into memory.
+	 * 
+	 * @param file
+	 *            the file containing the voxel values
+	 * @param sizeX
+	 *            the number of voxels in the x direction
+	 * @param sizeY
+	 *            the number of voxels in the y direction
+	 * @param sizeZ
+	 *            the number of voxels in the z direction
+	 * @param bitDepth
+	 *            the number of bits of each voxel (8, 16 or 32)
+	 * @param offset
+	 *            the number of bytes before the first voxel (header size)
+	 * @param order
+	 *            the byte order of 16- and 32-bit values
+	 * @param writable
+	 *            true if the voxel values within the file can be modified
+	 * @return a new instance of MappedImage3D, that must be closed after use
+	 * @throws IOException
+	 *             if the file can not be mapped
+	 */
+	public final static MappedImage3D openMapped(File file, int sizeX,
+			int sizeY, int sizeZ, int bitDepth, long offset, ByteOrder order,
+			boolean writable) throws IOException
+	{
+		return MappedImage3D.map(file, sizeX, sizeY, sizeZ, bitDepth, offset,
+				order, writable, MappedImage3D.MAX_CHUNK_SIZE);
+	}
+	
 	/**
 	 * Checks if the two input 3D images have the same size in each direction.
 	 * 
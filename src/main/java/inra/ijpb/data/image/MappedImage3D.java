@@ -0,0 +1,600 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.data.image;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+import inra.ijpb.data.Cursor3D;
+
+/**
+ * Access the data of a 3D image stored as raw voxel values within a file,
+ * by mapping the file into memory. The voxel values are not stored within
+ * the Java heap, and the operating system is in charge of loading and
+ * writing the parts of the file that are accessed, making it possible to
+ * process images larger than the available memory.
+ * 
+ * Voxels are stored in x, y, z order, as 8-bit unsigned, 16-bit unsigned, or
+ * 32-bit float values, managed by the inner classes Gray8, Gray16 and
+ * Float32 that implement the corresponding specializations of Image3D. As a
+ * single mapping is limited to 2 GB, the file is mapped as a series of
+ * chunks containing an integer number of slices.
+ * 
+ * Mapped images are created with the factories of the Images3D class, that
+ * return an instance of the inner class corresponding to the bit depth.
+ * 
+ * Mapped images must be closed after use, preferably within a
+ * <code>finally</code> block. Modifications are written to the file by the
+ * operating system, and are guaranteed to be stored after a call to the
+ * <code>flush()</code> or <code>close()</code> methods. Closing does not
+ * unmap the file (see {@link #close()}).
+ * 
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	MappedImage3D image = Images3D.openMapped(file, 2000, 2000, 5000, 16, 0, ByteOrder.LITTLE_ENDIAN, false);
+ *	int val = image.get(0, 0, 0);
+ *	image.close();
+ *}</pre>
+ * 
+ * @see Images3D#createMapped(File, int, int, int, int)
+ * @see Images3D#openMapped(File, int, int, int, int, long, ByteOrder, boolean)
+ * 
+ * @author David Legland
+ *
+ */
+public abstract class MappedImage3D implements Image3D, Closeable
+{
+	// ==================================================
+	// Static methods
+	
+	/** The maximal size of a chunk, in bytes. */
+	static final long MAX_CHUNK_SIZE = Integer.MAX_VALUE;
+	
+	/**
+	 * Maps the specified file into memory, using chunks with the specified
+	 * maximal size in bytes. When the file is mapped in write mode, it is
+	 * enlarged if necessary to contain the whole image.
+	 * 
+	 * @see Images3D#openMapped(File, int, int, int, int, long, ByteOrder, boolean)
+	 */
+	static final MappedImage3D map(File file, int sizeX, int sizeY, int sizeZ, int bitDepth,
+			long offset, ByteOrder order, boolean writable, long maxChunkSize) throws IOException
+	{
+		switch (bitDepth)
+		{
+		case 8: return new Gray8(file, sizeX, sizeY, sizeZ, offset, order, writable, maxChunkSize);
+		case 16: return new Gray16(file, sizeX, sizeY, sizeZ, offset, order, writable, maxChunkSize);
+		case 32: return new Float32(file, sizeX, sizeY, sizeZ, offset, order, writable, maxChunkSize);
+		default:
+			throw new IllegalArgumentException("Bit depth must be 8, 16 or 32, not " + bitDepth);
+		}
+	}
+	
+	
+	// ==================================================
+	// Class variables
+	
+	int sizeX;
+	int sizeY;
+	int sizeZ;
+	
+	/** The number of bits used to store each voxel (8, 16 or 32) */
+	int bitDepth;
+	
+	/** The number of slices stored within each chunk, except the last one */
+	int slicesPerChunk;
+	
+	/** The number of voxels stored within each chunk, except the last one */
+	long chunkLength;
+	
+	/** The file channel, kept open until the image is closed */
+	FileChannel channel;
+	
+	/** The memory-mapped chunks of the file */
+	MappedByteBuffer[] chunks;
+	
+	
+	// ==================================================
+	// Constructor
+	
+	MappedImage3D(File file, int sizeX, int sizeY, int sizeZ, int bitDepth, long offset,
+			ByteOrder order, boolean writable, long maxChunkSize) throws IOException
+	{
+		if (sizeX < 1 || sizeY < 1 || sizeZ < 1)
+		{
+			throw new IllegalArgumentException("Image dimensions must be positive");
+		}
+		
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.sizeZ = sizeZ;
+		this.bitDepth = bitDepth;
+		
+		// choose the number of slices within each chunk
+		long sliceBytes = ((long) sizeX) * sizeY * (bitDepth / 8);
+		if (sliceBytes > maxChunkSize)
+		{
+			throw new IllegalArgumentException("Slices larger than 2 GB can not be mapped");
+		}
+		this.slicesPerChunk = (int) min(maxChunkSize / sliceBytes, sizeZ);
+		this.chunkLength = ((long) sizeX) * sizeY * slicesPerChunk;
+		int nChunks = (sizeZ + slicesPerChunk - 1) / slicesPerChunk;
+		
+		// open the file and check its size
+		long fileSize = offset + sliceBytes * sizeZ;
+		RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw" : "r");
+		this.channel = raf.getChannel();
+		try
+		{
+			if (raf.length() < fileSize)
+			{
+				if (!writable)
+				{
+					throw new IOException("File " + file.getName() + " is too small to contain the image");
+				}
+				raf.setLength(fileSize);
+			}
+			
+			// map each chunk
+			FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+			this.chunks = new MappedByteBuffer[nChunks];
+			for (int c = 0; c < nChunks; c++)
+			{
+				int nSlices = min(slicesPerChunk, sizeZ - c * slicesPerChunk);
+				long position = offset + sliceBytes * c * slicesPerChunk;
+				this.chunks[c] = this.channel.map(mode, position, sliceBytes * nSlices);
+				this.chunks[c].order(order);
+			}
+		}
+		catch (IOException ex)
+		{
+			this.channel.close();
+			throw ex;
+		}
+	}
+	
+	
+	// ==================================================
+	// Methods
+	
+	/**
+	 * @return the number of bits used to store each voxel (8, 16 or 32)
+	 */
+	public int getBitDepth()
+	{
+		return this.bitDepth;
+	}
+	
+	/**
+	 * Forces the modifications of voxel values to be written to the file.
+	 */
+	public void flush()
+	{
+		for (MappedByteBuffer chunk : this.chunks)
+		{
+			if (!chunk.isReadOnly())
+				chunk.force();
+		}
+	}
+	
+	/**
+	 * Writes the modifications to the file, and closes the file. The image
+	 * must not be used after having been closed.
+	 * 
+	 * Java does not provide a way to release a mapping explicitly: the chunks
+	 * remain mapped until the image is garbage collected, even after the file
+	 * has been closed. In the meantime the file keeps using address space,
+	 * and on Windows it can not be deleted, renamed or truncated. Callers
+	 * that need to delete the file should drop their references to the image
+	 * first.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		flush();
+		this.channel.close();
+	}
+	
+	/**
+	 * Returns the index of the chunk that contains the specified slice.
+	 */
+	final int chunkIndex(int z)
+	{
+		return z / slicesPerChunk;
+	}
+	
+	/**
+	 * Returns the index of the voxel within its chunk, as a number of
+	 * elements.
+	 */
+	final int elementIndex(int x, int y, int z)
+	{
+		return ((z % slicesPerChunk) * sizeY + y) * sizeX + x;
+	}
+	
+	
+	// ==================================================
+	// Implementation of the Image3D interface
+	
+	@Override
+	public int getSize(int dim)
+	{
+		switch(dim)
+		{
+		case 0: return this.sizeX;
+		case 1: return this.sizeY;
+		case 2: return this.sizeZ;
+		default:
+			throw new IllegalArgumentException("Dimension must be comprised between 0 and 2, not " + dim);
+		}
+	}
+
+	@Override
+	public double getValue(Cursor3D pos)
+	{
+		return getValue(pos.getX(), pos.getY(), pos.getZ());
+	}
+
+	@Override
+	public void setValue(Cursor3D pos, double value)
+	{
+		setValue(pos.getX(), pos.getY(), pos.getZ(), value);
+	}
+	
+	
+	// ==================================================
+	// Inner classes
+	
+	/**
+	 * Memory-mapped 3D image containing 8-bit unsigned values.
+	 */
+	public static final class Gray8 extends MappedImage3D implements ByteImage3D
+	{
+		Gray8(File file, int sizeX, int sizeY, int sizeZ, long offset,
+				ByteOrder order, boolean writable, long maxChunkSize) throws IOException
+		{
+			super(file, sizeX, sizeY, sizeZ, 8, offset, order, writable, maxChunkSize);
+		}
+
+		@Override
+		public int get(int x, int y, int z)
+		{
+			return chunks[chunkIndex(z)].get(elementIndex(x, y, z)) & 0x00FF;
+		}
+
+		@Override
+		public void set(int x, int y, int z, int value)
+		{
+			chunks[chunkIndex(z)].put(elementIndex(x, y, z), (byte) value);
+		}
+
+		@Override
+		public double getValue(int x, int y, int z)
+		{
+			return chunks[chunkIndex(z)].get(elementIndex(x, y, z)) & 0x00FF;
+		}
+
+		@Override
+		public void setValue(int x, int y, int z, double value)
+		{
+			chunks[chunkIndex(z)].put(elementIndex(x, y, z), (byte) (value + .5));
+		}
+
+		@Override
+		public int get(long index)
+		{
+			return chunks[(int) (index / chunkLength)].get((int) (index % chunkLength)) & 0x00FF;
+		}
+
+		@Override
+		public void set(long index, int value)
+		{
+			chunks[(int) (index / chunkLength)].put((int) (index % chunkLength), (byte) value);
+		}
+
+		@Override
+		public double getValue(long index)
+		{
+			return chunks[(int) (index / chunkLength)].get((int) (index % chunkLength)) & 0x00FF;
+		}
+
+		@Override
+		public void setValue(long index, double value)
+		{
+			chunks[(int) (index / chunkLength)].put((int) (index % chunkLength), (byte) (value + .5));
+		}
+
+		@Override
+		public void getRowValues(int y, int z, double[] values)
+		{
+			MappedByteBuffer chunk = chunks[chunkIndex(z)];
+			int offset = elementIndex(0, y, z);
+			for (int x = 0; x < sizeX; x++)
+			{
+				values[x] = chunk.get(offset + x) & 0x00FF;
+			}
+		}
+
+		@Override
+		public void setRowValues(int y, int z, double[] values)
+		{
+			MappedByteBuffer chunk = chunks[chunkIndex(z)];
+			int offset = elementIndex(0, y, z);
+			for (int x = 0; x < sizeX; x++)
+			{
+				chunk.put(offset + x, (byte) (values[x] + .5));
+			}
+		}
+
+		@Override
+		public void getRow(int y, int z, byte[] row)
+		{
+			ByteBuffer buffer = chunks[chunkIndex(z)].duplicate();
+			buffer.position(elementIndex(0, y, z));
+			buffer.get(row, 0, sizeX);
+		}
+
+		@Override
+		public void setRow(int y, int z, byte[] row)
+		{
+			ByteBuffer buffer = chunks[chunkIndex(z)].duplicate();
+			buffer.position(elementIndex(0, y, z));
+			buffer.put(row, 0, sizeX);
+		}
+	}
+	
+	/**
+	 * Memory-mapped 3D image containing 16-bit unsigned values.
+	 */
+	public static final class Gray16 extends MappedImage3D implements ShortImage3D
+	{
+		/** The views of the chunks as buffers of shorts */
+		ShortBuffer[] shortChunks;
+		
+		Gray16(File file, int sizeX, int sizeY, int sizeZ, long offset,
+				ByteOrder order, boolean writable, long maxChunkSize) throws IOException
+		{
+			super(file, sizeX, sizeY, sizeZ, 16, offset, order, writable, maxChunkSize);
+			this.shortChunks = new ShortBuffer[chunks.length];
+			for (int c = 0; c < chunks.length; c++)
+			{
+				this.shortChunks[c] = chunks[c].asShortBuffer();
+			}
+		}
+
+		@Override
+		public int get(int x, int y, int z)
+		{
+			return shortChunks[chunkIndex(z)].get(elementIndex(x, y, z)) & 0x00FFFF;
+		}
+
+		@Override
+		public void set(int x, int y, int z, int value)
+		{
+			shortChunks[chunkIndex(z)].put(elementIndex(x, y, z), (short) max(min(value, 65535), 0));
+		}
+
+		@Override
+		public double getValue(int x, int y, int z)
+		{
+			return shortChunks[chunkIndex(z)].get(elementIndex(x, y, z)) & 0x00FFFF;
+		}
+
+		@Override
+		public void setValue(int x, int y, int z, double value)
+		{
+			shortChunks[chunkIndex(z)].put(elementIndex(x, y, z), (short) max(min(value, 65535), 0));
+		}
+
+		@Override
+		public int get(long index)
+		{
+			return shortChunks[(int) (index / chunkLength)].get((int) (index % chunkLength)) & 0x00FFFF;
+		}
+
+		@Override
+		public void set(long index, int value)
+		{
+			shortChunks[(int) (index / chunkLength)].put((int) (index % chunkLength), (short) max(min(value, 65535), 0));
+		}
+
+		@Override
+		public double getValue(long index)
+		{
+			return shortChunks[(int) (index / chunkLength)].get((int) (index % chunkLength)) & 0x00FFFF;
+		}
+
+		@Override
+		public void setValue(long index, double value)
+		{
+			shortChunks[(int) (index / chunkLength)].put((int) (index % chunkLength), (short) max(min(value, 65535), 0));
+		}
+
+		@Override
+		public void getRowValues(int y, int z, double[] values)
+		{
+			ShortBuffer chunk = shortChunks[chunkIndex(z)];
+			int offset = elementIndex(0, y, z);
+			for (int x = 0; x < sizeX; x++)
+			{
+				values[x] = chunk.get(offset + x) & 0x00FFFF;
+			}
+		}
+
+		@Override
+		public void setRowValues(int y, int z, double[] values)
+		{
+			ShortBuffer chunk = shortChunks[chunkIndex(z)];
+			int offset = elementIndex(0, y, z);
+			for (int x = 0; x < sizeX; x++)
+			{
+				chunk.put(offset + x, (short) max(min(values[x], 65535), 0));
+			}
+		}
+
+		@Override
+		public void getRow(int y, int z, short[] row)
+		{
+			ShortBuffer buffer = shortChunks[chunkIndex(z)].duplicate();
+			buffer.position(elementIndex(0, y, z));
+			buffer.get(row, 0, sizeX);
+		}
+
+		@Override
+		public void setRow(int y, int z, short[] row)
+		{
+			ShortBuffer buffer = shortChunks[chunkIndex(z)].duplicate();
+			buffer.position(elementIndex(0, y, z));
+			buffer.put(row, 0, sizeX);
+		}
+	}
+	
+	/**
+	 * Memory-mapped 3D image containing 32-bit floating point values.
+	 */
+	public static final class Float32 extends MappedImage3D implements FloatImage3D
+	{
+		/** The views of the chunks as buffers of floats */
+		FloatBuffer[] floatChunks;
+		
+		Float32(File file, int sizeX, int sizeY, int sizeZ, long offset,
+				ByteOrder order, boolean writable, long maxChunkSize) throws IOException
+		{
+			super(file, sizeX, sizeY, sizeZ, 32, offset, order, writable, maxChunkSize);
+			this.floatChunks = new FloatBuffer[chunks.length];
+			for (int c = 0; c < chunks.length; c++)
+			{
+				this.floatChunks[c] = chunks[c].asFloatBuffer();
+			}
+		}
+
+		@Override
+		public int get(int x, int y, int z)
+		{
+			return (int) floatChunks[chunkIndex(z)].get(elementIndex(x, y, z));
+		}
+
+		@Override
+		public void set(int x, int y, int z, int value)
+		{
+			floatChunks[chunkIndex(z)].put(elementIndex(x, y, z), (float) value);
+		}
+
+		@Override
+		public double getValue(int x, int y, int z)
+		{
+			return floatChunks[chunkIndex(z)].get(elementIndex(x, y, z));
+		}
+
+		@Override
+		public void setValue(int x, int y, int z, double value)
+		{
+			floatChunks[chunkIndex(z)].put(elementIndex(x, y, z), (float) value);
+		}
+
+		@Override
+		public int get(long index)
+		{
+			return (int) getFloat(index);
+		}
+
+		@Override
+		public void set(long index, int value)
+		{
+			setFloat(index, (float) value);
+		}
+
+		@Override
+		public double getValue(long index)
+		{
+			return getFloat(index);
+		}
+
+		@Override
+		public void setValue(long index, double value)
+		{
+			setFloat(index, (float) value);
+		}
+
+		@Override
+		public float getFloat(long index)
+		{
+			return floatChunks[(int) (index / chunkLength)].get((int) (index % chunkLength));
+		}
+
+		@Override
+		public void setFloat(long index, float value)
+		{
+			floatChunks[(int) (index / chunkLength)].put((int) (index % chunkLength), value);
+		}
+
+		@Override
+		public void getRowValues(int y, int z, double[] values)
+		{
+			FloatBuffer chunk = floatChunks[chunkIndex(z)];
+			int offset = elementIndex(0, y, z);
+			for (int x = 0; x < sizeX; x++)
+			{
+				values[x] = chunk.get(offset + x);
+			}
+		}
+
+		@Override
+		public void setRowValues(int y, int z, double[] values)
+		{
+			FloatBuffer chunk = floatChunks[chunkIndex(z)];
+			int offset = elementIndex(0, y, z);
+			for (int x = 0; x < sizeX; x++)
+			{
+				chunk.put(offset + x, (float) values[x]);
+			}
+		}
+
+		@Override
+		public void getRow(int y, int z, float[] row)
+		{
+			FloatBuffer buffer = floatChunks[chunkIndex(z)].duplicate();
+			buffer.position(elementIndex(0, y, z));
+			buffer.get(row, 0, sizeX);
+		}
+
+		@Override
+		public void setRow(int y, int z, float[] row)
+		{
+			FloatBuffer buffer = floatChunks[chunkIndex(z)].duplicate();
+			buffer.position(elementIndex(0, y, z));
+			buffer.put(row, 0, sizeX);
+		}
+	}
+}
@@ -44,7 +44,7 @@ import static java.lang.Math.max;
  * @author David Legland
  *
  */
-public class ShortStackWrapper implements Image3D
+public class ShortStackWrapper implements ShortImage3D
 {
 	short[][] slices;
 	
@@ -52,6 +52,9 @@ public class ShortStackWrapper implements Image3D
 	int sizeY;
 	int sizeZ;
 	
+	/** number of voxels within a slice, used to convert linear indices */
+	int sliceSize;
+	
 	public ShortStackWrapper(ImageStack stack) 
 	{
 		// Check type
@@ -64,6 +67,7 @@ public class ShortStackWrapper implements Image3D
 		this.sizeX = stack.getWidth();
 		this.sizeY = stack.getHeight();
 		this.sizeZ = stack.getSize();
+		this.sliceSize = this.sizeX * this.sizeY;
 
 		// Convert slices type
 		this.slices = new short[sizeZ][];
@@ -135,4 +139,86 @@ public class ShortStackWrapper implements Image3D
 		setValue(pos.getX(), pos.getY(), pos.getZ(), value);
 	}
 
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#get(long)
+	 */
+	@Override
+	public int get(long index)
+	{
+		return slices[(int) (index / sliceSize)][(int) (index % sliceSize)] & 0x00FFFF;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#set(long, int)
+	 */
+	@Override
+	public void set(long index, int value)
+	{
+		slices[(int) (index / sliceSize)][(int) (index % sliceSize)] = (short) max(min(value, 65535), 0);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getValue(long)
+	 */
+	@Override
+	public double getValue(long index)
+	{
+		return slices[(int) (index / sliceSize)][(int) (index % sliceSize)] & 0x00FFFF;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setValue(long, double)
+	 */
+	@Override
+	public void setValue(long index, double value)
+	{
+		slices[(int) (index / sliceSize)][(int) (index % sliceSize)] = (short) max(min(value, 65535), 0);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getRowValues(int, int, double[])
+	 */
+	@Override
+	public void getRowValues(int y, int z, double[] values)
+	{
+		short[] slice = slices[z];
+		int offset = y * sizeX;
+		for (int x = 0; x < sizeX; x++)
+		{
+			values[x] = slice[offset + x] & 0x00FFFF;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setRowValues(int, int, double[])
+	 */
+	@Override
+	public void setRowValues(int y, int z, double[] values)
+	{
+		short[] slice = slices[z];
+		int offset = y * sizeX;
+		for (int x = 0; x < sizeX; x++)
+		{
+			double value = values[x];
+			slice[offset + x] = (short) max(min(value, 65535), 0);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.ShortImage3D#getRow(int, int, short[])
+	 */
+	@Override
+	public void getRow(int y, int z, short[] row)
+	{
+		System.arraycopy(slices[z], y * sizeX, row, 0, sizeX);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.ShortImage3D#setRow(int, int, short[])
+	 */
+	@Override
+	public void setRow(int y, int z, short[] row)
+	{
+		System.arraycopy(row, 0, slices[z], y * sizeX, sizeX);
+	}
 }
@@ -0,0 +1,467 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.label;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ij.ImageStack;
+import ij.Prefs;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import ij.util.ThreadUtil;
+import inra.ijpb.algo.AlgoStub;
+
+/**
+ * Applies an operation to each label of a label image, by cropping the
+ * bounding box of each label and processing the labels in parallel.
+ * 
+ * The bounding boxes of all labels are computed in a single pass over the
+ * image. Then each label is extracted as a binary image (255 within the
+ * label, 0 elsewhere) restricted to its bounding box enlarged by a border,
+ * and the operation is applied to the binary image. As the border is clipped
+ * at image bounds, operations that depend on image borders give the same
+ * results as on the whole image. The computation cost is therefore
+ * proportional to the total size of the bounding boxes, instead of the
+ * number of labels times the image size.
+ * 
+ * The operations return an array of values for each label, and the results
+ * are gathered in an array with as many rows as the number of labels, in
+ * the order of the labels.
+ * 
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	CroppedLabelExecutor executor = new CroppedLabelExecutor(1);
+ *	double[][] areas = executor.process(labelImage, labels, new CroppedLabelExecutor.Operation2D()
+ *	{
+ *		public double[] process(ImageProcessor mask, int label, int x0, int y0)
+ *		{
+ *			return new double[] { mask.getStatistics().histogram[255] };
+ *		}
+ *	});
+ *}</pre>
+ * 
+ * @author David Legland
+ *
+ */
+public class CroppedLabelExecutor extends AlgoStub
+{
+	// ==================================================
+	// Inner interfaces
+	
+	/**
+	 * An operation applied to the binary image of a single label within a
+	 * planar label image.
+	 */
+	public interface Operation2D
+	{
+		/**
+		 * Processes the binary image of a single label.
+		 * 
+		 * @param mask
+		 *            the binary image of the label, with value 255 for pixels
+		 *            within the label and 0 for other pixels
+		 * @param label
+		 *            the value of the label
+		 * @param x0
+		 *            the x-coordinate of the upper-left corner of the mask
+		 *            within the label image
+		 * @param y0
+		 *            the y-coordinate of the upper-left corner of the mask
+		 *            within the label image
+		 * @return the values computed for the label
+		 */
+		public double[] process(ImageProcessor mask, int label, int x0, int y0);
+	}
+	
+	/**
+	 * An operation applied to the binary image of a single label within a 3D
+	 * label image.
+	 */
+	public interface Operation3D
+	{
+		/**
+		 * Processes the binary image of a single label.
+		 * 
+		 * @param mask
+		 *            the binary image of the label, with value 255 for voxels
+		 *            within the label and 0 for other voxels
+		 * @param label
+		 *            the value of the label
+		 * @param x0
+		 *            the x-coordinate of the first voxel of the mask within
+		 *            the label image
+		 * @param y0
+		 *            the y-coordinate of the first voxel of the mask within
+		 *            the label image
+		 * @param z0
+		 *            the z-coordinate of the first voxel of the mask within
+		 *            the label image
+		 * @return the values computed for the label
+		 */
+		public double[] process(ImageStack mask, int label, int x0, int y0, int z0);
+	}
+	
+	
+	// ==================================================
+	// Class variables
+	
+	/** The number of pixels or voxels added around each bounding box */
+	int border = 1;
+	
+	/** The number of threads used for computation */
+	int nThreads = Prefs.getThreads();
+	
+	
+	// ==================================================
+	// Constructors
+	
+	/**
+	 * Creates a new executor, adding a border of one element around each
+	 * label.
+	 */
+	public CroppedLabelExecutor()
+	{
+	}
+	
+	/**
+	 * Creates a new executor.
+	 * 
+	 * @param border
+	 *            the number of pixels or voxels added around the bounding box
+	 *            of each label
+	 */
+	public CroppedLabelExecutor(int border)
+	{
+		if (border < 0)
+		{
+			throw new IllegalArgumentException("Border must be positive or zero");
+		}
+		this.border = border;
+	}
+	
+	
+	// ==================================================
+	// Accessors
+	
+	/**
+	 * @return the number of pixels or voxels added around each bounding box
+	 */
+	public int getBorder()
+	{
+		return this.border;
+	}
+	
+	/**
+	 * @return the number of threads used for computation
+	 */
+	public int getNumberOfThreads()
+	{
+		return this.nThreads;
+	}
+	
+	/**
+	 * @param nThreads
+	 *            the number of threads used for computation (at least 1)
+	 */
+	public void setNumberOfThreads(int nThreads)
+	{
+		if (nThreads < 1)
+		{
+			throw new IllegalArgumentException("Number of threads must be at least 1");
+		}
+		this.nThreads = nThreads;
+	}
+	
+	
+	// ==================================================
+	// Processing methods
+	
+	/**
+	 * Applies the operation to each label of a planar label image.
+	 * 
+	 * @param labelImage
+	 *            the label image
+	 * @param labels
+	 *            the labels to process
+	 * @param operation
+	 *            the operation to apply to the binary image of each label
+	 * @return an array with as many rows as the number of labels, containing
+	 *         the values computed for each label, or null for labels not
+	 *         found within the image
+	 */
+	public double[][] process(final ImageProcessor labelImage, final int[] labels, final Operation2D operation)
+	{
+		fireStatusChanged(this, "Compute bounding boxes");
+		final int[][] boxes = boundingBoxes(labelImage, labels);
+		final int sizeX = labelImage.getWidth();
+		final int sizeY = labelImage.getHeight();
+		
+		final int nLabels = labels.length;
+		final double[][] results = new double[nLabels][];
+		final AtomicInteger next = new AtomicInteger(0);
+		final AtomicInteger done = new AtomicInteger(0);
+		
+		fireStatusChanged(this, "Process labels");
+		Thread[] threads = ThreadUtil.createThreadArray(Math.max(Math.min(nThreads, nLabels), 1));
+		for (int ithread = 0; ithread < threads.length; ithread++)
+		{
+			threads[ithread] = new Thread()
+			{
+				public void run()
+				{
+					for (int i = next.getAndIncrement(); i < nLabels; i = next.getAndIncrement())
+					{
+						int[] box = boxes[i];
+						if (box[0] > box[1])
+						{
+							continue;
+						}
+						
+						// enlarge the bounding box, within image bounds
+						int x0 = Math.max(box[0] - border, 0);
+						int x1 = Math.min(box[1] + border, sizeX - 1);
+						int y0 = Math.max(box[2] - border, 0);
+						int y1 = Math.min(box[3] + border, sizeY - 1);
+						
+						ImageProcessor mask = crop(labelImage, labels[i], x0, x1, y0, y1);
+						results[i] = operation.process(mask, labels[i], x0, y0);
+						fireProgressChanged(CroppedLabelExecutor.this, done.incrementAndGet(), nLabels);
+					}
+				}
+			};
+		}
+		ThreadUtil.startAndJoin(threads);
+		
+		return results;
+	}
+	
+	/**
+	 * Applies the operation to each label of a 3D label image.
+	 * 
+	 * @param labelImage
+	 *            the 3D label image
+	 * @param labels
+	 *            the labels to process
+	 * @param operation
+	 *            the operation to apply to the binary image of each label
+	 * @return an array with as many rows as the number of labels, containing
+	 *         the values computed for each label, or null for labels not
+	 *         found within the image
+	 */
+	public double[][] process(final ImageStack labelImage, final int[] labels, final Operation3D operation)
+	{
+		fireStatusChanged(this, "Compute bounding boxes");
+		final int[][] boxes = boundingBoxes(labelImage, labels);
+		final int sizeX = labelImage.getWidth();
+		final int sizeY = labelImage.getHeight();
+		final int sizeZ = labelImage.getSize();
+		
+		final int nLabels = labels.length;
+		final double[][] results = new double[nLabels][];
+		final AtomicInteger next = new AtomicInteger(0);
+		final AtomicInteger done = new AtomicInteger(0);
+		
+		fireStatusChanged(this, "Process labels");
+		Thread[] threads = ThreadUtil.createThreadArray(Math.max(Math.min(nThreads, nLabels), 1));
+		for (int ithread = 0; ithread < threads.length; ithread++)
+		{
+			threads[ithread] = new Thread()
+			{
+				public void run()
+				{
+					for (int i = next.getAndIncrement(); i < nLabels; i = next.getAndIncrement())
+					{
+						int[] box = boxes[i];
+						if (box[0] > box[1])
+						{
+							continue;
+						}
+						
+						// enlarge the bounding box, within image bounds
+						int x0 = Math.max(box[0] - border, 0);
+						int x1 = Math.min(box[1] + border, sizeX - 1);
+						int y0 = Math.max(box[2] - border, 0);
+						int y1 = Math.min(box[3] + border, sizeY - 1);
+						int z0 = Math.max(box[4] - border, 0);
+						int z1 = Math.min(box[5] + border, sizeZ - 1);
+						
+						ImageStack mask = crop(labelImage, labels[i], x0, x1, y0, y1, z0, z1);
+						results[i] = operation.process(mask, labels[i], x0, y0, z0);
+						fireProgressChanged(CroppedLabelExecutor.this, done.incrementAndGet(), nLabels);
+					}
+				}
+			};
+		}
+		ThreadUtil.startAndJoin(threads);
+		
+		return results;
+	}
+	
+	
+	// ==================================================
+	// Static methods
+	
+	/**
+	 * Computes the bounding box of each label within a planar label image,
+	 * using a single pass over the image.
+	 * 
+	 * @param labelImage
+	 *            the label image
+	 * @param labels
+	 *            the labels to consider
+	 * @return an array with as many rows as the number of labels, and four
+	 *         columns corresponding to xmin, xmax, ymin and ymax. For labels
+	 *         not found within image, xmin is greater than xmax.
+	 */
+	public static final int[][] boundingBoxes(ImageProcessor labelImage, int[] labels)
+	{
+		int sizeX = labelImage.getWidth();
+		int sizeY = labelImage.getHeight();
+		
+		int[][] boxes = new int[labels.length][];
+		for (int i = 0; i < labels.length; i++)
+		{
+			boxes[i] = new int[] {Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE};
+		}
+		
+		LabelRemapper indexer = LabelRemapper.indexing(labels);
+		for (int y = 0; y < sizeY; y++)
+		{
+			for (int x = 0; x < sizeX; x++)
+			{
+				int index = indexer.map((int) labelImage.getf(x, y));
+				if (index < 0)
+					continue;
+				
+				int[] box = boxes[index];
+				if (x < box[0]) box[0] = x;
+				if (x > box[1]) box[1] = x;
+				if (y < box[2]) box[2] = y;
+				if (y > box[3]) box[3] = y;
+			}
+		}
+		return boxes;
+	}
+	
+	/**
+	 * Computes the bounding box of each label within a 3D label image, using
+	 * a single pass over the image.
+	 * 
+	 * @param labelImage
+	 *            the 3D label image
+	 * @param labels
+	 *            the labels to consider
+	 * @return an array with as many rows as the number of labels, and six
+	 *         columns corresponding to xmin, xmax, ymin, ymax, zmin and zmax.
+	 *         For labels not found within image, xmin is greater than xmax.
+	 */
+	public static final int[][] boundingBoxes(ImageStack labelImage, int[] labels)
+	{
+		int sizeX = labelImage.getWidth();
+		int sizeY = labelImage.getHeight();
+		int sizeZ = labelImage.getSize();
+		
+		int[][] boxes = new int[labels.length][];
+		for (int i = 0; i < labels.length; i++)
+		{
+			boxes[i] = new int[] {
+					Integer.MAX_VALUE, Integer.MIN_VALUE, 
+					Integer.MAX_VALUE, Integer.MIN_VALUE,
+					Integer.MAX_VALUE, Integer.MIN_VALUE};
+		}
+		
+		LabelRemapper indexer = LabelRemapper.indexing(labels);
+		for (int z = 0; z < sizeZ; z++)
+		{
+			ImageProcessor slice = labelImage.getProcessor(z + 1);
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					int index = indexer.map((int) slice.getf(x, y));
+					if (index < 0)
+						continue;
+					
+					int[] box = boxes[index];
+					if (x < box[0]) box[0] = x;
+					if (x > box[1]) box[1] = x;
+					if (y < box[2]) box[2] = y;
+					if (y > box[3]) box[3] = y;
+					if (z < box[4]) box[4] = z;
+					if (z > box[5]) box[5] = z;
+				}
+			}
+		}
+		return boxes;
+	}
+	
+	/**
+	 * Creates the binary image of the specified label within the specified
+	 * bounds (inclusive).
+	 */
+	private static final ImageProcessor crop(ImageProcessor labelImage, int label, 
+			int x0, int x1, int y0, int y1)
+	{
+		int sizeX2 = x1 - x0 + 1;
+		ByteProcessor result = new ByteProcessor(sizeX2, y1 - y0 + 1);
+		byte[] pixels = (byte[]) result.getPixels();
+		for (int y = y0, y2 = 0; y <= y1; y++, y2++)
+		{
+			for (int x = x0, x2 = 0; x <= x1; x++, x2++)
+			{
+				if ((int) labelImage.getf(x, y) == label)
+				{
+					pixels[y2 * sizeX2 + x2] = (byte) 255;
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Creates the binary image of the specified label within the specified
+	 * bounds (inclusive).
+	 */
+	private static final ImageStack crop(ImageStack labelImage, int label, 
+			int x0, int x1, int y0, int y1, int z0, int z1)
+	{
+		int sizeX2 = x1 - x0 + 1;
+		ImageStack result = ImageStack.create(sizeX2, y1 - y0 + 1, z1 - z0 + 1, 8);
+		for (int z = z0, z2 = 0; z <= z1; z++, z2++)
+		{
+			ImageProcessor slice = labelImage.getProcessor(z + 1);
+			byte[] pixels = (byte[]) result.getPixels(z2 + 1);
+			for (int y = y0, y2 = 0; y <= y1; y++, y2++)
+			{
+				for (int x = x0, x2 = 0; x <= x1; x++, x2++)
+				{
+					if ((int) slice.getf(x, y) == label)
+					{
+						pixels[y2 * sizeX2 + x2] = (byte) 255;
+					}
+				}
+			}
+		}
+		return result;
+	}
+}
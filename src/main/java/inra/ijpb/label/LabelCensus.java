@@ -0,0 +1,633 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.label;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.Prefs;
+import ij.VirtualStack;
+import ij.process.ImageProcessor;
+import ij.util.ThreadUtil;
+
+/**
+ * The census of the labels within a label image: the sorted list of labels
+ * different from zero, together with the number of pixels or voxels and the
+ * bounding box of each label.
+ * 
+ * The census is computed within a single parallel pass over the image. Each
+ * thread accumulates the statistics of a set of slices (or bands of rows for
+ * planar images), using arrays indexed by label values for 8- and 16-bit
+ * images, and a primitive hash table for float images. The partial results
+ * are merged at the end.
+ * 
+ * The <code>compute()</code> methods always scan the image. When several
+ * measures are computed on the same image, the census of an ImagePlus can
+ * also be cached as an image property by explicitly calling the
+ * <code>of()</code> method. The cached census only keeps weak references to
+ * the pixel arrays it was computed from, and is recomputed when these arrays
+ * are replaced. Modifications of the pixel values must be notified by calling
+ * the <code>invalidate()</code> method. The census of images backed by a
+ * virtual stack is never cached.
+ * 
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	LabelCensus census = LabelCensus.of(imagePlus);
+ *	int[] labels = census.getLabels();
+ *	int[] counts = census.getCounts();
+ *}</pre>
+ * 
+ * @see LabelImages#findAllLabels(ImagePlus)
+ * 
+ * @author David Legland
+ *
+ */
+public class LabelCensus
+{
+	// ==================================================
+	// Static methods
+	
+	/**
+	 * The key used to store the census within the properties of an ImagePlus.
+	 */
+	public static final String PROPERTY_KEY = "inra.ijpb.label.LabelCensus";
+	
+	/**
+	 * Returns the census of the labels within the specified image. The
+	 * census is computed during the first call, and stored within the
+	 * properties of the image for subsequent calls. Images backed by a
+	 * virtual stack are scanned at each call.
+	 * 
+	 * @param imagePlus
+	 *            an instance of ImagePlus containing a label image
+	 * @return the census of the labels within image
+	 */
+	public static final LabelCensus of(ImagePlus imagePlus)
+	{
+		// slices of virtual stacks are read from disk at each access
+		if (imagePlus.getStack() instanceof VirtualStack)
+			return compute(imagePlus);
+		
+		Object[] pixelArrays = pixelArrays(imagePlus);
+		
+		Object property = imagePlus.getProperty(PROPERTY_KEY);
+		if (property instanceof LabelCensus)
+		{
+			LabelCensus census = (LabelCensus) property;
+			if (census.isComputedFrom(pixelArrays))
+				return census;
+		}
+		
+		LabelCensus census = compute(imagePlus);
+		census.pixelArrays = new WeakReference<?>[pixelArrays.length];
+		for (int i = 0; i < pixelArrays.length; i++)
+		{
+			census.pixelArrays[i] = new WeakReference<Object>(pixelArrays[i]);
+		}
+		imagePlus.setProperty(PROPERTY_KEY, census);
+		return census;
+	}
+	
+	/**
+	 * Removes the census cached within the properties of the specified image,
+	 * if any. Should be called after modification of the pixel values.
+	 * 
+	 * @param imagePlus
+	 *            an instance of ImagePlus containing a label image
+	 */
+	public static final void invalidate(ImagePlus imagePlus)
+	{
+		if (imagePlus.getProperty(PROPERTY_KEY) != null)
+			imagePlus.setProperty(PROPERTY_KEY, null);
+	}
+	
+	private static final Object[] pixelArrays(ImagePlus imagePlus)
+	{
+		if (imagePlus.getStackSize() == 1)
+			return new Object[] {imagePlus.getProcessor().getPixels()};
+		
+		ImageStack stack = imagePlus.getStack();
+		Object[] arrays = new Object[stack.getSize()];
+		for (int i = 0; i < arrays.length; i++)
+		{
+			arrays[i] = stack.getPixels(i + 1);
+		}
+		return arrays;
+	}
+	
+	/**
+	 * Computes the census of the labels within the specified image, using the
+	 * number of threads specified in ImageJ preferences. Contrary to the
+	 * <code>of()</code> method, the result is not cached.
+	 * 
+	 * @param imagePlus
+	 *            an instance of ImagePlus containing a label image
+	 * @return the census of the labels within image
+	 */
+	public static final LabelCensus compute(ImagePlus imagePlus)
+	{
+		if (imagePlus.getStackSize() == 1)
+			return compute(imagePlus.getProcessor());
+		else
+			return compute(imagePlus.getStack());
+	}
+	
+	/**
+	 * Computes the census of the labels within a planar label image, using
+	 * the number of threads specified in ImageJ preferences.
+	 * 
+	 * @param image
+	 *            a label image
+	 * @return the census of the labels within image
+	 */
+	public static final LabelCensus compute(ImageProcessor image)
+	{
+		return compute(image, Prefs.getThreads());
+	}
+	
+	/**
+	 * Computes the census of the labels within a planar label image.
+	 * 
+	 * @param image
+	 *            a label image
+	 * @param nThreads
+	 *            the number of threads used for computation (at least 1)
+	 * @return the census of the labels within image
+	 */
+	public static final LabelCensus compute(ImageProcessor image, int nThreads)
+	{
+		return compute(new ImageProcessor[] {image}, false, nThreads);
+	}
+	
+	/**
+	 * Computes the census of the labels within a 3D label image, using the
+	 * number of threads specified in ImageJ preferences.
+	 * 
+	 * @param image
+	 *            a 3D label image
+	 * @return the census of the labels within image
+	 */
+	public static final LabelCensus compute(ImageStack image)
+	{
+		return compute(image, Prefs.getThreads());
+	}
+	
+	/**
+	 * Computes the census of the labels within a 3D label image.
+	 * 
+	 * @param image
+	 *            a 3D label image
+	 * @param nThreads
+	 *            the number of threads used for computation (at least 1)
+	 * @return the census of the labels within image
+	 */
+	public static final LabelCensus compute(ImageStack image, int nThreads)
+	{
+		ImageProcessor[] slices = new ImageProcessor[image.getSize()];
+		for (int z = 0; z < slices.length; z++)
+		{
+			slices[z] = image.getProcessor(z + 1);
+		}
+		return compute(slices, true, nThreads);
+	}
+	
+	private static final LabelCensus compute(final ImageProcessor[] slices, boolean is3D, int nThreads)
+	{
+		if (nThreads < 1)
+		{
+			throw new IllegalArgumentException("Number of threads must be at least 1");
+		}
+		
+		final int sizeX = slices.length > 0 ? slices[0].getWidth() : 0;
+		final int sizeY = slices.length > 0 ? slices[0].getHeight() : 0;
+		
+		// size of the arrays indexed by label values, or 0 for hash tables
+		Object pixels = slices.length > 0 ? slices[0].getPixels() : null;
+		final int denseSize = pixels instanceof byte[] ? 256 : (pixels instanceof short[] ? 65536 : 0);
+		
+		// split slices into bands of rows when there are fewer slices than
+		// threads, so that planar images are also processed in parallel
+		final int nBands = Math.max(Math.min(nThreads / Math.max(slices.length, 1), sizeY), 1);
+		final int nTasks = slices.length * nBands;
+		
+		final Accumulator[] accumulators = new Accumulator[Math.max(Math.min(nThreads, nTasks), 1)];
+		final AtomicInteger threadIndex = new AtomicInteger(0);
+		final AtomicInteger taskIndex = new AtomicInteger(0);
+		Thread[] threads = ThreadUtil.createThreadArray(accumulators.length);
+		for (int i = 0; i < threads.length; i++)
+		{
+			threads[i] = new Thread()
+			{
+				public void run()
+				{
+					Accumulator acc = new Accumulator(denseSize);
+					for (int t = taskIndex.getAndIncrement(); t < nTasks; t = taskIndex.getAndIncrement())
+					{
+						int z = t / nBands;
+						int band = t % nBands;
+						int y0 = (int) (((long) sizeY * band) / nBands);
+						int y1 = (int) (((long) sizeY * (band + 1)) / nBands);
+						acc.addSlice(slices[z], z, sizeX, y0, y1);
+					}
+					accumulators[threadIndex.getAndIncrement()] = acc;
+				}
+			};
+		}
+		ThreadUtil.startAndJoin(threads);
+		
+		return merge(accumulators, is3D);
+	}
+	
+	/**
+	 * Merges the partial results of several accumulators into a new census.
+	 */
+	private static final LabelCensus merge(Accumulator[] accumulators, boolean is3D)
+	{
+		// collect the labels found by each accumulator
+		int nLabels = 0;
+		for (Accumulator acc : accumulators)
+		{
+			if (acc != null)
+				nLabels += acc.nSlots;
+		}
+		int[] labels = new int[nLabels];
+		nLabels = 0;
+		for (Accumulator acc : accumulators)
+		{
+			if (acc == null)
+				continue;
+			for (int s = 0; s < acc.nSlots; s++)
+			{
+				if (acc.counts[s] > 0)
+					labels[nLabels++] = acc.slotLabels[s];
+			}
+		}
+		
+		// sort labels and remove duplicates
+		Arrays.sort(labels, 0, nLabels);
+		int nUnique = 0;
+		for (int i = 0; i < nLabels; i++)
+		{
+			if (nUnique == 0 || labels[i] != labels[nUnique - 1])
+				labels[nUnique++] = labels[i];
+		}
+		labels = Arrays.copyOf(labels, nUnique);
+		
+		// combine counts and bounding boxes
+		int nDims = is3D ? 3 : 2;
+		int[] counts = new int[nUnique];
+		int[][] boxes = new int[nUnique][];
+		for (int i = 0; i < nUnique; i++)
+		{
+			boxes[i] = new int[2 * nDims];
+			for (int d = 0; d < nDims; d++)
+			{
+				boxes[i][2 * d] = Integer.MAX_VALUE;
+				boxes[i][2 * d + 1] = Integer.MIN_VALUE;
+			}
+		}
+		LabelRemapper indexer = LabelRemapper.indexing(labels);
+		for (Accumulator acc : accumulators)
+		{
+			if (acc == null)
+				continue;
+			for (int s = 0; s < acc.nSlots; s++)
+			{
+				if (acc.counts[s] == 0)
+					continue;
+				
+				int index = indexer.map(acc.slotLabels[s]);
+				counts[index] += acc.counts[s];
+				int[] box = boxes[index];
+				for (int d = 0; d < nDims; d++)
+				{
+					box[2 * d] = Math.min(box[2 * d], acc.boxes[6 * s + 2 * d]);
+					box[2 * d + 1] = Math.max(box[2 * d + 1], acc.boxes[6 * s + 2 * d + 1]);
+				}
+			}
+		}
+		
+		return new LabelCensus(labels, counts, boxes);
+	}
+	
+	
+	// ==================================================
+	// Class variables
+	
+	/**
+	 * The sorted list of labels, without background.
+	 */
+	private final int[] labels;
+	
+	/**
+	 * The number of pixels or voxels of each label.
+	 */
+	private final int[] counts;
+	
+	/**
+	 * The bounding box of each label, as xmin, xmax, ymin, ymax (and zmin,
+	 * zmax for 3D images).
+	 */
+	private final int[][] boxes;
+	
+	/**
+	 * Weak references to the pixel arrays of the image the census was
+	 * computed from, used to check the validity of cached census without
+	 * retaining arrays that were replaced.
+	 */
+	private WeakReference<?>[] pixelArrays = null;
+	
+	
+	// ==================================================
+	// Constructor
+	
+	private LabelCensus(int[] labels, int[] counts, int[][] boxes)
+	{
+		this.labels = labels;
+		this.counts = counts;
+		this.boxes = boxes;
+	}
+	
+	
+	// ==================================================
+	// Methods
+	
+	/**
+	 * @return the number of labels within image, without background
+	 */
+	public int getLabelCount()
+	{
+		return this.labels.length;
+	}
+	
+	/**
+	 * @return the sorted list of labels within image, without background
+	 */
+	public int[] getLabels()
+	{
+		return this.labels.clone();
+	}
+	
+	/**
+	 * @return the number of pixels or voxels of each label, in the order of
+	 *         the labels
+	 */
+	public int[] getCounts()
+	{
+		return this.counts.clone();
+	}
+	
+	/**
+	 * Returns the bounding box of each label, in the order of the labels.
+	 * Bounds are inclusive, and given in pixel coordinates.
+	 * 
+	 * @return an array with as many rows as the number of labels, and four
+	 *         columns (xmin, xmax, ymin, ymax) for planar images, or six
+	 *         columns (xmin, xmax, ymin, ymax, zmin, zmax) for 3D images.
+	 */
+	public int[][] getBoundingBoxes()
+	{
+		int[][] res = new int[this.boxes.length][];
+		for (int i = 0; i < res.length; i++)
+		{
+			res[i] = this.boxes[i].clone();
+		}
+		return res;
+	}
+	
+	/**
+	 * Returns the index of the specified label within the list of labels.
+	 * 
+	 * @param label
+	 *            the label value
+	 * @return the index of the label, or -1 if the label is not present
+	 */
+	public int indexOf(int label)
+	{
+		int index = Arrays.binarySearch(this.labels, label);
+		return index >= 0 ? index : -1;
+	}
+	
+	private boolean isComputedFrom(Object[] pixelArrays)
+	{
+		if (this.pixelArrays == null || this.pixelArrays.length != pixelArrays.length)
+			return false;
+		for (int i = 0; i < pixelArrays.length; i++)
+		{
+			if (this.pixelArrays[i].get() != pixelArrays[i])
+				return false;
+		}
+		return true;
+	}
+	
+	
+	// ==================================================
+	// Inner classes
+	
+	/**
+	 * Accumulates the counts and bounding boxes of the labels within a set of
+	 * slices. Labels are associated to slots, that correspond to the label
+	 * value for 8- and 16-bit images, or are allocated in order of appearance
+	 * using an open-addressing hash table for float images.
+	 */
+	private static final class Accumulator
+	{
+		/** the number of slots used by the accumulator */
+		int nSlots;
+		
+		/** the label associated to each slot */
+		int[] slotLabels;
+		
+		/** the number of elements of each slot */
+		int[] counts;
+		
+		/** the bounding box of each slot, with six values per slot */
+		int[] boxes;
+		
+		/** the keys of the hash table, or null for dense accumulators */
+		int[] hashKeys = null;
+		
+		/** the slot of each entry of the hash table, or -1 for empty entries */
+		int[] hashSlots = null;
+		
+		Accumulator(int denseSize)
+		{
+			if (denseSize > 0)
+			{
+				allocateSlots(denseSize);
+				this.nSlots = denseSize;
+				for (int s = 0; s < denseSize; s++)
+				{
+					this.slotLabels[s] = s;
+				}
+			}
+			else
+			{
+				allocateSlots(64);
+				allocateHashTable(128);
+			}
+		}
+		
+		private void allocateSlots(int capacity)
+		{
+			int n = this.slotLabels == null ? 0 : this.nSlots;
+			this.slotLabels = this.slotLabels == null ? new int[capacity] : Arrays.copyOf(this.slotLabels, capacity);
+			this.counts = this.counts == null ? new int[capacity] : Arrays.copyOf(this.counts, capacity);
+			this.boxes = this.boxes == null ? new int[6 * capacity] : Arrays.copyOf(this.boxes, 6 * capacity);
+			for (int s = n; s < capacity; s++)
+			{
+				for (int d = 0; d < 3; d++)
+				{
+					this.boxes[6 * s + 2 * d] = Integer.MAX_VALUE;
+					this.boxes[6 * s + 2 * d + 1] = Integer.MIN_VALUE;
+				}
+			}
+		}
+		
+		private void allocateHashTable(int capacity)
+		{
+			this.hashKeys = new int[capacity];
+			this.hashSlots = new int[capacity];
+			Arrays.fill(this.hashSlots, -1);
+			for (int s = 0; s < this.nSlots; s++)
+			{
+				int h = hashIndex(this.slotLabels[s]);
+				while (this.hashSlots[h] >= 0)
+				{
+					h = (h + 1) & (capacity - 1);
+				}
+				this.hashKeys[h] = this.slotLabels[s];
+				this.hashSlots[h] = s;
+			}
+		}
+		
+		private int hashIndex(int label)
+		{
+			return ((label * 0x9E3779B9) >>> 16) & (this.hashKeys.length - 1);
+		}
+		
+		/**
+		 * Returns the slot associated to the specified label, allocating a
+		 * new slot if necessary.
+		 */
+		private int slot(int label)
+		{
+			int mask = this.hashKeys.length - 1;
+			int h = hashIndex(label);
+			while (this.hashSlots[h] >= 0)
+			{
+				if (this.hashKeys[h] == label)
+					return this.hashSlots[h];
+				h = (h + 1) & mask;
+			}
+			
+			// allocate a new slot
+			int s = this.nSlots;
+			if (s == this.slotLabels.length)
+				allocateSlots(2 * s);
+			this.slotLabels[s] = label;
+			this.nSlots++;
+			this.hashKeys[h] = label;
+			this.hashSlots[h] = s;
+			
+			// keep load factor of the hash table below 0.5
+			if (2 * this.nSlots > this.hashKeys.length)
+				allocateHashTable(2 * this.hashKeys.length);
+			return s;
+		}
+		
+		private void add(int s, int x, int y, int z)
+		{
+			this.counts[s]++;
+			int i = 6 * s;
+			if (x < this.boxes[i]) this.boxes[i] = x;
+			if (x > this.boxes[i + 1]) this.boxes[i + 1] = x;
+			if (y < this.boxes[i + 2]) this.boxes[i + 2] = y;
+			if (y > this.boxes[i + 3]) this.boxes[i + 3] = y;
+			if (z < this.boxes[i + 4]) this.boxes[i + 4] = z;
+			if (z > this.boxes[i + 5]) this.boxes[i + 5] = z;
+		}
+		
+		/**
+		 * Accumulates the labels within the rows y0 (inclusive) to y1
+		 * (exclusive) of the specified slice.
+		 */
+		void addSlice(ImageProcessor slice, int z, int sizeX, int y0, int y1)
+		{
+			Object pixels = slice.getPixels();
+			if (pixels instanceof byte[])
+			{
+				byte[] array = (byte[]) pixels;
+				for (int y = y0; y < y1; y++)
+				{
+					int offset = y * sizeX;
+					for (int x = 0; x < sizeX; x++)
+					{
+						int label = array[offset + x] & 0x00FF;
+						if (label != 0)
+							add(label, x, y, z);
+					}
+				}
+			}
+			else if (pixels instanceof short[])
+			{
+				short[] array = (short[]) pixels;
+				for (int y = y0; y < y1; y++)
+				{
+					int offset = y * sizeX;
+					for (int x = 0; x < sizeX; x++)
+					{
+						int label = array[offset + x] & 0x00FFFF;
+						if (label != 0)
+							add(label, x, y, z);
+					}
+				}
+			}
+			else
+			{
+				// avoid hashing the same label for each pixel of a run
+				int lastLabel = 0;
+				int lastSlot = -1;
+				for (int y = y0; y < y1; y++)
+				{
+					int offset = y * sizeX;
+					for (int x = 0; x < sizeX; x++)
+					{
+						int label = (int) slice.getf(offset + x);
+						if (label == 0)
+							continue;
+						if (lastSlot < 0 || label != lastLabel)
+						{
+							lastSlot = slot(label);
+							lastLabel = label;
+						}
+						add(lastSlot, x, y, z);
+					}
+				}
+			}
+		}
+	}
+}
@@ -39,6 +39,7 @@ import ij.process.ShortProcessor;
 
 import java.awt.Color;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.TreeSet;
@@ -502,8 +503,9 @@ public class LabelImages
 	public static final ImageProcessor areaOpening(ImageProcessor labelImage, int nPixelMin) 
 	{
 		// compute area of each label
-		int[] labels = findAllLabels(labelImage);
-		int[] areas = pixelCount(labelImage, labels);
+		LabelCensus census = LabelCensus.compute(labelImage);
+		int[] labels = census.getLabels();
+		int[] areas = census.getCounts();
 		
 		// find labels with sufficient area
 		ArrayList<Integer> labelsToKeep = new ArrayList<Integer>(labels.length);
@@ -543,9 +545,10 @@ public class LabelImages
 	 */
 	public static final ImageStack volumeOpening(ImageStack labelImage, int nVoxelMin) 
 	{
-		// compute area of each label
-		int[] labels = LabelImages.findAllLabels(labelImage);
-		int[] vols = LabelImages.voxelCount(labelImage, labels);
+		// compute volume of each label
+		LabelCensus census = LabelCensus.compute(labelImage);
+		int[] labels = census.getLabels();
+		int[] vols = census.getCounts();
 		
 		// find labels with sufficient area
 		ArrayList<Integer> labelsToKeep = new ArrayList<Integer>(labels.length);
@@ -703,6 +706,7 @@ public class LabelImages
 		} else {
 			removeBorderLabels(imagePlus.getStack());
 		}
+		LabelCensus.invalidate(imagePlus);
 	}
 
 	/**
@@ -861,14 +865,15 @@ public class LabelImages
 		ImageProcessor result = new ByteProcessor(sizeX, sizeY);
 		
 		// identify labels of input image
-		int[] labels = findAllLabels(image);
+		LabelCensus census = LabelCensus.compute(image);
+		int[] labels = census.getLabels();
 		if (labels.length == 0)
 		{
 			throw new RuntimeException("Can not select a label in an empty image");
 		}
 
 		// find the label of the largest particle
-		int[] areas = pixelCount(image, labels);
+		int[] areas = census.getCounts();
 		int largestLabel = labels[indexOfMax(areas)];
 
 		// convert label image to binary image
@@ -904,14 +909,15 @@ public class LabelImages
 		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, 8);
 		
 		// identify labels of input image
-		int[] labels = findAllLabels(image);
+		LabelCensus census = LabelCensus.compute(image);
+		int[] labels = census.getLabels();
 		if (labels.length == 0)
 		{
 			throw new RuntimeException("Can not select a label in an empty image");
 		}
 		
 		// find the label of the largest particle
-		int[] volumes = voxelCount(image, labels);		
+		int[] volumes = census.getCounts();
 		int largestLabel = labels[indexOfMax(volumes)];
 		
 		// convert label image to binary image
@@ -946,6 +952,7 @@ public class LabelImages
 			removeLargestLabel(imagePlus.getProcessor());
 		else
 			removeLargestLabel(imagePlus.getStack());
+		LabelCensus.invalidate(imagePlus);
 	}
 
 	/**
@@ -962,7 +969,8 @@ public class LabelImages
 		int sizeY = image.getHeight();
 
 		// identify labels of input image
-		int[] labels = findAllLabels(image);
+		LabelCensus census = LabelCensus.compute(image);
+		int[] labels = census.getLabels();
 		if (labels.length == 0)
 		{
 			// if no label is found, there is nothing to remove...
@@ -970,7 +978,7 @@ public class LabelImages
 		}
 		
 		// find the label of the largest particle
-		int[] areas = pixelCount(image, labels);
+		int[] areas = census.getCounts();
 		int largestLabel = labels[indexOfMax(areas)];
 		
 		// remove pixels belonging to the largest label
@@ -1000,7 +1008,8 @@ public class LabelImages
 		int sizeZ = image.getSize();
 		
 		// identify labels of input image
-		int[] labels = findAllLabels(image);
+		LabelCensus census = LabelCensus.compute(image);
+		int[] labels = census.getLabels();
 		if (labels.length == 0)
 		{
 			// if no label is found, there is nothing to remove...
@@ -1008,7 +1017,7 @@ public class LabelImages
 		}
 
 		// find the label of the largest particle
-		int[] volumes = voxelCount(image, labels);
+		int[] volumes = census.getCounts();
 		int largestLabel = labels[indexOfMax(volumes)];
 		
 		// remove voxels belonging to the largest label
@@ -1067,8 +1076,8 @@ public class LabelImages
 	    int width 	= image.getWidth();
 	    int height 	= image.getHeight();
 	
-        // create associative array to identify the index of each label
-	    HashMap<Integer, Integer> labelIndices = mapLabelIndices(labels);
+        // create lookup table to identify the index of each label
+	    LabelRemapper labelIndices = LabelRemapper.indexing(labels);
 
         // initialize result
 		int nLabels = labels.length;
@@ -1082,8 +1091,9 @@ public class LabelImages
 	        	int label = (int) image.getf(x, y);
 	        	if (label == 0)
 					continue;
-				int labelIndex = labelIndices.get(label);
-				counts[labelIndex]++;
+				int labelIndex = labelIndices.map(label);
+				if (labelIndex >= 0)
+					counts[labelIndex]++;
 	        }
 	    }	
 	    
@@ -1103,8 +1113,8 @@ public class LabelImages
 	*/
 	public final static int[] voxelCount(ImageStack image, int[] labels) 
 	{
-        // create associative array to know index of each label
-		HashMap<Integer, Integer> labelIndices = mapLabelIndices(labels);
+        // create lookup table to know index of each label
+		LabelRemapper labelIndices = LabelRemapper.indexing(labels);
 
         // initialize result
 		int nLabels = labels.length;
@@ -1127,8 +1137,9 @@ public class LabelImages
 					// do not consider background
 					if (label == 0)
 						continue;
-					int labelIndex = labelIndices.get(label);
-					counts[labelIndex]++;
+					int labelIndex = labelIndices.map(label);
+					if (labelIndex >= 0)
+						counts[labelIndex]++;
         		}
         	}
         }
@@ -1152,7 +1163,11 @@ public class LabelImages
 	
     /**
 	 * Returns the set of unique labels existing in the given image, excluding
-	 * the value zero (used for background).
+	 * the value zero (used for background). The image is scanned at each
+	 * call; use <code>LabelCensus.of(image)</code> to cache the labels within
+	 * the image properties.
+	 * 
+	 * @see LabelCensus#of(ImagePlus)
 	 * 
 	 * @param image
 	 *            an instance of ImagePlus containing a label image
@@ -1160,8 +1175,7 @@ public class LabelImages
 	 */
     public final static int[] findAllLabels(ImagePlus image) 
     {
-		return image.getStackSize() == 1 ? findAllLabels(image.getProcessor())
-				: findAllLabels(image.getStack());
+		return LabelCensus.compute(image).getLabels();
     }
 
     /**
@@ -1174,35 +1188,13 @@ public class LabelImages
      */
     public final static int[] findAllLabels(ImageStack image) 
     {
-        int sizeX = image.getWidth();
-        int sizeY = image.getHeight();
-        int sizeZ = image.getSize();
-        
-        TreeSet<Integer> labels = new TreeSet<Integer> ();
-        
-        // iterate on image pixels
-        for (int z = 0; z < sizeZ; z++) 
-        {
-        	for (int y = 0; y < sizeY; y++)  
-        	{
-        		for (int x = 0; x < sizeX; x++)
-        		{
-        			labels.add((int) image.getVoxel(x, y, z));
-        		}
-        	}
-        }
-        
-        // remove 0 if it exists
-        if (labels.contains(0))
-            labels.remove(0);
-        
-        // convert to array of integers
-        int[] array = new int[labels.size()];
-        Iterator<Integer> iterator = labels.iterator();
-        for (int i = 0; i < labels.size(); i++) 
-            array[i] = iterator.next();
-        
-        return array;
+    	int sizeZ = image.getSize();
+    	ImageProcessor[] slices = new ImageProcessor[sizeZ];
+    	for (int z = 0; z < sizeZ; z++)
+    	{
+    		slices[z] = image.getProcessor(z + 1);
+    	}
+    	return findAllLabels(slices);
     }
 
     /**
@@ -1215,42 +1207,107 @@ public class LabelImages
      */
     public final static int[] findAllLabels(ImageProcessor image)
     {
-        int sizeX = image.getWidth();
-        int sizeY = image.getHeight();
-        
-        TreeSet<Integer> labels = new TreeSet<Integer> ();
-        
-        // iterate on image pixels
-        if (image instanceof FloatProcessor) 
-        {
-        	// For float processor, use explicit case to int from float value  
-        	for (int y = 0; y < sizeY; y++) 
-        	{
-        		for (int x = 0; x < sizeX; x++) 
-        			labels.add((int) image.getf(x, y));
-        	}
-        } 
-        else
-        {
-        	// for integer-based images, simply use integer result
-        	for (int y = 0; y < sizeY; y++) 
-        	{
-        		for (int x = 0; x < sizeX; x++) 
-        			labels.add(image.get(x, y));
-        	}
-        }
-        
-        // remove 0 if it exists
-        if (labels.contains(0))
-            labels.remove(0);
-        
-        // convert to array of integers
-        int[] array = new int[labels.size()];
-        Iterator<Integer> iterator = labels.iterator();
-        for (int i = 0; i < labels.size(); i++) 
-            array[i] = iterator.next();
-        
-        return array;
+    	return findAllLabels(new ImageProcessor[] {image});
+    }
+
+    /**
+     * Returns the sorted unique labels within a set of slices with the same
+     * type, excluding the value zero. Labels are marked within a dense array
+     * when their range is small enough, and are sorted otherwise.
+     */
+    private final static int[] findAllLabels(ImageProcessor[] slices)
+    {
+    	// compute the range of label values
+    	long minLabel = 0;
+    	long maxLabel = 0;
+    	if (slices.length > 0 && slices[0].getPixels() instanceof byte[])
+    	{
+    		maxLabel = 255;
+    	}
+    	else if (slices.length > 0 && slices[0].getPixels() instanceof short[])
+    	{
+    		maxLabel = 65535;
+    	}
+    	else
+    	{
+    		for (ImageProcessor slice : slices)
+    		{
+    			int nPixels = slice.getPixelCount();
+    			for (int i = 0; i < nPixels; i++)
+    			{
+    				int label = (int) slice.getf(i);
+    				minLabel = min(minLabel, label);
+    				maxLabel = max(maxLabel, label);
+    			}
+    		}
+    	}
+    	
+    	if (maxLabel - minLabel < LabelRemapper.MAX_LUT_SIZE)
+    	{
+    		// mark the labels present within slices
+    		int offset = (int) minLabel;
+    		boolean[] present = new boolean[(int) (maxLabel - minLabel + 1)];
+    		for (ImageProcessor slice : slices)
+    		{
+    			Object pixels = slice.getPixels();
+    			if (pixels instanceof byte[])
+    			{
+    				for (byte value : (byte[]) pixels)
+    					present[value & 0x00FF] = true;
+    			}
+    			else if (pixels instanceof short[])
+    			{
+    				for (short value : (short[]) pixels)
+    					present[value & 0x00FFFF] = true;
+    			}
+    			else
+    			{
+    				int nPixels = slice.getPixelCount();
+    				for (int i = 0; i < nPixels; i++)
+    					present[(int) slice.getf(i) - offset] = true;
+    			}
+    		}
+    		
+    		// convert to array of labels, without background
+    		int nLabels = 0;
+    		for (int i = 0; i < present.length; i++)
+    		{
+    			if (present[i] && i + offset != 0)
+    				nLabels++;
+    		}
+    		int[] labels = new int[nLabels];
+    		nLabels = 0;
+    		for (int i = 0; i < present.length; i++)
+    		{
+    			if (present[i] && i + offset != 0)
+    				labels[nLabels++] = i + offset;
+    		}
+    		return labels;
+    	}
+    	
+    	// for large label ranges, sort the unique labels of each slice
+    	int[] labels = new int[0];
+    	for (ImageProcessor slice : slices)
+    	{
+    		int nPixels = slice.getPixelCount();
+    		int[] values = new int[labels.length + nPixels];
+    		System.arraycopy(labels, 0, values, 0, labels.length);
+    		for (int i = 0; i < nPixels; i++)
+    		{
+    			values[labels.length + i] = (int) slice.getf(i);
+    		}
+    		Arrays.sort(values);
+    		
+    		int nUnique = 0;
+    		for (int i = 0; i < values.length; i++)
+    		{
+    			if (values[i] == 0 || (nUnique > 0 && values[nUnique - 1] == values[i]))
+    				continue;
+    			values[nUnique++] = values[i];
+    		}
+    		labels = Arrays.copyOf(values, nUnique);
+    	}
+    	return labels;
     }
 
 	/**
@@ -1276,6 +1333,7 @@ public class LabelImages
 			ImageStack image = imagePlus.getStack();
 			replaceLabels(image, labels, newLabel);
 		}
+		LabelCensus.invalidate(imagePlus);
 	}
 
 	/**
@@ -1301,6 +1359,7 @@ public class LabelImages
 			ImageStack image = imagePlus.getStack();
 			replaceLabels(image, labels, newLabel);
 		}
+		LabelCensus.invalidate(imagePlus);
 	}
 
 	/**
@@ -1312,26 +1371,7 @@ public class LabelImages
 	 */
 	public static final void replaceLabels(ImageProcessor image, int[] labels, int newLabel)
 	{
-		int sizeX = image.getWidth();
-		int sizeY = image.getHeight();
-		
-		TreeSet<Integer> labelSet = new TreeSet<Integer>();
-		for (int i = 0; i < labels.length; i++)
-		{
-			labelSet.add(labels[i]);
-		}
-		
-		for (int y = 0; y < sizeY; y++)
-		{
-			for (int x = 0; x < sizeX; x++)
-			{
-				int value = (int) image.getf(x, y);
-				if (value == newLabel)
-					continue;
-				if (labelSet.contains(value)) 
-					image.setf( x, y, newLabel );
-			}
-		}
+		LabelRemapper.replacing(labels, newLabel).applyTo(image);
 	}
 
 	/**
@@ -1374,30 +1414,7 @@ public class LabelImages
 	 */
 	public static final void replaceLabels(ImageStack image, int[] labels, int newLabel)
 	{
-		int sizeX = image.getWidth();
-		int sizeY = image.getHeight();
-		int sizeZ = image.getSize();
-		
-		TreeSet<Integer> labelSet = new TreeSet<Integer>();
-		for (int i = 0; i < labels.length; i++) 
-		{
-			labelSet.add(labels[i]);
-		}
-		
-		for (int z = 0; z < sizeZ; z++) 
-		{
-			for (int y = 0; y < sizeY; y++)
-			{
-				for (int x = 0; x < sizeX; x++) 
-				{
-					int value = (int) image.getVoxel(x, y, z); 
-					if (value == newLabel)
-						continue;
-					if (labelSet.contains(value)) 
-						image.setVoxel(x, y, z, newLabel);
-				}
-			}
-		}
+		LabelRemapper.replacing(labels, newLabel).applyTo(image);
 	}
 
 	/**
@@ -1480,29 +1497,8 @@ public class LabelImages
 	 */
 	public static final ImageProcessor keepLabels(ImageProcessor image, int[] labels) 
 	{
-		int sizeX = image.getWidth();
-		int sizeY = image.getHeight();
-		
-		ImageProcessor result = image.createProcessor(sizeX,  sizeY);
-		
-		TreeSet<Integer> labelSet = new TreeSet<Integer>();
-		for (int i = 0; i < labels.length; i++) 
-		{
-			labelSet.add(labels[i]);
-		}
-		
-		for (int y = 0; y < sizeY; y++) 
-		{
-			for (int x = 0; x < sizeX; x++)
-			{
-				int value = (int) image.getf(x, y); 
-				if (value == 0)
-					continue;
-				if (labelSet.contains(value)) 
-					result.setf(x, y, value);
-			}
-		}
-		
+		ImageProcessor result = image.duplicate();
+		LabelRemapper.keeping(labels).applyTo(result);
 		return result;
 	}
 
@@ -1517,36 +1513,61 @@ public class LabelImages
 	 */
 	public static final ImageStack keepLabels(ImageStack image, int[] labels) 
 	{
-		int sizeX = image.getWidth();
-		int sizeY = image.getHeight();
-		int sizeZ = image.getSize();
-		
-		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, image.getBitDepth());
-		
-		TreeSet<Integer> labelSet = new TreeSet<Integer>();
-		for (int i = 0; i < labels.length; i++)
+		ImageStack result = image.duplicate();
+		LabelRemapper.keeping(labels).applyTo(result);
+		return result;
+	}
+	
+	/**
+	 * Replaces the labels of the image by consecutive integers starting from
+	 * 1, keeping the order of label values. This method changes directly the
+	 * values within the image.
+	 * 
+	 * @param imagePlus
+	 *            an ImagePlus containing a planar or 3D label image
+	 */
+	public static final void remapLabels(ImagePlus imagePlus)
+	{
+		// Dispatch to appropriate function depending on dimension
+		if (imagePlus.getStackSize() == 1) 
 		{
-			labelSet.add(labels[i]);
+			remapLabels(imagePlus.getProcessor());
 		}
-		
-		for (int z = 0; z < sizeZ; z++) 
+		else 
 		{
-			for (int y = 0; y < sizeY; y++)
-			{
-				for (int x = 0; x < sizeX; x++)
-				{
-					int value = (int) image.getVoxel(x, y, z); 
-					if (value == 0)
-						continue;
-					if (labelSet.contains(value)) 
-						result.setVoxel(x, y, z, value);
-				}
-			}
+			remapLabels(imagePlus.getStack());
 		}
-		
-		return result;
+		LabelCensus.invalidate(imagePlus);
 	}
-	
+
+	/**
+	 * Replaces the labels of the image by consecutive integers starting from
+	 * 1, keeping the order of label values. This method changes directly the
+	 * values within the image.
+	 * 
+	 * @param image
+	 *            a planar label image
+	 */
+	public static final void remapLabels(ImageProcessor image)
+	{
+		int[] labels = findAllLabels(image);
+		LabelRemapper.consecutive(labels).applyTo(image);
+	}
+
+	/**
+	 * Replaces the labels of the image by consecutive integers starting from
+	 * 1, keeping the order of label values. This method changes directly the
+	 * values within the image.
+	 * 
+	 * @param image
+	 *            a 3D label image
+	 */
+	public static final void remapLabels(ImageStack image)
+	{
+		int[] labels = findAllLabels(image);
+		LabelRemapper.consecutive(labels).applyTo(image);
+	}
+
 	/**
 	 * Applies the given Look-up table to the input label image.
 	 * 
@@ -1568,8 +1589,8 @@ public class LabelImages
         // extract particle labels
         int[] labels = LabelImages.findAllLabels(labelImage);
         
-        // create associative array to know index of each label
-        HashMap<Integer, Integer> labelIndices = mapLabelIndices(labels);
+        // create lookup table to know index of each label
+        LabelRemapper labelIndices = LabelRemapper.indexing(labels);
 
 		for (int y = 0; y < height; y++) 
 		{
@@ -1582,7 +1603,7 @@ public class LabelImages
 					continue;
 				}
 				
-				int index = labelIndices.get(label);
+				int index = labelIndices.map(label);
 				
 				if (index >= values.length) {
 					throw new RuntimeException("Try to access index " + index + 
@@ -1619,8 +1640,8 @@ public class LabelImages
         // extract particle labels
         int[] labels = LabelImages.findAllLabels(labelImage);
         
-        // create associative array to know index of each label
-        HashMap<Integer, Integer> labelIndices = mapLabelIndices(labels);
+        // create lookup table to know index of each label
+        LabelRemapper labelIndices = LabelRemapper.indexing(labels);
 
         // Iterate over voxels to change their color
         for (int z = 0; z < sizeZ; z++) 
@@ -1636,7 +1657,7 @@ public class LabelImages
 						continue;
 					}
 
-					int index = labelIndices.get(label);
+					int index = labelIndices.map(label);
 					
 					if (index >= values.length) 
 					{
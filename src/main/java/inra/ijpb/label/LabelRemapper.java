@@ -0,0 +1,403 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.label;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ij.ImageStack;
+import ij.Prefs;
+import ij.process.ImageProcessor;
+import ij.util.ThreadUtil;
+
+/**
+ * Maps label values to new values using a primitive lookup table, and applies
+ * the mapping to label images.
+ * 
+ * <p>
+ * The lookup table is computed once. When the range of the mapped labels is
+ * small enough, a dense array indexed by label value is used. Otherwise, the
+ * mapped labels are stored within a sorted array, and retrieved by binary
+ * search. Labels that are not mapped are either kept unchanged, or replaced by
+ * a default value.
+ * </p>
+ * 
+ * <p>
+ * The mapping is applied in place directly on the pixel arrays of 8-, 16- and
+ * 32-bit images. Stacks are processed in parallel over the slices.
+ * </p>
+ * 
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	// replaces labels 2 and 5 by 0
+ *	LabelRemapper remapper = LabelRemapper.replacing(new int[]{2, 5}, 0);
+ *	remapper.applyTo(labelImage);
+ *}</pre>
+ * 
+ * @see inra.ijpb.label.LabelImages#remapLabels(ImageStack)
+ * 
+ * @author David Legland
+ */
+public class LabelRemapper
+{
+	/**
+	 * The largest range of label values for which a dense lookup table is
+	 * used.
+	 */
+	static final int MAX_LUT_SIZE = 1 << 22;
+
+	// ==================================================
+	// Static factories
+	
+	/**
+	 * Creates a mapping that replaces each of the specified labels by a new
+	 * value, and keeps other labels unchanged.
+	 * 
+	 * @param labels
+	 *            the labels to replace
+	 * @param newLabel
+	 *            the new value for the labels
+	 * @return a new LabelRemapper
+	 */
+	public static final LabelRemapper replacing(int[] labels, int newLabel)
+	{
+		int[] newLabels = new int[labels.length];
+		Arrays.fill(newLabels, newLabel);
+		return new LabelRemapper(labels, newLabels, true, 0);
+	}
+	
+	/**
+	 * Creates a mapping that keeps the specified labels, and replaces other
+	 * labels by 0.
+	 * 
+	 * @param labels
+	 *            the labels to keep
+	 * @return a new LabelRemapper
+	 */
+	public static final LabelRemapper keeping(int[] labels)
+	{
+		return new LabelRemapper(labels, labels, false, 0);
+	}
+	
+	/**
+	 * Creates a mapping that replaces each label by its index within the
+	 * array, and other labels by -1.
+	 * 
+	 * @param labels
+	 *            the labels to index
+	 * @return a new LabelRemapper
+	 */
+	public static final LabelRemapper indexing(int[] labels)
+	{
+		int[] indices = new int[labels.length];
+		for (int i = 0; i < labels.length; i++)
+		{
+			indices[i] = i;
+		}
+		return new LabelRemapper(labels, indices, false, -1);
+	}
+	
+	/**
+	 * Creates a mapping that replaces the specified labels by consecutive
+	 * integers starting from 1, in the order of the array, and other labels
+	 * by 0.
+	 * 
+	 * @param labels
+	 *            the labels to remap
+	 * @return a new LabelRemapper
+	 */
+	public static final LabelRemapper consecutive(int[] labels)
+	{
+		int[] newLabels = new int[labels.length];
+		for (int i = 0; i < labels.length; i++)
+		{
+			newLabels[i] = i + 1;
+		}
+		return new LabelRemapper(labels, newLabels, false, 0);
+	}
+	
+	
+	// ==================================================
+	// Class variables
+	
+	/**
+	 * The dense lookup table, indexed by label minus offset, or null if the
+	 * sorted arrays are used.
+	 */
+	int[] lut = null;
+	
+	/**
+	 * The value of the label corresponding to the first element of the dense
+	 * lookup table.
+	 */
+	int offset = 0;
+	
+	/**
+	 * The sorted array of mapped labels, used when the range of labels is too
+	 * large for a dense lookup table.
+	 */
+	int[] sortedLabels = null;
+	
+	/**
+	 * The new values of the labels within the sortedLabels array.
+	 */
+	int[] sortedValues = null;
+	
+	/**
+	 * Specifies whether the labels that are not mapped are kept unchanged, or
+	 * replaced by the default value.
+	 */
+	boolean keepOthers;
+	
+	/**
+	 * The value of the labels that are not mapped, when they are not kept.
+	 */
+	int defaultValue;
+	
+	/**
+	 * The number of threads used for processing stacks. Default is the number
+	 * of threads specified in ImageJ preferences.
+	 */
+	int nThreads = Prefs.getThreads();
+	
+	
+	// ==================================================
+	// Constructor
+	
+	/**
+	 * Creates a new mapping between labels and new values.
+	 * 
+	 * @param labels
+	 *            the labels to map
+	 * @param newLabels
+	 *            the new value of each label, with the same length as the
+	 *            labels array
+	 * @param keepOthers
+	 *            if true, the labels that are not mapped are kept unchanged;
+	 *            otherwise, they are replaced by the default value
+	 * @param defaultValue
+	 *            the value of the labels that are not mapped, used only if
+	 *            keepOthers is false
+	 */
+	public LabelRemapper(int[] labels, int[] newLabels, boolean keepOthers, int defaultValue)
+	{
+		if (labels.length != newLabels.length)
+		{
+			throw new IllegalArgumentException("Label arrays must have the same length");
+		}
+		this.keepOthers = keepOthers;
+		this.defaultValue = defaultValue;
+		
+		// compute range of labels
+		long minLabel = Long.MAX_VALUE;
+		long maxLabel = Long.MIN_VALUE;
+		for (int label : labels)
+		{
+			minLabel = Math.min(minLabel, label);
+			maxLabel = Math.max(maxLabel, label);
+		}
+		
+		if (labels.length == 0 || maxLabel - minLabel < MAX_LUT_SIZE)
+		{
+			// create dense lookup table, initialized with identity or default value
+			this.offset = labels.length == 0 ? 0 : (int) minLabel;
+			int size = labels.length == 0 ? 0 : (int) (maxLabel - minLabel + 1);
+			this.lut = new int[size];
+			for (int i = 0; i < size; i++)
+			{
+				this.lut[i] = keepOthers ? i + offset : defaultValue;
+			}
+			for (int i = 0; i < labels.length; i++)
+			{
+				this.lut[labels[i] - offset] = newLabels[i];
+			}
+		}
+		else
+		{
+			// sort labels together with their new values
+			long[] pairs = new long[labels.length];
+			for (int i = 0; i < labels.length; i++)
+			{
+				pairs[i] = ((long) labels[i] << 32) | (i & 0xFFFFFFFFL);
+			}
+			Arrays.sort(pairs);
+			this.sortedLabels = new int[labels.length];
+			this.sortedValues = new int[labels.length];
+			for (int i = 0; i < labels.length; i++)
+			{
+				this.sortedLabels[i] = (int) (pairs[i] >> 32);
+				this.sortedValues[i] = newLabels[(int) pairs[i]];
+			}
+		}
+	}
+	
+	
+	// ==================================================
+	// Setters and getters
+	
+	/**
+	 * @return the number of threads used for processing stacks
+	 */
+	public int getNumberOfThreads()
+	{
+		return this.nThreads;
+	}
+	
+	/**
+	 * @param nThreads
+	 *            the number of threads used for processing stacks (at least 1)
+	 */
+	public void setNumberOfThreads(int nThreads)
+	{
+		if (nThreads < 1)
+		{
+			throw new IllegalArgumentException("Number of threads must be at least 1");
+		}
+		this.nThreads = nThreads;
+	}
+	
+	
+	// ==================================================
+	// Methods
+	
+	/**
+	 * Returns the new value associated to a label.
+	 * 
+	 * @param label
+	 *            the label value
+	 * @return the new value of the label
+	 */
+	public int map(int label)
+	{
+		if (lut != null)
+		{
+			int index = label - offset;
+			if (index >= 0 && index < lut.length)
+			{
+				return lut[index];
+			}
+		}
+		else
+		{
+			int index = Arrays.binarySearch(sortedLabels, label);
+			if (index >= 0)
+			{
+				return sortedValues[index];
+			}
+		}
+		return keepOthers ? label : defaultValue;
+	}
+	
+	/**
+	 * Applies the mapping to each pixel of a planar label image. The image is
+	 * modified in place.
+	 * 
+	 * @param image
+	 *            the label image to modify
+	 */
+	public void applyTo(ImageProcessor image)
+	{
+		applyToPixels(image);
+	}
+	
+	/**
+	 * Applies the mapping to each voxel of a 3D label image. The image is
+	 * modified in place, and slices are processed in parallel.
+	 * 
+	 * @param image
+	 *            the 3D label image to modify
+	 */
+	public void applyTo(final ImageStack image)
+	{
+		final int nSlices = image.getSize();
+		final AtomicInteger sliceIndex = new AtomicInteger(0);
+		
+		Thread[] threads = ThreadUtil.createThreadArray(Math.min(this.nThreads, nSlices));
+		for (int t = 0; t < threads.length; t++)
+		{
+			threads[t] = new Thread()
+			{
+				public void run()
+				{
+					for (int z = sliceIndex.getAndIncrement(); z < nSlices; z = sliceIndex.getAndIncrement())
+					{
+						applyToPixels(image.getProcessor(z + 1));
+					}
+				}
+			};
+		}
+		ThreadUtil.startAndJoin(threads);
+	}
+	
+	/**
+	 * Applies the mapping to the pixel array of the specified image. For
+	 * floating point images, the label corresponds to the integer part of the
+	 * pixel value, and pixels are modified only if the new label is different.
+	 */
+	private void applyToPixels(ImageProcessor image)
+	{
+		Object pixels = image.getPixels();
+		if (pixels instanceof byte[])
+		{
+			byte[] array = (byte[]) pixels;
+			for (int i = 0; i < array.length; i++)
+			{
+				array[i] = (byte) map(array[i] & 0x00FF);
+			}
+		}
+		else if (pixels instanceof short[])
+		{
+			short[] array = (short[]) pixels;
+			for (int i = 0; i < array.length; i++)
+			{
+				array[i] = (short) map(array[i] & 0x00FFFF);
+			}
+		}
+		else if (pixels instanceof float[])
+		{
+			float[] array = (float[]) pixels;
+			for (int i = 0; i < array.length; i++)
+			{
+				int label = (int) array[i];
+				int newLabel = map(label);
+				if (newLabel != label)
+				{
+					array[i] = newLabel;
+				}
+			}
+		}
+		else
+		{
+			int nPixels = image.getPixelCount();
+			for (int i = 0; i < nPixels; i++)
+			{
+				int label = (int) image.getf(i);
+				int newLabel = map(label);
+				if (newLabel != label)
+				{
+					image.setf(i, newLabel);
+				}
+			}
+		}
+	}
+}
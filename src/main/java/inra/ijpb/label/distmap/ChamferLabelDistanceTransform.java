@@ -0,0 +1,215 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.label.distmap;
+
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.algo.AlgoStub;
+
+/**
+ * Computes chamfer distance maps of label images, using a float array for
+ * storing result. Distances are propagated only between pixels sharing the
+ * same label, and pixels with a different label are considered as background.
+ * The result for each label is the same as the chamfer distance map of the
+ * binary image of this label.
+ * 
+ * <p>
+ * Chamfer weights are given either for 3x3 neighborhoods (orthogonal and
+ * diagonal moves), or for 5x5 neighborhoods (orthogonal, diagonal and
+ * knight-moves).
+ * </p>
+ * 
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	float[] floatWeights = ChamferWeights.CHESSKNIGHT.getFloatWeights();
+ *	boolean normalize = true;
+ *	LabelDistanceTransform dt = new ChamferLabelDistanceTransform(floatWeights, normalize);
+ *	ImageProcessor result = dt.distanceMap(labelImage);
+ *}</pre>
+ * 
+ * @see inra.ijpb.label.distmap.ChamferLabelDistanceTransform3D
+ * @see inra.ijpb.binary.distmap.DistanceTransform5x5Float
+ * 
+ * @author David Legland
+ */
+public class ChamferLabelDistanceTransform extends AlgoStub implements
+		LabelDistanceTransform 
+{
+	/**
+	 * The offsets of the neighbors processed during the forward scan, together
+	 * with the index of the corresponding weight. Offsets of the backward scan
+	 * are the opposite.
+	 */
+	private final static int[][] OFFSETS = new int[][] {
+		// orthogonal and diagonal neighbors
+		{-1, -1, 1}, { 0, -1, 0}, {+1, -1, 1}, {-1,  0, 0},
+		// knight-move neighbors
+		{-1, -2, 2}, {+1, -2, 2}, {-2, -1, 2}, {+2, -1, 2},
+	};
+	
+	private float[] weights;
+
+	/**
+	 * Flag for dividing final distance map by the value first weight. 
+	 * This results in distance map values closer to euclidean, but with non integer values. 
+	 */
+	private boolean normalizeMap = true;
+	
+	/**
+	 * Default constructor that specifies the chamfer weights.
+	 * 
+	 * @param weights
+	 *            an array of two weights for orthogonal and diagonal
+	 *            directions, or of three weights when knight-moves are also
+	 *            considered
+	 */
+	public ChamferLabelDistanceTransform(float[] weights)
+	{
+		this(weights, true);
+	}
+
+	/**
+	 * Constructor specifying the chamfer weights and the optional
+	 * normalization.
+	 * 
+	 * @param weights
+	 *            an array of two weights for orthogonal and diagonal
+	 *            directions, or of three weights when knight-moves are also
+	 *            considered
+	 * @param normalize
+	 *            flag indicating whether the final distance map should be
+	 *            normalized by the first weight
+	 */
+	public ChamferLabelDistanceTransform(float[] weights, boolean normalize)
+	{
+		if (weights.length != 2 && weights.length != 3)
+		{
+			throw new IllegalArgumentException("Requires weight array with 2 or 3 elements");
+		}
+		this.weights = weights;
+		this.normalizeMap = normalize;
+	}
+
+	/**
+	 * Computes the chamfer distance map from a label image. Distance is
+	 * computed for each pixel with a non zero label, as the chamfer distance
+	 * to the nearest pixel with a different label. Pixels of labels that fill
+	 * the whole image are set to Float.MAX_VALUE.
+	 * 
+	 * @param labelImage
+	 *            a label image with 0 as background
+	 * @return a new 32-bit image containing:
+	 *         <ul>
+	 *         <li>0 for each background pixel</li>
+	 *         <li>the distance to the nearest pixel with a different label
+	 *         otherwise</li>
+	 *         </ul>
+	 */
+	public ImageProcessor distanceMap(ImageProcessor labelImage) 
+	{
+		// size of image
+		int sizeX = labelImage.getWidth();
+		int sizeY = labelImage.getHeight();
+		
+		// number of neighbors within the forward and backward scans
+		int nOffsets = weights.length == 2 ? 4 : 8;
+
+		// initialize the result image and the array of labels
+		fireStatusChanged(this, "Initialization..."); 
+		int[] labels = new int[sizeX * sizeY];
+		float[] buffer = new float[sizeX * sizeY];
+		for (int i = 0; i < labels.length; i++)
+		{
+			labels[i] = (int) labelImage.getf(i);
+			buffer[i] = labels[i] == 0 ? 0 : Float.MAX_VALUE;
+		}
+		
+		// Two iterations are enough to compute distance map to boundary
+		fireStatusChanged(this, "Forward scan..."); 
+		for (int y = 0; y < sizeY; y++)
+		{
+			fireProgressChanged(this, y, sizeY); 
+			for (int x = 0; x < sizeX; x++)
+			{
+				updatePixel(labels, buffer, sizeX, sizeY, x, y, nOffsets, 1);
+			}
+		}
+		
+		fireStatusChanged(this, "Backward scan..."); 
+		for (int y = sizeY - 1; y >= 0; y--)
+		{
+			fireProgressChanged(this, sizeY - 1 - y, sizeY); 
+			for (int x = sizeX - 1; x >= 0; x--)
+			{
+				updatePixel(labels, buffer, sizeX, sizeY, x, y, nOffsets, -1);
+			}
+		}
+		fireProgressChanged(this, 1, 1); 
+
+		// Normalize values by the first weight
+		if (this.normalizeMap)
+		{
+			fireStatusChanged(this, "Normalize map..."); 
+			for (int i = 0; i < buffer.length; i++)
+			{
+				if (labels[i] != 0)
+				{
+					buffer[i] = buffer[i] / weights[0];
+				}
+			}
+		}
+		
+		fireStatusChanged(this, "");
+		return new FloatProcessor(sizeX, sizeY, buffer);
+	}
+	
+	/**
+	 * Updates the value of the pixel at position (x,y) from the values of its
+	 * neighbors, the neighbors with a different label being considered as
+	 * background. The direction is 1 for the forward scan, and -1 for the
+	 * backward scan.
+	 */
+	private void updatePixel(int[] labels, float[] buffer, int sizeX, int sizeY,
+			int x, int y, int nOffsets, int direction)
+	{
+		int index = y * sizeX + x;
+		int label = labels[index];
+		if (label == 0)
+			return;
+		
+		float value = buffer[index];
+		for (int i = 0; i < nOffsets; i++)
+		{
+			int[] offset = OFFSETS[i];
+			int x2 = x + direction * offset[0];
+			int y2 = y + direction * offset[1];
+			if (x2 < 0 || x2 >= sizeX || y2 < 0 || y2 >= sizeY)
+				continue;
+			
+			int index2 = y2 * sizeX + x2;
+			float value2 = labels[index2] == label ? buffer[index2] : 0;
+			value = Math.min(value, value2 + weights[offset[2]]);
+		}
+		buffer[index] = value;
+	}
+}
@@ -0,0 +1,235 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.label.distmap;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.algo.AlgoStub;
+import inra.ijpb.data.image.Images3D;
+
+/**
+ * Computes 3D chamfer distance maps of label images in a 3x3x3 neighborhood,
+ * using a float array for storing result. Distances are propagated only
+ * between voxels sharing the same label, and voxels with a different label are
+ * considered as background. The result for each label is the same as the
+ * chamfer distance map of the binary image of this label.
+ * 
+ * <p>
+ * As the forward and backward scans are sequential, the computation is not
+ * multi-threaded. The
+ * {@link inra.ijpb.label.distmap.EuclideanLabelDistanceTransform3D} class
+ * computes exact distances in parallel.
+ * </p>
+ * 
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	float[] weights = new float[]{3, 4, 5};
+ *	boolean normalize = true;
+ *	LabelDistanceTransform3D dt = new ChamferLabelDistanceTransform3D(weights, normalize);
+ *	ImageStack result = dt.distanceMap(labelImage);
+ *}</pre>
+ * 
+ * @see inra.ijpb.label.distmap.ChamferLabelDistanceTransform
+ * @see inra.ijpb.binary.distmap.DistanceTransform3DFloat
+ * 
+ * @author David Legland
+ */
+public class ChamferLabelDistanceTransform3D extends AlgoStub implements
+		LabelDistanceTransform3D 
+{
+	/**
+	 * The offsets of the neighbors processed during the forward scan, together
+	 * with the index of the corresponding weight. Offsets of the backward scan
+	 * are the opposite.
+	 */
+	private final static int[][] OFFSETS = new int[][] {
+		// voxels within the (z-1) plane
+		{-1, -1, -1, 2}, { 0, -1, -1, 1}, {+1, -1, -1, 2}, 
+		{-1,  0, -1, 1}, { 0,  0, -1, 0}, {+1,  0, -1, 1}, 
+		{-1, +1, -1, 2}, { 0, +1, -1, 1}, {+1, +1, -1, 2}, 
+		// voxels within the z plane
+		{-1, -1,  0, 1}, { 0, -1,  0, 0}, {+1, -1,  0, 1}, 
+		{-1,  0,  0, 0},
+	};
+	
+	private float[] weights;
+
+	/**
+	 * Flag for dividing final distance map by the value first weight. 
+	 * This results in distance map values closer to euclidean, but with non integer values. 
+	 */
+	private boolean normalizeMap = true;
+	
+	/**
+	 * Default constructor that specifies the chamfer weights.
+	 * 
+	 * @param weights
+	 *            an array of three weights for orthogonal, diagonal, and 3D
+	 *            diagonal directions
+	 */
+	public ChamferLabelDistanceTransform3D(float[] weights)
+	{
+		this(weights, true);
+	}
+
+	/**
+	 * Constructor specifying the chamfer weights and the optional
+	 * normalization.
+	 * 
+	 * @param weights
+	 *            an array of three weights for orthogonal, diagonal, and 3D
+	 *            diagonal directions
+	 * @param normalize
+	 *            flag indicating whether the final distance map should be
+	 *            normalized by the first weight
+	 */
+	public ChamferLabelDistanceTransform3D(float[] weights, boolean normalize)
+	{
+		if (weights.length != 3)
+		{
+			throw new IllegalArgumentException("Requires weight array with 3 elements");
+		}
+		this.weights = weights;
+		this.normalizeMap = normalize;
+	}
+
+	/**
+	 * Computes the chamfer distance map from a 3D label image. Distance is
+	 * computed for each voxel with a non zero label, as the chamfer distance
+	 * to the nearest voxel with a different label. Voxels of labels that fill
+	 * the whole image are set to Float.MAX_VALUE.
+	 * 
+	 * @param labelImage
+	 *            a 3D label image with 0 as background
+	 * @return a new 32-bit 3D image containing:
+	 *         <ul>
+	 *         <li>0 for each background voxel</li>
+	 *         <li>the distance to the nearest voxel with a different label
+	 *         otherwise</li>
+	 *         </ul>
+	 */
+	public ImageStack distanceMap(ImageStack labelImage) 
+	{
+		// size of image
+		int sizeX = labelImage.getWidth();
+		int sizeY = labelImage.getHeight();
+		int sizeZ = labelImage.getSize();
+		
+		// initialize the result image and the array of labels
+		fireStatusChanged(this, "Initialization..."); 
+		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, 32);
+		float[][] buffer = Images3D.getFloatArrays(result);
+		int[][] labels = new int[sizeZ][sizeX * sizeY];
+		for (int z = 0; z < sizeZ; z++)
+		{
+			ImageProcessor slice = labelImage.getProcessor(z + 1);
+			int[] labelSlice = labels[z];
+			float[] resSlice = buffer[z];
+			for (int i = 0; i < labelSlice.length; i++)
+			{
+				labelSlice[i] = (int) slice.getf(i);
+				resSlice[i] = labelSlice[i] == 0 ? 0 : Float.MAX_VALUE;
+			}
+		}
+		
+		// Two iterations are enough to compute distance map to boundary
+		fireStatusChanged(this, "Forward scan..."); 
+		for (int z = 0; z < sizeZ; z++)
+		{
+			fireProgressChanged(this, z, sizeZ); 
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					updateVoxel(labels, buffer, sizeX, sizeY, sizeZ, x, y, z, 1);
+				}
+			}
+		}
+		
+		fireStatusChanged(this, "Backward scan..."); 
+		for (int z = sizeZ - 1; z >= 0; z--)
+		{
+			fireProgressChanged(this, sizeZ - 1 - z, sizeZ); 
+			for (int y = sizeY - 1; y >= 0; y--)
+			{
+				for (int x = sizeX - 1; x >= 0; x--)
+				{
+					updateVoxel(labels, buffer, sizeX, sizeY, sizeZ, x, y, z, -1);
+				}
+			}
+		}
+		fireProgressChanged(this, 1, 1); 
+
+		// Normalize values by the first weight
+		if (this.normalizeMap)
+		{
+			fireStatusChanged(this, "Normalize map..."); 
+			for (int z = 0; z < sizeZ; z++)
+			{
+				int[] labelSlice = labels[z];
+				float[] resSlice = buffer[z];
+				for (int i = 0; i < labelSlice.length; i++)
+				{
+					if (labelSlice[i] != 0)
+					{
+						resSlice[i] = resSlice[i] / weights[0];
+					}
+				}
+			}
+		}
+		
+		fireStatusChanged(this, "");
+		return result;
+	}
+	
+	/**
+	 * Updates the value of the voxel at position (x,y,z) from the values of
+	 * its neighbors, the neighbors with a different label being considered as
+	 * background. The direction is 1 for the forward scan, and -1 for the
+	 * backward scan.
+	 */
+	private void updateVoxel(int[][] labels, float[][] buffer, int sizeX,
+			int sizeY, int sizeZ, int x, int y, int z, int direction)
+	{
+		int index = y * sizeX + x;
+		int label = labels[z][index];
+		if (label == 0)
+			return;
+		
+		float value = buffer[z][index];
+		for (int i = 0; i < OFFSETS.length; i++)
+		{
+			int[] offset = OFFSETS[i];
+			int x2 = x + direction * offset[0];
+			int y2 = y + direction * offset[1];
+			int z2 = z + direction * offset[2];
+			if (x2 < 0 || x2 >= sizeX || y2 < 0 || y2 >= sizeY || z2 < 0 || z2 >= sizeZ)
+				continue;
+			
+			int index2 = y2 * sizeX + x2;
+			float value2 = labels[z2][index2] == label ? buffer[z2][index2] : 0;
+			value = Math.min(value, value2 + weights[offset[3]]);
+		}
+		buffer[z][index] = value;
+	}
+}
@@ -0,0 +1,299 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.label.distmap;
+
+import static inra.ijpb.binary.distmap.EuclideanDistanceTransform.squaredDistances1d;
+import static inra.ijpb.binary.distmap.EuclideanDistanceTransform.toDistance;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ij.Prefs;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.util.ThreadUtil;
+import inra.ijpb.algo.AlgoStub;
+
+/**
+ * Computes exact Euclidean distance maps of label images, using a label-aware
+ * version of the separable algorithm of Felzenszwalb and Huttenlocher.
+ * 
+ * <p>
+ * Along each line, the squared distances are propagated only within the runs
+ * of pixels sharing the same label, the pixels at each end of a run being
+ * considered as features as soon as they belong to the image. This results in
+ * the distance to the nearest pixel with a different label, so that touching
+ * labels are processed independently. Each pass is computed in parallel over
+ * the lines of the corresponding direction.
+ * </p>
+ * 
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	LabelDistanceTransform dt = new EuclideanLabelDistanceTransform();
+ *	ImageProcessor result = dt.distanceMap(labelImage);
+ *}</pre>
+ * 
+ * @see inra.ijpb.label.distmap.EuclideanLabelDistanceTransform3D
+ * @see inra.ijpb.binary.distmap.EuclideanDistanceTransform
+ * 
+ * @author David Legland
+ */
+public class EuclideanLabelDistanceTransform extends AlgoStub implements
+		LabelDistanceTransform 
+{
+	/**
+	 * The spacing between pixels in the x and y directions.
+	 */
+	private double[] spacing = new double[] {1.0, 1.0};
+	
+	/**
+	 * The number of threads used for computation. Default is the number of
+	 * threads specified in ImageJ preferences.
+	 */
+	int nThreads = Prefs.getThreads();
+
+	/**
+	 * Default constructor, assuming isotropic pixels with unit size.
+	 */
+	public EuclideanLabelDistanceTransform() 
+	{
+	}
+
+	/**
+	 * Constructor specifying the size of pixels.
+	 * 
+	 * @param spacingX
+	 *            the pixel size in the x direction
+	 * @param spacingY
+	 *            the pixel size in the y direction
+	 */
+	public EuclideanLabelDistanceTransform(double spacingX, double spacingY) 
+	{
+		if (spacingX <= 0 || spacingY <= 0)
+		{
+			throw new IllegalArgumentException("Pixel spacing must be positive");
+		}
+		this.spacing = new double[] {spacingX, spacingY};
+	}
+
+	/**
+	 * @return the number of threads used for computation
+	 */
+	public int getNumberOfThreads()
+	{
+		return this.nThreads;
+	}
+	
+	/**
+	 * @param nThreads
+	 *            the number of threads used for computation (at least 1)
+	 */
+	public void setNumberOfThreads(int nThreads)
+	{
+		if (nThreads < 1)
+		{
+			throw new IllegalArgumentException("Number of threads must be at least 1");
+		}
+		this.nThreads = nThreads;
+	}
+
+	/**
+	 * Computes the Euclidean distance map from a label image. Distance is
+	 * computed for each pixel with a non zero label, as the distance to the
+	 * nearest pixel with a different label. Pixels of labels that fill the
+	 * whole image are set to Float.MAX_VALUE.
+	 * 
+	 * @param labelImage
+	 *            a label image with 0 as background
+	 * @return a new 32-bit image containing:
+	 *         <ul>
+	 *         <li>0 for each background pixel</li>
+	 *         <li>the distance to the nearest pixel with a different label
+	 *         otherwise</li>
+	 *         </ul>
+	 */
+	public ImageProcessor distanceMap(final ImageProcessor labelImage) 
+	{
+		// size of image
+		final int sizeX = labelImage.getWidth();
+		final int sizeY = labelImage.getHeight();
+		
+		// create the result image, that stores squared distances until the end
+		final float[] buffer = new float[sizeX * sizeY];
+		
+		// Compute squared distances along x, processing each row in parallel
+		fireStatusChanged(this, "Process x direction...");
+		final AtomicInteger rowIndex = new AtomicInteger(0);
+		runThreads(new Runnable()
+		{
+			public void run()
+			{
+				LineBuffers buf = new LineBuffers(sizeX);
+				for (int y = rowIndex.getAndIncrement(); y < sizeY; y = rowIndex.getAndIncrement())
+				{
+					int offset = y * sizeX;
+					for (int x = 0; x < sizeX; x++)
+					{
+						buf.labels[x] = (int) labelImage.getf(offset + x);
+						buf.f[x] = Double.POSITIVE_INFINITY;
+					}
+					squaredDistancesWithinRuns(buf, sizeX, spacing[0]);
+					for (int x = 0; x < sizeX; x++)
+					{
+						buffer[offset + x] = (float) buf.d[x];
+					}
+				}
+			}
+		});
+		fireProgressChanged(this, 1, 2);
+		
+		// Compute squared distances along y, processing each column in
+		// parallel, and convert to distances
+		fireStatusChanged(this, "Process y direction...");
+		final AtomicInteger columnIndex = new AtomicInteger(0);
+		runThreads(new Runnable()
+		{
+			public void run()
+			{
+				LineBuffers buf = new LineBuffers(sizeY);
+				for (int x = columnIndex.getAndIncrement(); x < sizeX; x = columnIndex.getAndIncrement())
+				{
+					for (int y = 0; y < sizeY; y++)
+					{
+						int index = y * sizeX + x;
+						buf.labels[y] = (int) labelImage.getf(index);
+						buf.f[y] = buffer[index];
+					}
+					squaredDistancesWithinRuns(buf, sizeY, spacing[1]);
+					for (int y = 0; y < sizeY; y++)
+					{
+						buffer[y * sizeX + x] = toDistance(buf.d[y]);
+					}
+				}
+			}
+		});
+		
+		fireStatusChanged(this, "");
+		fireProgressChanged(this, 1, 1);
+		return new FloatProcessor(sizeX, sizeY, buffer);
+	}
+	
+	private void runThreads(Runnable task)
+	{
+		Thread[] threads = ThreadUtil.createThreadArray(this.nThreads);
+		for (int i = 0; i < threads.length; i++)
+		{
+			threads[i] = new Thread(task);
+		}
+		ThreadUtil.startAndJoin(threads);
+	}
+
+	/**
+	 * Computes the one-dimensional squared distance transform of a line of a
+	 * label image. The lower envelope of the parabolas is computed
+	 * independently within each run of samples sharing the same label. The
+	 * samples located just before and just after a run, when they exist,
+	 * belong to a different label and are used as features with null value.
+	 * Samples within the background are set to zero.
+	 * 
+	 * @param buf
+	 *            the buffers containing the labels and the values of the
+	 *            sampled function, and used to store the result
+	 * @param n
+	 *            the number of samples
+	 * @param spacing
+	 *            the distance between two consecutive samples
+	 */
+	static final void squaredDistancesWithinRuns(LineBuffers buf, int n, double spacing)
+	{
+		int[] labels = buf.labels;
+		int i0 = 0;
+		while (i0 < n)
+		{
+			// find the end of the current run
+			int label = labels[i0];
+			int i1 = i0 + 1;
+			while (i1 < n && labels[i1] == label)
+			{
+				i1++;
+			}
+			
+			if (label == 0)
+			{
+				for (int i = i0; i < i1; i++)
+				{
+					buf.d[i] = 0;
+				}
+			}
+			else
+			{
+				// copy the run, surrounded by the features at each end
+				int runLength = i1 - i0;
+				buf.runF[0] = i0 > 0 ? 0 : Double.POSITIVE_INFINITY;
+				for (int i = 0; i < runLength; i++)
+				{
+					buf.runF[i + 1] = buf.f[i0 + i];
+				}
+				buf.runF[runLength + 1] = i1 < n ? 0 : Double.POSITIVE_INFINITY;
+				
+				squaredDistances1d(buf.runF, runLength + 2, spacing, buf.runD, buf.v, buf.z);
+				for (int i = 0; i < runLength; i++)
+				{
+					buf.d[i0 + i] = buf.runD[i + 1];
+				}
+			}
+			
+			i0 = i1;
+		}
+	}
+	
+	/**
+	 * The arrays used for processing a line of a label image, allocated once
+	 * for each thread.
+	 */
+	static final class LineBuffers
+	{
+		/** The labels of the samples within the line */
+		final int[] labels;
+		/** The values of the sampled function */
+		final double[] f;
+		/** The result of the distance transform along the line */
+		final double[] d;
+		
+		// buffers for processing a single run, with one sample at each end
+		final double[] runF;
+		final double[] runD;
+		final int[] v;
+		final double[] z;
+		
+		LineBuffers(int n)
+		{
+			this.labels = new int[n];
+			this.f = new double[n];
+			this.d = new double[n];
+			this.runF = new double[n + 2];
+			this.runD = new double[n + 2];
+			this.v = new int[n + 2];
+			this.z = new double[n + 3];
+		}
+	}
+}
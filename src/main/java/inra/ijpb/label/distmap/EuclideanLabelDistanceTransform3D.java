@@ -0,0 +1,258 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.label.distmap;
+
+import static inra.ijpb.binary.distmap.EuclideanDistanceTransform.toDistance;
+import static inra.ijpb.label.distmap.EuclideanLabelDistanceTransform.squaredDistancesWithinRuns;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ij.ImageStack;
+import ij.Prefs;
+import ij.process.ImageProcessor;
+import ij.util.ThreadUtil;
+import inra.ijpb.algo.AlgoStub;
+import inra.ijpb.data.image.Images3D;
+import inra.ijpb.label.distmap.EuclideanLabelDistanceTransform.LineBuffers;
+
+/**
+ * Computes exact Euclidean distance maps of 3D label images, using a
+ * label-aware version of the separable algorithm of Felzenszwalb and
+ * Huttenlocher. Squared distances are computed successively along the x, y and
+ * z directions, within the runs of voxels sharing the same label. The x and y
+ * passes are computed in parallel over the slices, and the z pass in parallel
+ * over the rows.
+ * 
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	Calibration calib = imagePlus.getCalibration();
+ *	LabelDistanceTransform3D dt = new EuclideanLabelDistanceTransform3D(
+ *		calib.pixelWidth, calib.pixelHeight, calib.pixelDepth);
+ *	ImageStack result = dt.distanceMap(imagePlus.getStack());
+ *}</pre>
+ * 
+ * @see inra.ijpb.label.distmap.LabelDistanceTransform3D
+ * @see inra.ijpb.label.distmap.EuclideanLabelDistanceTransform
+ * 
+ * @author David Legland
+ */
+public class EuclideanLabelDistanceTransform3D extends AlgoStub implements
+		LabelDistanceTransform3D 
+{
+	/**
+	 * The spacing between voxels in the x, y and z directions.
+	 */
+	private double[] spacing = new double[] {1.0, 1.0, 1.0};
+	
+	/**
+	 * The number of threads used for computation. Default is the number of
+	 * threads specified in ImageJ preferences.
+	 */
+	int nThreads = Prefs.getThreads();
+
+	/**
+	 * Default constructor, assuming isotropic voxels with unit size.
+	 */
+	public EuclideanLabelDistanceTransform3D() 
+	{
+	}
+
+	/**
+	 * Constructor specifying the size of voxels.
+	 * 
+	 * @param spacingX
+	 *            the voxel size in the x direction
+	 * @param spacingY
+	 *            the voxel size in the y direction
+	 * @param spacingZ
+	 *            the voxel size in the z direction
+	 */
+	public EuclideanLabelDistanceTransform3D(double spacingX, double spacingY, double spacingZ) 
+	{
+		if (spacingX <= 0 || spacingY <= 0 || spacingZ <= 0)
+		{
+			throw new IllegalArgumentException("Voxel spacing must be positive");
+		}
+		this.spacing = new double[] {spacingX, spacingY, spacingZ};
+	}
+
+	/**
+	 * @return the number of threads used for computation
+	 */
+	public int getNumberOfThreads()
+	{
+		return this.nThreads;
+	}
+	
+	/**
+	 * @param nThreads
+	 *            the number of threads used for computation (at least 1)
+	 */
+	public void setNumberOfThreads(int nThreads)
+	{
+		if (nThreads < 1)
+		{
+			throw new IllegalArgumentException("Number of threads must be at least 1");
+		}
+		this.nThreads = nThreads;
+	}
+
+	/**
+	 * Computes the Euclidean distance map from a 3D label image. Distance is
+	 * computed for each voxel with a non zero label, as the distance to the
+	 * nearest voxel with a different label. Voxels of labels that fill the
+	 * whole image are set to Float.MAX_VALUE.
+	 * 
+	 * @param labelImage
+	 *            a 3D label image with 0 as background
+	 * @return a new 32-bit 3D image containing:
+	 *         <ul>
+	 *         <li>0 for each background voxel</li>
+	 *         <li>the distance to the nearest voxel with a different label
+	 *         otherwise</li>
+	 *         </ul>
+	 */
+	public ImageStack distanceMap(final ImageStack labelImage) 
+	{
+		// size of image
+		final int sizeX = labelImage.getWidth();
+		final int sizeY = labelImage.getHeight();
+		final int sizeZ = labelImage.getSize();
+		
+		// keep a reference to the slices of the label image
+		final ImageProcessor[] labelSlices = new ImageProcessor[sizeZ];
+		for (int k = 0; k < sizeZ; k++)
+		{
+			labelSlices[k] = labelImage.getProcessor(k + 1);
+		}
+		
+		// create the result image, that stores squared distances until the end
+		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, 32);
+		final float[][] buffer = Images3D.getFloatArrays(result);
+		
+		// Compute squared distances along x, processing each slice in parallel
+		fireStatusChanged(this, "Process x direction...");
+		final AtomicInteger sliceIndex = new AtomicInteger(0);
+		runThreads(new Runnable()
+		{
+			public void run()
+			{
+				LineBuffers buf = new LineBuffers(sizeX);
+				for (int k = sliceIndex.getAndIncrement(); k < sizeZ; k = sliceIndex.getAndIncrement())
+				{
+					ImageProcessor slice = labelSlices[k];
+					float[] resSlice = buffer[k];
+					for (int y = 0; y < sizeY; y++)
+					{
+						int offset = y * sizeX;
+						for (int x = 0; x < sizeX; x++)
+						{
+							buf.labels[x] = (int) slice.getf(offset + x);
+							buf.f[x] = Double.POSITIVE_INFINITY;
+						}
+						squaredDistancesWithinRuns(buf, sizeX, spacing[0]);
+						for (int x = 0; x < sizeX; x++)
+						{
+							resSlice[offset + x] = (float) buf.d[x];
+						}
+					}
+				}
+			}
+		});
+		fireProgressChanged(this, 1, 3);
+		
+		// Compute squared distances along y, processing each slice in parallel
+		fireStatusChanged(this, "Process y direction...");
+		final AtomicInteger sliceIndex2 = new AtomicInteger(0);
+		runThreads(new Runnable()
+		{
+			public void run()
+			{
+				LineBuffers buf = new LineBuffers(sizeY);
+				for (int k = sliceIndex2.getAndIncrement(); k < sizeZ; k = sliceIndex2.getAndIncrement())
+				{
+					ImageProcessor slice = labelSlices[k];
+					float[] resSlice = buffer[k];
+					for (int x = 0; x < sizeX; x++)
+					{
+						for (int y = 0; y < sizeY; y++)
+						{
+							int index = y * sizeX + x;
+							buf.labels[y] = (int) slice.getf(index);
+							buf.f[y] = resSlice[index];
+						}
+						squaredDistancesWithinRuns(buf, sizeY, spacing[1]);
+						for (int y = 0; y < sizeY; y++)
+						{
+							resSlice[y * sizeX + x] = (float) buf.d[y];
+						}
+					}
+				}
+			}
+		});
+		fireProgressChanged(this, 2, 3);
+
+		// Compute squared distances along z, processing each row in parallel,
+		// and convert to distances
+		fireStatusChanged(this, "Process z direction...");
+		final AtomicInteger rowIndex = new AtomicInteger(0);
+		runThreads(new Runnable()
+		{
+			public void run()
+			{
+				LineBuffers buf = new LineBuffers(sizeZ);
+				for (int y = rowIndex.getAndIncrement(); y < sizeY; y = rowIndex.getAndIncrement())
+				{
+					for (int x = 0; x < sizeX; x++)
+					{
+						int index = y * sizeX + x;
+						for (int k = 0; k < sizeZ; k++)
+						{
+							buf.labels[k] = (int) labelSlices[k].getf(index);
+							buf.f[k] = buffer[k][index];
+						}
+						squaredDistancesWithinRuns(buf, sizeZ, spacing[2]);
+						for (int k = 0; k < sizeZ; k++)
+						{
+							buffer[k][index] = toDistance(buf.d[k]);
+						}
+					}
+				}
+			}
+		});
+		
+		fireStatusChanged(this, "");
+		fireProgressChanged(this, 1, 1);
+		return result;
+	}
+	
+	private void runThreads(Runnable task)
+	{
+		Thread[] threads = ThreadUtil.createThreadArray(this.nThreads);
+		for (int i = 0; i < threads.length; i++)
+		{
+			threads[i] = new Thread(task);
+		}
+		ThreadUtil.startAndJoin(threads);
+	}
+}
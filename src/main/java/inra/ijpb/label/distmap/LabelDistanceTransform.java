@@ -0,0 +1,51 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.label.distmap;
+
+import ij.process.ImageProcessor;
+import inra.ijpb.algo.Algo;
+
+/**
+ * Interface for computing distance maps from label images.
+ * 
+ * @see inra.ijpb.label.distmap.LabelDistanceTransform3D
+ * 
+ * @author David Legland
+ */
+public interface LabelDistanceTransform extends Algo
+{
+	/**
+	 * Computes the distance map from a label image. Distance is computed for
+	 * each pixel with a non zero label, as the distance to the nearest pixel
+	 * with a different label (including background).
+	 * 
+	 * @param labelImage
+	 *            a label image with 0 as background
+	 * @return a new 32-bit image containing:
+	 *         <ul>
+	 *         <li>0 for each background pixel</li>
+	 *         <li>the distance to the nearest pixel with a different label
+	 *         otherwise</li>
+	 *         </ul>
+	 */
+	public ImageProcessor distanceMap(ImageProcessor labelImage);
+}
@@ -0,0 +1,44 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+/**
+ * <p>Computations of distance maps on label images.</p>
+ * 
+ * <p>The distance is computed for each pixel or voxel belonging to a label, as
+ * the distance to the nearest pixel or voxel with a different label, including
+ * the background. Touching labels are therefore processed independently, and
+ * the distance map of all the labels is obtained within a single pass.</p>
+ * 
+ * <p>Contains an exact Euclidean implementation computed in parallel, and an
+ * implementation based on chamfer distances.</p>
+ * 
+ * <p>
+ * Example of use:
+ * <pre><code>
+ *	LabelDistanceTransform dt = new EuclideanLabelDistanceTransform();
+ *	ImageProcessor result = dt.distanceMap(labelImage);
+ * </code></pre>
+ * 
+ * @see inra.ijpb.label.distmap.LabelDistanceTransform
+ * @see inra.ijpb.label.distmap.LabelDistanceTransform3D
+ */
+package inra.ijpb.label.distmap;
+
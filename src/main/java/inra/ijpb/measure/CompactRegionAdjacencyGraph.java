@@ -0,0 +1,630 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.measure;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ij.ImageStack;
+import ij.Prefs;
+import ij.process.ImageProcessor;
+import ij.util.ThreadUtil;
+import inra.ijpb.measure.RegionAdjacencyGraph.LabelPair;
+
+/**
+ * <p>
+ * Region adjacency graph of a label image, stored in primitive arrays.</p>
+ * 
+ * <p>
+ * Adjacencies are defined as in the <code>RegionAdjacencyGraph</code> class:
+ * two regions are adjacent if a voxel of the first region and a voxel of the
+ * second region are separated by two voxels in the X, Y or Z direction. Each
+ * such pair of voxels is called a contact. For each edge of the graph, the
+ * number of contacts is stored. If an intensity image is provided, the mean
+ * intensity of the voxels located between the two voxels of each contact
+ * (usually the watershed line) is also computed.</p>
+ * 
+ * <p>
+ * The image is split into chunks of rows that are processed in parallel.
+ * Edges of each chunk are stored in a hash table with primitive keys
+ * obtained by packing the two labels into a long integer, and the tables are
+ * merged at the end. Edges are then sorted by labels, and a compressed
+ * sparse row structure is used for retrieving the neighbors of each
+ * region.</p>
+ * 
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * CompactRegionAdjacencyGraph graph = CompactRegionAdjacencyGraph.compute(labels, intensity);
+ * for (int e = 0; e < graph.getEdgeCount(); e++)
+ * {
+ *     System.out.println(graph.getLabel1(e) + "-" + graph.getLabel2(e)
+ *         + ": " + graph.getContactCount(e)
+ *         + " contacts, mean " + graph.getMeanBoundaryIntensity(e));
+ * }
+ * }</pre>
+ * 
+ * @see RegionAdjacencyGraph
+ * @author dlegland
+ *
+ */
+public class CompactRegionAdjacencyGraph
+{
+	// ==================================================
+	// Static factories
+
+	/**
+	 * Computes the adjacency graph of a 2D label image.
+	 * 
+	 * @param labels
+	 *            a label image
+	 * @return the region adjacency graph of the label image
+	 */
+	public static final CompactRegionAdjacencyGraph compute(ImageProcessor labels)
+	{
+		return compute(labels, null);
+	}
+	
+	/**
+	 * Computes the adjacency graph of a 2D label image, together with the
+	 * mean intensity of the boundaries between adjacent regions.
+	 * 
+	 * @param labels
+	 *            a label image
+	 * @param intensity
+	 *            an intensity image with the same size as the label image, or
+	 *            null
+	 * @return the region adjacency graph of the label image
+	 */
+	public static final CompactRegionAdjacencyGraph compute(ImageProcessor labels, ImageProcessor intensity)
+	{
+		return compute(toStack(labels), intensity == null ? null : toStack(intensity), Prefs.getThreads());
+	}
+	
+	/**
+	 * Computes the adjacency graph of a 3D label image.
+	 * 
+	 * @param labels
+	 *            a 3D label image
+	 * @return the region adjacency graph of the label image
+	 */
+	public static final CompactRegionAdjacencyGraph compute(ImageStack labels)
+	{
+		return compute(labels, null, Prefs.getThreads());
+	}
+
+	/**
+	 * Computes the adjacency graph of a 3D label image, together with the
+	 * mean intensity of the boundaries between adjacent regions.
+	 * 
+	 * @param labels
+	 *            a 3D label image
+	 * @param intensity
+	 *            an intensity image with the same size as the label image, or
+	 *            null
+	 * @return the region adjacency graph of the label image
+	 */
+	public static final CompactRegionAdjacencyGraph compute(ImageStack labels, ImageStack intensity)
+	{
+		return compute(labels, intensity, Prefs.getThreads());
+	}
+	
+	/**
+	 * Computes the adjacency graph of a 3D label image using the specified
+	 * number of threads.
+	 * 
+	 * @param labels
+	 *            a 3D label image
+	 * @param intensity
+	 *            an intensity image with the same size as the label image, or
+	 *            null
+	 * @param nThreads
+	 *            the number of threads used for computation (at least 1)
+	 * @return the region adjacency graph of the label image
+	 */
+	public static final CompactRegionAdjacencyGraph compute(final ImageStack labels, final ImageStack intensity, int nThreads)
+	{
+		if (nThreads < 1)
+		{
+			throw new IllegalArgumentException("Number of threads must be at least 1");
+		}
+		final int sizeX = labels.getWidth();
+		final int sizeY = labels.getHeight();
+		final int sizeZ = labels.getSize();
+		if (intensity != null && (intensity.getWidth() != sizeX 
+				|| intensity.getHeight() != sizeY || intensity.getSize() != sizeZ))
+		{
+			throw new IllegalArgumentException("Label and intensity images must have the same size");
+		}
+		
+		// retrieve processors of each slice
+		final ImageProcessor[] labelSlices = new ImageProcessor[sizeZ];
+		final ImageProcessor[] intensitySlices = intensity == null ? null : new ImageProcessor[sizeZ];
+		for (int z = 0; z < sizeZ; z++)
+		{
+			labelSlices[z] = labels.getProcessor(z + 1);
+			if (intensity != null)
+				intensitySlices[z] = intensity.getProcessor(z + 1);
+		}
+		
+		// split the rows of the image into contiguous chunks
+		final int nRows = sizeY * sizeZ;
+		final int nChunks = Math.max(Math.min(nThreads, nRows), 1);
+		final EdgeMap[] maps = new EdgeMap[nChunks];
+		final AtomicInteger ai = new AtomicInteger(0);
+		Thread[] threads = ThreadUtil.createThreadArray(nChunks);
+		for (int ithread = 0; ithread < threads.length; ithread++)
+		{
+			threads[ithread] = new Thread()
+			{
+				public void run()
+				{
+					for (int k = ai.getAndIncrement(); k < nChunks; k = ai.getAndIncrement())
+					{
+						int row0 = (int) (((long) nRows * k) / nChunks);
+						int row1 = (int) (((long) nRows * (k + 1)) / nChunks);
+						maps[k] = processRows(labelSlices, intensitySlices, row0, row1);
+					}
+				}
+			};
+		}
+		ThreadUtil.startAndJoin(threads);
+		
+		// merge the edges of each chunk
+		EdgeMap map = maps[0];
+		for (int k = 1; k < nChunks; k++)
+		{
+			map.addAll(maps[k]);
+		}
+		
+		return new CompactRegionAdjacencyGraph(map, intensity != null);
+	}
+	
+	private static final ImageStack toStack(ImageProcessor image)
+	{
+		ImageStack stack = new ImageStack(image.getWidth(), image.getHeight());
+		stack.addSlice(image);
+		return stack;
+	}
+	
+	/**
+	 * Computes the edges associated to the voxels within a range of rows.
+	 * Rows are indexed by y + z * sizeY.
+	 */
+	private static final EdgeMap processRows(ImageProcessor[] labelSlices,
+			ImageProcessor[] intensitySlices, int row0, int row1)
+	{
+		int sizeX = labelSlices[0].getWidth();
+		int sizeY = labelSlices[0].getHeight();
+		int sizeZ = labelSlices.length;
+		EdgeMap map = new EdgeMap();
+		
+		for (int row = row0; row < row1; row++)
+		{
+			int y = row % sizeY;
+			int z = row / sizeY;
+			ImageProcessor slice = labelSlices[z];
+			ImageProcessor intSlice = intensitySlices == null ? null : intensitySlices[z];
+			int offset = y * sizeX;
+			
+			for (int x = 0; x < sizeX; x++)
+			{
+				int index = offset + x;
+				int label = (int) slice.getf(index);
+				if (label == 0)
+					continue;
+				
+				// transition in x direction
+				if (x < sizeX - 2)
+				{
+					int label2 = (int) slice.getf(index + 2);
+					if (label2 != 0 && label2 != label)
+					{
+						map.add(label, label2, intSlice == null ? 0 : intSlice.getf(index + 1));
+					}
+				}
+				
+				// transition in y direction
+				if (y < sizeY - 2)
+				{
+					int label2 = (int) slice.getf(index + 2 * sizeX);
+					if (label2 != 0 && label2 != label)
+					{
+						map.add(label, label2, intSlice == null ? 0 : intSlice.getf(index + sizeX));
+					}
+				}
+				
+				// transition in z direction
+				if (z < sizeZ - 2)
+				{
+					int label2 = (int) labelSlices[z + 2].getf(index);
+					if (label2 != 0 && label2 != label)
+					{
+						map.add(label, label2, intensitySlices == null ? 0 : intensitySlices[z + 1].getf(index));
+					}
+				}
+			}
+		}
+		
+		return map;
+	}
+	
+	
+	// ==================================================
+	// Class variables
+
+	/** The smallest label of each edge, edges being sorted by label pairs. */
+	int[] labels1;
+	
+	/** The largest label of each edge. */
+	int[] labels2;
+	
+	/** The number of contacts between the two regions of each edge. */
+	int[] contactCounts;
+	
+	/** The sum of boundary intensities of each edge. */
+	double[] intensitySums;
+	
+	/** Indicates whether boundary intensities were computed. */
+	boolean hasIntensity;
+	
+	/** The sorted list of labels that have at least one neighbor. */
+	int[] nodeLabels;
+	
+	/**
+	 * The index of the first neighbor of each node within the neighbors
+	 * array. The neighbors of the i-th node are stored between indices
+	 * neighborOffsets[i] (inclusive) and neighborOffsets[i+1] (exclusive).
+	 */
+	int[] neighborOffsets;
+
+	/** The labels of the neighbors of each node, sorted for each node. */
+	int[] neighbors;
+	
+	/** The index of the edge corresponding to each neighbor. */
+	int[] neighborEdges;
+	
+	
+	// ==================================================
+	// Constructor
+
+	private CompactRegionAdjacencyGraph(EdgeMap map, boolean hasIntensity)
+	{
+		// sort edges by packed keys, that correspond to lexicographic order
+		// of label pairs
+		long[] keys = map.keys();
+		Arrays.sort(keys);
+		
+		int nEdges = keys.length;
+		this.labels1 = new int[nEdges];
+		this.labels2 = new int[nEdges];
+		this.contactCounts = new int[nEdges];
+		this.intensitySums = new double[nEdges];
+		this.hasIntensity = hasIntensity;
+		for (int e = 0; e < nEdges; e++)
+		{
+			long key = keys[e];
+			int slot = map.find(key);
+			this.labels1[e] = (int) (key >> 32);
+			this.labels2[e] = (int) key;
+			this.contactCounts[e] = map.counts[slot];
+			this.intensitySums[e] = map.sums[slot];
+		}
+		
+		buildNeighbors();
+	}
+	
+	/**
+	 * Builds the compressed sparse row representation of the adjacencies.
+	 */
+	private void buildNeighbors()
+	{
+		int nEdges = labels1.length;
+		
+		// collect the labels of the nodes
+		int[] allLabels = new int[2 * nEdges];
+		System.arraycopy(labels1, 0, allLabels, 0, nEdges);
+		System.arraycopy(labels2, 0, allLabels, nEdges, nEdges);
+		Arrays.sort(allLabels);
+		int nNodes = 0;
+		for (int i = 0; i < allLabels.length; i++)
+		{
+			if (i == 0 || allLabels[i] != allLabels[i - 1])
+				allLabels[nNodes++] = allLabels[i];
+		}
+		this.nodeLabels = Arrays.copyOf(allLabels, nNodes);
+		
+		// count the neighbors of each node
+		this.neighborOffsets = new int[nNodes + 1];
+		int[] nodes1 = new int[nEdges];
+		int[] nodes2 = new int[nEdges];
+		for (int e = 0; e < nEdges; e++)
+		{
+			nodes1[e] = Arrays.binarySearch(nodeLabels, labels1[e]);
+			nodes2[e] = Arrays.binarySearch(nodeLabels, labels2[e]);
+			neighborOffsets[nodes1[e] + 1]++;
+			neighborOffsets[nodes2[e] + 1]++;
+		}
+		for (int i = 0; i < nNodes; i++)
+		{
+			neighborOffsets[i + 1] += neighborOffsets[i];
+		}
+		
+		// fill neighbor arrays. As edges are sorted by (label1, label2), the
+		// neighbors with smaller labels are added first, in increasing order,
+		// followed by the neighbors with larger labels, in increasing order.
+		this.neighbors = new int[2 * nEdges];
+		this.neighborEdges = new int[2 * nEdges];
+		int[] pos = Arrays.copyOf(neighborOffsets, nNodes);
+		for (int e = 0; e < nEdges; e++)
+		{
+			int p = pos[nodes2[e]]++;
+			neighbors[p] = labels1[e];
+			neighborEdges[p] = e;
+		}
+		for (int e = 0; e < nEdges; e++)
+		{
+			int p = pos[nodes1[e]]++;
+			neighbors[p] = labels2[e];
+			neighborEdges[p] = e;
+		}
+	}
+	
+	
+	// ==================================================
+	// Accessors
+
+	/**
+	 * @return the number of edges of the graph
+	 */
+	public int getEdgeCount()
+	{
+		return this.labels1.length;
+	}
+	
+	/**
+	 * @param edge
+	 *            the index of an edge
+	 * @return the smallest label of the edge
+	 */
+	public int getLabel1(int edge)
+	{
+		return this.labels1[edge];
+	}
+	
+	/**
+	 * @param edge
+	 *            the index of an edge
+	 * @return the largest label of the edge
+	 */
+	public int getLabel2(int edge)
+	{
+		return this.labels2[edge];
+	}
+	
+	/**
+	 * @param edge
+	 *            the index of an edge
+	 * @return the number of contacts between the two regions of the edge
+	 */
+	public int getContactCount(int edge)
+	{
+		return this.contactCounts[edge];
+	}
+	
+	/**
+	 * @param edge
+	 *            the index of an edge
+	 * @return the mean intensity of the voxels between the two regions of
+	 *         the edge, or NaN if no intensity image was provided
+	 */
+	public double getMeanBoundaryIntensity(int edge)
+	{
+		if (!this.hasIntensity)
+			return Double.NaN;
+		return this.intensitySums[edge] / this.contactCounts[edge];
+	}
+	
+	/**
+	 * Returns the index of the edge between two regions.
+	 * 
+	 * @param label1
+	 *            the label of the first region
+	 * @param label2
+	 *            the label of the second region
+	 * @return the index of the edge, or -1 if the regions are not adjacent
+	 */
+	public int findEdge(int label1, int label2)
+	{
+		int node = Arrays.binarySearch(nodeLabels, label1);
+		if (node < 0)
+			return -1;
+		for (int p = neighborOffsets[node]; p < neighborOffsets[node + 1]; p++)
+		{
+			if (neighbors[p] == label2)
+				return neighborEdges[p];
+		}
+		return -1;
+	}
+	
+	/**
+	 * @return the sorted list of labels of the regions with at least one
+	 *         neighbor
+	 */
+	public int[] getNodeLabels()
+	{
+		return Arrays.copyOf(this.nodeLabels, this.nodeLabels.length);
+	}
+	
+	/**
+	 * Returns the labels of the regions adjacent to a given region.
+	 * 
+	 * @param label
+	 *            the label of a region
+	 * @return the sorted labels of the adjacent regions
+	 */
+	public int[] getNeighbors(int label)
+	{
+		int node = Arrays.binarySearch(nodeLabels, label);
+		if (node < 0)
+			return new int[0];
+		return Arrays.copyOfRange(neighbors, neighborOffsets[node], neighborOffsets[node + 1]);
+	}
+	
+	/**
+	 * Converts the edges of this graph into a set of label pairs.
+	 * 
+	 * @return the set of adjacencies within the image
+	 */
+	public Set<LabelPair> getLabelPairs()
+	{
+		TreeSet<LabelPair> set = new TreeSet<LabelPair>();
+		for (int e = 0; e < labels1.length; e++)
+		{
+			set.add(new LabelPair(labels1[e], labels2[e]));
+		}
+		return set;
+	}
+	
+	
+	// ==================================================
+	// Inner class
+
+	/**
+	 * Hash table with open addressing that associates a packed label pair to
+	 * a number of contacts and a sum of intensities.
+	 */
+	private static final class EdgeMap
+	{
+		static final long EMPTY = Long.MIN_VALUE;
+		
+		long[] keys;
+		int[] counts;
+		double[] sums;
+		int size = 0;
+		
+		EdgeMap()
+		{
+			allocate(64);
+		}
+		
+		private void allocate(int capacity)
+		{
+			this.keys = new long[capacity];
+			Arrays.fill(this.keys, EMPTY);
+			this.counts = new int[capacity];
+			this.sums = new double[capacity];
+		}
+		
+		private static final int hash(long key, int mask)
+		{
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32)) & mask;
+		}
+		
+		/**
+		 * Returns the slot containing the key, or the empty slot where it
+		 * should be inserted.
+		 */
+		int find(long key)
+		{
+			int mask = keys.length - 1;
+			int slot = hash(key, mask);
+			while (keys[slot] != EMPTY && keys[slot] != key)
+			{
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+		
+		void add(int label1, int label2, double value)
+		{
+			if (label1 > label2)
+			{
+				int tmp = label1;
+				label1 = label2;
+				label2 = tmp;
+			}
+			add(((long) label1 << 32) | (label2 & 0xFFFFFFFFL), 1, value);
+		}
+		
+		private void add(long key, int count, double sum)
+		{
+			int slot = find(key);
+			if (keys[slot] == EMPTY)
+			{
+				keys[slot] = key;
+				size++;
+				if (2 * size > keys.length)
+				{
+					rehash();
+					slot = find(key);
+				}
+			}
+			counts[slot] += count;
+			sums[slot] += sum;
+		}
+		
+		private void rehash()
+		{
+			long[] oldKeys = this.keys;
+			int[] oldCounts = this.counts;
+			double[] oldSums = this.sums;
+			allocate(2 * oldKeys.length);
+			for (int i = 0; i < oldKeys.length; i++)
+			{
+				if (oldKeys[i] != EMPTY)
+				{
+					int slot = find(oldKeys[i]);
+					keys[slot] = oldKeys[i];
+					counts[slot] = oldCounts[i];
+					sums[slot] = oldSums[i];
+				}
+			}
+		}
+		
+		void addAll(EdgeMap map)
+		{
+			for (int i = 0; i < map.keys.length; i++)
+			{
+				if (map.keys[i] != EMPTY)
+				{
+					add(map.keys[i], map.counts[i], map.sums[i]);
+				}
+			}
+		}
+		
+		long[] keys()
+		{
+			long[] res = new long[size];
+			int n = 0;
+			for (int i = 0; i < keys.length; i++)
+			{
+				if (keys[i] != EMPTY)
+					res[n++] = keys[i];
+			}
+			return res;
+		}
+	}
+}
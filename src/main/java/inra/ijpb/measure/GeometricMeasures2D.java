@@ -27,8 +27,8 @@ import static java.lang.Math.sqrt;
 import ij.IJ;
 import ij.measure.ResultsTable;
 import ij.process.ImageProcessor;
-import inra.ijpb.binary.BinaryImages;
 import inra.ijpb.label.LabelImages;
+import inra.ijpb.label.distmap.ChamferLabelDistanceTransform;
 
 import java.awt.Point;
 import java.util.ArrayList;
@@ -1178,7 +1178,8 @@ public class GeometricMeasures2D
 
 	/**
 	 * Computes radius and center of maximum inscribed disk of each particle. 
-	 * Particles must be disjoint.
+	 * Particles may touch each other, as the radius is computed from the
+	 * distance to the nearest pixel with a different label.
 	 * 
 	 * @param labelImage
 	 *            the input image containing label of particles
@@ -1191,8 +1192,9 @@ public class GeometricMeasures2D
     }
     
 	/**
-	 * Radius of maximum inscribed disk of each particle. Particles must be
-	 * disjoint.
+	 * Radius of maximum inscribed disk of each particle. Particles may touch
+	 * each other, as the radius is computed from the distance to the nearest
+	 * pixel with a different label.
 	 * 
 	 * @param labelImage
 	 *            the input image containing label of particles
@@ -1207,11 +1209,9 @@ public class GeometricMeasures2D
     	int[] labels = LabelImages.findAllLabels(labelImage);
     	int nbLabels = labels.length;
     	
-		// Initialize mask as binarisation of labels
-		ImageProcessor mask = BinaryImages.binarize(labelImage);
-
-		// first distance propagation to find an arbitrary center
-		ImageProcessor distanceMap = BinaryImages.distanceMap(mask);
+		// compute the distance to the nearest pixel with a different label
+		float[] weights = new float[]{5, 7, 11};
+		ImageProcessor distanceMap = new ChamferLabelDistanceTransform(weights).distanceMap(labelImage);
 		
 		// Extract position of maxima
 		Point[] posCenter;
@@ -1269,7 +1269,7 @@ public class GeometricMeasures2D
 		
 		// Init Position and value of maximum for each label
 		Point[] posMax 	= new Point[nbLabel];
-		int[] maxValues = new int[nbLabel];
+		float[] maxValues = new float[nbLabel];
 		for (int i = 0; i < nbLabel; i++) 
 		{
 			maxValues[i] = -1;
@@ -1277,7 +1277,7 @@ public class GeometricMeasures2D
 		}
 		
 		// store current value
-		int value;
+		float value;
 		int index;
 		
 		// iterate on image pixels
@@ -1294,7 +1294,7 @@ public class GeometricMeasures2D
 				index = labelIndex[label];
 				
 				// update values and positions
-				value = image.get(x, y);
+				value = image.getf(x, y);
 				if (value > maxValues[index])
 				{
 					posMax[index].setLocation(x, y);
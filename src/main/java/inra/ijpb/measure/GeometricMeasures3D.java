@@ -29,12 +29,13 @@ import static java.lang.Math.sqrt;
 import static java.lang.Math.toDegrees;
 import ij.IJ;
 import ij.ImageStack;
+import ij.Prefs;
 import ij.measure.ResultsTable;
-import inra.ijpb.binary.BinaryImages;
-import inra.ijpb.data.Cursor3D;
+import ij.process.ImageProcessor;
 import inra.ijpb.label.LabelImages;
+import inra.ijpb.label.LabelRemapper;
+import inra.ijpb.label.distmap.ChamferLabelDistanceTransform3D;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 
 import Jama.Matrix;
@@ -409,7 +410,7 @@ public class GeometricMeasures3D
 	/**
 	 * Computes the Look-up table that is used to compute surface area.
 	 */
-	private final static double[] computeSurfaceAreaLut(double[] resol, int nDirs) 
+	final static double[] computeSurfaceAreaLut(double[] resol, int nDirs) 
 	{
 		// distances between a voxel and its neighbors.
 		// di refer to orthogonal neighbors
@@ -786,7 +787,7 @@ public class GeometricMeasures3D
 	 *            the 3D connectivity, either 6 or 26
 	 * @return a look-up-table with 256 entries
 	 */
-	private static final double[] computeEulerNumberLut(int conn)
+	static final double[] computeEulerNumberLut(int conn)
 	{
 		if (conn == 6)
 		{
@@ -898,83 +899,17 @@ public class GeometricMeasures3D
 		// iterate on configurations of 2-by-2-by-2 voxels within 3D image. 
 		// For each configuration, identify the labels within the configuration.
 		// For each label, compute the equivalent binary configuration index, 
-		// and adds is contribution to the measure associated to the label. 
+		// and increment the histogram of configurations of the label.
+		// Slabs of configurations are processed in parallel. 
+		LabelConfigurationCounter3D counter = new LabelConfigurationCounter3D(labels);
+		int[][] histograms = counter.countConfigurations(image, Prefs.getThreads());
 		
-        // create associative array to know index of each label
-		HashMap<Integer, Integer> labelIndices = LabelImages.mapLabelIndices(labels);
-
-		// initialize the result array containing one measure for each label
-		int nLabels = labels.length;
-        double[] measures = new double[nLabels];
-
-		// size of image
-		int sizeX = image.getWidth();
-		int sizeY = image.getHeight();
-		int sizeZ = image.getSize();
-
-		// for each configuration of 2x2x2 voxels, we identify the labels
-		ArrayList<Integer> localLabels = new ArrayList<Integer>(8);
-		
-        for (int z = 0; z < sizeZ - 1; z++) 
-        {
-        	IJ.showProgress(z, sizeZ);
-        	for (int y = 0; y < sizeY - 1; y++) 
-        	{
-        		for (int x = 0; x < sizeX - 1; x++) 
-        		{
-        			// identify labels in current config
-        			localLabels.clear();
-					for (int z2 = z; z2 <= z + 1; z2++) 
-					{
-						for (int y2 = y; y2 <= y + 1; y2++) 
-						{
-							for (int x2 = x; x2 <= x + 1; x2++) 
-							{
-								int label = (int) image.getVoxel(x2, y2, z2);
-								// do not consider background
-								if (label == 0)
-									continue;
-								// keep only one instance of each label
-								if (!localLabels.contains(label))
-									localLabels.add(label);
-                			}
-            			}
-        			}
-
-					// if there is no label in the local configuration then the
-					// contribution is zero
-					if (localLabels.size() == 0) 
-					{
-						continue;
-					}
-					
-					// For each label, compute binary confi
-					for (int label : localLabels) 
-					{
-	        			// Compute index of local configuration
-	        			int index = 0;
-	        			index += image.getVoxel(x, y, z) 			== label ? 1 : 0;
-	        			index += image.getVoxel(x + 1, y, z) 		== label ? 2 : 0;
-	        			index += image.getVoxel(x, y + 1, z) 		== label ? 4 : 0;
-	        			index += image.getVoxel(x + 1, y + 1, z) 	== label ? 8 : 0;
-	        			index += image.getVoxel(x, y, z + 1) 		== label ? 16 : 0;
-	        			index += image.getVoxel(x + 1, y, z + 1) 	== label ? 32 : 0;
-	        			index += image.getVoxel(x, y + 1, z + 1) 	== label ? 64 : 0;
-	        			index += image.getVoxel(x + 1, y + 1, z + 1) == label ? 128 : 0;
-
-						// add the contribution of the configuration to the
-						// accumulator for the label
-	        			int labelIndex = labelIndices.get(label);
-	        			measures[labelIndex] += lut[index];
-					}
-        		}
-        	}
-        }
-        
-        // reset progress display
+		// reset progress display
 		IJ.showStatus("");
-    	IJ.showProgress(1);
-        return measures;
+		IJ.showProgress(1);
+		
+		// sum up the contribution of each configuration
+		return LabelConfigurationCounter3D.sumOfLutContributions(histograms, lut);
 	}
 	
 	/**
@@ -1253,69 +1188,107 @@ public class GeometricMeasures3D
     	}
 
     	// Create result array
-    	double[][] res = new double[nLabels][9];
+    	double[][] res = new double[nLabels][];
 
     	// compute ellipsoid parameters for each region
-    	Matrix matrix = new Matrix(3, 3);
     	for (int i = 0; i < nLabels; i++) 
     	{
-    		// fill up the 3x3 inertia matrix
-    		matrix.set(0, 0, Ixx[i]);
-    		matrix.set(0, 1, Ixy[i]);
-    		matrix.set(0, 2, Ixz[i]);
-    		matrix.set(1, 0, Ixy[i]);
-    		matrix.set(1, 1, Iyy[i]);
-    		matrix.set(1, 2, Iyz[i]);
-    		matrix.set(2, 0, Ixz[i]);
-    		matrix.set(2, 1, Iyz[i]);
-    		matrix.set(2, 2, Izz[i]);
-
-    		// Extract singular values
-    		SingularValueDecomposition svd = new SingularValueDecomposition(matrix);
-    		Matrix values = svd.getS();
-
-    		// convert singular values to ellipsoid radii 
-    		double r1 = sqrt(5) * sqrt(values.get(0, 0));
-    		double r2 = sqrt(5) * sqrt(values.get(1, 1));
-    		double r3 = sqrt(5) * sqrt(values.get(2, 2));
-
-    		// extract |cos(theta)| 
-    		Matrix mat = svd.getU();
-    		double tmp = hypot(mat.get(1, 1), mat.get(2, 1));
-    		double phi, theta, psi;
-
-    		// avoid dividing by 0
-    		if (tmp > 16 * Double.MIN_VALUE) 
-    		{
-    			// normal case: theta <> 0
-    			psi     = atan2( mat.get(2, 1), mat.get(2, 2));
-    			theta   = atan2(-mat.get(2, 0), tmp);
-    			phi     = atan2( mat.get(1, 0), mat.get(0, 0));
-    		}
-    		else 
-    		{
-    			// theta is around 0 
-    			psi     = atan2(-mat.get(1, 2), mat.get(1,1));
-    			theta   = atan2(-mat.get(2, 0), tmp);
-    			phi     = 0;
-    		}
-
-    		// add coordinates of origin pixel (IJ coordinate system) 
-    		res[i][0] = cx[i] + .5 * resol[0];
-    		res[i][1] = cy[i] + .5 * resol[1];
-    		res[i][2] = cz[i] + .5 * resol[2];
-    		// add scaling parameters 
-    		res[i][3] = r1;
-    		res[i][4] = r2;
-    		res[i][5] = r3;
-    		// add orientation info
-    		res[i][6] = toDegrees(phi);
-    		res[i][7] = toDegrees(theta);
-    		res[i][8] = toDegrees(psi);
+    		res[i] = ellipsoidParameters(cx[i], cy[i], cz[i], 
+    				Ixx[i], Iyy[i], Izz[i], Ixy[i], Ixz[i], Iyz[i], resol);
     	}
 
     	return res;
     }
+
+	/**
+	 * Computes the parameters of the inertia ellipsoid from the centroid and
+	 * the centered second order moments of a region.
+	 * 
+	 * @param cx
+	 *            the x-coordinate of the centroid, in calibrated units
+	 * @param cy
+	 *            the y-coordinate of the centroid, in calibrated units
+	 * @param cz
+	 *            the z-coordinate of the centroid, in calibrated units
+	 * @param Ixx
+	 *            the normalized centered moment along x
+	 * @param Iyy
+	 *            the normalized centered moment along y
+	 * @param Izz
+	 *            the normalized centered moment along z
+	 * @param Ixy
+	 *            the normalized centered moment for x and y
+	 * @param Ixz
+	 *            the normalized centered moment for x and z
+	 * @param Iyz
+	 *            the normalized centered moment for y and z
+	 * @param resol
+	 *            the spatial resolution, as an array of length 3.
+	 * @return the 9 parameters of the ellipsoid: center, radii, and
+	 *         orientation angles in degrees
+	 */
+	static final double[] ellipsoidParameters(double cx, double cy, double cz,
+			double Ixx, double Iyy, double Izz, double Ixy, double Ixz, double Iyz,
+			double[] resol)
+	{
+		double[] res = new double[9];
+		Matrix matrix = new Matrix(3, 3);
+		
+		// fill up the 3x3 inertia matrix
+		matrix.set(0, 0, Ixx);
+		matrix.set(0, 1, Ixy);
+		matrix.set(0, 2, Ixz);
+		matrix.set(1, 0, Ixy);
+		matrix.set(1, 1, Iyy);
+		matrix.set(1, 2, Iyz);
+		matrix.set(2, 0, Ixz);
+		matrix.set(2, 1, Iyz);
+		matrix.set(2, 2, Izz);
+
+		// Extract singular values
+		SingularValueDecomposition svd = new SingularValueDecomposition(matrix);
+		Matrix values = svd.getS();
+
+		// convert singular values to ellipsoid radii 
+		double r1 = sqrt(5) * sqrt(values.get(0, 0));
+		double r2 = sqrt(5) * sqrt(values.get(1, 1));
+		double r3 = sqrt(5) * sqrt(values.get(2, 2));
+
+		// extract |cos(theta)| 
+		Matrix mat = svd.getU();
+		double tmp = hypot(mat.get(1, 1), mat.get(2, 1));
+		double phi, theta, psi;
+
+		// avoid dividing by 0
+		if (tmp > 16 * Double.MIN_VALUE) 
+		{
+			// normal case: theta <> 0
+			psi     = atan2( mat.get(2, 1), mat.get(2, 2));
+			theta   = atan2(-mat.get(2, 0), tmp);
+			phi     = atan2( mat.get(1, 0), mat.get(0, 0));
+		}
+		else 
+		{
+			// theta is around 0 
+			psi     = atan2(-mat.get(1, 2), mat.get(1,1));
+			theta   = atan2(-mat.get(2, 0), tmp);
+			phi     = 0;
+		}
+
+		// add coordinates of origin pixel (IJ coordinate system) 
+		res[0] = cx + .5 * resol[0];
+		res[1] = cy + .5 * resol[1];
+		res[2] = cz + .5 * resol[2];
+		// add scaling parameters 
+		res[3] = r1;
+		res[4] = r2;
+		res[5] = r3;
+		// add orientation info
+		res[6] = toDegrees(phi);
+		res[7] = toDegrees(theta);
+		res[8] = toDegrees(psi);
+		return res;
+	}
     
 	/**
 	 * Computes the three elongation factors for an array of ellipsoids.
@@ -1375,16 +1348,8 @@ public class GeometricMeasures3D
     	int[] labels = LabelImages.findAllLabels(labelImage);
     	int nbLabels = labels.length;
 
-    	// Initialize mask as binarisation of labels
-    	ImageStack mask = BinaryImages.binarize(labelImage);
-
-    	// first distance propagation to find an arbitrary center
-    	ImageStack distanceMap = BinaryImages.distanceMap(mask);
-
-    	// Extract position of maxima
-    	Cursor3D[] posCenter;
-    	posCenter = findPositionOfMaxValues(distanceMap, labelImage, labels);
-    	float[] radii = getValues(distanceMap, posCenter);
+    	// compute position and radius of each inscribed sphere
+    	double[][] spheres = maximumInscribedSphere(labelImage, labels, resol);
 
     	// Create result data table
     	ResultsTable table = new ResultsTable();
@@ -1393,10 +1358,10 @@ public class GeometricMeasures3D
     		// add an entry to the resulting data table
     		table.incrementCounter();
     		table.addValue("Label", labels[i]);
-    		table.addValue("xi", posCenter[i].getX() * resol[0]);
-    		table.addValue("yi", posCenter[i].getY() * resol[1]);
-    		table.addValue("zi", posCenter[i].getZ() * resol[2]);
-    		table.addValue("Radius", radii[i] * resol[0]);
+    		table.addValue("xi", spheres[i][0]);
+    		table.addValue("yi", spheres[i][1]);
+    		table.addValue("zi", spheres[i][2]);
+    		table.addValue("Radius", spheres[i][3]);
     	}
 
     	return table;
@@ -1421,122 +1386,89 @@ public class GeometricMeasures3D
     	// compute max label within image
     	int nbLabels = labels.length;
     	
-    	// Initialize mask as binarisation of labels
-		ImageStack mask = BinaryImages.binarize(labelImage);
-
-		// first distance propagation to find an arbitrary center
-		ImageStack distanceMap = BinaryImages.distanceMap(mask);
+		// compute the distance to the nearest voxel with a different label,
+		// for all labels within a single pass
+		float[] weights = new float[]{3.0f, 4.0f, 5.0f};
+		ImageStack distanceMap = new ChamferLabelDistanceTransform3D(weights).distanceMap(labelImage);
 		
-		// Extract position of maxima
-		Cursor3D[] posCenter;
-		posCenter = findPositionOfMaxValues(distanceMap, labelImage, labels);
-		float[] radii = getValues(distanceMap, posCenter);
+		// find the position of the maximum within each label
+		double[][] spheres = findPositionOfMaxValues(distanceMap, labelImage, labels);
 
 		// Create result data table
 		double[][] res = new double[nbLabels][4];
 		for (int i = 0; i < nbLabels; i++) 
 		{
-			res[i][0] = posCenter[i].getX() * resol[0];
-			res[i][1] = posCenter[i].getY() * resol[1];
-			res[i][2] = posCenter[i].getZ() * resol[2];
-			res[i][3] = radii[i] * resol[0];
+			if (spheres[i][3] < 0)
+			{
+				// label not found within image
+				res[i][0] = -resol[0];
+				res[i][1] = -resol[1];
+				res[i][2] = -resol[2];
+				res[i][3] = Float.NaN;
+				continue;
+			}
+			res[i][0] = spheres[i][0] * resol[0];
+			res[i][1] = spheres[i][1] * resol[1];
+			res[i][2] = spheres[i][2] * resol[2];
+			res[i][3] = spheres[i][3] * resol[0];
 		}
 
 		return res;
     }
 
 	/**
-	 * Finds one position of maximum value within each label.
+	 * Finds the first position of the maximum value within each label, in
+	 * raster order.
 	 * 
-	 * @param image
-	 *            the input image containing the value (for example a distance 
-	 *            map)
-	 * @param labelImage
-	 *            the input image containing label of particles
-	 * @param labels
-	 *            the set of labels contained in the label image
-	 *            
+	 * @return an array with as many rows as the number of labels, containing
+	 *         the coordinates of the position and the maximum value, or -1
+	 *         values if the label was not found
 	 */
-	private final static Cursor3D[] findPositionOfMaxValues(ImageStack image,
+	private final static double[][] findPositionOfMaxValues(ImageStack image,
 			ImageStack labelImage, int[] labels)
 	{
 		int width 	= labelImage.getWidth();
 		int height 	= labelImage.getHeight();
 		int depth 	= labelImage.getSize(); 
 		
-		// Compute value of greatest label
-		int nbLabel = labels.length;
-		int maxLabel = 0;
-		for (int i = 0; i < nbLabel; i++)
-		{
-			maxLabel = Math.max(maxLabel, labels[i]);
-		}
-		
-		// init index of each label
-		// to make correspondence between label value and label index
-		int[] labelIndex = new int[maxLabel+1];
-		for (int i = 0; i < nbLabel; i++)
-		{
-			labelIndex[labels[i]] = i;
-		}
+		// primitive lookup table to retrieve the index of each label
+		LabelRemapper labelIndices = LabelRemapper.indexing(labels);
 		
-		// Init Position and value of maximum for each label
-		Cursor3D[] posMax 	= new Cursor3D[nbLabel];
-		double[] maxValues = new double[nbLabel];
-		for (int i = 0; i < nbLabel; i++) 
+		double[][] res = new double[labels.length][];
+		for (int i = 0; i < labels.length; i++)
 		{
-			maxValues[i] = -1;
-			posMax[i] = new Cursor3D(-1, -1, -1);
+			res[i] = new double[] {-1, -1, -1, -1};
 		}
 		
-		// store current value
-		double value;
-		int index;
-		
-		// iterate on image pixels
 		for (int z = 0; z < depth; z++) 
 		{
+			ImageProcessor labelSlice = labelImage.getProcessor(z + 1);
+			ImageProcessor valueSlice = image.getProcessor(z + 1);
 			for (int y = 0; y < height; y++) 
 			{
 				for (int x = 0; x < width; x++) 
 				{
-					int label = (int) labelImage.getVoxel(x, y, z);
-
-					// do not process pixels that do not belong to particle
-					if (label==0)
+					// do not process voxels that do not belong to a label
+					int label = (int) labelSlice.getf(x, y);
+					if (label == 0)
+						continue;
+					int index = labelIndices.map(label);
+					if (index < 0)
 						continue;
 
-					index = labelIndex[label];
-
-					// update values and positions
-					value = image.getVoxel(x, y, z);
-					if (value > maxValues[index])
+					// update value and position
+					double[] pos = res[index];
+					double value = valueSlice.getf(x, y);
+					if (value > pos[3])
 					{
-						posMax[index].set(x, y, z);
-						maxValues[index] = value;
+						pos[0] = x;
+						pos[1] = y;
+						pos[2] = z;
+						pos[3] = value;
 					}
 				}
 			}
 		}
-
-		return posMax;
-	}
-	
-	/**
-	 * Get values in input image for each specified position.
-	 */
-	private final static float[] getValues(ImageStack image, 
-			Cursor3D[] positions) 
-	{
-		float[] values = new float[positions.length];
-		
-		// iterate on positions
-		for (int i = 0; i < positions.length; i++) 
-		{
-			values[i] = (float) image.getVoxel((int) positions[i].getX(),
-					(int) positions[i].getY(), (int) positions[i].getZ());
-		}
-				
-		return values;
+		return res;
 	}
 }
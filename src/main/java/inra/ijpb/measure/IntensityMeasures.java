@@ -21,9 +21,6 @@
  */
 package inra.ijpb.measure;
 
-import java.util.Collections;
-import java.util.HashMap;
-
 import ij.ImagePlus;
 import ij.measure.ResultsTable;
 
@@ -32,6 +29,10 @@ import ij.measure.ResultsTable;
  * Class to facilitate the calculation of intensity measures by
  * grouping together voxels belonging to the same label.
  * 
+ * All the measures are computed from the statistics accumulated for each
+ * label when the images are read. Median and mode are computed from
+ * histograms for 8-bit and 16-bit images.
+ * 
  * @author Ignacio Arganda-Carreras
  *
  */
@@ -60,19 +61,13 @@ public class IntensityMeasures extends LabeledVoxelsMeasure{
 	 */
 	public ResultsTable getMean()
 	{
-		final int numLabels = objectVoxels.length;
+		final int numLabels = labels.length;
 		
 		double[] mean = new double[ numLabels ];
 		
 		// calculate mean voxel value per object
 		for( int i=0; i<numLabels; i++ )
-		{
-			mean[ i ] = 0;
-			for( final double v : objectVoxels[ i ] )
-				mean[ i ] += v;
-			mean[ i ] /= objectVoxels[ i ].size();			
-		}
-		
+			mean[ i ] = stats.sums[ i ] / stats.counts[ i ];
 		
 		// create data table
 		ResultsTable table = new ResultsTable();
@@ -87,22 +82,33 @@ public class IntensityMeasures extends LabeledVoxelsMeasure{
 
 	/**
 	 * Get median voxel values per label
+	 * 
+	 * For 8-bit and 16-bit images, the median is computed from the
+	 * histograms of the labels. For 32-bit images, the values of all the
+	 * labeled voxels are read again from the image and sorted, which
+	 * requires memory proportional to the number of labeled voxels. The
+	 * sorted values are kept for later calls to getMedian and getMode.
 	 *
 	 * @return result table with median values per label
 	 */
 	public ResultsTable getMedian()
 	{
-		final int numLabels = objectVoxels.length;
-
+		final int numLabels = labels.length;
+		
 		double[] median = new double[ numLabels ];
 
 		// calculate median voxel value per object
-		for( int i=0; i<numLabels; i++ )
+		if( stats.histograms != null )
 		{
-			Collections.sort( objectVoxels[ i ] );
-			median[ i ] = objectVoxels[ i ].get( objectVoxels[ i ].size() / 2 );
+			for( int i=0; i<numLabels; i++ )
+				median[ i ] = stats.histogramMedian( i );
+		}
+		else
+		{
+			float[][] values = getSortedLabelValues();
+			for( int i=0; i<numLabels; i++ )
+				median[ i ] = values[ i ][ values[ i ].length / 2 ];
 		}
-
 
 		// create data table
 		ResultsTable table = new ResultsTable();
@@ -117,40 +123,48 @@ public class IntensityMeasures extends LabeledVoxelsMeasure{
 
 	/**
 	 * Get mode voxel values per label
+	 * 
+	 * For 8-bit and 16-bit images, the mode is computed from the histograms
+	 * of the labels. For 32-bit images, the values of all the labeled voxels
+	 * are read again from the image and sorted, which requires memory
+	 * proportional to the number of labeled voxels. The sorted values are
+	 * kept for later calls to getMedian and getMode.
 	 *
 	 * @return result table with mode values per label
 	 */
 	public ResultsTable getMode()
 	{
-		final int numLabels = objectVoxels.length;
-
+		final int numLabels = labels.length;
+		
 		double[] mode = new double[ numLabels ];
 
-		// calculate mode voxel value per object
-		for( int i=0; i<numLabels; i++ )
+		// calculate mode voxel value per object (smallest value in case of ties)
+		if( stats.histograms != null )
 		{
-			HashMap<Double,Integer> hm = new HashMap< Double,Integer >();
-			int max = 1;
-			double temp = objectVoxels[ i ].get( 0 );
-
-			for(int j=0; j < objectVoxels[ i ].size(); j++ )
+			for( int i=0; i<numLabels; i++ )
+				mode[ i ] = stats.histogramMode( i );
+		}
+		else
+		{
+			float[][] values = getSortedLabelValues();
+			for( int i=0; i<numLabels; i++ )
 			{
-				double val = objectVoxels[ i ].get( j );
-				if( hm.get( val ) != null )
+				float[] vals = values[ i ];
+				int max = 0;
+				for( int j=0; j < vals.length; )
 				{
-					int count = hm.get( val );
-					count++;
-					hm.put( val, count );
-					if( count>max )
+					// identify the run of identical values starting at j
+					int j2 = j + 1;
+					while( j2 < vals.length && vals[ j2 ] == vals[ j ] )
+						j2++;
+					if( j2 - j > max )
 					{
-						max = count;
-						temp = val;
+						max = j2 - j;
+						mode[ i ] = vals[ j ];
 					}
+					j = j2;
 				}
-				else
-					hm.put( val, 1 );
 			}
-			mode[ i ] = temp;
 		}
 
 		// create data table
@@ -171,25 +185,17 @@ public class IntensityMeasures extends LabeledVoxelsMeasure{
 	 */
 	public ResultsTable getSkewness()
 	{
-		final int numLabels = objectVoxels.length;
-
+		final int numLabels = labels.length;
+		
 		double[] skewness = new double[ numLabels ];
 
 		// calculate skewness voxel value per object
 		for( int i=0; i<numLabels; i++ )
 		{
-			final double voxelCount = objectVoxels[ i ].size();
-			double v, v2, sum2 = 0, sum3 = 0;
-			double mean = 0;
-			for( int j=0; j<voxelCount; j++ )
-			{
-				mean += objectVoxels[ i ].get( j );
-				v = objectVoxels[ i ].get( j ) + Double.MIN_VALUE;
-				v2 = v * v;
-				sum2 += v2;
-				sum3 += v * v2;
-			}
-			mean /= voxelCount;
+			final double voxelCount = stats.counts[ i ];
+			final double sum2 = stats.sums2[ i ];
+			final double sum3 = stats.sums3[ i ];
+			double mean = stats.sums[ i ] / voxelCount;
 			double mean2 = mean*mean;
 			double variance = sum2 / voxelCount - mean2;
 			double sDeviation = Math.sqrt( variance );
@@ -214,26 +220,18 @@ public class IntensityMeasures extends LabeledVoxelsMeasure{
 	 */
 	public ResultsTable getKurtosis()
 	{
-		final int numLabels = objectVoxels.length;
-
+		final int numLabels = labels.length;
+		
 		double[] kurtosis = new double[ numLabels ];
 
-		// calculate skewness voxel value per object
+		// calculate kurtosis voxel value per object
 		for( int i=0; i<numLabels; i++ )
 		{
-			final double voxelCount = objectVoxels[ i ].size();
-			double v, v2, sum2 = 0, sum3 = 0, sum4 = 0;
-			double mean = 0;
-			for( int j=0; j<voxelCount; j++ )
-			{
-				mean += objectVoxels[ i ].get( j );
-				v = objectVoxels[ i ].get( j ) + Double.MIN_VALUE;
-				v2 = v * v;
-				sum2 += v2;
-				sum3 += v * v2;
-				sum4 += v2 * v2;
-			}
-			mean /= voxelCount;
+			final double voxelCount = stats.counts[ i ];
+			final double sum2 = stats.sums2[ i ];
+			final double sum3 = stats.sums3[ i ];
+			final double sum4 = stats.sums4[ i ];
+			double mean = stats.sums[ i ] / voxelCount;
 			double mean2 = mean*mean;
 			double variance = sum2 / voxelCount - mean2;
 			kurtosis[ i ] = (((sum4 - 4.0 * mean * sum3 + 6.0 * mean2 * sum2 )
@@ -258,29 +256,13 @@ public class IntensityMeasures extends LabeledVoxelsMeasure{
 	 */
 	public ResultsTable getStdDev()
 	{
-		final int numLabels = objectVoxels.length;
+		final int numLabels = labels.length;
 		
-		double[] mean = new double[ numLabels ];
 		double[] sd = new double[ numLabels ];
 		
-		// calculate mean voxel value per object
+		// calculate standard deviation from the centered sum of squares
 		for( int i=0; i<numLabels; i++ )
-		{
-			mean[ i ] = 0;
-			for( final double v : objectVoxels[ i ] )
-				mean[ i ] += v;
-			mean[ i ] /= objectVoxels[ i ].size();			
-		}
-		
-		// calculate standard deviation
-		for( int i=0; i<numLabels; i++ )
-		{
-			sd[ i ] = 0;
-			for( final double v : objectVoxels[ i ] )
-				sd[ i ] += ( v - mean[ i ] ) * ( v - mean[ i ] );
-			sd[ i ] /= objectVoxels[ i ].size();	
-			sd[ i ] = Math.sqrt( sd[ i ] );
-		}
+			sd[ i ] = Math.sqrt( stats.centeredSums2[ i ] / stats.counts[ i ] );
 		
 		// create data table
 		ResultsTable table = new ResultsTable();
@@ -300,19 +282,13 @@ public class IntensityMeasures extends LabeledVoxelsMeasure{
 	 */
 	public ResultsTable getMax()
 	{
-		final int numLabels = objectVoxels.length;
+		final int numLabels = labels.length;
 		
 		double[] max = new double[ numLabels ];
 		
 		// calculate maximum voxel value per object
 		for( int i=0; i<numLabels; i++ )
-		{
-			max[ i ] = Double.MIN_VALUE;
-			for( final double v : objectVoxels[ i ] )
-				if( v > max[ i ] )
-					max[ i ] = v;
-		}
-		
+			max[ i ] = stats.maxs[ i ];
 		
 		// create data table
 		ResultsTable table = new ResultsTable();
@@ -332,19 +308,13 @@ public class IntensityMeasures extends LabeledVoxelsMeasure{
 	 */
 	public ResultsTable getMin()
 	{
-		final int numLabels = objectVoxels.length;
+		final int numLabels = labels.length;
 		
 		double[] min = new double[ numLabels ];
 		
 		// calculate minimum voxel value per object
 		for( int i=0; i<numLabels; i++ )
-		{
-			min[ i ] = Double.MAX_VALUE;
-			for( final double v : objectVoxels[ i ] )
-				if( v < min[ i ] )
-					min[ i ] = v;
-		}
-		
+			min[ i ] = stats.mins[ i ];
 		
 		// create data table
 		ResultsTable table = new ResultsTable();
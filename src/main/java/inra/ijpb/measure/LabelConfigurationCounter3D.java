@@ -0,0 +1,375 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.measure;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ij.ImageStack;
+import ij.util.ThreadUtil;
+
+/**
+ * Counts, for each label of a 3D label image, the number of occurrences of
+ * each of the 256 binary configurations of 2-by-2-by-2 voxels.
+ * 
+ * Labels are first converted into label indices using a dense look-up table
+ * (or a binary search when label values are too sparse), one slice at a
+ * time. Configurations are then computed from a rolling window of two
+ * converted slices. The stack is split into slabs of configurations
+ * processed in parallel, each thread accumulating its own histograms, that
+ * are merged at the end.
+ * 
+ * @see GeometricMeasures3D#surfaceAreaCrofton(ImageStack, int[], double[], int)
+ * @see GeometricMeasures3D#eulerNumber(ImageStack, int[], int)
+ * @see RegionAnalyzer3D
+ * 
+ * @author David Legland
+ */
+final class LabelConfigurationCounter3D
+{
+	/**
+	 * The largest label value for which a dense look-up table is always
+	 * used.
+	 */
+	private static final int MAX_DENSE_LABEL = 1 << 20;
+	
+	/** The labels to process. */
+	int[] labels;
+	
+	/**
+	 * The look-up table from label value to label index plus one, or null if
+	 * label values are too sparse.
+	 */
+	int[] labelLut = null;
+	
+	/** The sorted label values, used when look-up table is null. */
+	int[] sortedLabels;
+	
+	/** The label index plus one corresponding to each sorted label value. */ 
+	int[] sortedIndices;
+
+	
+	/**
+	 * Prepares the counting of configurations for the specified labels.
+	 * Voxels with a label that is not in the list are considered as
+	 * background.
+	 * 
+	 * @param labels
+	 *            the list of labels to process
+	 */
+	LabelConfigurationCounter3D(int[] labels)
+	{
+		this.labels = labels;
+		int nLabels = labels.length;
+		
+		int maxLabel = 0;
+		for (int label : labels)
+		{
+			maxLabel = Math.max(maxLabel, label);
+		}
+		
+		if (maxLabel < Math.max(MAX_DENSE_LABEL, 8 * nLabels))
+		{
+			labelLut = new int[maxLabel + 1];
+			for (int i = 0; i < nLabels; i++)
+			{
+				if (labels[i] > 0)
+					labelLut[labels[i]] = i + 1;
+			}
+		}
+		else
+		{
+			sortedLabels = Arrays.copyOf(labels, nLabels);
+			Arrays.sort(sortedLabels);
+			sortedIndices = new int[nLabels];
+			for (int i = 0; i < nLabels; i++)
+			{
+				sortedIndices[Arrays.binarySearch(sortedLabels, labels[i])] = i + 1;
+			}
+		}
+	}
+	
+	/**
+	 * Computes the configuration histograms of each label, using the
+	 * specified number of threads.
+	 * 
+	 * @param image
+	 *            the 3D label image
+	 * @param nThreads
+	 *            the number of threads to use
+	 * @return for each label, the number of occurrences of each
+	 *         configuration, or null if the label does not appear in any
+	 *         configuration
+	 */
+	int[][] countConfigurations(final ImageStack image, int nThreads)
+	{
+		final int sizeZ = image.getSize();
+		final int nLabels = labels.length;
+		
+		// each slab processes the configurations whose first slice is
+		// between z0 and z1
+		final int nSlabs = Math.max(Math.min(nThreads, sizeZ - 1), 1);
+		final int[][][] slabHistograms = new int[nSlabs][][];
+		final AtomicInteger ai = new AtomicInteger(0);
+		Thread[] threads = ThreadUtil.createThreadArray(nSlabs);
+		for (int ithread = 0; ithread < threads.length; ithread++)
+		{
+			threads[ithread] = new Thread()
+			{
+				public void run()
+				{
+					for (int k = ai.getAndIncrement(); k < nSlabs; k = ai.getAndIncrement())
+					{
+						int z0 = (int) (((long) (sizeZ - 1) * k) / nSlabs);
+						int z1 = (int) (((long) (sizeZ - 1) * (k + 1)) / nSlabs);
+						int[][] histograms = new int[nLabels][];
+						countConfigurations(image, z0, z1, histograms);
+						slabHistograms[k] = histograms;
+					}
+				}
+			};
+		}
+		ThreadUtil.startAndJoin(threads);
+		
+		int[][] histograms = slabHistograms[0];
+		for (int k = 1; k < nSlabs; k++)
+		{
+			merge(histograms, slabHistograms[k]);
+		}
+		return histograms;
+	}
+	
+	/**
+	 * Counts the configurations whose first slice is between z0 (inclusive)
+	 * and z1 (exclusive), and adds them to the histograms.
+	 */
+	void countConfigurations(ImageStack image, int z0, int z1, int[][] histograms)
+	{
+		int sizeZ = image.getSize();
+		z1 = Math.min(z1, sizeZ - 1);
+		if (z0 >= z1)
+			return;
+		
+		int sliceSize = image.getWidth() * image.getHeight();
+		int[] indices1 = labelIndices(image, z0, new int[sliceSize]);
+		int[] indices2 = new int[sliceSize];
+		for (int z = z0; z < z1; z++)
+		{
+			labelIndices(image, z + 1, indices2);
+			countConfigurations(indices1, indices2, image.getWidth(), image.getHeight(), histograms);
+			
+			// roll the window of slices
+			int[] tmp = indices1;
+			indices1 = indices2;
+			indices2 = tmp;
+		}
+	}
+
+	/**
+	 * Converts the labels of a slice into label indices plus one, using 0 for
+	 * background and labels that are not processed.
+	 * 
+	 * @param image
+	 *            the 3D label image
+	 * @param z
+	 *            the 0-based index of the slice
+	 * @param buffer
+	 *            the array used to store the label indices
+	 * @return the buffer array
+	 */
+	int[] labelIndices(ImageStack image, int z, int[] buffer)
+	{
+		Object pixels = image.getPixels(z + 1);
+		int n = buffer.length;
+		if (pixels instanceof byte[])
+		{
+			byte[] array = (byte[]) pixels;
+			for (int i = 0; i < n; i++)
+			{
+				buffer[i] = indexOf(array[i] & 0x00FF);
+			}
+		}
+		else if (pixels instanceof short[])
+		{
+			short[] array = (short[]) pixels;
+			for (int i = 0; i < n; i++)
+			{
+				buffer[i] = indexOf(array[i] & 0x00FFFF);
+			}
+		}
+		else if (pixels instanceof float[])
+		{
+			float[] array = (float[]) pixels;
+			for (int i = 0; i < n; i++)
+			{
+				buffer[i] = indexOf((int) array[i]);
+			}
+		}
+		else
+		{
+			int sizeX = image.getWidth();
+			for (int i = 0; i < n; i++)
+			{
+				buffer[i] = indexOf((int) image.getVoxel(i % sizeX, i / sizeX, z));
+			}
+		}
+		return buffer;
+	}
+	
+	/**
+	 * Returns the index plus one of the specified label, or 0 if the label
+	 * is not processed.
+	 */
+	private int indexOf(int label)
+	{
+		if (label <= 0)
+			return 0;
+		if (labelLut != null)
+			return label < labelLut.length ? labelLut[label] : 0;
+		
+		int pos = Arrays.binarySearch(sortedLabels, label);
+		return pos < 0 ? 0 : sortedIndices[pos];
+	}
+
+	/**
+	 * Counts the configurations between two consecutive slices of label
+	 * indices.
+	 */
+	static void countConfigurations(int[] indices1, int[] indices2, 
+			int sizeX, int sizeY, int[][] histograms)
+	{
+		int[] local = new int[8];
+		for (int y = 0; y < sizeY - 1; y++)
+		{
+			int offset = y * sizeX;
+			for (int x = 0; x < sizeX - 1; x++, offset++)
+			{
+				local[0] = indices1[offset];
+				local[1] = indices1[offset + 1];
+				local[2] = indices1[offset + sizeX];
+				local[3] = indices1[offset + sizeX + 1];
+				local[4] = indices2[offset];
+				local[5] = indices2[offset + 1];
+				local[6] = indices2[offset + sizeX];
+				local[7] = indices2[offset + sizeX + 1];
+				
+				// process the most frequent case of uniform configurations
+				int first = local[0];
+				if (first == local[1] && first == local[2] && first == local[3]
+						&& first == local[4] && first == local[5] 
+						&& first == local[6] && first == local[7])
+				{
+					if (first != 0)
+						increment(histograms, first - 1, 255);
+					continue;
+				}
+				
+				for (int i = 0; i < 8; i++)
+				{
+					int index = local[i];
+					if (index == 0)
+						continue;
+					
+					// compute the configuration index, and skip labels already
+					// processed
+					int config = 1 << i;
+					boolean isNew = true;
+					for (int j = 0; j < 8; j++)
+					{
+						if (j != i && local[j] == index)
+						{
+							if (j < i)
+							{
+								isNew = false;
+								break;
+							}
+							config |= 1 << j;
+						}
+					}
+					if (isNew)
+						increment(histograms, index - 1, config);
+				}
+			}
+		}
+	}
+	
+	private static final void increment(int[][] histograms, int index, int config)
+	{
+		int[] histo = histograms[index];
+		if (histo == null)
+		{
+			histo = new int[256];
+			histograms[index] = histo;
+		}
+		histo[config]++;
+	}
+	
+	/**
+	 * Adds the second array of histograms to the first one.
+	 */
+	static void merge(int[][] histograms, int[][] histograms2)
+	{
+		for (int i = 0; i < histograms.length; i++)
+		{
+			int[] histo2 = histograms2[i];
+			if (histo2 == null)
+				continue;
+			if (histograms[i] == null)
+			{
+				histograms[i] = histo2;
+				continue;
+			}
+			int[] histo = histograms[i];
+			for (int c = 0; c < 256; c++)
+			{
+				histo[c] += histo2[c];
+			}
+		}
+	}
+
+	/**
+	 * Sums the contributions of the configurations of each label.
+	 * 
+	 * @param histograms
+	 *            the configuration histograms of each label
+	 * @param lut
+	 *            the contribution of each of the 256 configurations
+	 * @return the sum of contributions for each label
+	 */
+	static double[] sumOfLutContributions(int[][] histograms, double[] lut)
+	{
+		double[] measures = new double[histograms.length];
+		for (int i = 0; i < histograms.length; i++)
+		{
+			int[] histo = histograms[i];
+			if (histo == null)
+				continue;
+			double sum = 0;
+			for (int c = 1; c < 256; c++)
+			{
+				sum += histo[c] * lut[c];
+			}
+			measures[i] = sum;
+		}
+		return measures;
+	}
+}
@@ -0,0 +1,293 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.measure;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates statistics of the voxel values within each label, using
+ * primitive arrays indexed by the label index. The memory footprint depends
+ * on the number of labels, not on the number of voxels.
+ * 
+ * For each label, the accumulator stores the number of voxels, the sums of
+ * the values and of their powers up to four, the centered sum of squares
+ * (updated with the algorithm of Welford), and the extreme values. When
+ * values are integers (8-bit or 16-bit images), the histogram of the values
+ * is also stored, restricted to the range of values observed within each
+ * label, making it possible to compute exact median and mode.
+ * 
+ * Accumulators computed on different parts of an image can be combined with
+ * the <code>merge</code> method.
+ * 
+ * @author Ignacio Arganda-Carreras
+ *
+ */
+class LabelValueAccumulator
+{
+	/** number of voxels of each label */
+	int[] counts;
+	/** sum of the values of each label */
+	double[] sums;
+	/** sum of the squared values of each label */
+	double[] sums2;
+	/** sum of the cubed values of each label */
+	double[] sums3;
+	/** sum of the fourth power of the values of each label */
+	double[] sums4;
+	/** running mean of the values of each label, used by Welford update */
+	double[] means;
+	/** sum of squared differences to the mean of each label */
+	double[] centeredSums2;
+	/** minimum value of each label */
+	double[] mins;
+	/** maximum value of each label */
+	double[] maxs;
+	
+	/** smallest value represented by the histogram of each label */
+	int[] histogramOffsets;
+	/** histogram of the values of each label, or null for float values */
+	int[][] histograms;
+	/** total number of bins of the histograms */
+	long histogramBinCount = 0;
+	
+	/**
+	 * Creates a new accumulator for the specified number of labels.
+	 * 
+	 * @param numLabels
+	 *            the number of labels
+	 * @param integerValues
+	 *            true if the histograms of integer values have to be computed
+	 */
+	LabelValueAccumulator( int numLabels, boolean integerValues )
+	{
+		this.counts = new int[ numLabels ];
+		this.sums = new double[ numLabels ];
+		this.sums2 = new double[ numLabels ];
+		this.sums3 = new double[ numLabels ];
+		this.sums4 = new double[ numLabels ];
+		this.means = new double[ numLabels ];
+		this.centeredSums2 = new double[ numLabels ];
+		this.mins = new double[ numLabels ];
+		this.maxs = new double[ numLabels ];
+		Arrays.fill( this.mins, Double.POSITIVE_INFINITY );
+		Arrays.fill( this.maxs, Double.NEGATIVE_INFINITY );
+		
+		if( integerValues )
+		{
+			this.histogramOffsets = new int[ numLabels ];
+			this.histograms = new int[ numLabels ][];
+		}
+	}
+	
+	/**
+	 * Adds a value to the statistics of a label.
+	 * 
+	 * @param index
+	 *            the index of the label
+	 * @param value
+	 *            the value of the voxel
+	 */
+	final void add( int index, double value )
+	{
+		int n = ++counts[ index ];
+		sums[ index ] += value;
+		double v2 = value * value;
+		sums2[ index ] += v2;
+		sums3[ index ] += v2 * value;
+		sums4[ index ] += v2 * v2;
+		
+		double delta = value - means[ index ];
+		means[ index ] += delta / n;
+		centeredSums2[ index ] += delta * ( value - means[ index ] );
+		
+		if( value < mins[ index ] )
+			mins[ index ] = value;
+		if( value > maxs[ index ] )
+			maxs[ index ] = value;
+		
+		if( histograms != null )
+			addToHistogram( index, (int) value );
+	}
+	
+	/**
+	 * Increments the histogram bin of a label, enlarging the histogram if the
+	 * value is outside of the current range.
+	 */
+	private final void addToHistogram( int index, int value )
+	{
+		int[] histo = histograms[ index ];
+		int bin = value - histogramOffsets[ index ];
+		if( histo == null || bin < 0 || bin >= histo.length )
+		{
+			histo = ensureHistogramRange( index, value, value );
+			bin = value - histogramOffsets[ index ];
+		}
+		histo[ bin ]++;
+	}
+	
+	/**
+	 * Enlarges the histogram of a label such that it contains the specified
+	 * range of values. The size of the histogram is at least doubled to
+	 * amortize the copies.
+	 */
+	private final int[] ensureHistogramRange( int index, int minValue, int maxValue )
+	{
+		int[] histo = histograms[ index ];
+		if( histo == null )
+		{
+			histograms[ index ] = new int[ maxValue - minValue + 1 ];
+			histogramOffsets[ index ] = minValue;
+			histogramBinCount += maxValue - minValue + 1;
+			return histograms[ index ];
+		}
+		
+		int offset = histogramOffsets[ index ];
+		if( minValue >= offset && maxValue < offset + histo.length )
+			return histo;
+		
+		int newMin = Math.min( minValue, offset );
+		int newMax = Math.max( maxValue, offset + histo.length - 1 );
+		int newSize = Math.max( newMax - newMin + 1, 2 * histo.length );
+		if( minValue < offset )
+			newMin = Math.max( Math.min( newMin, newMax - newSize + 1 ), 0 );
+		else
+			newMax = newMin + newSize - 1;
+		
+		int[] newHisto = new int[ newMax - newMin + 1 ];
+		System.arraycopy( histo, 0, newHisto, offset - newMin, histo.length );
+		histogramBinCount += newHisto.length - histo.length;
+		histograms[ index ] = newHisto;
+		histogramOffsets[ index ] = newMin;
+		return newHisto;
+	}
+	
+	/**
+	 * Adds the statistics computed by another accumulator with the same
+	 * number of labels to the statistics of this accumulator, including the
+	 * histograms.
+	 * 
+	 * @param other
+	 *            another accumulator
+	 */
+	void merge( LabelValueAccumulator other )
+	{
+		for( int i = 0; i < counts.length; i++ )
+		{
+			int n2 = other.counts[ i ];
+			if( n2 == 0 )
+				continue;
+			int n1 = counts[ i ];
+			int n = n1 + n2;
+			
+			// combine centered sums of squares (Chan et al.)
+			double delta = other.means[ i ] - means[ i ];
+			centeredSums2[ i ] += other.centeredSums2[ i ] + delta * delta * ( (double) n1 * n2 ) / n;
+			means[ i ] += delta * n2 / n;
+			
+			counts[ i ] = n;
+			sums[ i ] += other.sums[ i ];
+			sums2[ i ] += other.sums2[ i ];
+			sums3[ i ] += other.sums3[ i ];
+			sums4[ i ] += other.sums4[ i ];
+			mins[ i ] = Math.min( mins[ i ], other.mins[ i ] );
+			maxs[ i ] = Math.max( maxs[ i ], other.maxs[ i ] );
+		}
+		
+		if( histograms != null )
+			mergeHistograms( other );
+	}
+	
+	/**
+	 * Adds the histograms of another accumulator with the same number of
+	 * labels to the histograms of this accumulator. Other statistics are not
+	 * modified.
+	 * 
+	 * @param other
+	 *            another accumulator
+	 */
+	void mergeHistograms( LabelValueAccumulator other )
+	{
+		for( int i = 0; i < histograms.length; i++ )
+		{
+			int[] histo2 = other.histograms[ i ];
+			if( histo2 == null )
+				continue;
+			int offset2 = other.histogramOffsets[ i ];
+			int[] histo = ensureHistogramRange( i, offset2, offset2 + histo2.length - 1 );
+			int shift = offset2 - histogramOffsets[ i ];
+			for( int bin = 0; bin < histo2.length; bin++ )
+				histo[ bin + shift ] += histo2[ bin ];
+		}
+	}
+	
+	/**
+	 * Removes the histograms of all labels, for example after they were
+	 * merged into another accumulator. Other statistics are not modified.
+	 */
+	void clearHistograms()
+	{
+		Arrays.fill( histograms, null );
+		histogramBinCount = 0;
+	}
+	
+	/**
+	 * Computes the median value of a label from its histogram. For an even
+	 * number of voxels, the largest of the two middle values is returned.
+	 * 
+	 * @param index
+	 *            the index of the label
+	 * @return the median value within the label
+	 */
+	double histogramMedian( int index )
+	{
+		int[] histo = histograms[ index ];
+		int rank = counts[ index ] / 2;
+		int cumSum = 0;
+		for( int bin = 0; bin < histo.length; bin++ )
+		{
+			cumSum += histo[ bin ];
+			if( cumSum > rank )
+				return histogramOffsets[ index ] + bin;
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * Computes the most frequent value of a label from its histogram. In case
+	 * of ties, the smallest value is returned.
+	 * 
+	 * @param index
+	 *            the index of the label
+	 * @return the mode of the values within the label
+	 */
+	double histogramMode( int index )
+	{
+		int[] histo = histograms[ index ];
+		int maxBin = 0;
+		for( int bin = 1; bin < histo.length; bin++ )
+		{
+			if( histo[ bin ] > histo[ maxBin ] )
+				maxBin = bin;
+		}
+		return histogramOffsets[ index ] + maxBin;
+	}
+}
@@ -23,28 +23,49 @@ package inra.ijpb.measure;
 
 import ij.IJ;
 import ij.ImagePlus;
+import ij.ImageStack;
+import ij.Prefs;
 import ij.measure.Calibration;
 import ij.measure.ResultsTable;
 import ij.process.ImageProcessor;
-import inra.ijpb.label.LabelImages;
+import ij.util.ThreadUtil;
+import inra.ijpb.label.LabelCensus;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Mother class to extract measures from pairs of grayscale and 
  * labeled images.
+ * 
+ * Statistics of the voxel values are accumulated for each label in a single
+ * parallel scan of the images, using primitive arrays whose size depends on
+ * the number of labels. For 8-bit and 16-bit images, histograms of the
+ * values within each label are also computed. Each thread merges its
+ * histograms into a single shared set of histograms as soon as they exceed
+ * a fixed number of bins, such that the memory used by the histograms does
+ * not grow with the number of threads.
+ * 
  * @author Ignacio Arganda-Carreras
  *
  */
 public class LabeledVoxelsMeasure {
 
-	/** list of voxels grouped by label */
-	ArrayList<Double>[] objectVoxels;
+	/** number of histogram bins a thread can use before merging them */
+	static final int MAX_THREAD_HISTOGRAM_BINS = 1 << 20;
+
+	/** statistics of the voxel values, grouped by label index */
+	LabelValueAccumulator stats;
 	/** list of unique labels */
 	int[] labels;
 	/** calibration of input image */
 	Calibration calibration;
+	/** input (grayscale) image */
+	ImageStack inputStack;
+	/** label image */
+	ImageStack labelStack;
+	/** voxel values grouped by label, computed on demand for float images */
+	float[][] objectValues = null;
 	
 	/**
 	 * Initialize the measurements by reading the input (grayscale) 
@@ -53,7 +74,6 @@ public class LabeledVoxelsMeasure {
 	 * @param inputImage input (grayscale) image
 	 * @param labelImage label image (labels are positive integer values)
 	 */
-	@SuppressWarnings("unchecked")
 	public LabeledVoxelsMeasure(
 			ImagePlus inputImage,
 			ImagePlus labelImage )
@@ -65,49 +85,135 @@ public class LabeledVoxelsMeasure {
 			throw new IllegalArgumentException("Input and label images must have the same size");
 		
 		this.calibration = inputImage.getCalibration();
+		this.inputStack = inputImage.getImageStack();
+		this.labelStack = labelImage.getImageStack();
 
-		this.labels = LabelImages.findAllLabels( labelImage.getImageStack() );
-		int numLabels = labels.length;
-		
-		// create associative hash table to know the index of each label
-		HashMap<Integer, Integer> labelIndices = new HashMap<Integer, Integer>();
-        for (int i = 0; i < numLabels; i++) {
-        	labelIndices.put( labels[i], i );
-        }
-
-		// initialize lists of voxels per object
-        // unchecked cast
-		objectVoxels = (ArrayList<Double>[]) new ArrayList[ numLabels ];
-
-		for( int i=0; i<numLabels; i++ )
-			objectVoxels[ i ] = new ArrayList<Double>();
-		
-		//final long start = System.currentTimeMillis();		
+		this.labels = LabelCensus.compute( labelImage ).getLabels();
+		final int numLabels = labels.length;
+		final boolean integerValues = inputImage.getBitDepth() == 8 || inputImage.getBitDepth() == 16;
 		
 		IJ.showStatus( "Extracting voxel information..." );
 		
-		// read voxel intensities for each object
-		final int numSlices = inputImage.getImageStackSize();
-		for( int z=1; z <= numSlices; z++ )
+		// split the stack into slabs of contiguous slices processed in parallel
+		final int numSlices = inputStack.getSize();
+		final int numSlabs = Math.max( Math.min( Prefs.getThreads(), numSlices ), 1 );
+		final LabelValueAccumulator[] slabStats = new LabelValueAccumulator[ numSlabs ];
+		final LabelValueAccumulator histograms = new LabelValueAccumulator( numLabels, integerValues );
+		final AtomicInteger ai = new AtomicInteger( 0 );
+		final AtomicInteger progress = new AtomicInteger( 0 );
+		
+		Thread[] threads = ThreadUtil.createThreadArray( numSlabs );
+		for( int ithread = 0; ithread < threads.length; ithread++ )
 		{
-			final ImageProcessor grayIP = inputImage.getImageStack().getProcessor( z );
-			final ImageProcessor labelsIP = labelImage.getImageStack().getProcessor( z );
-
-			for( int x = 0; x<width; x++ )
-				for( int y = 0; y<height; y++ )
+			threads[ ithread ] = new Thread()
+			{
+				public void run()
 				{
-					int labelValue = (int) labelsIP.getf( x, y );
-					if( labelValue != 0)
-						objectVoxels[ labelIndices.get( labelValue ) ].add( (double) grayIP.getf(x, y) );
+					for( int k = ai.getAndIncrement(); k < numSlabs; k = ai.getAndIncrement() )
+					{
+						LabelValueAccumulator acc = new LabelValueAccumulator( numLabels, integerValues );
+						int z0 = (int) ( ( (long) numSlices * k ) / numSlabs );
+						int z1 = (int) ( ( (long) numSlices * ( k + 1 ) ) / numSlabs );
+						for( int z = z0 + 1; z <= z1; z++ )
+						{
+							accumulateSlice( inputStack.getProcessor( z ), labelStack.getProcessor( z ), acc );
+							if( integerValues && ( acc.histogramBinCount > MAX_THREAD_HISTOGRAM_BINS || z == z1 ) )
+							{
+								// histogram counts do not depend on the merge order
+								synchronized( histograms )
+								{
+									histograms.mergeHistograms( acc );
+								}
+								acc.clearHistograms();
+							}
+							IJ.showProgress( progress.incrementAndGet(), numSlices );
+						}
+						slabStats[ k ] = acc;
+					}
 				}
-			
-			IJ.showProgress( z, numSlices );
+			};
+		}
+		ThreadUtil.startAndJoin( threads );
+
+		// combine the statistics of each slab, always in the same order
+		this.stats = slabStats[ 0 ];
+		for( int k = 1; k < numSlabs; k++ )
+			this.stats.merge( slabStats[ k ] );
+		if( integerValues )
+		{
+			this.stats.histograms = histograms.histograms;
+			this.stats.histogramOffsets = histograms.histogramOffsets;
+			this.stats.histogramBinCount = histograms.histogramBinCount;
 		}
 		
 		IJ.showProgress( 1.0 );
+	}
+	
+	/**
+	 * Adds the values of the voxels of a slice to the statistics of their
+	 * labels.
+	 */
+	private void accumulateSlice(
+			ImageProcessor grayIP,
+			ImageProcessor labelsIP,
+			LabelValueAccumulator acc )
+	{
+		final int numPixels = grayIP.getPixelCount();
+		int lastLabel = 0;
+		int lastIndex = -1;
+		for( int i = 0; i < numPixels; i++ )
+		{
+			int labelValue = (int) labelsIP.getf( i );
+			if( labelValue == 0 )
+				continue;
+			
+			// labels are sorted, and neighbor voxels often share the same label
+			if( labelValue != lastLabel )
+			{
+				lastLabel = labelValue;
+				lastIndex = Arrays.binarySearch( labels, labelValue );
+			}
+			acc.add( lastIndex, grayIP.getf( i ) );
+		}
+	}
+	
+	/**
+	 * Returns the sorted values of the voxels of each label. The values are
+	 * read from the image the first time this method is called, and are used
+	 * for computing median and mode of images that are not 8-bit or 16-bit.
+	 * The values of all labeled voxels are kept in memory.
+	 * 
+	 * @return the sorted voxel values, grouped by label index
+	 */
+	float[][] getSortedLabelValues()
+	{
+		if( objectValues != null )
+			return objectValues;
+		
+		final int numLabels = labels.length;
+		objectValues = new float[ numLabels ][];
+		for( int i = 0; i < numLabels; i++ )
+			objectValues[ i ] = new float[ stats.counts[ i ] ];
+		int[] sizes = new int[ numLabels ];
+		
+		for( int z = 1; z <= inputStack.getSize(); z++ )
+		{
+			final ImageProcessor grayIP = inputStack.getProcessor( z );
+			final ImageProcessor labelsIP = labelStack.getProcessor( z );
+			final int numPixels = grayIP.getPixelCount();
+			for( int i = 0; i < numPixels; i++ )
+			{
+				int labelValue = (int) labelsIP.getf( i );
+				if( labelValue == 0 )
+					continue;
+				int index = Arrays.binarySearch( labels, labelValue );
+				objectValues[ index ][ sizes[ index ]++ ] = grayIP.getf( i );
+			}
+		}
 		
-		//final long end = System.currentTimeMillis();
-		//IJ.log("Reading voxels took " + (end-start) + " ms.");
+		for( int i = 0; i < numLabels; i++ )
+			Arrays.sort( objectValues[ i ] );
+		return objectValues;
 	}
 	
 	/**
@@ -116,14 +222,14 @@ public class LabeledVoxelsMeasure {
 	 */
 	public ResultsTable getNumberOfVoxels()
 	{
-		final int numLabels = objectVoxels.length;
+		final int numLabels = labels.length;
 				
 		// create data table
 		ResultsTable table = new ResultsTable();
 		for (int i = 0; i < numLabels; i++) {
 			table.incrementCounter();
 			table.addLabel(Integer.toString( labels[i] ));
-			table.addValue("NumberOfVoxels", objectVoxels[ i ].size() );
+			table.addValue("NumberOfVoxels", stats.counts[ i ] );
 		}
 
 		return table;
@@ -137,7 +243,7 @@ public class LabeledVoxelsMeasure {
 	 */
 	public ResultsTable getVolume()
 	{
-		final int numLabels = objectVoxels.length;
+		final int numLabels = labels.length;
 		
 		double volumePerVoxel = calibration.pixelWidth * calibration.pixelHeight * calibration.pixelDepth;
 		
@@ -146,12 +252,9 @@ public class LabeledVoxelsMeasure {
 		for (int i = 0; i < numLabels; i++) {
 			table.incrementCounter();
 			table.addLabel(Integer.toString( labels[i] ));
-			table.addValue( "Volume", objectVoxels[ i ].size() * volumePerVoxel );
+			table.addValue( "Volume", stats.counts[ i ] * volumePerVoxel );
 		}
 
 		return table;
 	}
-	
-	
-	
 }
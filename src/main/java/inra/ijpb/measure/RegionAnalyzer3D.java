@@ -0,0 +1,489 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.measure;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ij.ImageStack;
+import ij.Prefs;
+import ij.util.ThreadUtil;
+import inra.ijpb.algo.AlgoStub;
+import inra.ijpb.label.LabelImages;
+
+/**
+ * <p>
+ * Computes several morphometric features of the regions of a 3D label image
+ * from a single parallel scan of the image.</p>
+ * 
+ * <p>
+ * During the scan, the following data are accumulated for each label: the
+ * number of voxels, the sums of the voxel coordinates and of their products
+ * up to the second order, the bounds of the region, and the histogram of the
+ * 256 binary configurations of 2-by-2-by-2 voxels obtained when considering
+ * only the voxels of the label. The stack is split into slabs of slices that
+ * are processed in parallel, and the accumulators of each slab are merged at
+ * the end.</p>
+ * 
+ * <p>
+ * The volume, the surface area, the Euler number, the centroid, the inertia
+ * ellipsoid and the bounding box of each region are then computed from these
+ * accumulators. Results are the same as the ones obtained with the
+ * corresponding methods of the <code>GeometricMeasures3D</code> class, up to
+ * floating point rounding errors.</p>
+ * 
+ * <pre><code>
+ * ImageStack labelImage = ...
+ * RegionAnalyzer3D analyzer = new RegionAnalyzer3D(labelImage);
+ * double[] resol = new double[]{1, 1, 1};
+ * double[] volumes = analyzer.volume(resol);
+ * double[] surfaces = analyzer.surfaceAreaCrofton(resol, 13);
+ * double[] eulerNumbers = analyzer.eulerNumber(26);
+ * double[][] ellipsoids = analyzer.inertiaEllipsoid(resol);
+ * </code></pre>
+ * 
+ * @see GeometricMeasures3D
+ * @author David Legland
+ *
+ */
+public class RegionAnalyzer3D extends AlgoStub
+{
+	// ==================================================
+	// Class variables
+
+	/** The list of labels to analyze. */
+	int[] labels;
+	
+	/** The number of threads used for computation. */
+	int nThreads = Prefs.getThreads();
+	
+	/** The data accumulated for each label, or null before analysis. */
+	Accumulator data = null;
+	
+	
+	// ==================================================
+	// Constructors
+
+	/**
+	 * Analyzes all the regions of a label image, using the number of threads
+	 * specified in ImageJ preferences.
+	 * 
+	 * @param image
+	 *            a 3D label image
+	 */
+	public RegionAnalyzer3D(ImageStack image)
+	{
+		this(image, LabelImages.findAllLabels(image), Prefs.getThreads());
+	}
+	
+	/**
+	 * Analyzes the specified regions of a label image, using the specified
+	 * number of threads. Voxels with a label that is not in the list are
+	 * ignored.
+	 * 
+	 * @param image
+	 *            a 3D label image
+	 * @param labels
+	 *            the list of labels to analyze
+	 * @param nThreads
+	 *            the number of threads used for computation (at least 1)
+	 */
+	public RegionAnalyzer3D(ImageStack image, int[] labels, int nThreads)
+	{
+		if (nThreads < 1)
+		{
+			throw new IllegalArgumentException("Number of threads must be at least 1");
+		}
+		this.labels = labels;
+		this.nThreads = nThreads;
+		analyze(image);
+	}
+	
+	
+	// ==================================================
+	// Scan of the image
+
+	private void analyze(final ImageStack image)
+	{
+		final int sizeZ = image.getSize();
+		final int nLabels = labels.length;
+		
+		// converts labels into label indices, and counts configurations
+		final LabelConfigurationCounter3D counter = new LabelConfigurationCounter3D(labels);
+		
+		// split the stack into slabs processed in parallel
+		final int nSlabs = Math.max(Math.min(this.nThreads, sizeZ), 1);
+		final Accumulator[] slabData = new Accumulator[nSlabs];
+		final AtomicInteger ai = new AtomicInteger(0);
+		fireStatusChanged(this, "Analyze regions");
+		Thread[] threads = ThreadUtil.createThreadArray(nSlabs);
+		for (int ithread = 0; ithread < threads.length; ithread++)
+		{
+			threads[ithread] = new Thread()
+			{
+				public void run()
+				{
+					for (int k = ai.getAndIncrement(); k < nSlabs; k = ai.getAndIncrement())
+					{
+						int z0 = (int) (((long) sizeZ * k) / nSlabs);
+						int z1 = (int) (((long) sizeZ * (k + 1)) / nSlabs);
+						Accumulator acc = new Accumulator(nLabels);
+						acc.processSlices(image, z0, z1, counter);
+						slabData[k] = acc;
+					}
+				}
+			};
+		}
+		ThreadUtil.startAndJoin(threads);
+		
+		// merge the data of each slab
+		this.data = slabData[0];
+		for (int k = 1; k < nSlabs; k++)
+		{
+			this.data.merge(slabData[k]);
+		}
+		fireStatusChanged(this, "");
+	}
+	
+
+	// ==================================================
+	// Computation of features
+
+	/**
+	 * @return the list of labels, in the order used for the results
+	 */
+	public int[] getLabels()
+	{
+		return this.labels;
+	}
+	
+	/**
+	 * @return the number of voxels of each region
+	 */
+	public int[] voxelCount()
+	{
+		return Arrays.copyOf(data.counts, data.counts.length);
+	}
+	
+	/**
+	 * Computes the volume of each region.
+	 * 
+	 * @param resol
+	 *            image resolution, as a double array with 3 elements
+	 * @return the volume of each region
+	 * @see GeometricMeasures3D#volume(ImageStack, int[], double[])
+	 */
+	public double[] volume(double[] resol)
+	{
+		if (resol == null || resol.length < 3) 
+		{
+			throw new IllegalArgumentException("Resolution must be a double array of length 3");
+		}
+		double voxelVolume = resol[0] * resol[1] * resol[2];
+		
+		double[] volumes = new double[labels.length];
+		for (int i = 0; i < labels.length; i++)
+		{
+			volumes[i] = data.counts[i] * voxelVolume;
+		}
+		return volumes;
+	}
+	
+	/**
+	 * Computes the surface area of each region using discretization of the
+	 * Crofton formula.
+	 * 
+	 * @param resol
+	 *            image resolution, as a double array with 3 elements
+	 * @param nDirs
+	 *            the number of directions to consider, either 3 or 13
+	 * @return the surface area of each region
+	 * @see GeometricMeasures3D#surfaceAreaCrofton(ImageStack, int[], double[], int)
+	 */
+	public double[] surfaceAreaCrofton(double[] resol, int nDirs)
+	{
+		return sumOfLutContributions(GeometricMeasures3D.computeSurfaceAreaLut(resol, nDirs));
+	}
+	
+	/**
+	 * Computes the Euler number of each region, using the specified
+	 * connectivity.
+	 * 
+	 * @param conn
+	 *            the connectivity to use (either 6 or 26)
+	 * @return the Euler-Poincare characteristic of each region
+	 * @see GeometricMeasures3D#eulerNumber(ImageStack, int[], int)
+	 */
+	public double[] eulerNumber(int conn)
+	{
+		return sumOfLutContributions(GeometricMeasures3D.computeEulerNumberLut(conn));
+	}
+	
+	/**
+	 * Sums the contributions of the 2-by-2-by-2 configurations of each region
+	 * using a look-up table.
+	 * 
+	 * @param lut
+	 *            the look-up-table containing the measure contribution for
+	 *            each of the 256 configurations of 8 voxels
+	 * @return the sum of measure contributions for each region
+	 */
+	public double[] sumOfLutContributions(double[] lut)
+	{
+		return LabelConfigurationCounter3D.sumOfLutContributions(data.configHistograms, lut);
+	}
+	
+	/**
+	 * Computes the centroid of each region, in voxel coordinates.
+	 * 
+	 * @return the centroid of each region, as an array of double[3]
+	 * @see GeometricMeasures3D#centroids(ImageStack, int[])
+	 */
+	public double[][] centroids()
+	{
+		double[][] centroids = new double[labels.length][3];
+		for (int i = 0; i < labels.length; i++)
+		{
+			int n = data.counts[i];
+			centroids[i][0] = ((double) data.sumX[i]) / n;
+			centroids[i][1] = ((double) data.sumY[i]) / n;
+			centroids[i][2] = ((double) data.sumZ[i]) / n;
+		}
+		return centroids;
+	}
+	
+	/**
+	 * Computes the inertia ellipsoid of each region, using the same
+	 * conventions as <code>GeometricMeasures3D</code>.
+	 * 
+	 * @param resol
+	 *            the spatial resolution, as an array of length 3.
+	 * @return an array with as many rows as the number of labels, and 9
+	 *         columns
+	 * @see GeometricMeasures3D#inertiaEllipsoid(ImageStack, int[], double[])
+	 * @throws RuntimeException
+	 *             if jama package is not found.
+	 */
+	public double[][] inertiaEllipsoid(double[] resol)
+	{
+		// check if JAMA package is present
+		try 
+		{
+			Class.forName("Jama.Matrix");
+		} 
+		catch(Exception e)
+		{
+			throw new RuntimeException("Requires the JAMA package to work properly");
+		}
+		
+		if (resol == null)
+		{
+			resol = new double[]{1, 1, 1};
+		}
+		
+		double[][] res = new double[labels.length][];
+		for (int i = 0; i < labels.length; i++)
+		{
+			double n = data.counts[i];
+			
+			// centroid in voxel coordinates
+			double mx = data.sumX[i] / n;
+			double my = data.sumY[i] / n;
+			double mz = data.sumZ[i] / n;
+			
+			// centered second order moments, in calibrated units
+			double Ixx = (data.sumXX[i] / n - mx * mx) * resol[0] * resol[0];
+			double Iyy = (data.sumYY[i] / n - my * my) * resol[1] * resol[1];
+			double Izz = (data.sumZZ[i] / n - mz * mz) * resol[2] * resol[2];
+			double Ixy = (data.sumXY[i] / n - mx * my) * resol[0] * resol[1];
+			double Ixz = (data.sumXZ[i] / n - mx * mz) * resol[0] * resol[2];
+			double Iyz = (data.sumYZ[i] / n - my * mz) * resol[1] * resol[2];
+			
+			res[i] = GeometricMeasures3D.ellipsoidParameters(
+					mx * resol[0], my * resol[1], mz * resol[2], 
+					Ixx, Iyy, Izz, Ixy, Ixz, Iyz, resol);
+		}
+		return res;
+	}
+	
+	/**
+	 * Computes the bounding box of each region, in voxel coordinates.
+	 * 
+	 * @return for each region, the array [xmin, xmax, ymin, ymax, zmin, zmax]
+	 * @see GeometricMeasures3D#boundingBox(ImageStack, int[])
+	 */
+	public double[][] boundingBox()
+	{
+		double[][] boxes = new double[labels.length][6];
+		for (int i = 0; i < labels.length; i++)
+		{
+			if (data.counts[i] == 0)
+			{
+				// same convention as GeometricMeasures3D for missing labels
+				boxes[i] = new double[]{Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+						Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+						Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+				continue;
+			}
+			for (int j = 0; j < 6; j++)
+			{
+				boxes[i][j] = data.bounds[6 * i + j];
+			}
+		}
+		return boxes;
+	}
+	
+	
+	// ==================================================
+	// Inner classes
+
+	/**
+	 * The data accumulated for each label on a range of slices.
+	 */
+	private static final class Accumulator
+	{
+		int[] counts;
+		long[] sumX;
+		long[] sumY;
+		long[] sumZ;
+		long[] sumXX;
+		long[] sumYY;
+		long[] sumZZ;
+		long[] sumXY;
+		long[] sumXZ;
+		long[] sumYZ;
+		
+		/** The bounds of each label, stored as 6 consecutive values. */ 
+		int[] bounds;
+		
+		/** The configuration histogram of each label, allocated on demand. */
+		int[][] configHistograms;
+		
+		Accumulator(int nLabels)
+		{
+			this.counts = new int[nLabels];
+			this.sumX = new long[nLabels];
+			this.sumY = new long[nLabels];
+			this.sumZ = new long[nLabels];
+			this.sumXX = new long[nLabels];
+			this.sumYY = new long[nLabels];
+			this.sumZZ = new long[nLabels];
+			this.sumXY = new long[nLabels];
+			this.sumXZ = new long[nLabels];
+			this.sumYZ = new long[nLabels];
+			this.bounds = new int[6 * nLabels];
+			for (int i = 0; i < nLabels; i++)
+			{
+				bounds[6 * i] = bounds[6 * i + 2] = bounds[6 * i + 4] = Integer.MAX_VALUE;
+				bounds[6 * i + 1] = bounds[6 * i + 3] = bounds[6 * i + 5] = Integer.MIN_VALUE;
+			}
+			this.configHistograms = new int[nLabels][];
+		}
+		
+		/**
+		 * Processes the voxels of the slices between z0 (inclusive) and z1
+		 * (exclusive), and the configurations whose first slice is between
+		 * z0 and z1.
+		 */
+		void processSlices(ImageStack image, int z0, int z1, LabelConfigurationCounter3D counter)
+		{
+			int sizeX = image.getWidth();
+			int sizeY = image.getHeight();
+			int sizeZ = image.getSize();
+			
+			// keep a rolling window of two slices of label indices
+			int[] indices1 = counter.labelIndices(image, z0, new int[sizeX * sizeY]);
+			int[] indices2 = new int[sizeX * sizeY];
+			
+			for (int z = z0; z < z1; z++)
+			{
+				// moments and bounds
+				for (int y = 0; y < sizeY; y++)
+				{
+					for (int x = 0; x < sizeX; x++)
+					{
+						int index = indices1[y * sizeX + x] - 1;
+						if (index < 0)
+							continue;
+						
+						counts[index]++;
+						sumX[index] += x;
+						sumY[index] += y;
+						sumZ[index] += z;
+						sumXX[index] += (long) x * x;
+						sumYY[index] += (long) y * y;
+						sumZZ[index] += (long) z * z;
+						sumXY[index] += (long) x * y;
+						sumXZ[index] += (long) x * z;
+						sumYZ[index] += (long) y * z;
+						
+						int offset = 6 * index;
+						if (x < bounds[offset]) bounds[offset] = x;
+						if (x > bounds[offset + 1]) bounds[offset + 1] = x;
+						if (y < bounds[offset + 2]) bounds[offset + 2] = y;
+						if (y > bounds[offset + 3]) bounds[offset + 3] = y;
+						if (z < bounds[offset + 4]) bounds[offset + 4] = z;
+						if (z > bounds[offset + 5]) bounds[offset + 5] = z;
+					}
+				}
+				
+				// configurations of 2-by-2-by-2 voxels
+				if (z >= sizeZ - 1)
+					continue;
+				counter.labelIndices(image, z + 1, indices2);
+				LabelConfigurationCounter3D.countConfigurations(indices1, indices2, 
+						sizeX, sizeY, configHistograms);
+				
+				int[] tmp = indices1;
+				indices1 = indices2;
+				indices2 = tmp;
+			}
+		}
+		
+		/**
+		 * Adds the data accumulated by another accumulator.
+		 */
+		void merge(Accumulator other)
+		{
+			for (int i = 0; i < counts.length; i++)
+			{
+				counts[i] += other.counts[i];
+				sumX[i] += other.sumX[i];
+				sumY[i] += other.sumY[i];
+				sumZ[i] += other.sumZ[i];
+				sumXX[i] += other.sumXX[i];
+				sumYY[i] += other.sumYY[i];
+				sumZZ[i] += other.sumZZ[i];
+				sumXY[i] += other.sumXY[i];
+				sumXZ[i] += other.sumXZ[i];
+				sumYZ[i] += other.sumYZ[i];
+				
+				for (int j = 0; j < 6; j += 2)
+				{
+					bounds[6 * i + j] = Math.min(bounds[6 * i + j], other.bounds[6 * i + j]);
+					bounds[6 * i + j + 1] = Math.max(bounds[6 * i + j + 1], other.bounds[6 * i + j + 1]);
+				}
+			}
+			LabelConfigurationCounter3D.merge(configHistograms, other.configHistograms);
+		}
+	}
+}
@@ -26,9 +26,9 @@ import ij.ImageStack;
 import ij.process.ImageProcessor;
 import inra.ijpb.algo.DefaultAlgoListener;
 import inra.ijpb.morphology.attrfilt.AreaOpening;
-import inra.ijpb.morphology.attrfilt.AreaOpeningQueue;
+import inra.ijpb.morphology.attrfilt.AreaOpeningMaxTree;
 import inra.ijpb.morphology.attrfilt.SizeOpening3D;
-import inra.ijpb.morphology.attrfilt.SizeOpening3DQueue;
+import inra.ijpb.morphology.attrfilt.SizeOpening3DMaxTree;
 
 /**
  * Several static methods for computation of attribute filtering (opening,
@@ -88,7 +88,7 @@ public class AttributeFiltering
 	 */
 	public static final ImageProcessor areaOpening(ImageProcessor image, int minArea)
 	{
-		AreaOpening algo = new AreaOpeningQueue();
+		AreaOpening algo = new AreaOpeningMaxTree();
 		DefaultAlgoListener.monitor(algo);
 		return algo.process(image, minArea);
 	}
@@ -105,7 +105,7 @@ public class AttributeFiltering
 	 */
 	public static final ImageStack volumeOpening(ImageStack image, int minVolume)
 	{
-		SizeOpening3D algo = new SizeOpening3DQueue();
+		SizeOpening3D algo = new SizeOpening3DMaxTree();
 		DefaultAlgoListener.monitor(algo);
 		return algo.process(image, minVolume);
 	}
@@ -125,7 +125,7 @@ public class AttributeFiltering
 			int minVolume,
 			int connectivity )
 	{
-		SizeOpening3DQueue algo = new SizeOpening3DQueue();
+		SizeOpening3DMaxTree algo = new SizeOpening3DMaxTree();
 		algo.setConnectivity( connectivity );
 		DefaultAlgoListener.monitor( algo );
 		return algo.process( image, minVolume );
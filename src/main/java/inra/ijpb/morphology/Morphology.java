@@ -24,10 +24,12 @@ package inra.ijpb.morphology;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 import ij.ImageStack;
+import ij.Prefs;
 import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
 import ij.process.ImageProcessor;
 import inra.ijpb.data.image.ColorImages;
+import inra.ijpb.morphology.strel.ParallelStrel3D;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -300,9 +302,30 @@ public class Morphology
 	 * @return the result of the dilation
 	 */
 	public static ImageStack dilation(ImageStack image, Strel3D strel)
+	{
+		return dilation(image, strel, Prefs.getThreads());
+	}
+
+	/**
+	 * Computes the dilation of the input 3D image using the specified number
+	 * of threads. The stack is split into chunks of slices that are
+	 * processed in parallel, and the result is identical to the one obtained
+	 * with a single thread.
+	 * 
+	 * @see inra.ijpb.morphology.strel.ParallelStrel3D
+	 * 
+	 * @param image
+	 *            the input 3D image to process
+	 * @param strel
+	 *            the structuring element
+	 * @param nThreads
+	 *            the number of threads used for computation
+	 * @return the result of the 3D morphological dilation
+	 */
+	public static ImageStack dilation(ImageStack image, Strel3D strel, int nThreads)
 	{
 		checkImageType(image);
-		return strel.dilation(image);
+		return parallelize(strel, nThreads).dilation(image);
 	}
 	
 	/**
@@ -369,10 +392,31 @@ public class Morphology
 	 *            the structuring element used for erosion
 	 * @return the result of the erosion
 	 */
-	public static ImageStack erosion(ImageStack image, Strel3D strel) 
+	public static ImageStack erosion(ImageStack image, Strel3D strel)
+	{
+		return erosion(image, strel, Prefs.getThreads());
+	}
+
+	/**
+	 * Computes the erosion of the input 3D image using the specified number
+	 * of threads. The stack is split into chunks of slices that are
+	 * processed in parallel, and the result is identical to the one obtained
+	 * with a single thread.
+	 * 
+	 * @see inra.ijpb.morphology.strel.ParallelStrel3D
+	 * 
+	 * @param image
+	 *            the input 3D image to process
+	 * @param strel
+	 *            the structuring element
+	 * @param nThreads
+	 *            the number of threads used for computation
+	 * @return the result of the 3D morphological erosion
+	 */
+	public static ImageStack erosion(ImageStack image, Strel3D strel, int nThreads)
 	{
 		checkImageType(image);
-		return strel.erosion(image);
+		return parallelize(strel, nThreads).erosion(image);
 	}
 
 	/**
@@ -436,10 +480,31 @@ public class Morphology
 	 *            the structuring element used for opening
 	 * @return the result of the 3D morphological opening
 	 */
-	public static ImageStack opening(ImageStack image, Strel3D strel) 
+	public static ImageStack opening(ImageStack image, Strel3D strel)
+	{
+		return opening(image, strel, Prefs.getThreads());
+	}
+
+	/**
+	 * Computes the opening of the input 3D image using the specified number
+	 * of threads. The stack is split into chunks of slices that are
+	 * processed in parallel, and the result is identical to the one obtained
+	 * with a single thread.
+	 * 
+	 * @see inra.ijpb.morphology.strel.ParallelStrel3D
+	 * 
+	 * @param image
+	 *            the input 3D image to process
+	 * @param strel
+	 *            the structuring element
+	 * @param nThreads
+	 *            the number of threads used for computation
+	 * @return the result of the 3D morphological opening
+	 */
+	public static ImageStack opening(ImageStack image, Strel3D strel, int nThreads)
 	{
 		checkImageType(image);
-		return strel.opening(image);
+		return parallelize(strel, nThreads).opening(image);
 	}
 
 
@@ -502,10 +567,31 @@ public class Morphology
 	 *            the structuring element used for closing
 	 * @return the result of the 3D morphological closing
 	 */
-	public static ImageStack closing(ImageStack image, Strel3D strel) 
+	public static ImageStack closing(ImageStack image, Strel3D strel)
+	{
+		return closing(image, strel, Prefs.getThreads());
+	}
+
+	/**
+	 * Computes the closing of the input 3D image using the specified number
+	 * of threads. The stack is split into chunks of slices that are
+	 * processed in parallel, and the result is identical to the one obtained
+	 * with a single thread.
+	 * 
+	 * @see inra.ijpb.morphology.strel.ParallelStrel3D
+	 * 
+	 * @param image
+	 *            the input 3D image to process
+	 * @param strel
+	 *            the structuring element
+	 * @param nThreads
+	 *            the number of threads used for computation
+	 * @return the result of the 3D morphological closing
+	 */
+	public static ImageStack closing(ImageStack image, Strel3D strel, int nThreads)
 	{
 		checkImageType(image);
-		return strel.closing(image);
+		return parallelize(strel, nThreads).closing(image);
 	}
 
 
@@ -603,7 +689,7 @@ public class Morphology
 		checkImageType(image);
 		
 		// First performs opening
-		ImageStack result = strel.opening(image);
+		ImageStack result = opening(image, strel);
 		
 		// compute max possible value
 		double maxVal = getMaxPossibleValue(image);
@@ -721,7 +807,7 @@ public class Morphology
 		checkImageType(image);
 		
 		// First performs closing
-		ImageStack result = strel.closing(image);
+		ImageStack result = closing(image, strel);
 		
 		// Compute subtraction of result from original image
 		int nx = image.getWidth();
@@ -829,10 +915,32 @@ public class Morphology
 	 * @return the result of the 3D morphological gradient
 	 */
 	public static ImageStack gradient(ImageStack image, Strel3D strel)
+	{
+		return gradient(image, strel, Prefs.getThreads());
+	}
+
+	/**
+	 * Computes the gradient of the input 3D image using the specified number
+	 * of threads. The stack is split into chunks of slices that are
+	 * processed in parallel, and the result is identical to the one obtained
+	 * with a single thread.
+	 * 
+	 * @see inra.ijpb.morphology.strel.ParallelStrel3D
+	 * 
+	 * @param image
+	 *            the input 3D image to process
+	 * @param strel
+	 *            the structuring element
+	 * @param nThreads
+	 *            the number of threads used for computation
+	 * @return the result of the 3D morphological gradient
+	 */
+	public static ImageStack gradient(ImageStack image, Strel3D strel, int nThreads)
 	{
 		checkImageType(image);
 		
 		// First performs dilation and erosion
+		strel = parallelize(strel, nThreads);
 		ImageStack result = strel.dilation(image);
 		ImageStack eroded = strel.erosion(image);
 		
@@ -1075,7 +1183,7 @@ public class Morphology
 		checkImageType(image);
 		
 		// First performs erosion
-		ImageStack result = strel.erosion(image);
+		ImageStack result = erosion(image, strel);
 		
 		// Determine max possible value from bit depth
 		double maxVal = getMaxPossibleValue(image);
@@ -1183,7 +1291,7 @@ public class Morphology
 		checkImageType(image);
 		
 		// First performs dilation
-		ImageStack result = strel.dilation(image);
+		ImageStack result = dilation(image, strel);
 		
 		// Determine max possible value from bit depth
 		double maxVal = getMaxPossibleValue(image);
@@ -1239,6 +1347,24 @@ public class Morphology
 //		}
 	}
 
+	/**
+	 * Wraps the structuring element such that stacks are processed in
+	 * parallel, or returns the structuring element if only one thread is
+	 * used.
+	 */
+	private static final Strel3D parallelize(Strel3D strel, int nThreads)
+	{
+		if (nThreads < 1)
+		{
+			throw new IllegalArgumentException("Number of threads must be at least 1");
+		}
+		if (nThreads == 1 || strel instanceof ParallelStrel3D)
+		{
+			return strel;
+		}
+		return new ParallelStrel3D(strel, nThreads);
+	}
+
 	/**
 	 * Determine max possible value from bit depth.
 	 *  8 bits -> 255
@@ -24,12 +24,14 @@ package inra.ijpb.morphology;
 import java.util.Map;
 
 import ij.ImageStack;
+import ij.Prefs;
 import inra.ijpb.algo.DefaultAlgoListener;
 import inra.ijpb.data.image.ColorImages;
 import inra.ijpb.morphology.geodrec.GeodesicReconstruction3DAlgo;
 import inra.ijpb.morphology.geodrec.GeodesicReconstruction3DHybrid0Float;
 import inra.ijpb.morphology.geodrec.GeodesicReconstruction3DHybrid0Gray16;
 import inra.ijpb.morphology.geodrec.GeodesicReconstruction3DHybrid0Gray8;
+import inra.ijpb.morphology.geodrec.GeodesicReconstruction3DParallel;
 import inra.ijpb.morphology.geodrec.GeodesicReconstructionByDilation3DScanning;
 import inra.ijpb.morphology.geodrec.GeodesicReconstructionByDilation3DScanningGray8;
 import inra.ijpb.morphology.geodrec.GeodesicReconstructionByErosion3DScanning;
@@ -169,7 +171,12 @@ public abstract class Reconstruction3D
 			ImageStack mask)
 	{
 		GeodesicReconstruction3DAlgo algo;
-		if (marker.getBitDepth() == 8 && mask.getBitDepth() == 8)
+		if (useParallelReconstruction(marker, mask))
+		{
+			algo = new GeodesicReconstruction3DParallel(
+					GeodesicReconstructionType.BY_DILATION);
+		}
+		else if (marker.getBitDepth() == 8 && mask.getBitDepth() == 8)
 		{
 			algo = new GeodesicReconstruction3DHybrid0Gray8(
 					GeodesicReconstructionType.BY_DILATION);
@@ -215,7 +222,12 @@ public abstract class Reconstruction3D
 			ImageStack mask, int connectivity)
 	{
 		GeodesicReconstruction3DAlgo algo;
-		if (marker.getBitDepth() == 8 && mask.getBitDepth() == 8)
+		if (useParallelReconstruction(marker, mask))
+		{
+			algo = new GeodesicReconstruction3DParallel(
+					GeodesicReconstructionType.BY_DILATION, connectivity);
+		}
+		else if (marker.getBitDepth() == 8 && mask.getBitDepth() == 8)
 		{
 			algo = new GeodesicReconstruction3DHybrid0Gray8(
 					GeodesicReconstructionType.BY_DILATION, connectivity);
@@ -293,7 +305,12 @@ public abstract class Reconstruction3D
 			ImageStack mask)
 	{
 		GeodesicReconstruction3DAlgo algo;
-		if (marker.getBitDepth() == 8 && mask.getBitDepth() == 8)
+		if (useParallelReconstruction(marker, mask))
+		{
+			algo = new GeodesicReconstruction3DParallel(
+					GeodesicReconstructionType.BY_EROSION);
+		}
+		else if (marker.getBitDepth() == 8 && mask.getBitDepth() == 8)
 		{
 			algo = new GeodesicReconstruction3DHybrid0Gray8(
 					GeodesicReconstructionType.BY_EROSION);
@@ -345,7 +362,12 @@ public abstract class Reconstruction3D
 			return null;
 		
 		GeodesicReconstruction3DAlgo algo;
-		if (marker.getBitDepth() == 8 && mask.getBitDepth() == 8)
+		if (useParallelReconstruction(marker, mask))
+		{
+			algo = new GeodesicReconstruction3DParallel(
+					GeodesicReconstructionType.BY_EROSION, connectivity);
+		}
+		else if (marker.getBitDepth() == 8 && mask.getBitDepth() == 8)
 		{
 			algo = new GeodesicReconstruction3DHybrid0Gray8(
 					GeodesicReconstructionType.BY_EROSION, connectivity);
@@ -375,6 +397,22 @@ public abstract class Reconstruction3D
 		return algo.applyTo(marker, mask);
 	}
 	
+	/**
+	 * Checks whether the reconstruction of the marker under (or over) the mask
+	 * can be computed with several threads. Requires both stacks to have the
+	 * same bit depth, either 8, 16 or 32, and several threads to be available.
+	 */
+	private static final boolean useParallelReconstruction(ImageStack marker,
+			ImageStack mask)
+	{
+		int bitDepth = marker.getBitDepth();
+		if (mask.getBitDepth() != bitDepth)
+			return false;
+		if (bitDepth != 8 && bitDepth != 16 && bitDepth != 32)
+			return false;
+		return Prefs.getThreads() > 1;
+	}
+	
 	/**
 	 * Applies an instance of morphological reconstruction algorithm to each
 	 * channel of a color image and returns the color image resulting from the
@@ -0,0 +1,593 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.io.FileSaver;
+import ij.process.ImageProcessor;
+import inra.ijpb.algo.AlgoStub;
+
+/**
+ * Computes 3D morphological dilations and erosions of stacks that do not fit
+ * into memory, by reading the input stack slice by slice and writing each
+ * result slice as soon as it is computed.
+ * 
+ * The input stack is typically an instance of ImageJ VirtualStack, whose
+ * slices are read from disk on demand. Each input slice is read only once,
+ * and filtered by each distinct planar section of the structuring element
+ * (rectangular sections are processed as two separable line passes).
+ * Each filtered slice is immediately combined with the result slices that
+ * depend on it, which are kept within a ring buffer with as many slices as
+ * the depth of the structuring element. A result slice is written as soon as
+ * all the input slices within its window have been read. The memory used by
+ * the filter is therefore independent of the number of slices of the image,
+ * and of the number of distinct sections of the structuring element.
+ * 
+ * Only 8-bit, 16-bit and 32-bit stacks are processed.
+ * 
+ * Result slices are sent to a SliceWriter, that can store them as raw data
+ * within a single file, or as a sequence of TIFF files.
+ * 
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	ImageStack image = new VirtualStack(...);
+ *	Strel3D strel = CuboidStrel.fromRadiusList(3, 3, 2);
+ *	StreamingMorphology3D filter = new StreamingMorphology3D(strel);
+ *	SliceWriter writer = StreamingMorphology3D.rawWriter(new File("dilated.raw"), ByteOrder.BIG_ENDIAN);
+ *	try
+ *	{
+ *		filter.dilation(image, writer);
+ *	}
+ *	finally
+ *	{
+ *		writer.close();
+ *	}
+ *}</pre>
+ * 
+ * @see inra.ijpb.morphology.Morphology#dilation(ImageStack, Strel3D)
+ * @see inra.ijpb.morphology.Morphology#erosion(ImageStack, Strel3D)
+ * 
+ * @author David Legland
+ *
+ */
+public class StreamingMorphology3D extends AlgoStub
+{
+	// ==================================================
+	// Inner interfaces
+	
+	/**
+	 * Receives the slices of the result stack, in increasing z order.
+	 */
+	public interface SliceWriter extends Closeable
+	{
+		/**
+		 * Writes the next slice of the result stack.
+		 * 
+		 * @param slice
+		 *            the result slice
+		 * @throws IOException
+		 *             if the slice can not be written
+		 */
+		public void write(ImageProcessor slice) throws IOException;
+	}
+	
+	
+	// ==================================================
+	// Static methods
+	
+	/**
+	 * Creates a writer that stores the slices as raw voxel values within a
+	 * single file, without header. The resulting file can be imported with
+	 * the "File &gt; Import &gt; Raw..." command, or opened as a
+	 * memory-mapped image.
+	 * 
+	 * @see inra.ijpb.data.image.Images3D#openMapped(File, int, int, int, int, long, ByteOrder, boolean)
+	 * 
+	 * @param file
+	 *            the file to create
+	 * @param order
+	 *            the byte order of 16- and 32-bit values
+	 * @return a new SliceWriter
+	 * @throws IOException
+	 *             if the file can not be created
+	 */
+	public static final SliceWriter rawWriter(File file, final ByteOrder order) throws IOException
+	{
+		final FileChannel channel = new FileOutputStream(file).getChannel();
+		return new SliceWriter()
+		{
+			ByteBuffer buffer = null;
+			
+			@Override
+			public void write(ImageProcessor slice) throws IOException
+			{
+				int nPixels = slice.getPixelCount();
+				int nBytes = nPixels * (slice.getBitDepth() / 8);
+				if (buffer == null || buffer.capacity() != nBytes)
+				{
+					buffer = ByteBuffer.allocate(nBytes).order(order);
+				}
+				buffer.clear();
+				
+				Object pixels = slice.getPixels();
+				if (pixels instanceof byte[])
+					buffer.put((byte[]) pixels, 0, nPixels);
+				else if (pixels instanceof short[])
+					buffer.asShortBuffer().put((short[]) pixels, 0, nPixels);
+				else if (pixels instanceof float[])
+					buffer.asFloatBuffer().put((float[]) pixels, 0, nPixels);
+				else
+					throw new IllegalArgumentException("Requires a 8-bits, 16-bits or 32-bits slice");
+				
+				buffer.position(0);
+				buffer.limit(nBytes);
+				while (buffer.hasRemaining())
+				{
+					channel.write(buffer);
+				}
+			}
+			
+			@Override
+			public void close() throws IOException
+			{
+				channel.close();
+			}
+		};
+	}
+	
+	/**
+	 * Creates a writer that stores each slice within a TIFF file in the
+	 * specified directory. Files are named from the prefix followed by the
+	 * slice index, and can be opened as a virtual stack with the "File &gt;
+	 * Import &gt; Image Sequence..." command.
+	 * 
+	 * @param directory
+	 *            the directory that will contain the files
+	 * @param prefix
+	 *            the prefix of the file names
+	 * @return a new SliceWriter
+	 */
+	public static final SliceWriter tiffSequenceWriter(final File directory, final String prefix)
+	{
+		return new SliceWriter()
+		{
+			int index = 0;
+			
+			@Override
+			public void write(ImageProcessor slice) throws IOException
+			{
+				String name = String.format("%s%05d.tif", prefix, index++);
+				File file = new File(directory, name);
+				if (!new FileSaver(new ImagePlus(name, slice)).saveAsTiff(file.getPath()))
+				{
+					throw new IOException("Could not write slice to file " + file.getPath());
+				}
+			}
+			
+			@Override
+			public void close()
+			{
+			}
+		};
+	}
+	
+	
+	// ==================================================
+	// Class variables
+	
+	/**
+	 * The shifts of each planar section of the structuring element, as pairs
+	 * of (dx, dy) values. Identical sections are shared.
+	 */
+	int[][][] sections;
+	
+	/**
+	 * The decomposition of each section into a sequence of sets of shifts.
+	 * Rectangular sections are decomposed into a horizontal and a vertical
+	 * line, other sections are kept as a single set.
+	 */
+	int[][][][] sectionFactors;
+	
+	/**
+	 * The index of the section associated to each slice of the structuring
+	 * element, or -1 for empty slices.
+	 */
+	int[] sectionIndices;
+	
+	/**
+	 * The z-shift associated to the first slice of the structuring element.
+	 */
+	int firstShiftZ;
+	
+	
+	// ==================================================
+	// Constructor
+	
+	/**
+	 * Creates a new filter for the specified structuring element, whose
+	 * shape is given by its mask and its offset.
+	 * 
+	 * @param strel
+	 *            the 3D structuring element
+	 */
+	public StreamingMorphology3D(Strel3D strel)
+	{
+		int[][][] mask = strel.getMask3D();
+		int[] offset = strel.getOffset();
+		
+		int depth = mask.length;
+		this.firstShiftZ = -offset[2];
+		this.sectionIndices = new int[depth];
+		
+		// compute the planar section of each slice, and merge identical ones
+		ArrayList<int[][]> sectionList = new ArrayList<int[][]>(depth);
+		for (int k = 0; k < depth; k++)
+		{
+			int[][] section = planarShifts(mask[k], offset[0], offset[1]);
+			if (section.length == 0)
+			{
+				this.sectionIndices[k] = -1;
+				continue;
+			}
+			
+			int index = -1;
+			for (int i = 0; i < sectionList.size(); i++)
+			{
+				if (Arrays.deepEquals(sectionList.get(i), section))
+				{
+					index = i;
+					break;
+				}
+			}
+			if (index < 0)
+			{
+				index = sectionList.size();
+				sectionList.add(section);
+			}
+			this.sectionIndices[k] = index;
+		}
+		this.sections = sectionList.toArray(new int[0][][]);
+		
+		this.sectionFactors = new int[this.sections.length][][][];
+		for (int i = 0; i < this.sections.length; i++)
+		{
+			this.sectionFactors[i] = decompose(this.sections[i]);
+		}
+	}
+	
+	/**
+	 * Decomposes a rectangular section into a horizontal and a vertical
+	 * line, or returns the section itself.
+	 */
+	private static final int[][][] decompose(int[][] section)
+	{
+		int dxmin = Integer.MAX_VALUE, dxmax = Integer.MIN_VALUE;
+		int dymin = Integer.MAX_VALUE, dymax = Integer.MIN_VALUE;
+		for (int[] shift : section)
+		{
+			dxmin = Math.min(dxmin, shift[0]);
+			dxmax = Math.max(dxmax, shift[0]);
+			dymin = Math.min(dymin, shift[1]);
+			dymax = Math.max(dymax, shift[1]);
+		}
+		
+		// as shifts are unique, the section is a rectangle if and only if
+		// it contains as many shifts as its bounding box
+		int sizeX = dxmax - dxmin + 1;
+		int sizeY = dymax - dymin + 1;
+		if (section.length != sizeX * sizeY || sizeX == 1 || sizeY == 1)
+		{
+			return new int[][][] {section};
+		}
+		
+		int[][] lineX = new int[sizeX][];
+		for (int i = 0; i < sizeX; i++)
+		{
+			lineX[i] = new int[] {dxmin + i, 0};
+		}
+		int[][] lineY = new int[sizeY][];
+		for (int i = 0; i < sizeY; i++)
+		{
+			lineY[i] = new int[] {0, dymin + i};
+		}
+		return new int[][][] {lineX, lineY};
+	}
+	
+	private static final int[][] planarShifts(int[][] mask, int offsetX, int offsetY)
+	{
+		ArrayList<int[]> shifts = new ArrayList<int[]>();
+		for (int y = 0; y < mask.length; y++)
+		{
+			for (int x = 0; x < mask[y].length; x++)
+			{
+				if (mask[y][x] > 0)
+				{
+					shifts.add(new int[] {x - offsetX, y - offsetY});
+				}
+			}
+		}
+		return shifts.toArray(new int[0][]);
+	}
+	
+	
+	// ==================================================
+	// Methods
+	
+	/**
+	 * Computes the morphological dilation of the input stack, and sends the
+	 * slices of the result to the writer. The writer is not closed.
+	 * 
+	 * @param image
+	 *            the input stack, possibly virtual
+	 * @param writer
+	 *            the writer that receives the result slices
+	 * @throws IOException
+	 *             if a slice can not be written
+	 */
+	public void dilation(ImageStack image, SliceWriter writer) throws IOException
+	{
+		process(image, writer, 1);
+	}
+	
+	/**
+	 * Computes the morphological erosion of the input stack, and sends the
+	 * slices of the result to the writer. The writer is not closed.
+	 * 
+	 * @param image
+	 *            the input stack, possibly virtual
+	 * @param writer
+	 *            the writer that receives the result slices
+	 * @throws IOException
+	 *             if a slice can not be written
+	 */
+	public void erosion(ImageStack image, SliceWriter writer) throws IOException
+	{
+		process(image, writer, -1);
+	}
+	
+	/**
+	 * Processes the stack using the sign to switch between dilation (+1) and
+	 * erosion (-1). Values are multiplied by the sign, so that both
+	 * operations compute maxima.
+	 */
+	private void process(ImageStack image, SliceWriter writer, int sign) throws IOException
+	{
+		int bitDepth = image.getBitDepth();
+		if (bitDepth != 8 && bitDepth != 16 && bitDepth != 32)
+		{
+			throw new IllegalArgumentException("Requires a 8-bits, 16-bits or 32-bits stack");
+		}
+		
+		int sizeX = image.getWidth();
+		int sizeY = image.getHeight();
+		int sizeZ = image.getSize();
+		int sliceSize = sizeX * sizeY;
+		int depth = this.sectionIndices.length;
+		
+		// ring buffer containing the maximum of the filtered input slices
+		// read so far, for each result slice not yet written
+		float[][] buffer = new float[depth][sliceSize];
+		
+		// when the structuring element does not contain its origin, some
+		// voxels may have no neighbor within the image, and are set to zero
+		boolean[][] sectionCoverages = null;
+		boolean[][] coverages = null;
+		if (!containsOrigin())
+		{
+			sectionCoverages = new boolean[this.sections.length][];
+			for (int s = 0; s < this.sections.length; s++)
+			{
+				sectionCoverages[s] = coverage(sizeX, sizeY, this.sections[s]);
+			}
+			coverages = new boolean[depth][sliceSize];
+		}
+		
+		float[] input = new float[sliceSize];
+		float[] tmp = new float[sliceSize];
+		float[] filtered = new float[sliceSize];
+		ImageProcessor resultSlice = null;
+		
+		// index of the next result slice to write, and of the next result
+		// slice to initialize within the ring buffer
+		int nextOutput = 0;
+		int nextInit = 0;
+		
+		for (int z = 0; z < sizeZ; z++)
+		{
+			fireProgressChanged(this, z, sizeZ);
+			fireStatusChanged(this, "Read slice " + (z + 1) + "/" + sizeZ);
+			
+			// read current input slice
+			ImageProcessor slice = image.getProcessor(z + 1);
+			if (resultSlice == null)
+			{
+				resultSlice = slice.createProcessor(sizeX, sizeY);
+			}
+			for (int i = 0; i < sliceSize; i++)
+			{
+				input[i] = slice.getf(i) * sign;
+			}
+			
+			// result slices that use the current input slice
+			int lastOutput = Math.min(z - this.firstShiftZ, sizeZ - 1);
+			for (; nextInit <= lastOutput; nextInit++)
+			{
+				Arrays.fill(buffer[nextInit % depth], Float.NEGATIVE_INFINITY);
+				if (coverages != null)
+				{
+					Arrays.fill(coverages[nextInit % depth], false);
+				}
+			}
+			
+			// filter the input slice by each section, and update the result
+			// slices that are at the corresponding distance
+			for (int s = 0; s < this.sections.length; s++)
+			{
+				int[][][] factors = this.sectionFactors[s];
+				if (factors.length == 1)
+				{
+					filterSlice(input, sizeX, sizeY, factors[0], filtered);
+				}
+				else
+				{
+					filterSlice(input, sizeX, sizeY, factors[0], tmp);
+					filterSlice(tmp, sizeX, sizeY, factors[1], filtered);
+				}
+				
+				for (int k = 0; k < depth; k++)
+				{
+					int z2 = z - this.firstShiftZ - k;
+					if (this.sectionIndices[k] != s || z2 < nextOutput || z2 >= sizeZ)
+						continue;
+					
+					float[] values = buffer[z2 % depth];
+					for (int i = 0; i < sliceSize; i++)
+					{
+						if (filtered[i] > values[i])
+							values[i] = filtered[i];
+					}
+					if (coverages != null)
+					{
+						boolean[] covered = coverages[z2 % depth];
+						boolean[] sectionCovered = sectionCoverages[s];
+						for (int i = 0; i < sliceSize; i++)
+						{
+							covered[i] |= sectionCovered[i];
+						}
+					}
+				}
+			}
+			
+			// write the result slices whose window is complete
+			int lastComplete = z == sizeZ - 1 ? sizeZ - 1 : z - this.firstShiftZ - depth + 1;
+			for (; nextOutput <= lastComplete; nextOutput++)
+			{
+				if (nextOutput >= nextInit)
+				{
+					// result slice without any input slice within its window
+					Arrays.fill(buffer[nextOutput % depth], Float.NEGATIVE_INFINITY);
+					if (coverages != null)
+					{
+						Arrays.fill(coverages[nextOutput % depth], false);
+					}
+					nextInit = nextOutput + 1;
+				}
+				
+				float[] values = buffer[nextOutput % depth];
+				boolean[] covered = coverages != null ? coverages[nextOutput % depth] : null;
+				for (int i = 0; i < sliceSize; i++)
+				{
+					if (covered == null || covered[i])
+						resultSlice.setf(i, values[i] * sign);
+					else
+						resultSlice.setf(i, 0);
+				}
+				writer.write(resultSlice);
+			}
+		}
+		
+		fireStatusChanged(this, "");
+		fireProgressChanged(this, 1, 1);
+	}
+	
+	/**
+	 * Checks if the structuring element contains its origin, in which case
+	 * each voxel has at least one neighbor within the image.
+	 */
+	private boolean containsOrigin()
+	{
+		int k = -this.firstShiftZ;
+		if (k < 0 || k >= this.sectionIndices.length || this.sectionIndices[k] < 0)
+			return false;
+		
+		for (int[] shift : this.sections[this.sectionIndices[k]])
+		{
+			if (shift[0] == 0 && shift[1] == 0)
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Computes the positions of a slice that have at least one neighbor
+	 * within the slice for the shifts of a planar section.
+	 */
+	private static final boolean[] coverage(int sizeX, int sizeY, int[][] shifts)
+	{
+		boolean[] result = new boolean[sizeX * sizeY];
+		for (int[] shift : shifts)
+		{
+			int dx = shift[0];
+			int dy = shift[1];
+			int xmin = Math.max(-dx, 0);
+			int xmax = Math.min(sizeX - dx, sizeX);
+			int ymin = Math.max(-dy, 0);
+			int ymax = Math.min(sizeY - dy, sizeY);
+			for (int y = ymin; y < ymax; y++)
+			{
+				Arrays.fill(result, y * sizeX + xmin, y * sizeX + Math.max(xmin, xmax), true);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Computes the maximum of the input values over the shifts of a planar
+	 * section, ignoring the positions outside of the image.
+	 */
+	private static final void filterSlice(float[] input, int sizeX, int sizeY, int[][] shifts, float[] result)
+	{
+		Arrays.fill(result, Float.NEGATIVE_INFINITY);
+		for (int[] shift : shifts)
+		{
+			int dx = shift[0];
+			int dy = shift[1];
+			int xmin = Math.max(-dx, 0);
+			int xmax = Math.min(sizeX - dx, sizeX);
+			int ymin = Math.max(-dy, 0);
+			int ymax = Math.min(sizeY - dy, sizeY);
+			for (int y = ymin; y < ymax; y++)
+			{
+				int offset = y * sizeX;
+				int offset2 = (y + dy) * sizeX + dx;
+				for (int x = xmin; x < xmax; x++)
+				{
+					float value = input[offset2 + x];
+					if (value > result[offset + x])
+						result[offset + x] = value;
+				}
+			}
+		}
+	}
+}
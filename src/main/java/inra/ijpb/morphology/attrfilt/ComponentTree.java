@@ -0,0 +1,637 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.attrfilt;
+
+import java.util.Arrays;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+/**
+ * Component tree (max-tree) of a 2D or 3D grayscale image, computed with the
+ * union-find algorithm of Najman and Couprie (in the variant of Berger et
+ * al.).
+ * 
+ * Each node of the tree corresponds to a connected component of an upper
+ * threshold set of the image, and is represented by its canonical element,
+ * that is the linear index of one of the pixels or voxels of the component
+ * with the lowest value. Attributes of the nodes (area or volume, bounding
+ * box, height, mean value) are stored in primitive arrays indexed by the
+ * position of the canonical element.
+ * 
+ * Once the tree is built, attribute openings can be computed for any
+ * attribute and any threshold value using a single pass over the nodes,
+ * without rebuilding the tree. Closings can be obtained by building the
+ * tree of the inverted image.
+ * 
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	ComponentTree tree = new ComponentTree(image, 4);
+ *	for (int minArea = 10; minArea < 1000; minArea *= 2)
+ *	{
+ *		ImageProcessor result = tree.filterImage(ComponentTree.Attribute.AREA, minArea);
+ *		// process result...
+ *	}
+ *}</pre>
+ * 
+ * References:
+ * <ul>
+ * <li>Najman, L. and Couprie, M. (2006). Building the component tree in
+ * quasi-linear time. IEEE Transactions on Image Processing, 15(11),
+ * 3531-3539.</li>
+ * <li>Berger, C., Geraud, T., Levillain, R., Widynski, N., Baillard, A. and
+ * Bertin, E. (2007). Effective component tree computation with application to
+ * pattern recognition in astronomical imaging. ICIP 2007.</li>
+ * </ul>
+ * 
+ * @author dlegland
+ */
+public class ComponentTree
+{
+	/**
+	 * The attributes that can be used for filtering the nodes of the tree.
+	 */
+	public enum Attribute
+	{
+		/** The number of pixels (or voxels) of the component */
+		AREA,
+		/** The length of the diagonal of the bounding box of the component */
+		BOX_DIAGONAL,
+		/**
+		 * The difference between the maximum value within the component and
+		 * the level of the component
+		 */
+		HEIGHT,
+		/**
+		 * The mean value within the component. As this attribute is not
+		 * increasing, filtering uses the "direct" rule: the nodes that do not
+		 * satisfy the criterion take the value of their closest ancestor
+		 * satisfying it.
+		 */
+		MEAN
+	}
+	
+	int sizeX;
+	int sizeY;
+	int sizeZ;
+	
+	/** The bit depth of the image used to build the tree */
+	int bitDepth;
+	
+	/** The values of the image, as a linear array */
+	float[] values;
+	
+	/** The pixel indices sorted by increasing values, beginning with the root */
+	int[] sortedIndices;
+	
+	/** The index of the parent of each pixel */
+	int[] parent;
+	
+	/** The number of pixels of each node */
+	int[] area;
+	
+	// the bounding box of each node
+	int[] xmin;
+	int[] xmax;
+	int[] ymin;
+	int[] ymax;
+	int[] zmin;
+	int[] zmax;
+	
+	/** The largest value within each node */
+	float[] maxValue;
+	
+	/** The sum of the values within each node */
+	double[] sumValue;
+	
+	/**
+	 * Builds the component tree of a planar image.
+	 * 
+	 * @param image
+	 *            the grayscale image
+	 * @param conn
+	 *            the connectivity, either 4 or 8
+	 */
+	public ComponentTree(ImageProcessor image, int conn)
+	{
+		this.sizeX = image.getWidth();
+		this.sizeY = image.getHeight();
+		this.sizeZ = 1;
+		
+		int[][] shifts;
+		switch (conn)
+		{
+		case 4:
+			shifts = new int[][] {{0, -1, 0}, {-1, 0, 0}, {1, 0, 0}, {0, 1, 0}};
+			break;
+		case 8:
+			shifts = new int[][] {
+				{-1, -1, 0}, {0, -1, 0}, {1, -1, 0}, {-1, 0, 0}, 
+				{1, 0, 0}, {-1, 1, 0}, {0, 1, 0}, {1, 1, 0}};
+			break;
+		default:
+			throw new IllegalArgumentException("Connectivity must be either 4 or 8, not " + conn);
+		}
+		
+		int n = sizeX * sizeY;
+		this.values = new float[n];
+		for (int i = 0; i < n; i++)
+		{
+			this.values[i] = image.getf(i);
+		}
+		
+		build(shifts, image.getBitDepth());
+	}
+	
+	/**
+	 * Builds the component tree of a 3D image.
+	 * 
+	 * @param image
+	 *            the 3D grayscale image
+	 * @param conn
+	 *            the connectivity, either 6 or 26
+	 */
+	public ComponentTree(ImageStack image, int conn)
+	{
+		this.sizeX = image.getWidth();
+		this.sizeY = image.getHeight();
+		this.sizeZ = image.getSize();
+		
+		int[][] shifts;
+		switch (conn)
+		{
+		case 6:
+			shifts = new int[][] {
+				{0, 0, -1}, {0, -1, 0}, {-1, 0, 0}, 
+				{1, 0, 0}, {0, 1, 0}, {0, 0, 1}};
+			break;
+		case 26:
+			shifts = new int[26][];
+			int k = 0;
+			for (int dz = -1; dz <= 1; dz++)
+				for (int dy = -1; dy <= 1; dy++)
+					for (int dx = -1; dx <= 1; dx++)
+						if (dx != 0 || dy != 0 || dz != 0)
+							shifts[k++] = new int[] {dx, dy, dz};
+			break;
+		default:
+			throw new IllegalArgumentException("Connectivity must be either 6 or 26, not " + conn);
+		}
+		
+		long n = (long) sizeX * sizeY * sizeZ;
+		if (n > Integer.MAX_VALUE - 8)
+		{
+			throw new IllegalArgumentException("Image is too large for computing the component tree");
+		}
+		int sizeXY = sizeX * sizeY;
+		this.values = new float[(int) n];
+		for (int z = 0; z < sizeZ; z++)
+		{
+			ImageProcessor slice = image.getProcessor(z + 1);
+			int offset = z * sizeXY;
+			for (int i = 0; i < sizeXY; i++)
+			{
+				this.values[offset + i] = slice.getf(i);
+			}
+		}
+		
+		build(shifts, image.getBitDepth());
+	}
+	
+	/**
+	 * Computes the parent and the attributes of each node.
+	 */
+	private void build(int[][] shifts, int bitDepth)
+	{
+		int n = values.length;
+		int sizeXY = sizeX * sizeY;
+		
+		this.bitDepth = bitDepth;
+		this.sortedIndices = bitDepth == 8 || bitDepth == 16 ? sortIntegerValues() : sortFloatValues();
+		
+		this.parent = new int[n];
+		this.area = new int[n];
+		this.xmin = new int[n];
+		this.xmax = new int[n];
+		this.ymin = new int[n];
+		this.ymax = new int[n];
+		this.zmin = new int[n];
+		this.zmax = new int[n];
+		this.maxValue = new float[n];
+		this.sumValue = new double[n];
+		
+		// the parent of each pixel within the union-find structure, or -1 for
+		// pixels not yet processed
+		int[] zpar = new int[n];
+		Arrays.fill(zpar, -1);
+		
+		// process pixels from the highest to the lowest value
+		for (int i = n - 1; i >= 0; i--)
+		{
+			int p = sortedIndices[i];
+			int x = p % sizeX;
+			int y = (p % sizeXY) / sizeX;
+			int z = p / sizeXY;
+			
+			parent[p] = p;
+			zpar[p] = p;
+			area[p] = 1;
+			xmin[p] = x; xmax[p] = x;
+			ymin[p] = y; ymax[p] = y;
+			zmin[p] = z; zmax[p] = z;
+			maxValue[p] = values[p];
+			sumValue[p] = values[p];
+			
+			for (int[] shift : shifts)
+			{
+				int x2 = x + shift[0];
+				int y2 = y + shift[1];
+				int z2 = z + shift[2];
+				if (x2 < 0 || x2 >= sizeX || y2 < 0 || y2 >= sizeY || z2 < 0 || z2 >= sizeZ)
+					continue;
+				
+				int q = z2 * sizeXY + y2 * sizeX + x2;
+				if (zpar[q] == -1)
+					continue;
+				
+				// merge the component containing the neighbor with current pixel
+				int r = findRoot(zpar, q);
+				if (r != p)
+				{
+					parent[r] = p;
+					zpar[r] = p;
+					area[p] += area[r];
+					xmin[p] = Math.min(xmin[p], xmin[r]);
+					xmax[p] = Math.max(xmax[p], xmax[r]);
+					ymin[p] = Math.min(ymin[p], ymin[r]);
+					ymax[p] = Math.max(ymax[p], ymax[r]);
+					zmin[p] = Math.min(zmin[p], zmin[r]);
+					zmax[p] = Math.max(zmax[p], zmax[r]);
+					maxValue[p] = Math.max(maxValue[p], maxValue[r]);
+					sumValue[p] += sumValue[r];
+				}
+			}
+		}
+		
+		// canonicalize the tree, such that the parent of each pixel is the
+		// canonical element of the node
+		for (int i = 0; i < n; i++)
+		{
+			int p = sortedIndices[i];
+			int q = parent[p];
+			if (values[parent[q]] == values[q])
+			{
+				parent[p] = parent[q];
+			}
+		}
+	}
+	
+	/**
+	 * Returns the root of the specified element, and compresses the path from
+	 * the element to the root.
+	 */
+	private static final int findRoot(int[] zpar, int p)
+	{
+		int root = p;
+		while (zpar[root] != root)
+		{
+			root = zpar[root];
+		}
+		while (zpar[p] != root)
+		{
+			int next = zpar[p];
+			zpar[p] = root;
+			p = next;
+		}
+		return root;
+	}
+	
+	/**
+	 * Sorts the indices of pixels with integer values using counting sort.
+	 */
+	private int[] sortIntegerValues()
+	{
+		int n = values.length;
+		int[] counts = new int[0x10000 + 1];
+		for (int i = 0; i < n; i++)
+		{
+			counts[(int) values[i] + 1]++;
+		}
+		for (int v = 1; v < counts.length; v++)
+		{
+			counts[v] += counts[v - 1];
+		}
+		int[] sorted = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			sorted[counts[(int) values[i]]++] = i;
+		}
+		return sorted;
+	}
+	
+	/**
+	 * Sorts the indices of pixels with floating point values, by packing
+	 * values and indices into long keys.
+	 */
+	private int[] sortFloatValues()
+	{
+		int n = values.length;
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++)
+		{
+			// convert float to an int with the same ordering
+			int bits = Float.floatToIntBits(values[i]);
+			bits ^= (bits >> 31) & 0x7FFFFFFF;
+			keys[i] = ((long) bits << 32) | i;
+		}
+		Arrays.sort(keys);
+		int[] sorted = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			sorted[i] = (int) keys[i];
+		}
+		return sorted;
+	}
+	
+	/**
+	 * @return the number of nodes of the tree
+	 */
+	public int getNodeCount()
+	{
+		int count = 0;
+		for (int p = 0; p < values.length; p++)
+		{
+			if (isCanonical(p))
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns the index of the parent of the specified pixel or voxel. For
+	 * canonical elements, the parent is the canonical element of the parent
+	 * node. For other elements, the parent is the canonical element of the
+	 * node containing the element. The parent of the root is the root itself.
+	 * 
+	 * @param index
+	 *            the linear index of a pixel or voxel
+	 * @return the linear index of the parent
+	 */
+	public int getParent(int index)
+	{
+		return parent[index];
+	}
+	
+	/**
+	 * Returns the canonical element of the node containing the specified pixel
+	 * or voxel, that is the index used for accessing the node attributes.
+	 * 
+	 * @param index
+	 *            the linear index of a pixel or voxel
+	 * @return the linear index of the canonical element of the node
+	 */
+	public int getNode(int index)
+	{
+		return isCanonical(index) ? index : parent[index];
+	}
+	
+	/**
+	 * @param index
+	 *            the linear index of a pixel or voxel
+	 * @return true if the element is the canonical element of a node
+	 */
+	public boolean isCanonical(int index)
+	{
+		int q = parent[index];
+		return q == index || values[q] != values[index];
+	}
+	
+	/**
+	 * @param node
+	 *            the canonical element of a node
+	 * @return the gray level of the node
+	 */
+	public float getLevel(int node)
+	{
+		return values[node];
+	}
+	
+	/**
+	 * @param node
+	 *            the canonical element of a node
+	 * @return the number of pixels (or voxels) within the node
+	 */
+	public int getArea(int node)
+	{
+		return area[node];
+	}
+	
+	/**
+	 * @param node
+	 *            the canonical element of a node
+	 * @return the bounding box of the node, as
+	 *         <code>[xmin, xmax, ymin, ymax, zmin, zmax]</code>
+	 */
+	public int[] getBoundingBox(int node)
+	{
+		return new int[] { xmin[node], xmax[node], ymin[node], ymax[node],
+				zmin[node], zmax[node] };
+	}
+	
+	/**
+	 * @param node
+	 *            the canonical element of a node
+	 * @return the difference between the largest value within the node and
+	 *         the level of the node
+	 */
+	public double getHeight(int node)
+	{
+		return maxValue[node] - values[node];
+	}
+	
+	/**
+	 * @param node
+	 *            the canonical element of a node
+	 * @return the mean value within the node
+	 */
+	public double getMean(int node)
+	{
+		return sumValue[node] / area[node];
+	}
+	
+	/**
+	 * Computes the attribute opening of the image, by replacing the value of
+	 * each node whose attribute is lower than the threshold by the value of
+	 * the closest ancestor that satisfies the criterion. The root of the tree
+	 * is always kept. The complexity is linear with the number of elements.
+	 * 
+	 * @param attribute
+	 *            the attribute used for filtering the nodes
+	 * @param threshold
+	 *            the minimum value of the attribute for keeping a node
+	 * @return the filtered values, as a linear array
+	 */
+	public float[] filter(Attribute attribute, double threshold)
+	{
+		int n = values.length;
+		float[] result = new float[n];
+		
+		// process pixels from the root to the leaves, such that the value of
+		// the parent is always computed before the value of the pixel
+		for (int i = 0; i < n; i++)
+		{
+			int p = sortedIndices[i];
+			int q = parent[p];
+			if (q == p)
+			{
+				// root of the tree
+				result[p] = values[p];
+			}
+			else if (values[q] == values[p])
+			{
+				// not a canonical element, use the value of the node
+				result[p] = result[q];
+			}
+			else
+			{
+				result[p] = attributeValue(attribute, p) >= threshold ? values[p] : result[q];
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Computes the attribute opening of the planar image used to build the
+	 * tree.
+	 * 
+	 * @param attribute
+	 *            the attribute used for filtering the nodes
+	 * @param threshold
+	 *            the minimum value of the attribute for keeping a node
+	 * @return a new image with the same type as the original image
+	 */
+	public ImageProcessor filterImage(Attribute attribute, double threshold)
+	{
+		if (sizeZ != 1)
+		{
+			throw new IllegalStateException("Requires a tree built from a planar image");
+		}
+		ImageProcessor result = createProcessor(sizeX, sizeY, bitDepth);
+		copyValues(filter(attribute, threshold), result);
+		return result;
+	}
+	
+	/**
+	 * Computes the attribute opening of the 3D image used to build the tree.
+	 * 
+	 * @param attribute
+	 *            the attribute used for filtering the nodes
+	 * @param threshold
+	 *            the minimum value of the attribute for keeping a node
+	 * @return a new 3D image with the same type as the original image
+	 */
+	public ImageStack filterStack(Attribute attribute, double threshold)
+	{
+		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, bitDepth);
+		copyValues(filter(attribute, threshold), result);
+		return result;
+	}
+	
+	/**
+	 * Returns the value of the attribute for the specified node.
+	 * 
+	 * @param attribute
+	 *            the attribute to compute
+	 * @param node
+	 *            the canonical element of a node
+	 * @return the value of the attribute for the node
+	 */
+	public double attributeValue(Attribute attribute, int node)
+	{
+		switch (attribute)
+		{
+		case AREA:
+			return area[node];
+		case BOX_DIAGONAL:
+			double dx = xmax[node] - xmin[node];
+			double dy = ymax[node] - ymin[node];
+			double dz = zmax[node] - zmin[node];
+			return Math.sqrt(dx * dx + dy * dy + dz * dz);
+		case HEIGHT:
+			return getHeight(node);
+		case MEAN:
+			return getMean(node);
+		default:
+			throw new IllegalArgumentException("Unknown attribute: " + attribute);
+		}
+	}
+	
+	private static final ImageProcessor createProcessor(int sizeX, int sizeY, int bitDepth)
+	{
+		switch (bitDepth)
+		{
+		case 8:
+			return new ByteProcessor(sizeX, sizeY);
+		case 16:
+			return new ShortProcessor(sizeX, sizeY);
+		case 24:
+			return new ColorProcessor(sizeX, sizeY);
+		default:
+			return new FloatProcessor(sizeX, sizeY);
+		}
+	}
+	
+	/**
+	 * Copies a linear array of values into a planar image.
+	 */
+	private static final void copyValues(float[] values, ImageProcessor target)
+	{
+		for (int i = 0; i < values.length; i++)
+		{
+			target.setf(i, values[i]);
+		}
+	}
+
+	/**
+	 * Copies a linear array of values into a 3D image.
+	 */
+	private static final void copyValues(float[] values, ImageStack target)
+	{
+		int sizeXY = target.getWidth() * target.getHeight();
+		for (int z = 0; z < target.getSize(); z++)
+		{
+			ImageProcessor slice = target.getProcessor(z + 1);
+			int offset = z * sizeXY;
+			for (int i = 0; i < sizeXY; i++)
+			{
+				slice.setf(i, values[offset + i]);
+			}
+		}
+	}
+}
@@ -24,11 +24,9 @@ package inra.ijpb.morphology.geodrec;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 import ij.ImageStack;
-import inra.ijpb.data.Cursor3D;
+import inra.ijpb.data.IndexQueue;
 import inra.ijpb.data.image.Images3D;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
 
 
 /**
@@ -74,9 +72,11 @@ public class GeodesicReconstruction3DHybrid0Gray16 extends GeodesicReconstructio
 	int sizeY = 0;
 	/** image depth */
 	int sizeZ = 0;
+	/** number of voxels within a slice, used to pack positions */
+	long sliceSize = 0;
 
 	/** the queue containing the positions that need update */
-	Deque<Cursor3D> queue;
+	IndexQueue queue;
 	
 	/**
 	 * Creates a new instance of geodesic reconstruction by dilation algorithm,
@@ -165,6 +165,7 @@ public class GeodesicReconstruction3DHybrid0Gray16 extends GeodesicReconstructio
 		this.sizeX 	= marker.getWidth();
 		this.sizeY 	= marker.getHeight();
 		this.sizeZ 	= marker.getSize();
+		this.sliceSize = ((long) sizeX) * sizeY;
 		if (!Images3D.isSameSize(marker, mask)) 
 		{
 			throw new IllegalArgumentException("Marker and Mask images must have the same size");
@@ -178,7 +179,7 @@ public class GeodesicReconstruction3DHybrid0Gray16 extends GeodesicReconstructio
 							+ connectivity);
 		}
 
-		queue = new ArrayDeque<Cursor3D>();
+		queue = new IndexQueue();
 		
 		long t0 = System.currentTimeMillis();
 		trace("Initialize result ");
@@ -598,10 +599,10 @@ public class GeodesicReconstruction3DHybrid0Gray16 extends GeodesicReconstructio
 		
 		while (!queue.isEmpty()) 
 		{
-			Cursor3D p = queue.removeFirst();
-			int x = p.getX();
-			int y = p.getY();
-			int z = p.getZ();
+			long position = queue.poll();
+			int z = (int) (position / sliceSize);
+			int y = (int) (position - z * sliceSize) / sizeX;
+			int x = (int) (position - z * sliceSize) - y * sizeX;
 			short[] slice = resultSlices[z];
 			int index = y * sizeX + x;
 			value = (slice[index] & 0x00FFFF) * sign;
@@ -661,10 +662,10 @@ public class GeodesicReconstruction3DHybrid0Gray16 extends GeodesicReconstructio
 		
 		while (!queue.isEmpty()) 
 		{
-			Cursor3D p = queue.removeFirst();
-			int x = p.getX();
-			int y = p.getY();
-			int z = p.getZ();
+			long position = queue.poll();
+			int z = (int) (position / sliceSize);
+			int y = (int) (position - z * sliceSize) / sizeX;
+			int x = (int) (position - z * sliceSize) - y * sizeX;
 			short[] slice = resultSlices[z];
 			int index = y * sizeX + x;
 			value = (slice[index] & 0x00FFFF) * sign;
@@ -735,8 +736,7 @@ public class GeodesicReconstruction3DHybrid0Gray16 extends GeodesicReconstructio
 		int resultValue = (resultSlices[k][sizeX * j + i] & 0x00FFFF) * sign; 
 		if (value > resultValue) 
 		{
-			Cursor3D position = new Cursor3D(i, j, k);
-			queue.add(position);
+			queue.add(k * sliceSize + j * sizeX + i);
 		}
 	}
 
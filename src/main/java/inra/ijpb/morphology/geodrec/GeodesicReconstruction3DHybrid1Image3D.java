@@ -24,11 +24,13 @@ package inra.ijpb.morphology.geodrec;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 import ij.ImageStack;
-import inra.ijpb.data.Cursor3D;
+import inra.ijpb.data.IndexQueue;
+import inra.ijpb.data.image.ByteImage3D;
+import inra.ijpb.data.image.FloatImage3D;
 import inra.ijpb.data.image.Image3D;
 import inra.ijpb.data.image.Images3D;
+import inra.ijpb.data.image.ShortImage3D;
 
-import java.util.ArrayDeque;
 
 
 /**
@@ -50,6 +52,12 @@ import java.util.ArrayDeque;
  * precision computation.
  * </p>
  * 
+ * <p>
+ * The forward and backward passes process the images by rows, read and
+ * written through the typed row accessors of ByteImage3D, ShortImage3D and
+ * FloatImage3D when available. The queue is processed using 3D coordinates.
+ * </p>
+ * 
  * @author David Legland
  * 
  */
@@ -71,9 +79,16 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 	int sizeY = 0;
 	/** image depth */
 	int sizeZ = 0;
+	/** number of voxels within a slice, used to pack positions */
+	long sliceSize = 0;
 
 	/** the queue containing the positions that need update */
-	ArrayDeque<Cursor3D> queue;
+	IndexQueue queue;
+	
+	/** buffers used to read and write rows of the stored type */
+	byte[] byteRow;
+	short[] shortRow;
+	float[] floatRow;
 	
 	/**
 	 * Creates a new instance of geodesic reconstruction by dilation algorithm,
@@ -150,18 +165,59 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 		this.markerStack = marker;
 		this.maskStack = mask;
 		
-		this.marker = Images3D.createWrapper(marker);
-		this.mask = Images3D.createWrapper(mask);
-		
-		// Check sizes are consistent
-		this.sizeX 	= marker.getWidth();
-		this.sizeY 	= marker.getHeight();
-		this.sizeZ 	= marker.getSize();
 		if (!Images3D.isSameSize(marker, mask)) 
 		{
 			throw new IllegalArgumentException("Marker and Mask images must have the same size");
 		}
 		
+		// Create result image the same size as marker image
+		this.resultStack = ImageStack.create(marker.getWidth(),
+				marker.getHeight(), marker.getSize(), mask.getBitDepth());
+		
+		applyTo(Images3D.createWrapper(marker), Images3D.createWrapper(mask),
+				Images3D.createWrapper(this.resultStack));
+		return this.resultStack;
+	}
+
+	/**
+	 * Run the reconstruction algorithm using the images specified as
+	 * argument, and stores the result within the specified image. As the
+	 * images are accessed only through the Image3D interface, they can be
+	 * stored outside of the Java heap, for example by using instances of
+	 * MappedImage3D.
+	 * 
+	 * @param marker
+	 *            the marker image
+	 * @param mask
+	 *            the mask image
+	 * @param result
+	 *            the image used to store the result of the reconstruction,
+	 *            with the same size and data type as the mask image
+	 * 
+	 * @see inra.ijpb.data.image.MappedImage3D
+	 */
+	public void applyTo(Image3D marker, Image3D mask, Image3D result)
+	{
+		this.marker = marker;
+		this.mask = mask;
+		this.result = result;
+		
+		// Check sizes are consistent
+		this.sizeX 	= marker.getSize(0);
+		this.sizeY 	= marker.getSize(1);
+		this.sizeZ 	= marker.getSize(2);
+		this.sliceSize = ((long) sizeX) * sizeY;
+		this.byteRow = new byte[sizeX];
+		this.shortRow = new short[sizeX];
+		this.floatRow = new float[sizeX];
+		for (int d = 0; d < 3; d++)
+		{
+			if (mask.getSize(d) != marker.getSize(d) || result.getSize(d) != marker.getSize(d))
+			{
+				throw new IllegalArgumentException("Marker, Mask and result images must have the same size");
+			}
+		}
+		
 		// Check connectivity has a correct value
 		if (connectivity != 6 && connectivity != 26)
 		{
@@ -230,8 +286,6 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 			System.out.println((t1 - t0) + " ms");
 			t0 = t1;
 		}
-
-		return this.resultStack;
 	}
 
 	/**
@@ -247,84 +301,35 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 	}
 	
 	
-	/** 
-	 * Initialize the result image with the minimum value of marker and mask
-	 * images.
+	/**
+	 * Initialize the result image with the minimum (for reconstruction by
+	 * dilation) or maximum (for reconstruction by erosion) value of marker
+	 * and mask images.
 	 */
 	private void initializeResult()
 	{
-		// Create result image the same size as marker image
-		this.resultStack = ImageStack.create(sizeX, sizeY, sizeZ, maskStack.getBitDepth());
-		this.result = Images3D.createWrapper(this.resultStack);
+		// sign for choosing between minimum and maximum
+		final int sign = this.reconstructionType.getSign();
 
-		if (this.reconstructionType == GeodesicReconstructionType.BY_DILATION) 
-		{
-			// Initialize the result image with the minimum value of marker and mask
-			// images
-			if (this.maskStack.getBitDepth() == 32)
-			{
-				// Initialize float result stack
-				for (int z = 0; z < sizeZ; z++) 
-				{
-					for (int y = 0; y < sizeY; y++)
-					{
-						for (int x = 0; x < sizeX; x++)
-						{
-							result.setValue(x, y, z, min(marker.getValue(x, y, z), mask.getValue(x, y, z)));
-						}
-					}
-				}
-			}
-			else
-			{
-				// Initialize integer result stack
-				for (int z = 0; z < sizeZ; z++) 
-				{
-					for (int y = 0; y < sizeY; y++)
-					{
-						for (int x = 0; x < sizeX; x++)
-						{
-							result.setValue(x, y, z, min(marker.getValue(x, y, z), mask.getValue(x, y, z)));
-						}
-					}
-				}
-			}
-		}
-		else 
+		// process rows using bulk accessors
+		double[] markerRow = new double[sizeX];
+		double[] maskRow = new double[sizeX];
+		double[] resultRow = new double[sizeX];
+		for (int z = 0; z < sizeZ; z++)
 		{
-			// Initialize the result image with the maximum value of marker and mask
-			// images
-			if (this.maskStack.getBitDepth() == 32)
-			{
-				// Initialize float result stack
-				for (int z = 0; z < sizeZ; z++)
-				{
-					for (int y = 0; y < sizeY; y++)
-					{
-						for (int x = 0; x < sizeX; x++)
-						{
-							result.setValue(x, y, z, max(marker.getValue(x, y, z), mask.getValue(x, y, z)));
-						}
-					}
-				}
-			} 
-			else 
+			for (int y = 0; y < sizeY; y++)
 			{
-				// Initialize integer result stack
-				for (int z = 0; z < sizeZ; z++) 
+				readRow(marker, y, z, markerRow);
+				readRow(mask, y, z, maskRow);
+				for (int x = 0; x < sizeX; x++)
 				{
-					for (int y = 0; y < sizeY; y++)
-					{
-						for (int x = 0; x < sizeX; x++)
-						{
-							result.setValue(x, y, z, max(marker.getValue(x, y, z), mask.getValue(x, y, z)));
-						}
-					}
+					resultRow[x] = min(markerRow[x] * sign, maskRow[x] * sign) * sign;
 				}
+				writeRow(result, y, z, resultRow);
 			}
 		}
 	}
-	
+
 	private void forwardScan()
 	{
 		if (this.connectivity == 6)
@@ -339,12 +344,19 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 
 	/**
 	 * Update result image using pixels in the upper left neighborhood, using
-	 * the 6-adjacency, assuming pixels are stored in bytes.
+	 * the 6-adjacency. Voxels are processed by rows, the previous row of the
+	 * same slice being kept from the previous iteration.
 	 */
-	private void forwardScanC6() 
+	private void forwardScanC6()
 	{
 		final int sign = this.reconstructionType.getSign();
-		
+
+		// the rows of result and mask images around current row
+		double[] row = new double[sizeX];
+		double[] prevRow = new double[sizeX];
+		double[] prevSliceRow = new double[sizeX];
+		double[] maskRow = new double[sizeX];
+
 		// the maximal value around current pixel
 		double maxValue;
 
@@ -352,29 +364,42 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 		for (int z = 0; z < sizeZ; z++)
 		{
 			showProgress(z, sizeZ);
-			
-			for (int y = 0; y < sizeY; y++) 
+
+			for (int y = 0; y < sizeY; y++)
 			{
-				for (int x = 0; x < sizeX; x++) 
+				readRow(result, y, z, row);
+				readRow(mask, y, z, maskRow);
+				if (z > 0)
+					readRow(result, y, z - 1, prevSliceRow);
+
+				boolean modified = false;
+				for (int x = 0; x < sizeX; x++)
 				{
-					double currentValue = result.getValue(x, y, z) * sign;
+					double currentValue = row[x] * sign;
 					maxValue = currentValue;
-					
+
 					// Iterate over the 3 'upper' neighbors of current pixel
-					if (x > 0) 
-						maxValue = max(maxValue, result.getValue(x - 1, y, z) * sign);
-					if (y > 0) 
-						maxValue = max(maxValue, result.getValue(x, y - 1, z) * sign);
+					if (x > 0)
+						maxValue = max(maxValue, row[x - 1] * sign);
+					if (y > 0)
+						maxValue = max(maxValue, prevRow[x] * sign);
 					if (z > 0)
-						maxValue = max(maxValue, result.getValue(x, y, z - 1) * sign);
-					
-					
+						maxValue = max(maxValue, prevSliceRow[x] * sign);
+
 					// update value of current voxel
-					maxValue = min(maxValue, mask.getValue(x, y, z) * sign);
+					maxValue = min(maxValue, maskRow[x] * sign);
 					if (maxValue > currentValue) {
-						result.setValue(x, y, z, maxValue * sign);
+						row[x] = maxValue * sign;
+						modified = true;
 					}
 				}
+				if (modified)
+					writeRow(result, y, z, row);
+
+				// current row becomes the previous one
+				double[] tmp = prevRow;
+				prevRow = row;
+				row = tmp;
 			}
 		} // end of pixel iteration
 
@@ -384,48 +409,82 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 
 	/**
 	 * Update result image using pixels in the upper left neighborhood, using
-	 * the 26-adjacency, assuming pixels are stored using integer data types.
+	 * the 26-adjacency. Voxels are processed by rows, the three neighbor rows
+	 * within the previous slice being kept within a ring buffer.
 	 */
 	private void forwardScanC26()
 	{
 		final int sign = this.reconstructionType.getSign();
+
+		// the rows of result and mask images around current row
+		double[] row = new double[sizeX];
+		double[] prevRow = new double[sizeX];
+		double[][] prevSliceRows = new double[3][sizeX];
+		double[] maskRow = new double[sizeX];
+
 		// the maximal value around current pixel
 		double maxValue;
 
 		// Iterate over pixels
-		for (int z = 0; z < sizeZ; z++) 
+		for (int z = 0; z < sizeZ; z++)
 		{
 			showProgress(z, sizeZ, "z = " + z);
-			
+			if (z > 0)
+				readRow(result, 0, z - 1, prevSliceRows[0]);
+
 			for (int y = 0; y < sizeY; y++)
 			{
+				readRow(result, y, z, row);
+				readRow(mask, y, z, maskRow);
+				if (z > 0 && y < sizeY - 1)
+					readRow(result, y + 1, z - 1, prevSliceRows[(y + 1) % 3]);
+
+				boolean modified = false;
 				for (int x = 0; x < sizeX; x++)
 				{
-					double currentValue = result.getValue(x, y, z) * sign;
+					double currentValue = row[x] * sign;
 					maxValue = currentValue;
 
 					// Iterate over neighbors of current pixel
-					int zmax = min(z + 1, sizeZ);
-					for (int z2 = max(z - 1, 0); z2 < zmax; z2++)
+					int xmin = max(x - 1, 0);
+					int xmax = min(x + 1, sizeX - 1);
+					if (z > 0)
 					{
-						int ymax = z2 == z ? y : min(y + 1, sizeY - 1); 
-						for (int y2 = max(y - 1, 0); y2 <= ymax; y2++) 
+						int ymax = min(y + 1, sizeY - 1);
+						for (int y2 = max(y - 1, 0); y2 <= ymax; y2++)
 						{
-							int xmax = (z2 == z && y2 == y) ? x - 1 : min(x + 1, sizeX - 1); 
-							for (int x2 = max(x - 1, 0); x2 <= xmax; x2++) 
+							double[] row2 = prevSliceRows[y2 % 3];
+							for (int x2 = xmin; x2 <= xmax; x2++)
 							{
-								maxValue = max(maxValue, result.getValue(x2, y2, z2) * sign);
+								maxValue = max(maxValue, row2[x2] * sign);
 							}
 						}
 					}
+					if (y > 0)
+					{
+						for (int x2 = xmin; x2 <= xmax; x2++)
+						{
+							maxValue = max(maxValue, prevRow[x2] * sign);
+						}
+					}
+					if (x > 0)
+						maxValue = max(maxValue, row[x - 1] * sign);
 
 					// update value of current voxel
-					maxValue = min(maxValue, mask.getValue(x, y, z) * sign);
+					maxValue = min(maxValue, maskRow[x] * sign);
 					if (maxValue > currentValue)
 					{
-						result.setValue(x, y, z, maxValue * sign);
+						row[x] = maxValue * sign;
+						modified = true;
 					}
 				}
+				if (modified)
+					writeRow(result, y, z, row);
+
+				// current row becomes the previous one
+				double[] tmp = prevRow;
+				prevRow = row;
+				row = tmp;
 			}
 		}
 
@@ -436,119 +495,173 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 
 	private void backwardScan()
 	{
-		if (this.connectivity == 6) 
+		if (this.connectivity == 6)
 		{
 			backwardScanC6();
-		} 
-		else 
+		}
+		else
 		{
 			backwardScanC26();
 		}
 	}
 	/**
 	 * Update result image using pixels in the lower right neighborhood, using
-	 * the 6-adjacency.
+	 * the 6-adjacency. Voxels are processed by rows, the next row of the
+	 * same slice being kept from the previous iteration.
 	 */
-	private void backwardScanC6() 
+	private void backwardScanC6()
 	{
 		final int sign = this.reconstructionType.getSign();
+
+		// the rows of result and mask images around current row
+		double[] row = new double[sizeX];
+		double[] nextRow = new double[sizeX];
+		double[] nextSliceRow = new double[sizeX];
+		double[] maskRow = new double[sizeX];
+
 		// the maximal value around current pixel
 		double maxValue;
 
 		// Iterate over voxels
-		for (int z = sizeZ - 1; z >= 0; z--) 
+		for (int z = sizeZ - 1; z >= 0; z--)
 		{
 			showProgress(sizeZ - 1 - z, sizeZ, "z = " + z);
 
-			for (int y = sizeY - 1; y >= 0; y--) 
+			for (int y = sizeY - 1; y >= 0; y--)
 			{
+				readRow(result, y, z, row);
+				readRow(mask, y, z, maskRow);
+				if (z < sizeZ - 1)
+					readRow(result, y, z + 1, nextSliceRow);
+
+				boolean modified = false;
 				for (int x = sizeX - 1; x >= 0; x--)
 				{
-					double currentValue = result.getValue(x, y, z) * sign;
+					double currentValue = row[x] * sign;
 					maxValue = currentValue;
-					
+
 					// Iterate over the 3 'lower' neighbors of current voxel
 					if (x < sizeX - 1)
-						maxValue = max(maxValue, result.getValue(x + 1, y, z) * sign);
+						maxValue = max(maxValue, row[x + 1] * sign);
 					if (y < sizeY - 1)
-						maxValue = max(maxValue, result.getValue(x, y + 1, z) * sign);
+						maxValue = max(maxValue, nextRow[x] * sign);
 					if (z < sizeZ - 1)
-						maxValue = max(maxValue, result.getValue(x, y, z + 1) * sign);
-					
+						maxValue = max(maxValue, nextSliceRow[x] * sign);
 
 					// update value of current voxel
-					maxValue = min(maxValue, mask.getValue(x, y, z) * sign);
-					if (maxValue > currentValue) 
+					maxValue = min(maxValue, maskRow[x] * sign);
+					if (maxValue > currentValue)
 					{
-						result.setValue(x, y, z, maxValue * sign);
+						row[x] = maxValue * sign;
+						modified = true;
 					}
 				}
+				if (modified)
+					writeRow(result, y, z, row);
+
+				// current row becomes the next one
+				double[] tmp = nextRow;
+				nextRow = row;
+				row = tmp;
 			}
-		}	
+		}
 
 		// clear progression display
 		showProgress(1, 1, "");
 	}
-	
+
 	/**
-	 * Update result image using pixels in the upper left neighborhood, using
-	 * the 26-adjacency.
+	 * Update result image using pixels in the lower right neighborhood, using
+	 * the 26-adjacency. Voxels are processed by rows, the three neighbor rows
+	 * within the next slice being kept within a ring buffer.
 	 */
-	private void backwardScanC26() 
+	private void backwardScanC26()
 	{
 		final int sign = this.reconstructionType.getSign();
+
+		// the rows of result and mask images around current row
+		double[] row = new double[sizeX];
+		double[] nextRow = new double[sizeX];
+		double[][] nextSliceRows = new double[3][sizeX];
+		double[] maskRow = new double[sizeX];
+
 		// the maximal value around current pixel
 		double maxValue;
-	
+
 		// Iterate over voxels
 		for (int z = sizeZ - 1; z >= 0; z--)
 		{
 			showProgress(sizeZ - 1 - z, sizeZ, "z = " + z);
-	
+			if (z < sizeZ - 1)
+				readRow(result, sizeY - 1, z + 1, nextSliceRows[(sizeY - 1) % 3]);
+
 			for (int y = sizeY - 1; y >= 0; y--)
 			{
+				readRow(result, y, z, row);
+				readRow(mask, y, z, maskRow);
+				if (z < sizeZ - 1 && y > 0)
+					readRow(result, y - 1, z + 1, nextSliceRows[(y - 1) % 3]);
+
+				boolean modified = false;
 				for (int x = sizeX - 1; x >= 0; x--)
 				{
-					double currentValue = result.getValue(x, y, z) * sign;
+					double currentValue = row[x] * sign;
 					maxValue = currentValue;
-	
+
 					// Iterate over neighbors of current voxel
-					int zmin = max(z - 1, 0);
-					for (int z2 = min(z + 1, sizeZ - 1); z2 >= zmin; z2--) 
+					int xmin = max(x - 1, 0);
+					int xmax = min(x + 1, sizeX - 1);
+					if (z < sizeZ - 1)
 					{
-	
-						int ymin = z2 == z ? y : max(y - 1, 0); 
-						for (int y2 = min(y + 1, sizeY - 1); y2 >= ymin; y2--) 
+						int ymin = max(y - 1, 0);
+						for (int y2 = min(y + 1, sizeY - 1); y2 >= ymin; y2--)
 						{
-							int xmin = (z2 == z && y2 == y) ? x : max(x - 1, 0); 
-							for (int x2 = min(x + 1, sizeX - 1); x2 >= xmin; x2--) 
+							double[] row2 = nextSliceRows[y2 % 3];
+							for (int x2 = xmax; x2 >= xmin; x2--)
 							{
-								maxValue = max(maxValue, result.getValue(x2, y2, z2) * sign);
+								maxValue = max(maxValue, row2[x2] * sign);
 							}
 						}
 					}
-	
+					if (y < sizeY - 1)
+					{
+						for (int x2 = xmax; x2 >= xmin; x2--)
+						{
+							maxValue = max(maxValue, nextRow[x2] * sign);
+						}
+					}
+					if (x < sizeX - 1)
+						maxValue = max(maxValue, row[x + 1] * sign);
+
 					// update value of current voxel
-					maxValue = min(maxValue, mask.getValue(x, y, z) * sign);
+					maxValue = min(maxValue, maskRow[x] * sign);
 					if (maxValue > currentValue)
 					{
-						result.setValue(x, y, z, maxValue * sign);
+						row[x] = maxValue * sign;
+						modified = true;
 					}
 				}
+				if (modified)
+					writeRow(result, y, z, row);
+
+				// current row becomes the next one
+				double[] tmp = nextRow;
+				nextRow = row;
+				row = tmp;
 			}
-		}	
+		}
 
 		// clear progression display
 		showProgress(1, 1, "");
 	}
-	
+
 	private void initQueue()
 	{
-		if (this.connectivity == 6) 
+		if (this.connectivity == 6)
 		{
 			initQueueC6();
-		} 
-		else 
+		}
+		else
 		{
 			initQueueC26();
 		}
@@ -558,39 +671,56 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 	 * Update result image using pixels in the upper left neighborhood,
 	 * using the 6-adjacency.
 	 */
-	private void initQueueC6() 
+	private void initQueueC6()
 	{
 		// sign for adapting dilation and erosion algorithms
 		final int sign = this.reconstructionType.getSign();
 
+		// the rows of result and mask images around current row
+		double[] row = new double[sizeX];
+		double[] prevRow = new double[sizeX];
+		double[] prevSliceRow = new double[sizeX];
+		double[] maskRow = new double[sizeX];
+
 		// the maximal value around current pixel
 		double maxValue;
-				
-		queue = new ArrayDeque<Cursor3D>();
-		
+
+		queue = new IndexQueue();
+
 		// Iterate over pixels
 		for (int z = 0; z < sizeZ; z++)
 		{
 			showProgress(z + 1, sizeZ);
-			
+
 			for (int y = 0; y < sizeY; y++)
 			{
-				for (int x = 0; x < sizeX; x++) 
+				readRow(result, y, z, row);
+				readRow(mask, y, z, maskRow);
+				if (z > 0)
+					readRow(result, y, z - 1, prevSliceRow);
+
+				for (int x = 0; x < sizeX; x++)
 				{
-					double currentValue = result.getValue(x, y, z) * sign;
+					double currentValue = row[x] * sign;
 					maxValue = currentValue;
-					
+
 					// Iterate over the 3 'upper' neighbors of current pixel
-					if (x > 0) 
-						maxValue = max(maxValue, result.getValue(x - 1, y, z) * sign);
-					if (y > 0) 
-						maxValue = max(maxValue, result.getValue(x, y - 1, z) * sign);
+					if (x > 0)
+						maxValue = max(maxValue, row[x - 1] * sign);
+					if (y > 0)
+						maxValue = max(maxValue, prevRow[x] * sign);
 					if (z > 0)
-						maxValue = max(maxValue, result.getValue(x, y, z - 1) * sign);
-					
-					if (maxValue > currentValue)
-						updateQueue(x, y, z, maxValue, sign);
+						maxValue = max(maxValue, prevSliceRow[x] * sign);
+
+					// add to queue if value can be increased
+					if (min(maxValue, maskRow[x] * sign) > currentValue)
+						queue.add(z * sliceSize + y * sizeX + x);
 				}
+
+				// current row becomes the previous one
+				double[] tmp = prevRow;
+				prevRow = row;
+				row = tmp;
 			}
 		} // end of pixel iteration
 
@@ -600,51 +730,140 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 	 * Update result image using pixels in the upper left neighborhood,
 	 * using the 26-adjacency.
 	 */
-	private void initQueueC26() 
+	private void initQueueC26()
 	{
 		// sign for adapting dilation and erosion algorithms
 		final int sign = this.reconstructionType.getSign();
 
+		// the rows of result and mask images around current row
+		double[] row = new double[sizeX];
+		double[] prevRow = new double[sizeX];
+		double[][] prevSliceRows = new double[3][sizeX];
+		double[] maskRow = new double[sizeX];
+
 		// the maximal value around current pixel
 		double maxValue;
-				
-		queue = new ArrayDeque<Cursor3D>();
-		
+
+		queue = new IndexQueue();
+
 		// Iterate over pixels
 		for (int z = 0; z < sizeZ; z++)
 		{
 			showProgress(z + 1, sizeZ);
-			
-			for (int y = 0; y < sizeY; y++) 
+			if (z > 0)
+				readRow(result, 0, z - 1, prevSliceRows[0]);
+
+			for (int y = 0; y < sizeY; y++)
 			{
+				readRow(result, y, z, row);
+				readRow(mask, y, z, maskRow);
+				if (z > 0 && y < sizeY - 1)
+					readRow(result, y + 1, z - 1, prevSliceRows[(y + 1) % 3]);
+
 				for (int x = 0; x < sizeX; x++)
 				{
-					double currentValue = result.getValue(x, y, z) * sign;
+					double currentValue = row[x] * sign;
 					maxValue = currentValue;
-					
+
 					// Iterate over neighbors of current pixel
-					int zmax = min(z + 1, sizeZ);
-					for (int z2 = max(z - 1, 0); z2 < zmax; z2++)
+					int xmin = max(x - 1, 0);
+					int xmax = min(x + 1, sizeX - 1);
+					if (z > 0)
 					{
-						int ymax = z2 == z ? y : min(y + 1, sizeY - 1); 
-						for (int y2 = max(y - 1, 0); y2 <= ymax; y2++) 
+						int ymax = min(y + 1, sizeY - 1);
+						for (int y2 = max(y - 1, 0); y2 <= ymax; y2++)
 						{
-							int xmax = (z2 == z && y2 == y) ? x - 1 : min(x + 1, sizeX - 1); 
-							for (int x2 = max(x - 1, 0); x2 <= xmax; x2++)
+							double[] row2 = prevSliceRows[y2 % 3];
+							for (int x2 = xmin; x2 <= xmax; x2++)
 							{
-								maxValue = max(maxValue, result.getValue(x2, y2, z2) * sign);
+								maxValue = max(maxValue, row2[x2] * sign);
 							}
 						}
 					}
+					if (y > 0)
+					{
+						for (int x2 = xmin; x2 <= xmax; x2++)
+						{
+							maxValue = max(maxValue, prevRow[x2] * sign);
+						}
+					}
+					if (x > 0)
+						maxValue = max(maxValue, row[x - 1] * sign);
 
-					if (maxValue > currentValue)
-						updateQueue(x, y, z, maxValue, sign);
+					// add to queue if value can be increased
+					if (min(maxValue, maskRow[x] * sign) > currentValue)
+						queue.add(z * sliceSize + y * sizeX + x);
 				}
+
+				// current row becomes the previous one
+				double[] tmp = prevRow;
+				prevRow = row;
+				row = tmp;
 			}
 		} // end of pixel iteration
 
 	}
 
+	/**
+	 * Reads a row of voxels as double values. Images with a typed access
+	 * to their rows are read through a primitive array of the stored type.
+	 */
+	private void readRow(Image3D image, int y, int z, double[] values)
+	{
+		if (image instanceof ByteImage3D)
+		{
+			((ByteImage3D) image).getRow(y, z, byteRow);
+			for (int x = 0; x < sizeX; x++)
+				values[x] = byteRow[x] & 0x00FF;
+		}
+		else if (image instanceof ShortImage3D)
+		{
+			((ShortImage3D) image).getRow(y, z, shortRow);
+			for (int x = 0; x < sizeX; x++)
+				values[x] = shortRow[x] & 0x00FFFF;
+		}
+		else if (image instanceof FloatImage3D)
+		{
+			((FloatImage3D) image).getRow(y, z, floatRow);
+			for (int x = 0; x < sizeX; x++)
+				values[x] = floatRow[x];
+		}
+		else
+		{
+			image.getRowValues(y, z, values);
+		}
+	}
+
+	/**
+	 * Writes a row of voxels given as double values, converted in the same
+	 * way as by the setValue method of the stack wrappers.
+	 */
+	private void writeRow(Image3D image, int y, int z, double[] values)
+	{
+		if (image instanceof ByteImage3D)
+		{
+			for (int x = 0; x < sizeX; x++)
+				byteRow[x] = (byte) (max(min(values[x], 255), 0) + .5);
+			((ByteImage3D) image).setRow(y, z, byteRow);
+		}
+		else if (image instanceof ShortImage3D)
+		{
+			for (int x = 0; x < sizeX; x++)
+				shortRow[x] = (short) max(min(values[x], 65535), 0);
+			((ShortImage3D) image).setRow(y, z, shortRow);
+		}
+		else if (image instanceof FloatImage3D)
+		{
+			for (int x = 0; x < sizeX; x++)
+				floatRow[x] = (float) values[x];
+			((FloatImage3D) image).setRow(y, z, floatRow);
+		}
+		else
+		{
+			image.setRowValues(y, z, values);
+		}
+	}
+
 	private void processQueue()
 	{
 		if (this.connectivity == 6)
@@ -671,10 +890,10 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 		
 		while (!queue.isEmpty())
 		{
-			Cursor3D p = queue.removeFirst();
-			int x = p.getX();
-			int y = p.getY();
-			int z = p.getZ();
+			long position = queue.poll();
+			int z = (int) (position / sliceSize);
+			int y = (int) (position - z * sliceSize) / sizeX;
+			int x = (int) (position - z * sliceSize) - y * sizeX;
 			value = result.getValue(x, y, z) * sign;
 			
 			// compare with each one of the neighbors
@@ -732,10 +951,10 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 		
 		while (!queue.isEmpty()) 
 		{
-			Cursor3D p = queue.removeFirst();
-			int x = p.getX();
-			int y = p.getY();
-			int z = p.getZ();
+			long position = queue.poll();
+			int z = (int) (position / sliceSize);
+			int y = (int) (position - z * sliceSize) / sizeX;
+			int x = (int) (position - z * sliceSize) - y * sizeX;
 			value = result.getValue(x, y, z) * sign;
 			
 			// compute bounds of neighborhood
@@ -796,8 +1015,7 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 		value = Math.min(value, mask.getValue(i, j, k) * sign);
 		if (value > result.getValue(i, j, k) * sign)
 		{
-			Cursor3D position = new Cursor3D(i, j, k);
-			queue.add(position);
+			queue.add(k * sliceSize + j * sizeX + i);
 		}
 	}
 }
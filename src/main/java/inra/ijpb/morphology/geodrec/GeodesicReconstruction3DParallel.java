@@ -0,0 +1,353 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.geodrec;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ij.ImageStack;
+import ij.Prefs;
+import inra.ijpb.data.image.Images3D;
+import inra.ijpb.util.SlabScheduler;
+
+/**
+ * <p>
+ * Geodesic reconstruction for 3D stacks that processes blocks of slices
+ * concurrently. This class manages both reconstructions by dilation and
+ * erosion, for 8-bits, 16-bits and 32-bits stacks.
+ * </p>
+ * 
+ * <p>
+ * The stack is split into tiles made of consecutive slices. Each tile is
+ * reconstructed with the hybrid algorithm, using the adjacent slice of each
+ * neighbor tile as marker and mask boundary. When the values of the first or
+ * last slice of a tile change, the neighbor tile is re-activated, and the
+ * process continues until no tile is active anymore. As geodesic
+ * reconstruction converges to a unique fixed point, the result is the same as
+ * the one obtained with the sequential algorithms.
+ * </p>
+ * 
+ * <p>
+ * Tiles are dispatched to the threads by a SlabScheduler: a tile that is
+ * modified by a neighbor while it is processed is run again immediately by
+ * the same thread. If a thread fails, the other threads are released, and
+ * its exception is thrown again by the <code>applyTo()</code> method.
+ * </p>
+ * 
+ * @see GeodesicReconstruction3DHybrid0Gray8
+ * @see GeodesicReconstruction3DHybrid0Gray16
+ * @see GeodesicReconstruction3DHybrid0Float
+ * @see inra.ijpb.util.SlabScheduler
+ * 
+ * @author David Legland
+ * 
+ */
+public class GeodesicReconstruction3DParallel extends GeodesicReconstruction3DAlgoStub
+{
+	/** The minimum number of slices within a tile */
+	static final int MIN_TILE_SIZE = 16;
+	
+	GeodesicReconstructionType reconstructionType = GeodesicReconstructionType.BY_DILATION;
+	
+	/** The number of threads used for computation */
+	int nThreads = Prefs.getThreads();
+	
+	ImageStack maskStack;
+	ImageStack resultStack;
+	
+	Object[] maskSlices;
+	Object[] resultSlices;
+	
+	/** image width */
+	int sizeX = 0;
+	/** image height */
+	int sizeY = 0;
+	/** image depth */
+	int sizeZ = 0;
+	
+	/** the index of the first slice of each tile, plus the number of slices */
+	int[] tileStarts;
+	
+	/** the number of tile reconstructions performed so far */
+	AtomicInteger tileRuns;
+	
+	/**
+	 * Creates a new instance of geodesic reconstruction by dilation algorithm,
+	 * using the default connectivity 6.
+	 */
+	public GeodesicReconstruction3DParallel()
+	{
+	}
+	
+	/**
+	 * Creates a new instance of geodesic reconstruction algorithm, that
+	 * specifies the type of reconstruction, and using the connectivity 6.
+	 * 
+	 * @param type
+	 *            the type of reconstruction (erosion or dilation)
+	 */
+	public GeodesicReconstruction3DParallel(GeodesicReconstructionType type)
+	{
+		this.reconstructionType = type;
+	}
+	
+	/**
+	 * Creates a new instance of geodesic reconstruction algorithm, that
+	 * specifies the type of reconstruction, and the connectivity to use.
+	 * 
+	 * @param type
+	 *            the type of reconstruction (erosion or dilation)
+	 * @param connectivity
+	 *            the 3D connectivity to use (either 6 or 26)
+	 */
+	public GeodesicReconstruction3DParallel(GeodesicReconstructionType type, int connectivity)
+	{
+		this.reconstructionType = type;
+		this.connectivity = connectivity;
+	}
+	
+	/**
+	 * @return the reconstructionType
+	 */
+	public GeodesicReconstructionType getReconstructionType()
+	{
+		return reconstructionType;
+	}
+	
+	/**
+	 * @param reconstructionType the reconstructionType to set
+	 */
+	public void setReconstructionType(GeodesicReconstructionType reconstructionType)
+	{
+		this.reconstructionType = reconstructionType;
+	}
+	
+	/**
+	 * @return the number of threads used for computation
+	 */
+	public int getNumberOfThreads()
+	{
+		return this.nThreads;
+	}
+	
+	/**
+	 * @param nThreads
+	 *            the number of threads used for computation (at least 1)
+	 */
+	public void setNumberOfThreads(int nThreads)
+	{
+		if (nThreads < 1)
+		{
+			throw new IllegalArgumentException("Number of threads must be at least 1");
+		}
+		this.nThreads = nThreads;
+	}
+	
+	/**
+	 * Run the reconstruction algorithm using the images specified as argument.
+	 */
+	public ImageStack applyTo(ImageStack marker, ImageStack mask)
+	{
+		// Check bit depth of input images
+		int bitDepth = mask.getBitDepth();
+		if (marker.getBitDepth() != bitDepth || (bitDepth != 8 && bitDepth != 16 && bitDepth != 32))
+		{
+			throw new IllegalArgumentException("Requires marker and mask images with same bit depth, either 8, 16 or 32");
+		}
+		
+		// Check sizes are consistent
+		if (!Images3D.isSameSize(marker, mask))
+		{
+			throw new IllegalArgumentException("Marker and Mask images must have the same size");
+		}
+		
+		// Check connectivity has a correct value
+		if (connectivity != 6 && connectivity != 26)
+		{
+			throw new RuntimeException(
+					"Connectivity for stacks must be either 6 or 26, not "
+							+ connectivity);
+		}
+		
+		this.sizeX = marker.getWidth();
+		this.sizeY = marker.getHeight();
+		this.sizeZ = marker.getSize();
+		
+		// small stacks or single thread: no need to split
+		int nTiles = Math.min(sizeZ / MIN_TILE_SIZE, 2 * nThreads);
+		if (nThreads == 1 || nTiles < 2)
+		{
+			GeodesicReconstruction3DAlgoStub algo = createTileAlgo(bitDepth);
+			algo.showStatus = this.showStatus;
+			algo.showProgress = this.showProgress;
+			return algo.applyTo(marker, mask);
+		}
+		
+		showStatus("Geod. Rec. Parallel ");
+		
+		// the result is initialized with the marker, and will be updated tile by tile
+		this.maskStack = mask;
+		this.resultStack = marker.duplicate();
+		this.maskSlices = new Object[sizeZ];
+		this.resultSlices = new Object[sizeZ];
+		for (int z = 0; z < sizeZ; z++)
+		{
+			maskSlices[z] = mask.getPixels(z + 1);
+			resultSlices[z] = resultStack.getPixels(z + 1);
+		}
+		
+		// split the stack into tiles with the same number of slices
+		this.tileStarts = new int[nTiles + 1];
+		for (int t = 0; t <= nTiles; t++)
+		{
+			tileStarts[t] = (int) (((long) sizeZ) * t / nTiles);
+		}
+		
+		// reconstruct the tiles until no face is modified anymore
+		this.tileRuns = new AtomicInteger(0);
+		final int bitDepth0 = bitDepth;
+		new SlabScheduler(nTiles).run(new SlabScheduler.SlabProcessor()
+		{
+			public int process(int tile)
+			{
+				return processTile(tile, bitDepth0);
+			}
+		}, nThreads);
+		
+		trace("Number of tile reconstructions: " + tileRuns.get() + " for " + nTiles + " tiles");
+		
+		return this.resultStack;
+	}
+	
+	/**
+	 * Run the reconstruction algorithm using the images specified as argument.
+	 */
+	public ImageStack applyTo(
+			ImageStack marker,
+			ImageStack mask,
+			ImageStack binaryMask )
+	{
+		throw new RuntimeException("Method not yet implemented");
+	}
+	
+	/**
+	 * Reconstructs the slices of the specified tile, using the adjacent slices
+	 * of the neighbor tiles as boundary, and updates the result stack.
+	 * 
+	 * @return a combination of the flags of SlabScheduler indicating which
+	 *         faces of the tile were modified
+	 */
+	private int processTile(int t, int bitDepth)
+	{
+		tileRuns.incrementAndGet();
+		
+		int z0 = tileStarts[t];
+		int z1 = tileStarts[t + 1];
+		int zs = Math.max(z0 - 1, 0);
+		int ze = Math.min(z1 + 1, sizeZ);
+		
+		// create sub-stacks sharing the slices of the result and of the mask
+		ImageStack marker = new ImageStack(sizeX, sizeY);
+		ImageStack mask = new ImageStack(sizeX, sizeY);
+		for (int z = zs; z < ze; z++)
+		{
+			marker.addSlice(null, resultSlices[z]);
+			mask.addSlice(null, maskSlices[z]);
+		}
+		
+		GeodesicReconstruction3DAlgoStub algo = createTileAlgo(bitDepth);
+		algo.showStatus = false;
+		algo.showProgress = false;
+		ImageStack tileResult = algo.applyTo(marker, mask);
+		
+		// copy inner slices to result, keeping track of face modifications
+		int changes = 0;
+		for (int z = z0; z < z1; z++)
+		{
+			boolean changed = copySlice(tileResult.getPixels(z - zs + 1), resultSlices[z]);
+			if (changed && z == z0)
+			{
+				changes |= SlabScheduler.LOWER_FACE;
+			}
+			if (changed && z == z1 - 1)
+			{
+				changes |= SlabScheduler.UPPER_FACE;
+			}
+		}
+		
+		fireProgressChanged(this, tileRuns.get(), tileStarts.length - 1);
+		return changes;
+	}
+	
+	/**
+	 * Creates the sequential algorithm used to process a tile.
+	 */
+	private GeodesicReconstruction3DAlgoStub createTileAlgo(int bitDepth)
+	{
+		switch (bitDepth)
+		{
+		case 8:
+			return new GeodesicReconstruction3DHybrid0Gray8(reconstructionType, connectivity);
+		case 16:
+			return new GeodesicReconstruction3DHybrid0Gray16(reconstructionType, connectivity);
+		case 32:
+			return new GeodesicReconstruction3DHybrid0Float(reconstructionType, connectivity);
+		default:
+			throw new IllegalArgumentException("Can not process stacks with bit depth " + bitDepth);
+		}
+	}
+	
+	/**
+	 * Copies the values of the source slice into the target slice, if they
+	 * are different.
+	 * 
+	 * @return true if the target slice was modified
+	 */
+	private static final boolean copySlice(Object source, Object target)
+	{
+		if (source instanceof byte[])
+		{
+			byte[] src = (byte[]) source;
+			byte[] dst = (byte[]) target;
+			if (Arrays.equals(src, dst))
+				return false;
+			System.arraycopy(src, 0, dst, 0, src.length);
+		}
+		else if (source instanceof short[])
+		{
+			short[] src = (short[]) source;
+			short[] dst = (short[]) target;
+			if (Arrays.equals(src, dst))
+				return false;
+			System.arraycopy(src, 0, dst, 0, src.length);
+		}
+		else
+		{
+			float[] src = (float[]) source;
+			float[] dst = (float[]) target;
+			if (Arrays.equals(src, dst))
+				return false;
+			System.arraycopy(src, 0, dst, 0, src.length);
+		}
+		return true;
+	}
+}
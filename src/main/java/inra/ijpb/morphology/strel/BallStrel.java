@@ -173,8 +173,11 @@ public class BallStrel extends AbstractStrel3D
 	}
 
 	/**
-	 * Performs dilation with a ball structuring element by calling the ImageJ
-	 * Filters3D.filter method, using Filters3D.MAX option.
+	 * Performs dilation with a ball structuring element. The result is the same as
+	 * the one obtained with the ImageJ Filters3D.filter method using the
+	 * Filters3D.MAX option, but the ellipsoid is decomposed into linear
+	 * chords, and slices are processed in parallel. Images that are not
+	 * 8-bit, 16-bit or 32-bit are processed with the Filters3D class.
 	 * 
 	 * @param image
 	 *            the 3D stack to process
@@ -183,12 +186,19 @@ public class BallStrel extends AbstractStrel3D
 	public ImageStack dilation(ImageStack image)
 	{
 		float r = (float) this.radius;
-		return Filters3D.filter(image, Filters3D.MAX, r, r, r);
+		if (!ChordExtremumFilter3D.canProcess(image))
+		{
+			return Filters3D.filter(image, Filters3D.MAX, r, r, r);
+		}
+		return new ChordExtremumFilter3D(r, r, r).process(image, LocalExtremum.Type.MAXIMUM);
 	}
 
 	/**
-	 * Performs erosion with a ball structuring element by calling the ImageJ
-	 * Filters3D.filter method, using Filters3D.MIN option.
+	 * Performs erosion with a ball structuring element. The result is the same as
+	 * the one obtained with the ImageJ Filters3D.filter method using the
+	 * Filters3D.MIN option, but the ellipsoid is decomposed into linear
+	 * chords, and slices are processed in parallel. Images that are not
+	 * 8-bit, 16-bit or 32-bit are processed with the Filters3D class.
 	 * 
 	 * @param image
 	 *            the 3D stack to process
@@ -197,6 +207,10 @@ public class BallStrel extends AbstractStrel3D
 	public ImageStack erosion(ImageStack image)
 	{
 		float r = (float) this.radius;
-		return Filters3D.filter(image, Filters3D.MIN, r, r, r);
+		if (!ChordExtremumFilter3D.canProcess(image))
+		{
+			return Filters3D.filter(image, Filters3D.MIN, r, r, r);
+		}
+		return new ChordExtremumFilter3D(r, r, r).process(image, LocalExtremum.Type.MINIMUM);
 	}
 }
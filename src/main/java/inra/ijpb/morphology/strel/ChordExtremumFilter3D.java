@@ -0,0 +1,353 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.strel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ij.ImageStack;
+import ij.Prefs;
+import ij.util.ThreadUtil;
+
+/**
+ * <p>
+ * Computes the minimum or the maximum within an ellipsoidal neighborhood of
+ * each voxel of a 3D image, by decomposing the ellipsoid into horizontal
+ * chords.
+ * </p>
+ * <p>
+ * The neighborhood is the same as the one used by the ImageJ
+ * <code>Filters3D</code> class: the voxel at offset (i,j,k) belongs to the
+ * neighborhood if <code>i^2/rx^2 + j^2/ry^2 + k^2/rz^2 &le; 1</code>, the
+ * squared radii being computed in single precision. As for
+ * <code>Filters3D</code>, voxels outside of the image are ignored. The
+ * result is therefore identical to the one obtained with
+ * <code>Filters3D.filter(image, Filters3D.MAX, rx, ry, rz)</code> (or
+ * <code>MIN</code>).
+ * </p>
+ * <p>
+ * For each (j,k) offset, the neighborhood contains a chord of voxels centered
+ * on the x-axis. For each slice of the neighborhood, the rows of the source
+ * slice are filtered with a linear window for each distinct chord length,
+ * using the van Herk / Gil-Werman algorithm, and the result is combined with
+ * the current extremum of the output slice for each chord with this length.
+ * This requires a number of operations per voxel proportional to the number
+ * of chords, instead of the number of voxels within the neighborhood. Output
+ * slices are processed in parallel.
+ * </p>
+ * 
+ * @see BallStrel
+ * @see EllipsoidStrel
+ * @see LocalExtremumVanHerk
+ * 
+ * @author David Legland
+ */
+class ChordExtremumFilter3D
+{
+	// ===================================================================
+	// Class variables
+	
+	/**
+	 * The half-widths of the chords, indexed by [dz + rz][dy + ry]. Offsets
+	 * that do not contain any chord are associated to -1.
+	 */
+	int[][] halfWidths;
+
+	/** The extent of the neighborhood in each direction. */
+	int rx;
+	int ry;
+	int rz;
+	
+	/**
+	 * The number of threads used for computation.
+	 */
+	int nThreads = Prefs.getThreads();
+
+	
+	// ===================================================================
+	// Constructor
+	
+	/**
+	 * Creates a new filter from the radii of the ellipsoid along each axis.
+	 * 
+	 * @param radiusX
+	 *            the radius of the ellipsoid along the x axis
+	 * @param radiusY
+	 *            the radius of the ellipsoid along the y axis
+	 * @param radiusZ
+	 *            the radius of the ellipsoid along the z axis
+	 */
+	ChordExtremumFilter3D(float radiusX, float radiusY, float radiusZ)
+	{
+		this.rx = (int) Math.ceil(radiusX);
+		this.ry = (int) Math.ceil(radiusY);
+		this.rz = (int) Math.ceil(radiusZ);
+		
+		// use the same computation as in the Filters3D class 
+		double rx2 = radiusX * radiusX;
+		double ry2 = radiusY * radiusY;
+		double rz2 = radiusZ * radiusZ;
+		rx2 = rx2 != 0 ? 1.0 / rx2 : 0;
+		ry2 = ry2 != 0 ? 1.0 / ry2 : 0;
+		rz2 = rz2 != 0 ? 1.0 / rz2 : 0;
+		
+		// the extent of each chord is the largest dx within the ellipsoid 
+		this.halfWidths = new int[2 * rz + 1][2 * ry + 1];
+		for (int k = -rz; k <= rz; k++)
+		{
+			for (int j = -ry; j <= ry; j++)
+			{
+				int hw = -1;
+				for (int i = 0; i <= rx; i++)
+				{
+					double dist = ((double) (i * i)) * rx2 + ((double) (j * j)) * ry2 + ((double) (k * k)) * rz2;
+					if (dist <= 1.0)
+					{
+						hw = i;
+					}
+				}
+				this.halfWidths[k + rz][j + ry] = hw;
+			}
+		}
+	}
+	
+	
+	// ===================================================================
+	// Setters and getters
+	
+	/**
+	 * @return the number of threads used for computation
+	 */
+	public int getNumberOfThreads()
+	{
+		return this.nThreads;
+	}
+
+	/**
+	 * @param nThreads
+	 *            the number of threads used for computation (at least 1)
+	 */
+	public void setNumberOfThreads(int nThreads)
+	{
+		if (nThreads < 1)
+		{
+			throw new IllegalArgumentException("Number of threads must be at least 1");
+		}
+		this.nThreads = nThreads;
+	}
+	
+	
+	// ===================================================================
+	// Processing methods
+	
+	/**
+	 * Checks if the type of the image can be processed by this filter.
+	 * 
+	 * @param image
+	 *            the 3D image to process
+	 * @return true if the image is a 8-bit, 16-bit or 32-bit image
+	 */
+	static final boolean canProcess(ImageStack image)
+	{
+		return LocalExtremumVanHerk.canProcess(image.getPixels(1));
+	}
+	
+	/**
+	 * Computes the extremum within the neighborhood of each voxel.
+	 * 
+	 * @param image
+	 *            the 3D image to process, with 8-bit, 16-bit or 32-bit
+	 *            values
+	 * @param type
+	 *            the type of extremum to compute
+	 * @return a new image with the same type as the input image
+	 */
+	ImageStack process(ImageStack image, LocalExtremum.Type type)
+	{
+		final int sizeX = image.getWidth();
+		final int sizeY = image.getHeight();
+		final int sizeZ = image.getSize();
+		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, image.getBitDepth());
+		
+		final Object[] slices = image.getImageArray();
+		final Object[] resSlices = result.getImageArray();
+		
+		// extremum values are computed as maximum of values multiplied by sign
+		final float sign = type == LocalExtremum.Type.MAXIMUM ? 1 : -1;
+		
+		// for each slice of the neighborhood, groups the row offsets by chord
+		// half-width
+		final int[][] widths = new int[2 * rz + 1][];
+		final int[][][] rowOffsets = new int[2 * rz + 1][][];
+		for (int k = 0; k < 2 * rz + 1; k++)
+		{
+			ArrayList<Integer> widthList = new ArrayList<Integer>();
+			for (int j = 0; j < 2 * ry + 1; j++)
+			{
+				int hw = halfWidths[k][j];
+				if (hw >= 0 && !widthList.contains(hw))
+				{
+					widthList.add(hw);
+				}
+			}
+			widths[k] = new int[widthList.size()];
+			rowOffsets[k] = new int[widthList.size()][];
+			for (int w = 0; w < widthList.size(); w++)
+			{
+				int hw = widthList.get(w);
+				widths[k][w] = hw;
+				int nRows = 0;
+				for (int j = 0; j < 2 * ry + 1; j++)
+				{
+					if (halfWidths[k][j] == hw) nRows++;
+				}
+				rowOffsets[k][w] = new int[nRows];
+				nRows = 0;
+				for (int j = 0; j < 2 * ry + 1; j++)
+				{
+					if (halfWidths[k][j] == hw) rowOffsets[k][w][nRows++] = j - ry;
+				}
+			}
+		}
+		
+		final AtomicInteger ai = new AtomicInteger(0);
+		Thread[] threads = ThreadUtil.createThreadArray(Math.max(Math.min(this.nThreads, sizeZ), 1));
+		for (int ithread = 0; ithread < threads.length; ithread++)
+		{
+			threads[ithread] = new Thread()
+			{
+				public void run()
+				{
+					int sliceSize = sizeX * sizeY;
+					float[] source = new float[sliceSize];
+					float[] buffer = new float[sliceSize];
+					float[] extrema = new float[sliceSize];
+					LocalExtremumVanHerk[] filters = new LocalExtremumVanHerk[rx + 1];
+					
+					for (int z = ai.getAndIncrement(); z < sizeZ; z = ai.getAndIncrement())
+					{
+						Arrays.fill(extrema, Float.NEGATIVE_INFINITY);
+						
+						for (int k = -rz; k <= rz; k++)
+						{
+							int z2 = z + k;
+							if (z2 < 0 || z2 >= sizeZ || widths[k + rz].length == 0)
+								continue;
+							readSlice(slices[z2], sign, source);
+							
+							for (int w = 0; w < widths[k + rz].length; w++)
+							{
+								// compute extrema along chords with the current half-width
+								int hw = widths[k + rz][w];
+								System.arraycopy(source, 0, buffer, 0, sliceSize);
+								if (hw > 0)
+								{
+									if (filters[hw] == null)
+										filters[hw] = new LocalExtremumVanHerk(2 * hw + 1, hw, LocalExtremum.Type.MAXIMUM);
+									for (int y = 0; y < sizeY; y++)
+									{
+										filters[hw].processLine(buffer, y * sizeX, 1, sizeX);
+									}
+								}
+								
+								// combine with the extrema of the rows at each offset
+								for (int dy : rowOffsets[k + rz][w])
+								{
+									int y0 = Math.max(0, -dy);
+									int y1 = Math.min(sizeY, sizeY - dy);
+									int i1 = y1 * sizeX;
+									for (int i = y0 * sizeX, i2 = (y0 + dy) * sizeX; i < i1; i++, i2++)
+									{
+										float value = buffer[i2];
+										if (value > extrema[i])
+											extrema[i] = value;
+									}
+								}
+							}
+						}
+						
+						writeSlice(extrema, sign, resSlices[z]);
+					}
+				}
+			};
+		}
+		ThreadUtil.startAndJoin(threads);
+		
+		return result;
+	}
+	
+	/**
+	 * Converts the values of a slice to float values multiplied by the sign.
+	 */
+	private static final void readSlice(Object pixels, float sign, float[] values)
+	{
+		if (pixels instanceof byte[])
+		{
+			byte[] array = (byte[]) pixels;
+			for (int i = 0; i < values.length; i++)
+				values[i] = sign * (array[i] & 0x00FF);
+		}
+		else if (pixels instanceof short[])
+		{
+			short[] array = (short[]) pixels;
+			for (int i = 0; i < values.length; i++)
+				values[i] = sign * (array[i] & 0x00FFFF);
+		}
+		else if (pixels instanceof float[])
+		{
+			float[] array = (float[]) pixels;
+			for (int i = 0; i < values.length; i++)
+				values[i] = sign * array[i];
+		}
+		else
+		{
+			throw new IllegalArgumentException("Requires an array of byte, short or float values");
+		}
+	}
+	
+	/**
+	 * Writes the float values multiplied by the sign into the pixel array of
+	 * a slice.
+	 */
+	private static final void writeSlice(float[] values, float sign, Object pixels)
+	{
+		if (pixels instanceof byte[])
+		{
+			byte[] array = (byte[]) pixels;
+			for (int i = 0; i < values.length; i++)
+				array[i] = (byte) ((int) (sign * values[i]));
+		}
+		else if (pixels instanceof short[])
+		{
+			short[] array = (short[]) pixels;
+			for (int i = 0; i < values.length; i++)
+				array[i] = (short) ((int) (sign * values[i]));
+		}
+		else
+		{
+			float[] array = (float[]) pixels;
+			for (int i = 0; i < values.length; i++)
+				array[i] = sign * values[i];
+		}
+	}
+}
@@ -205,8 +205,11 @@ public class EllipsoidStrel extends AbstractStrel3D
 	}
 
 	/**
-	 * Performs dilation with a ball structuring element by calling the ImageJ
-	 * Filters3D.filter method, using Filters3D.MAX option.
+	 * Performs dilation with a ball structuring element. The result is the same as
+	 * the one obtained with the ImageJ Filters3D.filter method using the
+	 * Filters3D.MAX option, but the ellipsoid is decomposed into linear
+	 * chords, and slices are processed in parallel. Images that are not
+	 * 8-bit, 16-bit or 32-bit are processed with the Filters3D class.
 	 * 
 	 * @param image
 	 *            the 3D stack to process
@@ -218,12 +221,19 @@ public class EllipsoidStrel extends AbstractStrel3D
 		float rx = (float) this.xRadius;
 		float ry = (float) this.yRadius;
 		float rz = (float) this.zRadius;
-		return Filters3D.filter(image, Filters3D.MAX, rx, ry, rz);
+		if (!ChordExtremumFilter3D.canProcess(image))
+		{
+			return Filters3D.filter(image, Filters3D.MAX, rx, ry, rz);
+		}
+		return new ChordExtremumFilter3D(rx, ry, rz).process(image, LocalExtremum.Type.MAXIMUM);
 	}
 
 	/**
-	 * Performs erosion with a ball structuring element by calling the ImageJ
-	 * Filters3D.filter method, using Filters3D.MIN option.
+	 * Performs erosion with a ball structuring element. The result is the same as
+	 * the one obtained with the ImageJ Filters3D.filter method using the
+	 * Filters3D.MIN option, but the ellipsoid is decomposed into linear
+	 * chords, and slices are processed in parallel. Images that are not
+	 * 8-bit, 16-bit or 32-bit are processed with the Filters3D class.
 	 * 
 	 * @param image
 	 *            the 3D stack to process
@@ -235,6 +245,10 @@ public class EllipsoidStrel extends AbstractStrel3D
 		float rx = (float) this.xRadius;
 		float ry = (float) this.yRadius;
 		float rz = (float) this.zRadius;
-		return Filters3D.filter(image, Filters3D.MIN, rx, ry, rz);
+		if (!ChordExtremumFilter3D.canProcess(image))
+		{
+			return Filters3D.filter(image, Filters3D.MIN, rx, ry, rz);
+		}
+		return new ChordExtremumFilter3D(rx, ry, rz).process(image, LocalExtremum.Type.MINIMUM);
 	}
 }
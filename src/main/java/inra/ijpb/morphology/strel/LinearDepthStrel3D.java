@@ -22,7 +22,6 @@
 package inra.ijpb.morphology.strel;
 
 import ij.ImageStack;
-import inra.ijpb.morphology.Strel;
 
 /**
  * An horizontal linear structuring element of a given length.
@@ -114,8 +113,8 @@ public class LinearDepthStrel3D extends AbstractInPlaceStrel3D  {
 			return;
 		}
 		
-		if (stack.getBitDepth() == 8)
-			inPlaceDilationGray8(stack);
+		if (LocalExtremumVanHerk.canProcess(stack.getPixels(1)))
+			inPlaceExtremum(stack, LocalExtremum.Type.MAXIMUM);
 		else
 			inPlaceDilationFloat(stack);
 	}
@@ -123,53 +122,41 @@ public class LinearDepthStrel3D extends AbstractInPlaceStrel3D  {
 	/* (non-Javadoc)
 	 * @see inra.ijpb.morphology.InPlaceStrel#inPlaceDilation(ij.process.ImageStack)
 	 */
-	private void inPlaceDilationGray8(ImageStack stack) {
+	/* (non-Javadoc)
+	 * @see inra.ijpb.morphology.InPlaceStrel#inPlaceDilation(ij.process.ImageStack)
+	 */
+	/**
+	 * Computes the extremum within the structuring element for each voxel of
+	 * an 8-bit, 16-bit or 32-bit image, using the van Herk/Gil-Werman
+	 * algorithm that requires a constant number of comparisons per voxel.
+	 */
+	private void inPlaceExtremum(ImageStack stack, LocalExtremum.Type type) {
 		// get image size
-		int width 	= stack.getWidth(); 
-		int height 	= stack.getHeight();
-		int depth 	= stack.getSize();
-			
-		// shifts between reference position and last position
-		int shift = this.length - this.offset - 1;
+		int width = stack.getWidth(); 
+		int height = stack.getHeight();
+		int depth = stack.getSize();
 		
-		// create local histogram instance
-		LocalExtremumBufferGray8 localMax = new LocalExtremumBufferGray8(
-				this.length, LocalExtremum.Type.MAXIMUM);		
+		// get the pixel array of each slice
+		Object[] slices = new Object[depth];
+		for (int z = 0; z < depth; z++) {
+			slices[z] = stack.getPixels(z + 1);
+		}
 		
-		// Iterate on image z-columns
+		// create the filter, with offset elements before the reference voxel
+		LocalExtremumVanHerk filter = new LocalExtremumVanHerk(this.length, this.offset, type);
+		
+		// Iterate on image lines along z
 		for (int y = 0; y < height; y++) {
 			fireProgressChanged(this, y, height);
 			for (int x = 0; x < width; x++) {
-
-				// init local histogram with background values
-				localMax.fill(Strel.BACKGROUND);
-
-				// add neighbor values
-				for (int z = 0; z < Math.min(shift, depth); z++) {
-					localMax.add((int) stack.getVoxel(x, y, z));
-				}
-
-				// iterate along "middle" values
-				for (int z = 0; z < depth - shift; z++) {
-					localMax.add((int) stack.getVoxel(x, y, z + shift));
-					stack.setVoxel(x, y, z, localMax.getMax());
-				}
-
-				// process pixels at the end of the line
-				for (int z = Math.max(0, depth - shift); z < depth; z++) {
-					localMax.add(Strel.BACKGROUND);
-					stack.setVoxel(x, y, z, localMax.getMax());
-				}
+				filter.processLine(slices, y * width + x);
 			}
 		}
-
+		
 		// clear the progress bar
-		fireProgressChanged(this, height, height);		
+		fireProgressChanged(this, height, height);
 	}
 
-	/* (non-Javadoc)
-	 * @see inra.ijpb.morphology.InPlaceStrel#inPlaceDilation(ij.process.ImageStack)
-	 */
 	private void inPlaceDilationFloat(ImageStack stack) {
 		// get image size
 		int width 	= stack.getWidth(); 
@@ -224,8 +211,8 @@ public class LinearDepthStrel3D extends AbstractInPlaceStrel3D  {
 			return;
 		}
 
-		if (stack.getBitDepth() == 8)
-			inPlaceErosionGray8(stack);
+		if (LocalExtremumVanHerk.canProcess(stack.getPixels(1)))
+			inPlaceExtremum(stack, LocalExtremum.Type.MINIMUM);
 		else
 			inPlaceErosionFloat(stack);
 		
@@ -234,51 +221,6 @@ public class LinearDepthStrel3D extends AbstractInPlaceStrel3D  {
 	/* (non-Javadoc)
 	 * @see inra.ijpb.morphology.InPlaceStrel#inPlaceErosion(ij.process.ImageStack)
 	 */
-	private void inPlaceErosionGray8(ImageStack stack) {
-		// get image size
-		int width 	= stack.getWidth(); 
-		int height 	= stack.getHeight();
-		int depth 	= stack.getSize();
-		
-		// shifts between reference position and last position
-		int shift = this.length - this.offset - 1;
-		
-		// create local histogram instance
-		LocalExtremumBufferDouble localMin = new LocalExtremumBufferDouble(this.length,
-				LocalExtremum.Type.MINIMUM);
-		
-		
-		// Iterate on image z-columns
-		for (int y = 0; y < height; y++) {
-			fireProgressChanged(this, y, height);
-			for (int x = 0; x < width; x++) {
-
-				// init local histogram with background values
-				localMin.fill(Strel.FOREGROUND);
-
-				// add neighbor values
-				for (int z = 0; z < Math.min(shift, depth); z++) {
-					localMin.add((int) stack.getVoxel(x, y, z));
-				}
-
-				// iterate along "middle" values
-				for (int z = 0; z < depth - shift; z++) {
-					localMin.add((int) stack.getVoxel(x, y, z + shift));
-					stack.setVoxel(x, y, z, localMin.getMax());
-				}
-
-				// process pixels at the end of the line
-				for (int z = Math.max(0, depth - shift); z < depth; z++) {
-					localMin.add(Strel.FOREGROUND);
-					stack.setVoxel(x, y, z, localMin.getMax());
-				}
-			}
-		}
-		
-		// clear the progress bar
-		fireProgressChanged(this, height, height);		
-	}
-
 	/* (non-Javadoc)
 	 * @see inra.ijpb.morphology.InPlaceStrel#inPlaceErosion(ij.process.ImageStack)
 	 */
@@ -21,9 +21,7 @@
  */
 package inra.ijpb.morphology.strel;
 
-import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
-import inra.ijpb.morphology.Strel;
 
 /**
  * A diagonal linear structuring element of a given length, with direction
@@ -118,69 +116,43 @@ public class LinearDiagDownStrel extends AbstractInPlaceStrel {
 			return;
 		}
 		
-		if (image instanceof ByteProcessor)
-			inPlaceDilationGray8(image);
+		if (LocalExtremumVanHerk.canProcess(image.getPixels()))
+			inPlaceExtremum(image, LocalExtremum.Type.MAXIMUM);
 		else
 			inPlaceDilationFloat(image);
 	}
 	
-	private void inPlaceDilationGray8(ImageProcessor image) {
+	/**
+	 * Computes the extremum within the structuring element for each pixel of
+	 * an 8-bit, 16-bit or 32-bit image, using the van Herk/Gil-Werman
+	 * algorithm that requires a constant number of comparisons per pixel.
+	 */
+	private void inPlaceExtremum(ImageProcessor image, LocalExtremum.Type type) {
 		// get image size
 		int width = image.getWidth(); 
 		int height = image.getHeight();
-	
+		Object pixels = image.getPixels();
+		
+		// create the filter, with offset elements after the reference pixel
+		int shift = this.size - this.offset - 1;
+		LocalExtremumVanHerk filter = new LocalExtremumVanHerk(this.size, shift, type);
+		
 		// Consider all diagonal lines with direction vector (+1,+1) that intersect image.
 		// Diagonal lines are identified by their intersection "d" with axis (-1,+1)
-		// Need to identify bounds for d
 		int dmin = -(width - 1);
-		int dmax = height - 1;
-	
-		// create local histogram instance
-		LocalExtremumBufferGray8 localMax = new LocalExtremumBufferGray8(size,
-				LocalExtremum.Type.MAXIMUM);
+		int dmax = height;
 		
 		// Iterate on diagonal lines
 		for (int d = dmin; d < dmax; d++) {
 			fireProgressChanged(this, d - dmin, dmax - dmin);
-				
-			// reset local histogram
-			localMax.fill(Strel.BACKGROUND);
 			
+			// bounds of x coordinate along the line
 			int xmin = Math.max(0, -d);
-			int xmax = Math.min(width, height - d);
-			int ymin = Math.max(0, d);
-			int ymax = Math.min(height, d - width);
-			
-			int tmin = Math.max(xmin, d - ymin);
-			int tmax = Math.min(xmax, d - ymax);
+			int xmax = Math.min(width - 1, height - 1 - d);
 			
-			// position on the line
-			int t = tmin;
-
-			// init local histogram image values after current pos
-			while (t < Math.min(tmin + this.offset, tmax)) {
-				localMax.add(image.get(t, t + d));
-				t++;
-			}
-			
-			// process position that do not touch lower-right image boundary
-			while (t < tmax) {
-				localMax.add(image.get(t, t + d));
-				int t2 = t - this.offset;
-				image.set(t2, t2 + d, localMax.getMax());
-				t++;
-			}
-			
-			// process pixels at the end of the line 
-			// and that do not touch the upper left image boundary
-			while (t < tmax + this.offset) {
-				localMax.add(Strel.BACKGROUND);
-				int x = t - this.offset;
-				int y = t + d - this.offset;
-				if (x >= 0 && y >= 0 && x < width && y < height)
-					image.set(x, y, localMax.getMax());
-				t++;
-			}
+			// process pixels in the order of increasing x
+			int start = (xmin + d) * width + xmin;
+			filter.processLine(pixels, start, width + 1, xmax - xmin + 1);
 		}
 		
 		// clear the progress bar
@@ -260,77 +232,12 @@ public class LinearDiagDownStrel extends AbstractInPlaceStrel {
 			return;
 		}
 		
-		if (image instanceof ByteProcessor)
-			inPlaceErosionGray8(image);
+		if (LocalExtremumVanHerk.canProcess(image.getPixels()))
+			inPlaceExtremum(image, LocalExtremum.Type.MINIMUM);
 		else
 			inPlaceErosionFloat(image);
 	}
 	
-	private void inPlaceErosionGray8(ImageProcessor image) {
-		// get image size
-		int width = image.getWidth(); 
-		int height = image.getHeight();
-	
-		// Consider all diagonal lines with direction vector (+1,+1) that intersect image.
-		// Diagonal lines are identified by their intersection "d" with axis (-1,+1)
-		// Need to identify bounds for d
-		int dmin = -(width - 1);
-		int dmax = height - 1;
-		
-		// compute shifts
-		int dt0 = this.offset;
-		
-		// create local histogram instance
-		LocalExtremumBufferGray8 localMin = new LocalExtremumBufferGray8(size,
-				LocalExtremum.Type.MINIMUM);
-
-		// Iterate on diagonal lines
-		for (int d = dmin; d < dmax; d++) {
-			fireProgressChanged(this, d - dmin, dmax - dmin);
-			
-			// reset local histogram
-			localMin.fill(Strel.FOREGROUND);
-			
-			int xmin = Math.max(0, -d);
-			int xmax = Math.min(width, height - d);
-			int ymin = Math.max(0, d);
-			int ymax = Math.min(height, d - width);
-			
-			int tmin = Math.max(xmin, d - ymin);
-			int tmax = Math.min(xmax, d - ymax);
-			
-			// position on the line
-			int t = tmin;
-			
-			// init local histogram image values after current pos
-			while (t < Math.min(tmin + dt0, tmax)) {
-				localMin.add(image.get(t, t + d));
-				t++;
-			}
-			
-			// process position that do not touch lower-right image boundary
-			while (t < tmax) {
-				localMin.add(image.get(t, t + d));
-				image.set(t - dt0, t + d - dt0, localMin.getMax());
-				t++;
-			}
-			
-			// process pixels at the end of the line 
-			// and that do not touch the upper left image boundary
-			while (t < tmax + dt0) {
-				localMin.add(Strel.FOREGROUND);
-				int x = t - dt0;
-				int y = t + d - dt0;
-				if (x >= 0 && y >= 0 && x < width && y < height)
-					image.set(x, y, localMin.getMax());
-				t++;
-			}
-		}
-		
-		// clear the progress bar
-		fireProgressChanged(this, dmax - dmin, dmax - dmin);
-	}
-
 	private void inPlaceErosionFloat(ImageProcessor image) {
 		// get image size
 		int width = image.getWidth(); 
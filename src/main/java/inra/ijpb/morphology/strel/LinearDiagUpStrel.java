@@ -21,9 +21,7 @@
  */
 package inra.ijpb.morphology.strel;
 import ij.IJ;
-import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
-import inra.ijpb.morphology.Strel;
 
 /**
  * A diagonal linear structuring element of a given length, with direction
@@ -117,79 +115,46 @@ public class LinearDiagUpStrel extends AbstractInPlaceStrel {
 			return;
 		}
 		
-		if (image instanceof ByteProcessor)
-			inPlaceDilationGray8(image);
+		if (LocalExtremumVanHerk.canProcess(image.getPixels()))
+			inPlaceExtremum(image, LocalExtremum.Type.MAXIMUM);
 		else
 			inPlaceDilationFloat(image);
 	}
 	
-	private void inPlaceDilationGray8(ImageProcessor image) {
+	/**
+	 * Computes the extremum within the structuring element for each pixel of
+	 * an 8-bit, 16-bit or 32-bit image, using the van Herk/Gil-Werman
+	 * algorithm that requires a constant number of comparisons per pixel.
+	 */
+	private void inPlaceExtremum(ImageProcessor image, LocalExtremum.Type type) {
 		// get image size
 		int width = image.getWidth(); 
 		int height = image.getHeight();
-	
+		Object pixels = image.getPixels();
+		
+		// create the filter, with offset elements after the reference pixel
+		int shift = this.size - this.offset - 1;
+		LocalExtremumVanHerk filter = new LocalExtremumVanHerk(this.size, shift, type);
+		
 		// Consider all diagonal lines with direction vector (+1,-1) that intersect image.
 		// Diagonal lines are identified by their intersection "d" with axis (+1,+1)
-		// Need to identify bounds for d
-		int dmin = 0;
 		int dmax = width + height - 1;
-	
-		// create local histogram instance
-		LocalExtremumBufferGray8 localMax = new LocalExtremumBufferGray8(size,
-				LocalExtremum.Type.MAXIMUM);
 		
 		// Iterate on diagonal lines
-		for (int d = dmin; d < dmax; d++) {
-			if (this.showProgress()) {
-				IJ.showProgress(d, dmax - dmin);
-			}
-			fireProgressChanged(this, d - dmin, dmax - dmin);
-			
-			// reset local histogram
-			localMax.fill(Strel.BACKGROUND);
+		for (int d = 0; d < dmax; d++) {
+			fireProgressChanged(this, d, dmax);
 			
+			// bounds of x coordinate along the line
 			int xmin = Math.max(0, d + 1 - height);
-			int xmax = Math.min(width, d + 1); 
-			int ymin = Math.max(0, d + 1 - width);
-			int ymax = Math.min(height, d + 1);
-			
-			int tmin = Math.max(xmin, d + 1 - ymax);
-			int tmax = Math.min(xmax, d + 1 - ymin);
+			int xmax = Math.min(width - 1, d);
 			
-			// position on the line
-			int t = tmin;
-
-			// init local histogram image values after current pos
-			while (t < Math.min(tmin + this.offset, tmax)) {
-				localMax.add(image.get(t, d - t));
-				t++;
-			}
-			
-			// process position that do not touch lower-left image boundary
-			while (t < tmax) {
-				localMax.add(image.get(t, d - t));
-				int t2 = t - this.offset;
-				image.set(t2, d - t2, localMax.getMax());
-				t++;
-			}
-			
-			// process pixels at the end of the line 
-			// and that do not touch the upper left image boundary
-			while (t < tmax + this.offset) {
-				localMax.add(Strel.BACKGROUND);
-				int t2 = t - this.offset;
-				int x = t2;
-				int y = d - t2;
-				if (x >= 0 && y >= 0 && x < width && y < height)
-					image.set(x, y, localMax.getMax());
-				t++;
-			}
+			// process pixels in the order of increasing x
+			int start = (d - xmin) * width + xmin;
+			filter.processLine(pixels, start, 1 - width, xmax - xmin + 1);
 		}
 		
 		// clear the progress bar
-		if (this.showProgress()) {
-			IJ.showProgress(1);
-		}
+		fireProgressChanged(this, dmax, dmax);
 	}
 
 	private void inPlaceDilationFloat(ImageProcessor image) {
@@ -271,81 +236,12 @@ public class LinearDiagUpStrel extends AbstractInPlaceStrel {
 			return;
 		}
 		
-		if (image instanceof ByteProcessor)
-			inPlaceErosionGray8(image);
+		if (LocalExtremumVanHerk.canProcess(image.getPixels()))
+			inPlaceExtremum(image, LocalExtremum.Type.MINIMUM);
 		else
 			inPlaceErosionFloat(image);
 	}
 	
-	private void inPlaceErosionGray8(ImageProcessor image) {
-		// get image size
-		int width = image.getWidth(); 
-		int height = image.getHeight();
-	
-		// Consider all diagonal lines with direction vector (+1,-1) that intersect image.
-		// Diagonal lines are identified by their intersection "d" with axis (+1,+1)
-		// Need to identify bounds for d
-		int dmin = 0;
-		int dmax = width + height - 1;
-	
-		// create local histogram instance
-		LocalExtremumBufferGray8 localMin = new LocalExtremumBufferGray8(size,
-				LocalExtremum.Type.MINIMUM);
-		
-		// Iterate on diagonal lines
-		for (int d = dmin; d < dmax; d++) {
-			if (this.showProgress()) {
-				IJ.showProgress(d, dmax - dmin);
-			}
-			fireProgressChanged(this, d - dmin, dmax - dmin);
-			
-			// reset local histogram
-			localMin.fill(Strel.FOREGROUND);
-			
-			int xmin = Math.max(0, d - height - 1);
-			int xmax = Math.min(width, d + 1); 
-			int ymin = Math.max(0, d - width - 1);
-			int ymax = Math.min(height, d + 1);
-			
-			int tmin = Math.max(xmin, d - ymax + 1);
-			int tmax = Math.min(xmax, d - ymin + 1);
-			
-			// position on the line
-			int t = tmin;
-
-			// init local histogram image values after current pos
-			while (t < Math.min(tmin + this.offset, tmax)) {
-				localMin.add(image.get(t, d - t));
-				t++;
-			}
-			
-			// process position that do not touch lower-left image boundary
-			while (t < tmax) {
-				localMin.add(image.get(t, d - t));
-				int t2 = t - this.offset;
-				image.set(t2, d - t2, localMin.getMax());
-				t++;
-			}
-			
-			// process pixels at the end of the line 
-			// and that do not touch the upper left image boundary
-			while (t < tmax + this.offset) {
-				localMin.add(Strel.FOREGROUND);
-				int t2 = t - this.offset;
-				int x = t2;
-				int y = d - t2;
-				if (x >= 0 && y >= 0 && x < width && y < height)
-					image.set(x, y, localMin.getMax());
-				t++;
-			}
-		}
-		
-		// clear the progress bar
-		if (this.showProgress()) {
-			IJ.showProgress(1);
-		}
-	}
-
 	private void inPlaceErosionFloat(ImageProcessor image) {
 		// get image size
 		int width = image.getWidth(); 
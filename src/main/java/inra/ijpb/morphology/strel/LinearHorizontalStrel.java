@@ -21,9 +21,7 @@
  */
 package inra.ijpb.morphology.strel;
 
-import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
-import inra.ijpb.morphology.Strel;
 
 /**
  * An horizontal linear structuring element of a given length.
@@ -115,47 +113,30 @@ public class LinearHorizontalStrel extends AbstractInPlaceStrel  {
 			return;
 		}
 		
-		if (image instanceof ByteProcessor)
-			inPlaceDilationGray8(image);
+		if (LocalExtremumVanHerk.canProcess(image.getPixels()))
+			inPlaceExtremum(image, LocalExtremum.Type.MAXIMUM);
 		else
 			inPlaceDilationFloat(image);
 	}
 	
-	private void inPlaceDilationGray8(ImageProcessor image) {
+	/**
+	 * Computes the extremum within the structuring element for each pixel of
+	 * an 8-bit, 16-bit or 32-bit image, using the van Herk/Gil-Werman
+	 * algorithm that requires a constant number of comparisons per pixel.
+	 */
+	private void inPlaceExtremum(ImageProcessor image, LocalExtremum.Type type) {
 		// get image size
 		int width = image.getWidth(); 
 		int height = image.getHeight();
-			
-		// shifts between reference position and last position
-		int shift = this.size - this.offset - 1;
+		Object pixels = image.getPixels();
 		
-		// create local histogram instance
-		LocalExtremumBufferGray8 localMax = new LocalExtremumBufferGray8(size,
-				LocalExtremum.Type.MAXIMUM);
+		// create the filter, with offset elements before the reference pixel
+		LocalExtremumVanHerk filter = new LocalExtremumVanHerk(this.size, this.offset, type);
 		
 		// Iterate on image rows
 		for (int y = 0; y < height; y++) {
 			fireProgressChanged(this, y, height);
-			
-			// init local histogram with background values
-			localMax.fill(Strel.BACKGROUND);
-			
-			// add neighbor values
-			for (int x = 0; x < Math.min(shift, width); x++) {
-				localMax.add(image.get(x, y));
-			}
-			
-			// iterate along "middle" values
-			for (int x = 0; x < width - shift; x++) {
-				localMax.add(image.get(x + shift, y));
-				image.set(x, y, localMax.getMax());
-			}
-			
-			// process pixels at the end of the line
-			for (int x = Math.max(0, width - shift); x < width; x++) {
-				localMax.add(Strel.BACKGROUND);
-				image.set(x, y, localMax.getMax());
-			}
+			filter.processLine(pixels, y * width, 1, width);
 		}
 		
 		// clear the progress bar
@@ -214,53 +195,12 @@ public class LinearHorizontalStrel extends AbstractInPlaceStrel  {
 			return;
 		}
 		
-		if (image instanceof ByteProcessor)
-			inPlaceErosionGray8(image);
+		if (LocalExtremumVanHerk.canProcess(image.getPixels()))
+			inPlaceExtremum(image, LocalExtremum.Type.MINIMUM);
 		else
 			inPlaceErosionFloat(image);
 	}
 	
-	private void inPlaceErosionGray8(ImageProcessor image) {
-		// get image size
-		int width = image.getWidth(); 
-		int height = image.getHeight();
-		
-		// shifts between reference position and last position
-		int shift = this.size - this.offset - 1;
-		
-		// create local histogram instance
-		LocalExtremumBufferGray8 localMin = new LocalExtremumBufferGray8(size,
-				LocalExtremum.Type.MINIMUM);
-		
-		// Iterate on image rows
-		for (int y = 0; y < height; y++) {
-			fireProgressChanged(this, y, height);
-			
-			// reset local histogram
-			localMin.fill(Strel.FOREGROUND);
-			
-			// init local histogram with neighbor values
-			for (int x = 0; x < Math.min(shift, width); x++) {
-				localMin.add(image.get(x, y));
-			}
-			
-			// iterate along "middle" values
-			for (int x = 0; x < width - shift; x++) {
-				localMin.add(image.get(x + shift, y));
-				image.set(x, y, localMin.getMax());
-			}
-			
-			// process pixels at the end of the line
-			for (int x = Math.max(0, width - shift); x < width; x++) {
-				localMin.add(Strel.FOREGROUND);
-				image.set(x, y, localMin.getMax());
-			}
-		}
-		
-		// clear the progress bar
-		fireProgressChanged(this, height, height);
-	}
-
 	private void inPlaceErosionFloat(ImageProcessor image) {
 		// get image size
 		int width = image.getWidth(); 
@@ -21,9 +21,7 @@
  */
 package inra.ijpb.morphology.strel;
 
-import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
-import inra.ijpb.morphology.Strel;
 
 /**
  * A vertical linear structuring element of a given length.
@@ -115,54 +113,36 @@ public class LinearVerticalStrel extends AbstractInPlaceStrel {
 			return;
 		}
 		
-		if (image instanceof ByteProcessor)
-			inPlaceDilationGray8(image);
+		if (LocalExtremumVanHerk.canProcess(image.getPixels()))
+			inPlaceExtremum(image, LocalExtremum.Type.MAXIMUM);
 		else
 			inPlaceDilationFloat(image);
 	}
 	
-	private void inPlaceDilationGray8(ImageProcessor image) {
+	/**
+	 * Computes the extremum within the structuring element for each pixel of
+	 * an 8-bit, 16-bit or 32-bit image, using the van Herk/Gil-Werman
+	 * algorithm that requires a constant number of comparisons per pixel.
+	 */
+	private void inPlaceExtremum(ImageProcessor image, LocalExtremum.Type type) {
 		// get image size
 		int width = image.getWidth(); 
 		int height = image.getHeight();
-	
-		// shifts between reference position and last position
-		int shift = this.size - this.offset - 1;
+		Object pixels = image.getPixels();
+		
+		// create the filter, with offset elements before the reference pixel
+		LocalExtremumVanHerk filter = new LocalExtremumVanHerk(this.size, this.offset, type);
 		
-		// create local histogram instance
-		LocalExtremumBufferGray8 localMax = new LocalExtremumBufferGray8(size,
-				LocalExtremum.Type.MAXIMUM);
-
 		// Iterate on image columns
 		for (int x = 0; x < width; x++) {
 			fireProgressChanged(this, x, width);
-			
-			// reset local histogram
-			localMax.fill(Strel.BACKGROUND);
-			
-			// init local histogram with neighbor values
-			for (int y = 0; y < Math.min(shift, height); y++) {
-				localMax.add(image.get(x, y));
-			}
-			
-			// iterate along "middle" values
-			for (int y = 0; y < height - shift; y++) {
-				localMax.add(image.get(x, y + shift));
-				image.set(x, y, (int) localMax.getMax());
-			}
-			
-			// process pixels at the end of the line
-			for (int y = Math.max(0, height - shift); y < height; y++) {
-				localMax.add(Strel.BACKGROUND);
-				image.set(x, y, (int) localMax.getMax());
-			}
+			filter.processLine(pixels, x, width, height);
 		}
 		
 		// clear the progress bar
 		fireProgressChanged(this, width, width);
 	}
 
-	
 	private void inPlaceDilationFloat(ImageProcessor image) {
 		// get image size
 		int width = image.getWidth(); 
@@ -214,54 +194,12 @@ public class LinearVerticalStrel extends AbstractInPlaceStrel {
 			return;
 		}
 		
-		if (image instanceof ByteProcessor)
-			inPlaceErosionGray8(image);
+		if (LocalExtremumVanHerk.canProcess(image.getPixels()))
+			inPlaceExtremum(image, LocalExtremum.Type.MINIMUM);
 		else
 			inPlaceErosionFloat(image);
 	}
 	
-	private void inPlaceErosionGray8(ImageProcessor image) {
-		// get image size
-		int width = image.getWidth(); 
-		int height = image.getHeight();
-	
-		// shifts between reference position and last position
-		int shift = this.size - this.offset - 1;
-		
-		// create local histogram instance
-		LocalExtremumBufferGray8 localMin = new LocalExtremumBufferGray8(size,
-				LocalExtremum.Type.MINIMUM);
-
-
-		// Iterate on image columns
-		for (int x = 0; x < width; x++) {
-			fireProgressChanged(this, x, width);
-			
-			// reset local histogram
-			localMin.fill(Strel.FOREGROUND);
-			
-			// init local histogram with neighbor values
-			for (int y = 0; y < Math.min(shift, height); y++) {
-				localMin.add(image.get(x, y));
-			}
-			
-			// iterate along "middle" values
-			for (int y = 0; y < height - shift; y++) {
-				localMin.add(image.get(x, y + shift));
-				image.set(x, y, localMin.getMax());
-			}
-			
-			// process pixels at the end of the line
-			for (int y = Math.max(0, height - shift); y < height; y++) {
-				localMin.add(Strel.FOREGROUND);
-				image.set(x, y, localMin.getMax());
-			}
-		}
-		
-		// clear the progress bar
-		fireProgressChanged(this, width, width);
-	}
-
 	private void inPlaceErosionFloat(ImageProcessor image) {
 		// get image size
 		int width = image.getWidth(); 
@@ -0,0 +1,363 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.strel;
+
+/**
+ * <p>
+ * Computes the minimum or the maximum within a sliding window along lines of
+ * pixels or voxels, using the algorithm of van Herk and Gil-Werman.
+ * </p>
+ * <p>
+ * The line is split into blocks with the same length as the window, and the
+ * cumulative extrema from the beginning and from the end of each block are
+ * computed. The extremum within each window is then obtained by combining
+ * one value of each array. This results in three comparisons per element,
+ * independently of the length of the window.
+ * </p>
+ * <p>
+ * Lines are read directly from the pixel arrays of 8-bit, 16-bit or 32-bit
+ * images, given a start index and a stride. Values outside of the line are
+ * ignored.
+ * </p>
+ * 
+ * References:
+ * <ul>
+ * <li>van Herk, M. (1992). A fast algorithm for local minimum and maximum
+ * filters on rectangular and octagonal kernels. Pattern Recognition Letters,
+ * 13(7), 517-521.</li>
+ * <li>Gil, J. and Werman, M. (1993). Computing 2-D min, median, and max
+ * filters. IEEE Transactions on Pattern Analysis and Machine Intelligence,
+ * 15(5), 504-507.</li>
+ * </ul>
+ * 
+ * @author David Legland
+ *
+ */
+class LocalExtremumVanHerk
+{
+	/**
+	 * The number of elements within the sliding window.
+	 */
+	int size;
+	
+	/**
+	 * The number of elements within the window located before the reference
+	 * element.
+	 */
+	int before;
+	
+	/**
+	 * Use a sign flag for managing both min and max.
+	 * sign = +1 -> compute max values
+	 * sign = -1 -> compute min values
+	 */
+	int sign = 1;
+	
+	// buffers for integer values
+	int[] intValues = new int[0];
+	int[] intPrefix = new int[0];
+	int[] intSuffix = new int[0];
+	
+	// buffers for floating point values
+	float[] floatValues = new float[0];
+	float[] floatPrefix = new float[0];
+	float[] floatSuffix = new float[0];
+
+	/**
+	 * Creates a new filter for computing extrema within a sliding window.
+	 * 
+	 * @param size
+	 *            the number of elements within the window
+	 * @param before
+	 *            the number of elements of the window before the reference
+	 *            element (between 0 and size-1)
+	 * @param type
+	 *            the type of extremum to compute
+	 */
+	LocalExtremumVanHerk(int size, int before, LocalExtremum.Type type)
+	{
+		this.size = size;
+		this.before = before;
+		this.sign = type == LocalExtremum.Type.MAXIMUM ? 1 : -1;
+	}
+	
+	/**
+	 * Checks if the pixel array has a type that can be processed by this
+	 * class.
+	 * 
+	 * @param pixels
+	 *            the pixel array of an image
+	 * @return true if the array is an array of byte, short or float values
+	 */
+	static final boolean canProcess(Object pixels)
+	{
+		return pixels instanceof byte[] || pixels instanceof short[] || pixels instanceof float[];
+	}
+	
+	/**
+	 * Replaces the values of a line by the extremum within the sliding window
+	 * around each element.
+	 * 
+	 * @param pixels
+	 *            the pixel array, either a byte, short or float array
+	 * @param start
+	 *            the index of the first element of the line
+	 * @param stride
+	 *            the difference between the indices of consecutive elements
+	 *            of the line
+	 * @param count
+	 *            the number of elements of the line
+	 */
+	void processLine(Object pixels, int start, int stride, int count)
+	{
+		if (pixels instanceof float[])
+		{
+			float[] array = (float[]) pixels;
+			float[] values = initFloatBuffers(count);
+			for (int i = 0, index = start; i < count; i++, index += stride)
+			{
+				values[i + before] = sign * array[index];
+			}
+			computeFloat(count);
+			for (int i = 0, index = start; i < count; i++, index += stride)
+			{
+				array[index] = sign * floatValues[i];
+			}
+			return;
+		}
+		
+		int[] values = initIntBuffers(count);
+		if (pixels instanceof byte[])
+		{
+			byte[] array = (byte[]) pixels;
+			for (int i = 0, index = start; i < count; i++, index += stride)
+			{
+				values[i + before] = sign * (array[index] & 0x00FF);
+			}
+			computeInt(count);
+			for (int i = 0, index = start; i < count; i++, index += stride)
+			{
+				array[index] = (byte) (sign * intValues[i]);
+			}
+		}
+		else if (pixels instanceof short[])
+		{
+			short[] array = (short[]) pixels;
+			for (int i = 0, index = start; i < count; i++, index += stride)
+			{
+				values[i + before] = sign * (array[index] & 0x00FFFF);
+			}
+			computeInt(count);
+			for (int i = 0, index = start; i < count; i++, index += stride)
+			{
+				array[index] = (short) (sign * intValues[i]);
+			}
+		}
+		else
+		{
+			throw new IllegalArgumentException("Requires an array of byte, short or float values");
+		}
+	}
+	
+	/**
+	 * Replaces the values of a line orthogonal to the slices of a 3D image by
+	 * the extremum within the sliding window around each element.
+	 * 
+	 * @param slices
+	 *            the pixel arrays of each slice, as byte, short or float
+	 *            arrays
+	 * @param index
+	 *            the index of the line within each slice
+	 */
+	void processLine(Object[] slices, int index)
+	{
+		int count = slices.length;
+		if (slices[0] instanceof float[])
+		{
+			float[] values = initFloatBuffers(count);
+			for (int z = 0; z < count; z++)
+			{
+				values[z + before] = sign * ((float[]) slices[z])[index];
+			}
+			computeFloat(count);
+			for (int z = 0; z < count; z++)
+			{
+				((float[]) slices[z])[index] = sign * floatValues[z];
+			}
+			return;
+		}
+		
+		int[] values = initIntBuffers(count);
+		if (slices[0] instanceof byte[])
+		{
+			for (int z = 0; z < count; z++)
+			{
+				values[z + before] = sign * (((byte[]) slices[z])[index] & 0x00FF);
+			}
+			computeInt(count);
+			for (int z = 0; z < count; z++)
+			{
+				((byte[]) slices[z])[index] = (byte) (sign * intValues[z]);
+			}
+		}
+		else if (slices[0] instanceof short[])
+		{
+			for (int z = 0; z < count; z++)
+			{
+				values[z + before] = sign * (((short[]) slices[z])[index] & 0x00FFFF);
+			}
+			computeInt(count);
+			for (int z = 0; z < count; z++)
+			{
+				((short[]) slices[z])[index] = (short) (sign * intValues[z]);
+			}
+		}
+		else
+		{
+			throw new IllegalArgumentException("Requires arrays of byte, short or float values");
+		}
+	}
+	
+	/**
+	 * Allocates buffers if necessary, and fills the padding with the neutral
+	 * value. The line values must be stored starting at index "before".
+	 */
+	private int[] initIntBuffers(int count)
+	{
+		int n = paddedLength(count);
+		if (intValues.length < n)
+		{
+			intValues = new int[n];
+			intPrefix = new int[n];
+			intSuffix = new int[n];
+		}
+		for (int i = 0; i < before; i++)
+		{
+			intValues[i] = Integer.MIN_VALUE;
+		}
+		for (int i = count + before; i < n; i++)
+		{
+			intValues[i] = Integer.MIN_VALUE;
+		}
+		return intValues;
+	}
+	
+	private float[] initFloatBuffers(int count)
+	{
+		int n = paddedLength(count);
+		if (floatValues.length < n)
+		{
+			floatValues = new float[n];
+			floatPrefix = new float[n];
+			floatSuffix = new float[n];
+		}
+		for (int i = 0; i < before; i++)
+		{
+			floatValues[i] = Float.NEGATIVE_INFINITY;
+		}
+		for (int i = count + before; i < n; i++)
+		{
+			floatValues[i] = Float.NEGATIVE_INFINITY;
+		}
+		return floatValues;
+	}
+	
+	/**
+	 * Computes the length of the padded line, as a multiple of the window
+	 * size.
+	 */
+	private int paddedLength(int count)
+	{
+		int n = count + size - 1;
+		return ((n + size - 1) / size) * size;
+	}
+	
+	/**
+	 * Computes the maximum within each window of the padded buffer, and
+	 * stores the result at the beginning of the buffer.
+	 */
+	private void computeInt(int count)
+	{
+		int n = paddedLength(count);
+		int[] values = intValues;
+		int[] prefix = intPrefix;
+		int[] suffix = intSuffix;
+		
+		// cumulative maxima from the beginning and the end of each block
+		for (int b = 0; b < n; b += size)
+		{
+			int end = b + size - 1;
+			prefix[b] = values[b];
+			for (int i = b + 1; i <= end; i++)
+			{
+				prefix[i] = Math.max(prefix[i - 1], values[i]);
+			}
+			suffix[end] = values[end];
+			for (int i = end - 1; i >= b; i--)
+			{
+				suffix[i] = Math.max(suffix[i + 1], values[i]);
+			}
+		}
+		
+		// combine the two arrays
+		int shift = size - 1;
+		for (int i = 0; i < count; i++)
+		{
+			values[i] = Math.max(suffix[i], prefix[i + shift]);
+		}
+	}
+	
+	/**
+	 * Computes the maximum within each window of the padded buffer, and
+	 * stores the result at the beginning of the buffer.
+	 */
+	private void computeFloat(int count)
+	{
+		int n = paddedLength(count);
+		float[] values = floatValues;
+		float[] prefix = floatPrefix;
+		float[] suffix = floatSuffix;
+		
+		// cumulative maxima from the beginning and the end of each block
+		for (int b = 0; b < n; b += size)
+		{
+			int end = b + size - 1;
+			prefix[b] = values[b];
+			for (int i = b + 1; i <= end; i++)
+			{
+				prefix[i] = Math.max(prefix[i - 1], values[i]);
+			}
+			suffix[end] = values[end];
+			for (int i = end - 1; i >= b; i--)
+			{
+				suffix[i] = Math.max(suffix[i + 1], values[i]);
+			}
+		}
+		
+		// combine the two arrays
+		int shift = size - 1;
+		for (int i = 0; i < count; i++)
+		{
+			values[i] = Math.max(suffix[i], prefix[i + shift]);
+		}
+	}
+}
@@ -0,0 +1,377 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.strel;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ij.ImageStack;
+import ij.Prefs;
+import ij.util.ThreadUtil;
+import inra.ijpb.morphology.Strel3D;
+
+/**
+ * <p>
+ * Wraps a 3D structuring element such that morphological filters are
+ * computed in parallel on chunks of consecutive slices.
+ * </p>
+ * <p>
+ * The stack is split into as many chunks as the number of threads. Each
+ * chunk is extended by a halo whose thickness corresponds to the extent of
+ * the structuring element along the z direction (twice this extent for
+ * openings and closings), and is processed by the wrapped structuring
+ * element. Only the slices of the result located within the chunk are kept.
+ * As each slice of the result depends only on the slices within the extent
+ * of the structuring element, the result is identical to the one obtained
+ * by processing the whole stack with the wrapped structuring element, and
+ * does not depend on the number of threads.
+ * </p>
+ * <p>
+ * Each thread processes its chunks with its own copy of the wrapped
+ * structuring element, obtained by reversing it twice, such that the wrapped
+ * structuring element is never used concurrently nor modified. Ball and
+ * ellipsoid structuring elements already process slices in parallel, and are
+ * called directly, as are structuring elements that can not be copied. The
+ * progress of the chunks is reported to the listeners of this structuring
+ * element and of the wrapped one.
+ * </p>
+ * 
+ * <pre><code>
+ * ImageStack image = IJ.getImage().getStack();
+ * Strel3D strel = new ParallelStrel3D(CubeStrel.fromDiameter(5), 8);
+ * ImageStack dilated = strel.dilation(image);
+ * </code></pre>
+ * 
+ * @see inra.ijpb.morphology.Morphology#dilation(ImageStack, Strel3D, int)
+ * 
+ * @author David Legland
+ *
+ */
+public class ParallelStrel3D extends AbstractStrel3D
+{
+	// ===================================================================
+	// Inner enumeration
+	
+	/**
+	 * The morphological filters that can be applied on chunks. 
+	 */
+	private enum Operation
+	{
+		DILATION, EROSION, OPENING, CLOSING;
+		
+		ImageStack apply(Strel3D strel, ImageStack image)
+		{
+			switch (this)
+			{
+			case DILATION: return strel.dilation(image);
+			case EROSION: return strel.erosion(image);
+			case OPENING: return strel.opening(image);
+			case CLOSING: return strel.closing(image);
+			default: throw new RuntimeException("Unknown operation: " + this);
+			}
+		}
+	}
+	
+	
+	// ===================================================================
+	// Class variables
+	
+	/**
+	 * The structuring element used to process each chunk.
+	 */
+	Strel3D strel;
+	
+	/**
+	 * The number of threads used for computation.
+	 */
+	int nThreads = Prefs.getThreads();
+	
+	
+	// ===================================================================
+	// Constructors
+	
+	/**
+	 * Creates a new parallel structuring element using the number of threads
+	 * specified in ImageJ preferences.
+	 * 
+	 * @param strel
+	 *            the structuring element used to process each chunk
+	 */
+	public ParallelStrel3D(Strel3D strel)
+	{
+		this.strel = strel;
+	}
+	
+	/**
+	 * Creates a new parallel structuring element using the specified number
+	 * of threads.
+	 * 
+	 * @param strel
+	 *            the structuring element used to process each chunk
+	 * @param nThreads
+	 *            the number of threads used for computation (at least 1)
+	 */
+	public ParallelStrel3D(Strel3D strel, int nThreads)
+	{
+		this.strel = strel;
+		setNumberOfThreads(nThreads);
+	}
+	
+	
+	// ===================================================================
+	// Setters and getters
+	
+	/**
+	 * @return the structuring element used to process each chunk
+	 */
+	public Strel3D getStrel()
+	{
+		return this.strel;
+	}
+	
+	/**
+	 * @return the number of threads used for computation
+	 */
+	public int getNumberOfThreads()
+	{
+		return this.nThreads;
+	}
+
+	/**
+	 * @param nThreads
+	 *            the number of threads used for computation (at least 1)
+	 */
+	public void setNumberOfThreads(int nThreads)
+	{
+		if (nThreads < 1)
+		{
+			throw new IllegalArgumentException("Number of threads must be at least 1");
+		}
+		this.nThreads = nThreads;
+	}
+	
+	
+	// ===================================================================
+	// Implementation of Strel3D interface
+	
+	@Override
+	public int[] getSize()
+	{
+		return this.strel.getSize();
+	}
+
+	@Override
+	public int[][][] getMask3D()
+	{
+		return this.strel.getMask3D();
+	}
+
+	@Override
+	public int[] getOffset()
+	{
+		return this.strel.getOffset();
+	}
+
+	@Override
+	public int[][] getShifts3D()
+	{
+		return this.strel.getShifts3D();
+	}
+
+	@Override
+	public Strel3D reverse()
+	{
+		return new ParallelStrel3D(this.strel.reverse(), this.nThreads);
+	}
+
+	@Override
+	public ImageStack dilation(ImageStack image)
+	{
+		return process(image, Operation.DILATION, 1);
+	}
+
+	@Override
+	public ImageStack erosion(ImageStack image)
+	{
+		return process(image, Operation.EROSION, 1);
+	}
+
+	@Override
+	public ImageStack closing(ImageStack image)
+	{
+		return process(image, Operation.CLOSING, 2);
+	}
+
+	@Override
+	public ImageStack opening(ImageStack image)
+	{
+		return process(image, Operation.OPENING, 2);
+	}
+
+	
+	// ===================================================================
+	// Processing methods
+	
+	/**
+	 * Computes the number of slices that need to be added before and after
+	 * each chunk for one pass of the structuring element.
+	 */
+	private int haloSize()
+	{
+		int[] size = this.strel.getSize();
+		if (size.length < 3)
+		{
+			// planar structuring elements process each slice independently
+			return 0;
+		}
+		int offset = this.strel.getOffset()[2];
+		return Math.max(offset, size[2] - offset - 1);
+	}
+	
+	private ImageStack process(final ImageStack image, final Operation op, int nPasses)
+	{
+		final int sizeZ = image.getSize();
+		final int nChunks = Math.min(this.nThreads, sizeZ);
+		if (nChunks <= 1 || this.strel instanceof BallStrel || this.strel instanceof EllipsoidStrel)
+		{
+			return op.apply(this.strel, image);
+		}
+		
+		final int halo = haloSize() * nPasses;
+		final int[] chunkStarts = new int[nChunks + 1];
+		for (int k = 0; k <= nChunks; k++)
+		{
+			chunkStarts[k] = (int) (((long) sizeZ * k) / nChunks);
+		}
+		
+		// each thread uses its own copy of the wrapped strel, as strels keep
+		// listeners and progress flags that must not be shared
+		final Strel3D[] strels = duplicateStrel(nChunks);
+		if (strels == null)
+		{
+			return op.apply(this.strel, image);
+		}
+		
+		fireStatusChanged("Process " + nChunks + " chunks");
+		final ImageStack[] results = new ImageStack[nChunks];
+		final AtomicInteger ai = new AtomicInteger(0);
+		final AtomicInteger nDone = new AtomicInteger(0);
+		Thread[] threads = ThreadUtil.createThreadArray(strels.length);
+		for (int ithread = 0; ithread < threads.length; ithread++)
+		{
+			final Strel3D threadStrel = strels[ithread];
+			threads[ithread] = new Thread()
+			{
+				public void run()
+				{
+					for (int k = ai.getAndIncrement(); k < nChunks; k = ai.getAndIncrement())
+					{
+						int z0 = Math.max(chunkStarts[k] - halo, 0);
+						int z1 = Math.min(chunkStarts[k + 1] + halo, sizeZ);
+						ImageStack chunk = subStack(image, z0, z1);
+						results[k] = op.apply(threadStrel, chunk);
+						fireProgressChanged(nDone.incrementAndGet(), nChunks);
+					}
+				}
+			};
+		}
+		ThreadUtil.startAndJoin(threads);
+		
+		// concatenate the inner slices of each chunk
+		ImageStack result = new ImageStack(image.getWidth(), image.getHeight());
+		for (int k = 0; k < nChunks; k++)
+		{
+			int z0 = Math.max(chunkStarts[k] - halo, 0);
+			for (int z = chunkStarts[k]; z < chunkStarts[k + 1]; z++)
+			{
+				result.addSlice(results[k].getSliceLabel(z - z0 + 1), results[k].getPixels(z - z0 + 1));
+			}
+		}
+		result.setColorModel(results[0].getColorModel());
+		
+		return result;
+	}
+	
+	/**
+	 * Creates copies of the wrapped strel by reversing it twice, with
+	 * progress display disabled as progress is reported for the whole
+	 * stack.
+	 * 
+	 * @return the copies, or null if the reversed strel is the strel
+	 *         itself, in which case the strel can not be copied
+	 */
+	private Strel3D[] duplicateStrel(int nCopies)
+	{
+		Strel3D[] strels = new Strel3D[nCopies];
+		for (int i = 0; i < nCopies; i++)
+		{
+			Strel3D copy = this.strel.reverse().reverse();
+			if (copy == this.strel)
+			{
+				return null;
+			}
+			copy.showProgress(false);
+			strels[i] = copy;
+		}
+		return strels;
+	}
+	
+	/**
+	 * Notifies the listeners of this strel and of the wrapped strel that
+	 * some chunks were processed.
+	 */
+	private synchronized void fireProgressChanged(int step, int total)
+	{
+		fireProgressChanged(this, step, total);
+		if (this.strel instanceof AbstractStrel3D)
+		{
+			((AbstractStrel3D) this.strel).fireProgressChanged(this.strel, step, total);
+		}
+	}
+	
+	/**
+	 * Notifies the listeners of this strel and of the wrapped strel of a
+	 * new status.
+	 */
+	private synchronized void fireStatusChanged(String message)
+	{
+		fireStatusChanged(this, message);
+		if (this.strel instanceof AbstractStrel3D)
+		{
+			((AbstractStrel3D) this.strel).fireStatusChanged(this.strel, message);
+		}
+	}
+	
+	/**
+	 * Creates a new stack that shares the pixel arrays of the slices between
+	 * z0 (inclusive) and z1 (exclusive) of the input stack.
+	 */
+	private static final ImageStack subStack(ImageStack image, int z0, int z1)
+	{
+		ImageStack chunk = new ImageStack(image.getWidth(), image.getHeight());
+		for (int z = z0; z < z1; z++)
+		{
+			chunk.addSlice(image.getSliceLabel(z + 1), image.getPixels(z + 1));
+		}
+		chunk.setColorModel(image.getColorModel());
+		return chunk;
+	}
+}
@@ -31,7 +31,7 @@ import ij.process.LUT;
 import inra.ijpb.algo.DefaultAlgoListener;
 import inra.ijpb.binary.ChamferWeights3D;
 import inra.ijpb.binary.geodesic.GeodesicDistanceTransform3D;
-import inra.ijpb.binary.geodesic.GeodesicDistanceTransform3DFloat;
+import inra.ijpb.binary.geodesic.GeodesicDistanceTransform3DFloatPropagation;
 import inra.ijpb.data.image.Images3D;
 import inra.ijpb.util.ColorMaps;
 
@@ -181,7 +181,7 @@ public class GeodesicDistanceMap3D implements PlugIn
 		GeodesicDistanceTransform3D algo;
 //		if (weights.length == 2)
 //		{
-			algo = new GeodesicDistanceTransform3DFloat(weights, normalize);
+			algo = new GeodesicDistanceTransform3DFloatPropagation(weights, normalize);
 //		} else
 //		{
 //			algo = new GeodesicDistanceTransformShort5x5(weights, normalize);
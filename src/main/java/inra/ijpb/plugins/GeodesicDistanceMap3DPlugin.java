@@ -31,7 +31,7 @@ import ij.process.LUT;
 import inra.ijpb.algo.DefaultAlgoListener;
 import inra.ijpb.binary.ChamferWeights3D;
 import inra.ijpb.binary.geodesic.GeodesicDistanceTransform3D;
-import inra.ijpb.binary.geodesic.GeodesicDistanceTransform3DFloat;
+import inra.ijpb.binary.geodesic.GeodesicDistanceTransform3DFloatPropagation;
 import inra.ijpb.data.image.Images3D;
 import inra.ijpb.util.ColorMaps;
 
@@ -201,7 +201,7 @@ public class GeodesicDistanceMap3DPlugin implements PlugIn
 		}
 
 		// Initialize calculator
-		GeodesicDistanceTransform3D algo = new GeodesicDistanceTransform3DFloat(weights, normalize);
+		GeodesicDistanceTransform3D algo = new GeodesicDistanceTransform3DFloatPropagation(weights, normalize);
 		DefaultAlgoListener.monitor(algo);
     	
 
@@ -21,6 +21,7 @@
  */
 package inra.ijpb.plugins;
 
+import ij.IJ;
 import ij.ImagePlus;
 import ij.gui.DialogListener;
 import ij.gui.GenericDialog;
@@ -28,9 +29,7 @@ import ij.plugin.filter.ExtendedPlugInFilter;
 import ij.plugin.filter.PlugInFilterRunner;
 import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
-import inra.ijpb.algo.DefaultAlgoListener;
-import inra.ijpb.morphology.attrfilt.AreaOpeningQueue;
-import inra.ijpb.morphology.attrfilt.BoxDiagonalOpeningQueue;
+import inra.ijpb.morphology.attrfilt.ComponentTree;
 
 import java.awt.AWTEvent;
 
@@ -161,6 +160,14 @@ public class GrayscaleAttributeFilteringPlugin implements ExtendedPlugInFilter,
 	/** Keep instance of result image */
 	private ImageProcessor result;
 
+	/**
+	 * The component tree of the (possibly inverted) image, kept to avoid
+	 * recomputation when only the attribute or the threshold changes.
+	 */
+	private ComponentTree tree;
+	private boolean treeInverted;
+	private int treeConnectivity;
+
 	
 	Operation operation = Operation.OPENING;
 	Attribute attribute = Attribute.AREA; 
@@ -230,27 +237,32 @@ public class GrayscaleAttributeFilteringPlugin implements ExtendedPlugInFilter,
 	{
 		// Identify image to process (original, or inverted)
 		ImageProcessor image2 = baseImage;
-		if (this.operation == Operation.CLOSING || this.operation == Operation.BOTTOM_HAT)
+		boolean inverted = this.operation == Operation.CLOSING || this.operation == Operation.BOTTOM_HAT;
+		if (inverted)
 		{
 			image2 = image2.duplicate();
 			image2.invert();
 		}
 		
+		// build the component tree only if the image or the connectivity changed
+		if (this.tree == null || this.treeInverted != inverted || this.treeConnectivity != this.connectivity)
+		{
+			IJ.showStatus("Build component tree...");
+			this.tree = new ComponentTree(image2, this.connectivity);
+			this.treeInverted = inverted;
+			this.treeConnectivity = this.connectivity;
+		}
+		
 		// switch depending on attribute to use
 		if (attribute == Attribute.AREA)
 		{
-			AreaOpeningQueue algo = new AreaOpeningQueue();
-			algo.setConnectivity(this.connectivity);
-			DefaultAlgoListener.monitor(algo);
-			this.result = algo.process(image2, this.minimumValue);
+			this.result = tree.filterImage(ComponentTree.Attribute.AREA, this.minimumValue);
 		}
 		else
 		{
-			BoxDiagonalOpeningQueue algo = new BoxDiagonalOpeningQueue();
-			algo.setConnectivity(this.connectivity);
-			DefaultAlgoListener.monitor(algo);
-			this.result = algo.process(image2, this.minimumValue);
+			this.result = tree.filterImage(ComponentTree.Attribute.BOX_DIAGONAL, this.minimumValue);
 		}
+		IJ.showStatus("");
 		
 		// For top-hat and bottom-hat, we consider difference with original image
 		if (this.operation == Operation.TOP_HAT ||
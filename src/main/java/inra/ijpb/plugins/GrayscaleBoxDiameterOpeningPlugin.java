@@ -28,7 +28,7 @@ import ij.plugin.filter.ExtendedPlugInFilter;
 import ij.plugin.filter.PlugInFilterRunner;
 import ij.process.ImageProcessor;
 import inra.ijpb.algo.DefaultAlgoListener;
-import inra.ijpb.morphology.attrfilt.BoxDiagonalOpeningQueue;
+import inra.ijpb.morphology.attrfilt.BoxDiagonalOpeningMaxTree;
 
 import java.awt.AWTEvent;
 
@@ -116,7 +116,7 @@ public class GrayscaleBoxDiameterOpeningPlugin implements ExtendedPlugInFilter,
 	@Override
 	public void run(ImageProcessor image)
 	{
-		BoxDiagonalOpeningQueue algo = new BoxDiagonalOpeningQueue();
+		BoxDiagonalOpeningMaxTree algo = new BoxDiagonalOpeningMaxTree();
 		DefaultAlgoListener.monitor(algo);
 		this.result = algo.process(image, this.minDiagonalLength); 
 		
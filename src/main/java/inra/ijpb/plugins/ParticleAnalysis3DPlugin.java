@@ -25,12 +25,14 @@ package inra.ijpb.plugins;
 import ij.IJ;
 import ij.ImagePlus;
 import ij.ImageStack;
+import ij.Prefs;
 import ij.gui.GenericDialog;
 import ij.measure.Calibration;
 import ij.measure.ResultsTable;
 import ij.plugin.PlugIn;
 import inra.ijpb.label.LabelImages;
 import inra.ijpb.measure.GeometricMeasures3D;
+import inra.ijpb.measure.RegionAnalyzer3D;
 
 /**
  * Plugin for measuring geometric quantities such as volume, surface area,
@@ -213,18 +215,26 @@ public class ParticleAnalysis3DPlugin implements PlugIn
         int[] labels = LabelImages.findAllLabels(image);
 
                
+        // accumulate the data of each region within a single scan of the image
+        RegionAnalyzer3D analyzer = null;
+        if (computeVolume || computeSurface || computeEulerNumber || computeEllipsoid)
+        {
+        	IJ.showStatus("Analyze regions...");
+        	analyzer = new RegionAnalyzer3D(image, labels, Prefs.getThreads());
+        }
+
         // compute geometrical quantities
         if (computeVolume)
         {
-        	volumes = GeometricMeasures3D.volume(image, labels, resol);
+        	volumes = analyzer.volume(resol);
         }
         if (computeSurface)
         {
-        	surfaces = GeometricMeasures3D.surfaceAreaCrofton(image, labels, resol, surfaceAreaDirs);
+        	surfaces = analyzer.surfaceAreaCrofton(resol, surfaceAreaDirs);
         }
         if (computeEulerNumber)
         {
-        	eulerNumbers = GeometricMeasures3D.eulerNumber(image, labels, connectivity);
+        	eulerNumbers = analyzer.eulerNumber(connectivity);
         }
         if (computeSphericity)
         {
@@ -234,7 +244,7 @@ public class ParticleAnalysis3DPlugin implements PlugIn
         // compute inertia ellipsoids and their elongations
         if (computeEllipsoid)
         {
-        	ellipsoids = GeometricMeasures3D.inertiaEllipsoid(image, labels, resol);
+        	ellipsoids = analyzer.inertiaEllipsoid(resol);
         }
         if (computeElongations)
         {
@@ -0,0 +1,329 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.util;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ij.util.ThreadUtil;
+
+/**
+ * Runs an iterative process on slabs of consecutive slices concurrently,
+ * until no slab needs to be processed anymore.
+ *
+ * Each slab is processed by a single thread at a time, and the process of a
+ * slab indicates whether its first or last slice was modified. In that case,
+ * the neighbor slab, that reads the modified slice as boundary, is
+ * re-activated. Idle threads wait for the next active slab on a shared
+ * blocking queue, and a slab that is re-activated while it is processed is
+ * run again immediately by the same thread. The process stops when no slab
+ * is either queued or running.
+ *
+ * If the process of a slab throws an exception, the other threads are
+ * released, and the exception is thrown again by the <code>run()</code>
+ * method.
+ *
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	SlabScheduler scheduler = new SlabScheduler(nSlabs);
+ *	scheduler.run(new SlabScheduler.SlabProcessor()
+ *	{
+ *		public int process(int slab)
+ *		{
+ *			// process the slices of the slab, and return the modified faces
+ *			return SlabScheduler.LOWER_FACE | SlabScheduler.UPPER_FACE;
+ *		}
+ *	}, nThreads);
+ *}</pre>
+ *
+ * @author David Legland
+ *
+ */
+public class SlabScheduler
+{
+	// ==================================================
+	// Inner interface
+
+	/**
+	 * The process applied to each slab.
+	 */
+	public interface SlabProcessor
+	{
+		/**
+		 * Processes the specified slab. The slabs adjacent to the processed
+		 * slab may be processed concurrently.
+		 *
+		 * @param slab
+		 *            the index of the slab
+		 * @return a combination of the flags LOWER_FACE and UPPER_FACE,
+		 *         indicating which faces of the slab were modified
+		 */
+		public int process(int slab);
+	}
+
+
+	// ==================================================
+	// Static constants
+
+	/** Flag indicating that the first slice of a slab was modified */
+	public static final int LOWER_FACE = 1;
+
+	/** Flag indicating that the last slice of a slab was modified */
+	public static final int UPPER_FACE = 2;
+
+	/** Slab states */
+	private static final int IDLE = 0;
+	private static final int QUEUED = 1;
+	private static final int RUNNING = 2;
+	private static final int DIRTY = 3;
+
+	/** The slab index queued to release the threads at the end of the process */
+	private static final int NO_SLAB = -1;
+
+
+	// ==================================================
+	// Class variables
+
+	/** the number of slabs */
+	final int nSlabs;
+
+	/** the state of each slab */
+	AtomicIntegerArray slabStates;
+
+	/** the slabs waiting for a thread */
+	LinkedBlockingQueue<Integer> slabQueue;
+
+	/** the number of slabs either queued or running */
+	AtomicInteger pendingSlabs;
+
+	/** the number of slab runs performed so far */
+	AtomicInteger slabRuns;
+
+	/** the first exception thrown by a thread, if any */
+	AtomicReference<Throwable> failure;
+
+
+	// ==================================================
+	// Constructor
+
+	/**
+	 * Creates a new scheduler for the specified number of slabs.
+	 *
+	 * @param nSlabs
+	 *            the number of slabs (at least 1)
+	 */
+	public SlabScheduler(int nSlabs)
+	{
+		if (nSlabs < 1)
+		{
+			throw new IllegalArgumentException("Number of slabs must be at least 1");
+		}
+		this.nSlabs = nSlabs;
+	}
+
+
+	// ==================================================
+	// Methods
+
+	/**
+	 * Processes all the slabs, then the slabs re-activated by their
+	 * neighbors, until no slab is active anymore.
+	 *
+	 * @param processor
+	 *            the process applied to each slab
+	 * @param nThreads
+	 *            the number of threads used for computation (at least 1)
+	 * @return the number of slab runs performed
+	 * @throws RuntimeException
+	 *             if the process of a slab failed, or if a thread was
+	 *             interrupted
+	 */
+	public int run(final SlabProcessor processor, int nThreads)
+	{
+		if (nThreads < 1)
+		{
+			throw new IllegalArgumentException("Number of threads must be at least 1");
+		}
+
+		// all slabs are active at the beginning
+		this.slabStates = new AtomicIntegerArray(nSlabs);
+		this.slabQueue = new LinkedBlockingQueue<Integer>();
+		this.pendingSlabs = new AtomicInteger(0);
+		this.slabRuns = new AtomicInteger(0);
+		this.failure = new AtomicReference<Throwable>(null);
+		for (int s = 0; s < nSlabs; s++)
+		{
+			activate(s);
+		}
+
+		final Thread[] threads = ThreadUtil.createThreadArray(Math.min(nThreads, nSlabs));
+		for (int ithread = 0; ithread < threads.length; ithread++)
+		{
+			threads[ithread] = new Thread()
+			{
+				public void run()
+				{
+					processSlabs(processor, threads.length);
+				}
+			};
+		}
+		ThreadUtil.startAndJoin(threads);
+
+		// propagate the failure of a thread to the caller
+		Throwable ex = failure.get();
+		if (ex instanceof RuntimeException)
+		{
+			throw (RuntimeException) ex;
+		}
+		if (ex instanceof Error)
+		{
+			throw (Error) ex;
+		}
+		if (ex != null)
+		{
+			throw new RuntimeException("Slab processing was interrupted", ex);
+		}
+
+		return slabRuns.get();
+	}
+
+	/**
+	 * Processes the slabs from the shared queue until no slab is either queued
+	 * or running. If the process of a slab fails, the exception is recorded
+	 * and all the threads are released.
+	 *
+	 * @param nWorkers
+	 *            the number of threads processing the slabs, used to release
+	 *            all of them once the process is complete
+	 */
+	private void processSlabs(SlabProcessor processor, int nWorkers)
+	{
+		boolean released = false;
+		try
+		{
+			while (failure.get() == null)
+			{
+				// wait until a slab is activated, or the process is complete
+				int s = slabQueue.take().intValue();
+				if (s == NO_SLAB)
+				{
+					released = true;
+					return;
+				}
+
+				slabStates.set(s, RUNNING);
+				while (true)
+				{
+					slabRuns.incrementAndGet();
+					int changes = processor.process(s);
+					if ((changes & LOWER_FACE) != 0 && s > 0)
+					{
+						activate(s - 1);
+					}
+					if ((changes & UPPER_FACE) != 0 && s < nSlabs - 1)
+					{
+						activate(s + 1);
+					}
+
+					// if a neighbor modified the slab in the meantime, process it again
+					if (slabStates.compareAndSet(s, RUNNING, IDLE))
+					{
+						break;
+					}
+					slabStates.set(s, RUNNING);
+				}
+
+				// decrement only after neighbors were activated, to avoid early
+				// termination. Once no slab is pending, none can be activated
+				// anymore, and the waiting threads can be released.
+				if (pendingSlabs.decrementAndGet() == 0)
+				{
+					releaseWorkers(nWorkers);
+				}
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			failure.compareAndSet(null, ex);
+			Thread.currentThread().interrupt();
+		}
+		catch (Throwable ex)
+		{
+			failure.compareAndSet(null, ex);
+		}
+		finally
+		{
+			// the pending slabs will never be completed: the other threads
+			// must not wait for them
+			if (!released)
+			{
+				releaseWorkers(nWorkers);
+			}
+		}
+	}
+
+	/**
+	 * Queues one terminating slab index for each thread.
+	 */
+	private void releaseWorkers(int nWorkers)
+	{
+		for (int i = 0; i < nWorkers; i++)
+		{
+			slabQueue.add(NO_SLAB);
+		}
+	}
+
+	/**
+	 * Marks the specified slab as requiring a new process.
+	 */
+	private void activate(int s)
+	{
+		while (true)
+		{
+			int state = slabStates.get(s);
+			if (state == IDLE)
+			{
+				if (slabStates.compareAndSet(s, IDLE, QUEUED))
+				{
+					pendingSlabs.incrementAndGet();
+					slabQueue.add(s);
+					return;
+				}
+			}
+			else if (state == RUNNING)
+			{
+				if (slabStates.compareAndSet(s, RUNNING, DIRTY))
+				{
+					return;
+				}
+			}
+			else
+			{
+				// slab already queued or already marked for re-processing
+				return;
+			}
+		}
+	}
+}
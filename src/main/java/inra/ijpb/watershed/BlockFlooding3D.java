@@ -0,0 +1,561 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.watershed;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import ij.IJ;
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.data.HierarchicalQueue;
+import inra.ijpb.data.QuantizedHierarchicalQueue;
+import inra.ijpb.util.SlabScheduler;
+
+/**
+ * Marker-controlled flooding of a 3D image, computed concurrently on slabs
+ * of consecutive slices.
+ *
+ * The flooding is split into two phases, each one converging to a result
+ * that does not depend on the order the slabs are processed:
+ * <ol>
+ * <li>The flooding key of each voxel is computed. The key is made of the
+ * flooding level, that is the lowest value of the highest voxel along a
+ * path from a marker, and of the distance to the lower voxels within the
+ * plateau of this level. Each slab runs a label-correcting flood with a
+ * hierarchical queue, starting from its markers and from the keys of the
+ * adjacent slices of the neighbor slabs. As keys can only decrease, the
+ * slabs whose neighbors modified a face are flooded again until no key
+ * changes.</li>
+ * <li>The label of each voxel is computed from its predecessors, that are
+ * the neighbors whose key leads to the key of the voxel. Each slab visits
+ * its voxels in topological order of the predecessor relation, and the
+ * slabs whose neighbors modified a face are labeled again until no label
+ * changes.</li>
+ * </ol>
+ *
+ * As with the sequential flood, each voxel receives the label of a marker
+ * that reaches it at its flooding level. The results are therefore the same
+ * wherever a single catchment basin reaches a voxel at its flooding level.
+ * When several basins reach a voxel at the same level, the sequential flood
+ * depends on the order voxels entered its queue, whereas the block flood
+ * takes the smallest label of the predecessors, that are closest within the
+ * plateau. With dams, a voxel whose predecessors have several labels is a
+ * dam, and dams do not propagate labels.
+ *
+ * The flooding keys use eight bytes per voxel, in addition to the labels.
+ *
+ * @see MarkerControlledWatershedTransform3D#applyWithParallelBlocks()
+ * @see inra.ijpb.util.SlabScheduler
+ *
+ * @author Ignacio Arganda-Carreras
+ */
+class BlockFlooding3D
+{
+	/** The minimum number of slices within a slab */
+	static final int MIN_SLAB_SIZE = 8;
+
+	/** The key of voxels that were not reached by the flood */
+	static final long UNREACHED = Long.MAX_VALUE;
+
+	/** The key of marker voxels */
+	static final long MARKER = Long.MIN_VALUE;
+
+	/** Mask of the plateau distance within a key */
+	static final long DISTANCE_MASK = 0xFFFFFFFFL;
+
+	final ImageStack inputStack;
+	/** the slice arrays of the input, or null for virtual stacks */
+	final Object[] inputSlices;
+	final int bitDepth;
+	final ImageProcessor[] markerSlices;
+	final ImageProcessor[] maskSlices;
+
+	final int size1;
+	final int size2;
+	final int size3;
+	final int sliceSize;
+
+	/** neighbor shifts and corresponding offsets of linear indices */
+	final int[][] shifts;
+	final int[] offsets;
+
+	/** the flooding key of each voxel, with one array per slice */
+	AtomicLongArray[] keys;
+
+	/** the label of each voxel */
+	LabelBuffer3D labels;
+
+	/** the index of the first slice of each slab, plus the number of slices */
+	int[] slabStarts;
+
+	/** the slabs whose markers were already used as flooding sources */
+	boolean[] seeded;
+
+	/** the range of input values, used to quantize float values */
+	float minValue;
+	float maxValue;
+
+	/**
+	 * Creates a new block flooding.
+	 *
+	 * @param inputStack the image to flood
+	 * @param markerSlices the slices of the marker image
+	 * @param maskSlices the slices of the binary mask, or null to flood the
+	 *            whole image
+	 * @param shifts the shifts of the neighbors
+	 */
+	BlockFlooding3D(
+			ImageStack inputStack,
+			ImageProcessor[] markerSlices,
+			ImageProcessor[] maskSlices,
+			int[][] shifts )
+	{
+		this.inputStack = inputStack;
+		this.inputSlices = MarkerControlledWatershedTransform3D.getSliceArrays( inputStack );
+		this.bitDepth = inputStack.getBitDepth();
+		this.markerSlices = markerSlices;
+		this.maskSlices = maskSlices;
+
+		this.size1 = inputStack.getWidth();
+		this.size2 = inputStack.getHeight();
+		this.size3 = inputStack.getSize();
+		this.sliceSize = size1 * size2;
+
+		this.shifts = shifts;
+		this.offsets = new int[ shifts.length ];
+		for ( int n = 0; n < shifts.length; n++ )
+			offsets[ n ] = shifts[ n ][ 0 ] + shifts[ n ][ 1 ] * size1
+					+ shifts[ n ][ 2 ] * sliceSize;
+	}
+
+	/**
+	 * Floods the image from the markers.
+	 *
+	 * @param getDams flag to label as dams the voxels whose predecessors
+	 * belong to several catchment basins
+	 * @param storage the storage of labels, or null for automatic choice
+	 * @param nThreads the number of threads used for computation
+	 * @return buffer of labels indexed by x + y * width + z * width * height
+	 */
+	LabelBuffer3D flood( final boolean getDams, LabelBuffer3D.Storage storage,
+			int nThreads )
+	{
+		// split the stack into slabs with the same number of slices. The
+		// result does not depend on the number of slabs.
+		int nSlabs = nThreads == 1 ? 1
+				: Math.max( Math.min( size3 / MIN_SLAB_SIZE, 2 * nThreads ), 1 );
+		this.slabStarts = new int[ nSlabs + 1 ];
+		for ( int s = 0; s <= nSlabs; s++ )
+			slabStarts[ s ] = (int) ( ( (long) size3 ) * s / nSlabs );
+		this.seeded = new boolean[ nSlabs ];
+
+		this.keys = new AtomicLongArray[ size3 ];
+		this.labels = LabelBuffer3D.create( size1, size2, size3, storage,
+				WatershedTransform3D.INIT );
+		if ( bitDepth != 8 && bitDepth != 16 )
+			computeValueRange();
+
+		SlabScheduler scheduler = new SlabScheduler( nSlabs );
+
+		// initialize keys and labels of markers
+		IJ.showStatus( "Initializing flooding keys..." );
+		scheduler.run( new SlabScheduler.SlabProcessor()
+		{
+			public int process( int slab )
+			{
+				initSlab( slab );
+				return 0;
+			}
+		}, nThreads );
+
+		// compute the flooding key of each voxel
+		IJ.showStatus( "Flooding blocks..." );
+		scheduler.run( new SlabScheduler.SlabProcessor()
+		{
+			public int process( int slab )
+			{
+				return floodSlab( slab );
+			}
+		}, nThreads );
+
+		// propagate labels from the markers
+		IJ.showStatus( "Labeling blocks..." );
+		scheduler.run( new SlabScheduler.SlabProcessor()
+		{
+			public int process( int slab )
+			{
+				return labelSlab( slab, getDams );
+			}
+		}, nThreads );
+
+		this.keys = null;
+		return labels;
+	}
+
+	/**
+	 * Computes the range of finite input values, used to quantize values of
+	 * float images.
+	 */
+	private void computeValueRange()
+	{
+		minValue = Float.POSITIVE_INFINITY;
+		maxValue = Float.NEGATIVE_INFINITY;
+		for ( int z = 0; z < size3; z++ )
+			for ( int i = 0; i < sliceSize; i++ )
+			{
+				final float value = getValue( i, z );
+				if ( value < minValue && value != Float.NEGATIVE_INFINITY )
+					minValue = value;
+				if ( value > maxValue && value != Float.POSITIVE_INFINITY )
+					maxValue = value;
+			}
+	}
+
+	/**
+	 * Allocates the keys of the slices of a slab, and sets the keys and
+	 * labels of the markers within the mask.
+	 */
+	private void initSlab( int s )
+	{
+		for ( int z = slabStarts[ s ]; z < slabStarts[ s + 1 ]; z++ )
+		{
+			final AtomicLongArray sliceKeys = new AtomicLongArray( sliceSize );
+			final ImageProcessor ipSeed = markerSlices[ z ];
+			final ImageProcessor ipMask = null != maskSlices ? maskSlices[ z ] : null;
+			for ( int i = 0; i < sliceSize; i++ )
+			{
+				final int label = (int) ipSeed.getf( i );
+				if ( label > 0 && ( null == ipMask || ipMask.getf( i ) > 0 ) )
+				{
+					sliceKeys.lazySet( i, MARKER );
+					labels.set( i + z * sliceSize, label );
+				}
+				else
+					sliceKeys.lazySet( i, UNREACHED );
+			}
+			keys[ z ] = sliceKeys;
+		}
+	}
+
+	/**
+	 * Lowers the keys of the voxels of a slab, starting from its markers
+	 * during the first run, and from the adjacent slices of the neighbor
+	 * slabs.
+	 *
+	 * @return a combination of the flags of SlabScheduler indicating which
+	 *         faces of the slab were modified
+	 */
+	private int floodSlab( int s )
+	{
+		final int z0 = slabStarts[ s ];
+		final int z1 = slabStarts[ s + 1 ];
+
+		HierarchicalQueue levelQueue = null;
+		QuantizedHierarchicalQueue valueQueue = null;
+		if ( bitDepth == 8 )
+			levelQueue = new HierarchicalQueue( 256 );
+		else if ( bitDepth == 16 )
+			levelQueue = new HierarchicalQueue( 65536 );
+		else
+			valueQueue = new QuantizedHierarchicalQueue( minValue, maxValue );
+
+		int changes = 0;
+
+		// flood from the markers of the slab
+		if ( !seeded[ s ] )
+		{
+			seeded[ s ] = true;
+			for ( int z = z0; z < z1; z++ )
+				for ( int i = 0; i < sliceSize; i++ )
+					if ( keys[ z ].get( i ) == MARKER )
+						changes |= relaxNeighbors( i + z * sliceSize, MARKER,
+								z0, z1, z0, z1, levelQueue, valueQueue );
+		}
+
+		// flood from the slices of the neighbor slabs
+		for ( int i = 0; i < sliceSize; i++ )
+		{
+			if ( z0 > 0 )
+			{
+				final int index = i + ( z0 - 1 ) * sliceSize;
+				changes |= relaxNeighbors( index, keys[ z0 - 1 ].get( i ),
+						z0, z0 + 1, z0, z1, levelQueue, valueQueue );
+			}
+			if ( z1 < size3 )
+			{
+				final int index = i + z1 * sliceSize;
+				changes |= relaxNeighbors( index, keys[ z1 ].get( i ),
+						z1 - 1, z1, z0, z1, levelQueue, valueQueue );
+			}
+		}
+
+		// label-correcting flood within the slab
+		long iter = 0;
+		while ( null != levelQueue ? !levelQueue.isEmpty() : !valueQueue.isEmpty() )
+		{
+			if ( ( ++iter & 0xFFFF ) == 0 && Thread.currentThread().isInterrupted() )
+				throw new RuntimeException( "Flooding was interrupted" );
+
+			final int index = null != levelQueue ? levelQueue.poll() : valueQueue.poll();
+			final int z = index / sliceSize;
+			final long key = keys[ z ].get( index - z * sliceSize );
+			changes |= relaxNeighbors( index, key, z0, z1, z0, z1,
+					levelQueue, valueQueue );
+		}
+		return changes;
+	}
+
+	/**
+	 * Lowers the keys of the neighbors of a voxel within the slices zmin to
+	 * zmax (exclusive) using the key of the voxel, and queues the modified
+	 * neighbors.
+	 *
+	 * @return a combination of the flags of SlabScheduler indicating whether
+	 *         the first or last slice of the slab was modified
+	 */
+	private int relaxNeighbors( int index, long key, int zmin, int zmax,
+			int z0, int z1, HierarchicalQueue levelQueue,
+			QuantizedHierarchicalQueue valueQueue )
+	{
+		if ( key == UNREACHED )
+			return 0;
+
+		final int z = index / sliceSize;
+		final int y = ( index - z * sliceSize ) / size1;
+		final int x = index - z * sliceSize - y * size1;
+
+		int changes = 0;
+		for ( int n = 0; n < shifts.length; n++ )
+		{
+			final int u = x + shifts[ n ][ 0 ];
+			final int v = y + shifts[ n ][ 1 ];
+			final int w = z + shifts[ n ][ 2 ];
+			if ( u < 0 || u >= size1 || v < 0 || v >= size2 || w < zmin || w >= zmax )
+				continue;
+
+			final int i = u + v * size1;
+			final long neighborKey = keys[ w ].get( i );
+			if ( neighborKey == MARKER )
+				continue;
+			if ( null != maskSlices && maskSlices[ w ].getf( i ) <= 0 )
+				continue;
+
+			final float value = getValue( i, w );
+			final long newKey = extendKey( key, value );
+			if ( newKey < neighborKey )
+			{
+				keys[ w ].lazySet( i, newKey );
+				if ( null != levelQueue )
+					levelQueue.add( index + offsets[ n ], (int) levelOf( newKey ) );
+				else
+					valueQueue.add( index + offsets[ n ], levelOf( newKey ) );
+
+				if ( w == z0 )
+					changes |= SlabScheduler.LOWER_FACE;
+				if ( w == z1 - 1 )
+					changes |= SlabScheduler.UPPER_FACE;
+			}
+		}
+		return changes;
+	}
+
+	/**
+	 * Computes the labels of the voxels of a slab from the labels of their
+	 * predecessors, visiting voxels in topological order.
+	 *
+	 * @return a combination of the flags of SlabScheduler indicating which
+	 *         faces of the slab were modified
+	 */
+	private int labelSlab( int s, boolean getDams )
+	{
+		final int z0 = slabStarts[ s ];
+		final int z1 = slabStarts[ s + 1 ];
+		final int base = z0 * sliceSize;
+		final int count = ( z1 - z0 ) * sliceSize;
+
+		// count the predecessors of each voxel within the slab
+		final int[] nPredecessors = new int[ count ];
+		final int[] fifo = new int[ count ];
+		int head = 0;
+		int tail = 0;
+		for ( int j = 0; j < count; j++ )
+		{
+			final int index = base + j;
+			final int z = index / sliceSize;
+			final int y = ( index - z * sliceSize ) / size1;
+			final int x = index - z * sliceSize - y * size1;
+			final long key = keys[ z ].get( index - z * sliceSize );
+			if ( key == UNREACHED || key == MARKER )
+				continue;
+
+			int nPred = 0;
+			for ( int n = 0; n < shifts.length; n++ )
+			{
+				final int u = x + shifts[ n ][ 0 ];
+				final int v = y + shifts[ n ][ 1 ];
+				final int w = z + shifts[ n ][ 2 ];
+				if ( u < 0 || u >= size1 || v < 0 || v >= size2 || w < z0 || w >= z1 )
+					continue;
+				final long neighborKey = keys[ w ].get( u + v * size1 );
+				if ( neighborKey != MARKER && isPredecessor( neighborKey, key ) )
+					nPred++;
+			}
+			nPredecessors[ j ] = nPred;
+			if ( nPred == 0 )
+				fifo[ tail++ ] = index;
+		}
+
+		// label voxels once all their predecessors within the slab are labeled
+		final int[] neighborLabels = new int[ shifts.length ];
+		int changes = 0;
+		while ( head < tail )
+		{
+			if ( ( head & 0xFFFF ) == 0 && Thread.currentThread().isInterrupted() )
+				throw new RuntimeException( "Flooding was interrupted" );
+
+			final int index = fifo[ head++ ];
+			final int z = index / sliceSize;
+			final int y = ( index - z * sliceSize ) / size1;
+			final int x = index - z * sliceSize - y * size1;
+			final long key = keys[ z ].get( index - z * sliceSize );
+
+			// collect the labels of the predecessors, within the whole image
+			int nLabels = 0;
+			int minLabel = Integer.MAX_VALUE;
+			for ( int n = 0; n < shifts.length; n++ )
+			{
+				final int u = x + shifts[ n ][ 0 ];
+				final int v = y + shifts[ n ][ 1 ];
+				final int w = z + shifts[ n ][ 2 ];
+				if ( u < 0 || u >= size1 || v < 0 || v >= size2 || w < 0 || w >= size3 )
+					continue;
+				if ( !isPredecessor( keys[ w ].get( u + v * size1 ), key ) )
+					continue;
+
+				final int neighborLabel = labels.get( index + offsets[ n ] );
+				if ( neighborLabel > 0
+						&& !MarkerControlledWatershedTransform3D.contains(
+								neighborLabels, nLabels, neighborLabel ) )
+				{
+					neighborLabels[ nLabels++ ] = neighborLabel;
+					minLabel = Math.min( minLabel, neighborLabel );
+				}
+			}
+
+			final int label;
+			if ( nLabels == 0 )
+				label = WatershedTransform3D.INIT;
+			else if ( nLabels > 1 && getDams )
+				label = WatershedTransform3D.WSHED;
+			else
+				label = minLabel;
+
+			if ( labels.get( index ) != label )
+			{
+				labels.set( index, label );
+				if ( z == z0 )
+					changes |= SlabScheduler.LOWER_FACE;
+				if ( z == z1 - 1 )
+					changes |= SlabScheduler.UPPER_FACE;
+			}
+
+			// release the successors within the slab
+			for ( int n = 0; n < shifts.length; n++ )
+			{
+				final int u = x + shifts[ n ][ 0 ];
+				final int v = y + shifts[ n ][ 1 ];
+				final int w = z + shifts[ n ][ 2 ];
+				if ( u < 0 || u >= size1 || v < 0 || v >= size2 || w < z0 || w >= z1 )
+					continue;
+				final long neighborKey = keys[ w ].get( u + v * size1 );
+				final int neighbor = index + offsets[ n ];
+				if ( neighborKey != MARKER && isPredecessor( key, neighborKey )
+						&& --nPredecessors[ neighbor - base ] == 0 )
+					fifo[ tail++ ] = neighbor;
+			}
+		}
+		return changes;
+	}
+
+	/**
+	 * Read the value of a voxel.
+	 */
+	private float getValue( int index, int z )
+	{
+		return MarkerControlledWatershedTransform3D.getValue( inputStack,
+				inputSlices, bitDepth, index, z );
+	}
+
+
+	// ==================================================
+	// Flooding keys
+
+	/**
+	 * Computes the key of a voxel reached from a neighbor.
+	 *
+	 * @param key the key of the neighbor
+	 * @param value the value of the voxel
+	 * @return the key of the voxel reached from the neighbor
+	 */
+	static final long extendKey( long key, float value )
+	{
+		final int level = sortableBits( value );
+		if ( key == MARKER || level > (int) ( key >> 32 ) )
+			return ( (long) level ) << 32;
+		// same flooding level, one step further within the plateau
+		return key + 1;
+	}
+
+	/**
+	 * Checks if a voxel with the first key is a predecessor of a voxel with
+	 * the second key, that is if the second key is obtained by extending the
+	 * first one.
+	 */
+	static final boolean isPredecessor( long key, long key2 )
+	{
+		if ( key == UNREACHED || key2 == UNREACHED || key2 == MARKER )
+			return false;
+		if ( key == MARKER )
+			return ( key2 & DISTANCE_MASK ) == 0;
+		if ( ( key2 & DISTANCE_MASK ) == 0 )
+			return ( key2 >> 32 ) > ( key >> 32 );
+		return key2 == key + 1;
+	}
+
+	/**
+	 * Returns the flooding level of a key.
+	 */
+	static final float levelOf( long key )
+	{
+		final int bits = (int) ( key >> 32 );
+		return Float.intBitsToFloat( bits >= 0 ? bits : bits ^ 0x7FFFFFFF );
+	}
+
+	/**
+	 * Converts a float value into an integer with the same order.
+	 */
+	static final int sortableBits( float value )
+	{
+		final int bits = Float.floatToIntBits( value );
+		return bits >= 0 ? bits : bits ^ 0x7FFFFFFF;
+	}
+}
@@ -0,0 +1,358 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.watershed;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Storage of the labels computed by the 3D watershed, indexed by the linear
+ * index of voxels: <code>x + y * sizeX + z * sizeX * sizeY</code>.
+ * 
+ * Labels are stored in a single primitive array for small volumes, in one
+ * array per slice for larger volumes, and in a memory-mapped temporary file
+ * when the buffer would use a large part of the available heap.
+ * 
+ * @see MarkerControlledWatershedTransform3D
+ * 
+ * @author Ignacio Arganda-Carreras
+ */
+abstract class LabelBuffer3D
+{
+	/**
+	 * The way labels are stored.
+	 */
+	enum Storage
+	{
+		/** One primitive array for the whole volume. */
+		FLAT,
+		/** One primitive array for each slice. */
+		SLICED,
+		/** A temporary file mapped into memory. */
+		MAPPED
+	}
+	
+	/**
+	 * The largest number of voxels stored in a single array when storage is
+	 * chosen automatically.
+	 */
+	static final long MAX_FLAT_SIZE = 1L << 26;
+	
+	/**
+	 * The ratio of the maximum heap size above which the labels are stored
+	 * in a memory-mapped file, when storage is chosen automatically.
+	 */
+	static final double MAX_HEAP_RATIO = 0.5;
+
+	
+	/**
+	 * Chooses the storage of labels of a volume with the specified size.
+	 * 
+	 * @param sizeX
+	 *            the width of the volume
+	 * @param sizeY
+	 *            the height of the volume
+	 * @param sizeZ
+	 *            the number of slices of the volume
+	 * @return the storage to use for the volume
+	 */
+	static final Storage chooseStorage( int sizeX, int sizeY, int sizeZ )
+	{
+		long nVoxels = (long) sizeX * sizeY * sizeZ;
+		if ( nVoxels <= MAX_FLAT_SIZE )
+			return Storage.FLAT;
+		if ( nVoxels * 4 > Runtime.getRuntime().maxMemory() * MAX_HEAP_RATIO )
+			return Storage.MAPPED;
+		return Storage.SLICED;
+	}
+
+	/**
+	 * Creates a new buffer with the specified storage, with all labels
+	 * initialized to the specified value.
+	 * 
+	 * @param sizeX
+	 *            the width of the volume
+	 * @param sizeY
+	 *            the height of the volume
+	 * @param sizeZ
+	 *            the number of slices of the volume
+	 * @param storage
+	 *            the storage of labels, or null for automatic choice
+	 * @param initValue
+	 *            the initial value of the labels
+	 * @return a new label buffer
+	 * @throws IllegalArgumentException
+	 *             if the volume has more than Integer.MAX_VALUE voxels
+	 */
+	static final LabelBuffer3D create( int sizeX, int sizeY, int sizeZ,
+			Storage storage, int initValue )
+	{
+		long nVoxels = (long) sizeX * sizeY * sizeZ;
+		if ( nVoxels > Integer.MAX_VALUE )
+		{
+			throw new IllegalArgumentException( "Label buffers are limited to Integer.MAX_VALUE voxels" );
+		}
+		
+		if ( storage == null )
+			storage = chooseStorage( sizeX, sizeY, sizeZ );
+		
+		LabelBuffer3D buffer;
+		switch ( storage )
+		{
+		case FLAT:
+			buffer = new Flat( (int) nVoxels );
+			break;
+		case SLICED:
+			buffer = new Sliced( sizeX * sizeY, sizeZ );
+			break;
+		case MAPPED:
+			buffer = new Mapped( (int) nVoxels );
+			break;
+		default:
+			throw new IllegalArgumentException( "Unknown storage: " + storage );
+		}
+		buffer.fill( initValue );
+		return buffer;
+	}
+	
+	
+	/**
+	 * Returns the label of the voxel with the specified linear index.
+	 * 
+	 * @param index
+	 *            the linear index of the voxel
+	 * @return the label of the voxel
+	 */
+	abstract int get( int index );
+	
+	/**
+	 * Changes the label of the voxel with the specified linear index.
+	 * 
+	 * @param index
+	 *            the linear index of the voxel
+	 * @param label
+	 *            the new label of the voxel
+	 */
+	abstract void set( int index, int label );
+	
+	/**
+	 * Copies the labels of a slice into an array.
+	 * 
+	 * @param z
+	 *            the slice index, 0-based
+	 * @param sliceSize
+	 *            the number of voxels within a slice
+	 * @param target
+	 *            the array to fill, with at least sliceSize elements
+	 */
+	void getSlice( int z, int sliceSize, int[] target )
+	{
+		int offset = z * sliceSize;
+		for ( int i = 0; i < sliceSize; i++ )
+		{
+			target[ i ] = get( offset + i );
+		}
+	}
+	
+	/**
+	 * Sets all the labels to the specified value.
+	 * 
+	 * @param label
+	 *            the new value of all labels
+	 */
+	abstract void fill( int label );
+	
+	
+	/**
+	 * All the labels stored within a single array.
+	 */
+	private static final class Flat extends LabelBuffer3D
+	{
+		final int[] labels;
+		
+		Flat( int size )
+		{
+			this.labels = new int[ size ];
+		}
+		
+		@Override
+		int get( int index )
+		{
+			return labels[ index ];
+		}
+
+		@Override
+		void set( int index, int label )
+		{
+			labels[ index ] = label;
+		}
+
+		@Override
+		void getSlice( int z, int sliceSize, int[] target )
+		{
+			System.arraycopy( labels, z * sliceSize, target, 0, sliceSize );
+		}
+
+		@Override
+		void fill( int label )
+		{
+			Arrays.fill( labels, label );
+		}
+	}
+	
+	/**
+	 * The labels stored with one array for each slice, following the layout
+	 * of ImageStack.
+	 */
+	private static final class Sliced extends LabelBuffer3D
+	{
+		final int sliceSize;
+		final int[][] slices;
+		
+		Sliced( int sliceSize, int sizeZ )
+		{
+			this.sliceSize = sliceSize;
+			this.slices = new int[ sizeZ ][ sliceSize ];
+		}
+		
+		@Override
+		int get( int index )
+		{
+			int z = index / sliceSize;
+			return slices[ z ][ index - z * sliceSize ];
+		}
+
+		@Override
+		void set( int index, int label )
+		{
+			int z = index / sliceSize;
+			slices[ z ][ index - z * sliceSize ] = label;
+		}
+
+		@Override
+		void getSlice( int z, int sliceSize, int[] target )
+		{
+			System.arraycopy( slices[ z ], 0, target, 0, sliceSize );
+		}
+
+		@Override
+		void fill( int label )
+		{
+			for ( int[] slice : slices )
+			{
+				Arrays.fill( slice, label );
+			}
+		}
+	}
+	
+	/**
+	 * The labels stored within a temporary file mapped into memory, using
+	 * chunks of fixed size.
+	 */
+	private static final class Mapped extends LabelBuffer3D
+	{
+		/** The binary logarithm of the number of labels of each chunk. */
+		static final int CHUNK_SHIFT = 26;
+		static final int CHUNK_MASK = ( 1 << CHUNK_SHIFT ) - 1;
+		
+		final IntBuffer[] chunks;
+		
+		Mapped( int size )
+		{
+			int nChunks = (int) ( ( ( (long) size ) + CHUNK_MASK ) >> CHUNK_SHIFT );
+			this.chunks = new IntBuffer[ nChunks ];
+			
+			File file = null;
+			RandomAccessFile raf = null;
+			try
+			{
+				file = File.createTempFile( "watershed-labels", ".bin" );
+				file.deleteOnExit();
+				raf = new RandomAccessFile( file, "rw" );
+				raf.setLength( 4L * size );
+				FileChannel channel = raf.getChannel();
+				for ( int i = 0; i < nChunks; i++ )
+				{
+					long start = ( (long) i ) << CHUNK_SHIFT;
+					long count = Math.min( size - start, 1L << CHUNK_SHIFT );
+					chunks[ i ] = channel.map( FileChannel.MapMode.READ_WRITE, 4 * start, 4 * count )
+							.order( ByteOrder.nativeOrder() ).asIntBuffer();
+				}
+			}
+			catch ( IOException ex )
+			{
+				throw new RuntimeException( "Could not create memory-mapped label buffer", ex );
+			}
+			finally
+			{
+				// mappings remain valid after the file is closed
+				if ( raf != null )
+				{
+					try
+					{
+						raf.close();
+					}
+					catch ( IOException ex )
+					{
+						// labels are only accessed through the mappings,
+						// that stay valid whatever the state of the channel,
+						// and nothing was written through the file itself:
+						// a failed close can at worst leak a descriptor
+						// but cannot lose or corrupt labels
+					}
+				}
+				if ( file != null )
+					file.delete();
+			}
+		}
+		
+		@Override
+		int get( int index )
+		{
+			return chunks[ index >>> CHUNK_SHIFT ].get( index & CHUNK_MASK );
+		}
+
+		@Override
+		void set( int index, int label )
+		{
+			chunks[ index >>> CHUNK_SHIFT ].put( index & CHUNK_MASK, label );
+		}
+
+		@Override
+		void fill( int label )
+		{
+			for ( IntBuffer chunk : chunks )
+			{
+				int n = chunk.capacity();
+				for ( int i = 0; i < n; i++ )
+				{
+					chunk.put( i, label );
+				}
+			}
+		}
+	}
+}
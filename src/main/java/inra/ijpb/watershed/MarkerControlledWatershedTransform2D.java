@@ -30,13 +30,17 @@ import java.util.PriorityQueue;
 import ij.IJ;
 import ij.ImagePlus;
 import ij.ImageStack;
+import ij.process.ByteProcessor;
 import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
 import inra.ijpb.data.Cursor2D;
+import inra.ijpb.data.HierarchicalQueue;
 import inra.ijpb.data.Neighborhood2D;
 import inra.ijpb.data.Neighborhood2DC8;
 import inra.ijpb.data.Neighborhood2DC4;
 import inra.ijpb.data.PixelRecord;
+import inra.ijpb.data.QuantizedHierarchicalQueue;
 
 /**
  * Marker-controlled version of the watershed transform in 2D.
@@ -1579,6 +1583,266 @@ public class MarkerControlledWatershedTransform2D extends WatershedTransform2D
 	}
 	
 	
+	/**
+	 * Apply watershed transform on inputImage, using the labeled 
+	 * markers from markerImage and restricted to the white areas 
+	 * of maskImage. This implementation floods the image from the
+	 * surroundings of the labeled markers using a hierarchical queue
+	 * of pixel indices, and produces the same result as
+	 * {@link #applyWithPriorityQueue()} without allocating an object
+	 * per pixel.
+	 * 
+	 * 8-bit and 16-bit input images are processed with one queue level
+	 * per gray level. Other input images are quantized into levels,
+	 * and pixels of the same level are sorted by their exact value.
+	 * 
+	 * @return watershed domains image (no dams)
+	 */
+	public ImageProcessor applyWithHierarchicalQueue()
+	{
+		final int[] labels = floodWithHierarchicalQueue( false );
+		if ( null == labels )
+			return null;
+
+		return new FloatProcessor( inputImage.getWidth(),
+				inputImage.getHeight(), labels );
+	}
+
+	/**
+	 * Apply watershed transform on inputImage, using the labeled 
+	 * markers from markerImage and restricted to the white areas 
+	 * of maskImage. This implementation runs Meyer's flooding 
+	 * algorithm using a hierarchical queue of pixel indices, and
+	 * produces the same result as {@link #applyWithPriorityQueueAndDams()}
+	 * without allocating an object per pixel.
+	 * 
+	 * 8-bit and 16-bit input images are processed with one queue level
+	 * per gray level. Other input images are quantized into levels,
+	 * and pixels of the same level are sorted by their exact value.
+	 * 
+	 * @return watershed domains image (with dams)
+	 */
+	public ImageProcessor applyWithHierarchicalQueueAndDams()
+	{
+		final int[] labels = floodWithHierarchicalQueue( true );
+		if ( null == labels )
+			return null;
+
+		// Create result label image
+		final ImageProcessor labelProcessor = markerImage.duplicate();
+		for ( int i = 0; i < labels.length; i++ )
+		{
+			if ( labels[ i ] == INIT ) // set unlabeled pixels to WSHED
+				labelProcessor.setf( i, 0 );
+			else
+				labelProcessor.setf( i, labels[ i ] );
+		}
+		return labelProcessor;
+	}
+
+	/**
+	 * Flood the input image from the labeled markers, visiting pixels by
+	 * ascending value and, for equal values, in the order they were
+	 * put into the queue.
+	 * 
+	 * @param getDams flag to label as dams the pixels adjacent to
+	 * several catchment basins
+	 * @return array of labels indexed by x + y * width, or null if
+	 * the process was interrupted
+	 */
+	private int[] floodWithHierarchicalQueue( boolean getDams )
+	{
+		if ( Thread.currentThread().isInterrupted() )
+			return null;
+
+		final int size1 = inputImage.getWidth();
+		final int size2 = inputImage.getHeight();
+
+		if ( size1 != markerImage.getWidth() || size2 != markerImage.getHeight() )
+		{
+			throw new IllegalArgumentException( "Marker and input images must have the same size" );
+		}
+
+		// Check connectivity has a correct value
+		if ( connectivity != 4 && connectivity != 8 )
+		{
+			throw new RuntimeException(
+					"Connectivity for 2D images must be either 4 or 8, not "
+							+ connectivity );
+		}
+
+		// neighbor shifts, in the same order as Neighborhood2DC4/C8
+		final int[] dx = connectivity == 8 ?
+				new int[] { -1, -1, -1, 0, 0, 1, 1, 1 } : new int[] { -1, 0, 1, 0 };
+		final int[] dy = connectivity == 8 ?
+				new int[] { -1, 0, 1, -1, 1, -1, 0, 1 } : new int[] { 0, -1, 0, 1 };
+		final int nNeighbors = dx.length;
+
+		// output labels
+		final int numPixels = size1 * size2;
+		final int[] labels = new int[ numPixels ];
+		if ( getDams || null == maskImage )
+			Arrays.fill( labels, INIT );
+		else
+		{
+			for ( int i = 0; i < numPixels; i++ )
+				if ( maskImage.getf( i ) > 0 )
+					labels[ i ] = INIT;
+		}
+
+		// use one level per gray level for integer images
+		HierarchicalQueue levelQueue = null;
+		QuantizedHierarchicalQueue valueQueue = null;
+		if ( inputImage instanceof ByteProcessor )
+			levelQueue = new HierarchicalQueue( 256 );
+		else if ( inputImage instanceof ShortProcessor )
+			levelQueue = new HierarchicalQueue( 65536 );
+		else
+		{
+			float minValue = Float.POSITIVE_INFINITY;
+			float maxValue = Float.NEGATIVE_INFINITY;
+			for ( int i = 0; i < numPixels; i++ )
+			{
+				final float value = inputImage.getf( i );
+				if ( value < minValue && value != Float.NEGATIVE_INFINITY )
+					minValue = value;
+				if ( value > maxValue && value != Float.POSITIVE_INFINITY )
+					maxValue = value;
+			}
+			valueQueue = new QuantizedHierarchicalQueue( minValue, maxValue );
+		}
+
+		// Put the pixels adjacent to the markers into the queue
+		IJ.showStatus( "Extracting pixel values..." );
+		if( verbose ) IJ.log("  Extracting pixel values..." );
+		final long t0 = System.currentTimeMillis();
+
+		for ( int x = 0; x < size1; ++x )
+			for ( int y = 0; y < size2; ++y )
+			{
+				final int index = x + y * size1;
+				if ( null != maskImage && maskImage.getf( index ) <= 0 )
+					continue;
+
+				final int label = (int) markerImage.getf( index );
+				if ( label <= 0 )
+					continue;
+
+				for ( int n = 0; n < nNeighbors; n++ )
+				{
+					final int u = x + dx[ n ];
+					final int v = y + dy[ n ];
+					if ( u < 0 || u >= size1 || v < 0 || v >= size2 )
+						continue;
+
+					final int neighbor = u + v * size1;
+					if ( (int) markerImage.getf( neighbor ) == 0
+							&& labels[ neighbor ] != INQUEUE )
+					{
+						if ( null != levelQueue )
+							levelQueue.add( neighbor, (int) inputImage.getf( neighbor ) );
+						else
+							valueQueue.add( neighbor, inputImage.getf( neighbor ) );
+						labels[ neighbor ] = INQUEUE;
+					}
+				}
+				labels[ index ] = label;
+			}
+
+		final long t1 = System.currentTimeMillis();
+		if( verbose ) IJ.log("  Extraction took " + (t1-t0) + " ms.");
+
+		// Watershed
+		final long start = System.currentTimeMillis();
+
+		final int count = null != levelQueue ? levelQueue.size() : valueQueue.size();
+		if( verbose ) IJ.log( "  Flooding from " + count + " pixels..." );
+		IJ.showStatus( "Flooding from " + count + " pixels..." );
+
+		final double maxValue = inputImage.getMax();
+
+		// labels and indices of the neighbors of current pixel
+		final int[] neighborLabels = new int[ nNeighbors ];
+		final int[] neighborPixels = new int[ nNeighbors ];
+
+		long iter = 0;
+		while ( null != levelQueue ? !levelQueue.isEmpty() : !valueQueue.isEmpty() )
+		{
+			final int index = null != levelQueue ? levelQueue.poll() : valueQueue.poll();
+			final int x = index % size1;
+			final int y = index / size1;
+
+			if ( ( ++iter & 0xFFFF ) == 0 )
+			{
+				if ( Thread.currentThread().isInterrupted() )
+					return null;
+				// show progression along pixel values
+				IJ.showProgress( ( inputImage.getf( index ) + 1 ) / ( maxValue + 1 ) );
+			}
+
+			int nLabels = 0;
+			int nPixels = 0;
+			for ( int n = 0; n < nNeighbors; n++ )
+			{
+				final int u = x + dx[ n ];
+				final int v = y + dy[ n ];
+				if ( u < 0 || u >= size1 || v < 0 || v >= size2 )
+					continue;
+
+				final int neighbor = u + v * size1;
+				final int neighborLabel = labels[ neighbor ];
+				// Unlabeled neighbors go into the queue if they are not there yet
+				if ( neighborLabel == INIT
+						&& ( null == maskImage || maskImage.getf( neighbor ) > 0 ) )
+				{
+					neighborPixels[ nPixels++ ] = neighbor;
+				}
+				else if ( neighborLabel > 0
+						&& !contains( neighborLabels, nLabels, neighborLabel ) )
+				{
+					// store labels of neighbors without repetitions
+					neighborLabels[ nLabels++ ] = neighborLabel;
+				}
+			}
+
+			if ( nLabels == 1 || ( nLabels > 1 && !getDams ) )
+			{
+				labels[ index ] = neighborLabels[ 0 ];
+				// now that we know the pixel is labeled, add unlabeled
+				// neighbors to the queue
+				for ( int n = 0; n < nPixels; n++ )
+				{
+					final int neighbor = neighborPixels[ n ];
+					labels[ neighbor ] = INQUEUE;
+					if ( null != levelQueue )
+						levelQueue.add( neighbor, (int) inputImage.getf( neighbor ) );
+					else
+						valueQueue.add( neighbor, inputImage.getf( neighbor ) );
+				}
+			}
+			else if ( nLabels > 1 )
+				labels[ index ] = WSHED;
+		}
+
+		final long end = System.currentTimeMillis();
+		if( verbose ) IJ.log("  Flooding took: " + (end-start) + " ms");
+		IJ.showStatus( "" );
+		IJ.showProgress( 1.0 );
+
+		return labels;
+	}
+
+	/**
+	 * Check if a label is contained within the first elements of an array.
+	 */
+	private static final boolean contains( int[] labels, int count, int label )
+	{
+		for ( int i = 0; i < count; i++ )
+			if ( labels[ i ] == label )
+				return true;
+		return false;
+	}
+
 	/**
 	 * Extract pixel values from input and seed images
 	 * 
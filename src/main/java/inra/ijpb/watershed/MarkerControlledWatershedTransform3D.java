@@ -35,9 +35,11 @@ import ij.Prefs;
 import ij.process.ImageProcessor;
 import ij.util.ThreadUtil;
 import inra.ijpb.data.Cursor3D;
+import inra.ijpb.data.HierarchicalQueue;
 import inra.ijpb.data.Neighborhood3D;
 import inra.ijpb.data.Neighborhood3DC26;
 import inra.ijpb.data.Neighborhood3DC6;
+import inra.ijpb.data.QuantizedHierarchicalQueue;
 import inra.ijpb.data.VoxelRecord;
 import inra.ijpb.data.image.Images3D;
 
@@ -55,6 +57,25 @@ public class MarkerControlledWatershedTransform3D extends WatershedTransform3D
 	/** image containing the labeled markers to start the watershed */
 	ImagePlus markerImage = null;
 
+	/** storage of the labels during flooding (null for automatic choice) */
+	LabelBuffer3D.Storage labelStorage = null;
+
+	/** number of threads used by the flooding on blocks of slices */
+	int nThreads = Prefs.getThreads();
+
+	/** shifts of the 6-connectivity neighbors, in the order of Neighborhood3DC6 */
+	static final int[][] C6_SHIFTS = {
+		{ 0, 0, -1 }, { -1, 0, 0 }, { 0, -1, 0 }, { 0, 1, 0 }, { 1, 0, 0 }, { 0, 0, 1 } };
+
+	/** shifts of the 26-connectivity neighbors, in the order of Neighborhood3DC26 */
+	static final int[][] C26_SHIFTS = {
+		{ -1, -1, -1 }, { -1, 0, -1 }, { -1, 1, -1 }, { 0, -1, -1 }, { 0, 0, -1 },
+		{ 0, 1, -1 }, { 1, -1, -1 }, { 1, 0, -1 }, { 1, 1, -1 },
+		{ -1, -1, 0 }, { -1, 0, 0 }, { -1, 1, 0 }, { 0, -1, 0 }, { 0, 1, 0 },
+		{ 1, -1, 0 }, { 1, 0, 0 }, { 1, 1, 0 },
+		{ -1, -1, 1 }, { -1, 0, 1 }, { -1, 1, 1 }, { 0, -1, 1 }, { 0, 0, 1 },
+		{ 0, 1, 1 }, { 1, -1, 1 }, { 1, 0, 1 }, { 1, 1, 1 } };
+
 	/**
 	 * Initialize a marker-controlled watershed transform
 	 * 
@@ -88,6 +109,27 @@ public class MarkerControlledWatershedTransform3D extends WatershedTransform3D
 		super( input, mask, connectivity );
 		this.markerImage = marker;		
 	}
+
+	/**
+	 * Get the number of threads used by the flooding on blocks of slices
+	 * @return number of threads
+	 */
+	public int getNumberOfThreads()
+	{
+		return this.nThreads;
+	}
+
+	/**
+	 * Set the number of threads used by the flooding on blocks of slices.
+	 * The result of the flooding does not depend on the number of threads.
+	 * @param nThreads number of threads (at least 1)
+	 */
+	public void setNumberOfThreads( int nThreads )
+	{
+		if ( nThreads < 1 )
+			throw new IllegalArgumentException( "Number of threads must be at least 1" );
+		this.nThreads = nThreads;
+	}
 	
 	/**
 	 * Apply watershed transform on inputImage, using the labeled 
@@ -916,6 +958,590 @@ public class MarkerControlledWatershedTransform3D extends WatershedTransform3D
 	}
 	
 	
+	/**
+	 * Apply watershed transform on inputImage, using the labeled 
+	 * markers from markerImage and restricted to the white areas 
+	 * of maskImage. This implementation floods the image from the
+	 * surroundings of the labeled markers using a hierarchical queue
+	 * of voxel indices, and produces the same result as
+	 * {@link #applyWithPriorityQueue()} without allocating an object
+	 * per voxel.
+	 * 
+	 * 8-bit and 16-bit input images are processed with one queue level
+	 * per gray level. Other input images are quantized into levels,
+	 * and voxels of the same level are sorted by their exact value.
+	 * Images with more than Integer.MAX_VALUE voxels are processed with
+	 * the priority queue.
+	 * 
+	 * @return watershed domains image (no dams)
+	 */
+	public ImagePlus applyWithHierarchicalQueue()
+	{
+		final ImageStack inputStack = inputImage.getStack();
+		final int size1 = inputStack.getWidth();
+		final int size2 = inputStack.getHeight();
+		final int size3 = inputStack.getSize();
+		if ( (long) size1 * size2 * size3 > Integer.MAX_VALUE )
+			return applyWithPriorityQueue();
+
+		final LabelBuffer3D labels = floodWithHierarchicalQueue( false );
+		if ( null == labels )
+			return null;
+
+		return createResultImage( createLabelStack( labels ) );
+	}
+
+	/**
+	 * Apply watershed transform on inputImage, using the labeled 
+	 * markers from markerImage and restricted to the white areas 
+	 * of maskImage (optionally). This implementation runs Meyer's
+	 * flooding algorithm using a hierarchical queue of voxel indices,
+	 * and produces the same result as {@link #applyWithPriorityQueueAndDams()}
+	 * without allocating an object per voxel.
+	 * 
+	 * 8-bit and 16-bit input images are processed with one queue level
+	 * per gray level. Other input images are quantized into levels,
+	 * and voxels of the same level are sorted by their exact value.
+	 * Images with more than Integer.MAX_VALUE voxels are processed with
+	 * the priority queue.
+	 * 
+	 * @return watershed domains image (with dams)
+	 */
+	public ImagePlus applyWithHierarchicalQueueAndDams()
+	{
+		final ImageStack inputStack = inputImage.getStack();
+		final int size1 = inputStack.getWidth();
+		final int size2 = inputStack.getHeight();
+		final int size3 = inputStack.getSize();
+		if ( (long) size1 * size2 * size3 > Integer.MAX_VALUE )
+			return applyWithPriorityQueueAndDams();
+
+		final LabelBuffer3D labels = floodWithHierarchicalQueue( true );
+		if ( null == labels )
+			return null;
+
+		final ImageStack labelStack = createLabelStackWithDams( labels );
+		if ( null == labelStack )
+			return null;
+		return createResultImage( labelStack );
+	}
+
+	/**
+	 * Apply watershed transform on inputImage, using the labeled 
+	 * markers from markerImage and restricted to the white areas 
+	 * of maskImage. The stack is split into blocks of slices that
+	 * are flooded concurrently, and the flooding of the blocks is
+	 * repeated until the voxels on the block borders agree.
+	 * 
+	 * Each voxel receives the label of a marker reaching it at its
+	 * flooding level, that is the lowest value of the highest voxel
+	 * along a path from a marker. The result is the same as the one of
+	 * {@link #applyWithHierarchicalQueue()} for every voxel reached at
+	 * its flooding level by a single catchment basin. Where several
+	 * basins reach a voxel at the same level, the basin closest within
+	 * the plateau is chosen, then the one with the smallest label,
+	 * whereas the sequential flood depends on the order voxels entered
+	 * the queue. The result does not depend on the number of threads.
+	 * 
+	 * The flooding requires eight bytes per voxel in addition to the
+	 * labels. Images with more than Integer.MAX_VALUE voxels are
+	 * processed with the priority queue.
+	 * 
+	 * @see #setNumberOfThreads(int)
+	 * 
+	 * @return watershed domains image (no dams)
+	 */
+	public ImagePlus applyWithParallelBlocks()
+	{
+		final LabelBuffer3D labels = floodWithParallelBlocks( false );
+		if ( null == labels )
+			return applyWithPriorityQueue();
+
+		return createResultImage( createLabelStack( labels ) );
+	}
+
+	/**
+	 * Apply watershed transform on inputImage, using the labeled 
+	 * markers from markerImage and restricted to the white areas 
+	 * of maskImage (optionally). The stack is split into blocks of
+	 * slices that are flooded concurrently, as in
+	 * {@link #applyWithParallelBlocks()}.
+	 * 
+	 * A voxel is a dam if the voxels it was reached from belong to
+	 * several catchment basins, and dams do not propagate labels.
+	 * As for the labels, the dams may differ from the ones of
+	 * {@link #applyWithHierarchicalQueueAndDams()} where several
+	 * basins reach a plateau at the same level. The result does not
+	 * depend on the number of threads.
+	 * 
+	 * @see #setNumberOfThreads(int)
+	 * 
+	 * @return watershed domains image (with dams)
+	 */
+	public ImagePlus applyWithParallelBlocksAndDams()
+	{
+		final LabelBuffer3D labels = floodWithParallelBlocks( true );
+		if ( null == labels )
+			return applyWithPriorityQueueAndDams();
+
+		final ImageStack labelStack = createLabelStackWithDams( labels );
+		if ( null == labelStack )
+			return null;
+		return createResultImage( labelStack );
+	}
+
+	/**
+	 * Flood the input image from the labeled markers, using blocks of
+	 * slices processed concurrently.
+	 * 
+	 * @param getDams flag to label as dams the voxels reached from
+	 * several catchment basins
+	 * @return buffer of labels indexed by x + y * width + z * width * height,
+	 * or null if the image has too many voxels
+	 */
+	private LabelBuffer3D floodWithParallelBlocks( boolean getDams )
+	{
+		final ImageStack inputStack = inputImage.getStack();
+		final ImageStack markerStack = markerImage.getStack();
+		final ImageStack maskStack = null != maskImage ? maskImage.getStack() : null;
+		final int size1 = inputStack.getWidth();
+		final int size2 = inputStack.getHeight();
+		final int size3 = inputStack.getSize();
+		if ( (long) size1 * size2 * size3 > Integer.MAX_VALUE )
+			return null;
+
+		if (size1 != markerImage.getWidth() || size2 != markerImage.getHeight()
+				|| size3 != markerImage.getStackSize())
+		{
+			throw new IllegalArgumentException("Marker and input images must have the same size");
+		}
+
+		// Check connectivity has a correct value
+		if ( connectivity != 6 && connectivity != 26 )
+		{
+			throw new RuntimeException(
+					"Connectivity for stacks must be either 6 or 26, not "
+							+ connectivity);
+		}
+
+		final ImageProcessor[] markerSlices = new ImageProcessor[ size3 ];
+		final ImageProcessor[] maskSlices = null != maskStack ?
+				new ImageProcessor[ size3 ] : null;
+		for ( int z = 0; z < size3; z++ )
+		{
+			markerSlices[ z ] = markerStack.getProcessor( z+1 );
+			if ( null != maskStack )
+				maskSlices[ z ] = maskStack.getProcessor( z+1 );
+		}
+
+		if( verbose ) IJ.log( "  Flooding blocks of slices with " + nThreads + " threads..." );
+		final long start = System.currentTimeMillis();
+
+		final BlockFlooding3D flooding = new BlockFlooding3D( inputStack,
+				markerSlices, maskSlices, connectivity == 26 ? C26_SHIFTS : C6_SHIFTS );
+		final LabelBuffer3D labels = flooding.flood( getDams, labelStorage, nThreads );
+
+		final long end = System.currentTimeMillis();
+		if( verbose ) IJ.log("  Flooding took: " + (end-start) + " ms");
+		IJ.showStatus( "" );
+		IJ.showProgress( 1.0 );
+
+		return labels;
+	}
+
+	/**
+	 * Create the stack of labels of the result, from a label buffer
+	 * of a flood without dams.
+	 */
+	private ImageStack createLabelStack( LabelBuffer3D labels )
+	{
+		final ImageStack inputStack = inputImage.getStack();
+		final int size1 = inputStack.getWidth();
+		final int size2 = inputStack.getHeight();
+		final int size3 = inputStack.getSize();
+
+		ImageStack labelStack = markerImage.duplicate().getStack();
+		final int sliceSize = size1 * size2;
+		final int[] sliceLabels = new int[ sliceSize ];
+		for ( int k = 0; k < size3; ++k )
+		{
+			labels.getSlice( k, sliceSize, sliceLabels );
+			int index = 0;
+			for ( int j = 0; j < size2; ++j )
+				for ( int i = 0; i < size1; ++i )
+					labelStack.setVoxel( i, j, k, sliceLabels[ index++ ] );
+		}
+		return labelStack;
+	}
+
+	/**
+	 * Create the stack of labels of the result, from a label buffer
+	 * of a flood with dams. Unlabeled voxels are set to the value of
+	 * dams.
+	 * 
+	 * @return the label stack, or null if the process was interrupted
+	 */
+	private ImageStack createLabelStackWithDams( LabelBuffer3D labels )
+	{
+		final ImageStack inputStack = inputImage.getStack();
+		final int size1 = inputStack.getWidth();
+		final int size2 = inputStack.getHeight();
+		final int size3 = inputStack.getSize();
+
+		ImageStack labelStack = markerImage.duplicate().getStack();
+		final int sliceSize = size1 * size2;
+		final int[] sliceLabels = new int[ sliceSize ];
+		for ( int k = 0; k < size3; ++k )
+		{
+			if ( Thread.currentThread().isInterrupted() )
+				return null;
+
+			final ImageProcessor labelProcessor = labelStack.getProcessor( k+1 );
+			labels.getSlice( k, sliceSize, sliceLabels );
+			for ( int i = 0; i < sliceSize; ++i )
+			{
+				final int label = sliceLabels[ i ];
+				if ( label == INIT ) // set unlabeled voxels to WSHED
+					labelProcessor.setf( i, 0 );
+				else
+					labelProcessor.setf( i, label );
+			}
+		}
+		return labelStack;
+	}
+
+	/**
+	 * Wrap a label stack into an image with the title and calibration
+	 * of the input image.
+	 */
+	private ImagePlus createResultImage( ImageStack labelStack )
+	{
+		String title = inputImage.getTitle();
+		String ext = "";
+		int index = title.lastIndexOf( "." );
+		if( index != -1 )
+		{
+			ext = title.substring( index );
+			title = title.substring( 0, index );
+		}
+
+		final ImagePlus ws = new ImagePlus( title + "-watershed" + ext, labelStack );
+		ws.setCalibration( inputImage.getCalibration() );
+		return ws;
+	}
+
+	/**
+	 * Flood the input image from the labeled markers, visiting voxels by
+	 * ascending value and, for equal values, in the order they were
+	 * put into the queue.
+	 * 
+	 * Labels are stored in a flat buffer following the slice-major layout
+	 * of the stacks, and neighbors are visited using precomputed index
+	 * offsets, bounds being checked only for voxels on the image border.
+	 * 
+	 * @param getDams flag to label as dams the voxels adjacent to
+	 * several catchment basins
+	 * @return buffer of labels indexed by x + y * width + z * width * height,
+	 * or null if the process was interrupted
+	 */
+	private LabelBuffer3D floodWithHierarchicalQueue( boolean getDams )
+	{
+		if ( Thread.currentThread().isInterrupted() )
+			return null;
+
+		final ImageStack inputStack = inputImage.getStack();
+		final ImageStack markerStack = markerImage.getStack();
+		final ImageStack maskStack = null != maskImage ? maskImage.getStack() : null;
+		final int size1 = inputStack.getWidth();
+		final int size2 = inputStack.getHeight();
+		final int size3 = inputStack.getSize();
+
+		if (size1 != markerImage.getWidth() || size2 != markerImage.getHeight()
+				|| size3 != markerImage.getStackSize())
+		{
+			throw new IllegalArgumentException("Marker and input images must have the same size");
+		}
+
+		// Check connectivity has a correct value
+		if ( connectivity != 6 && connectivity != 26 )
+		{
+			throw new RuntimeException(
+					"Connectivity for stacks must be either 6 or 26, not "
+							+ connectivity);
+		}
+
+		// neighbor shifts, in the same order as Neighborhood3DC6/C26,
+		// and corresponding offsets of linear indices
+		final int sliceSize = size1 * size2;
+		final int[][] shifts = connectivity == 26 ? C26_SHIFTS : C6_SHIFTS;
+		final int nNeighbors = shifts.length;
+		final int[] offsets = new int[ nNeighbors ];
+		for ( int n = 0; n < nNeighbors; n++ )
+			offsets[ n ] = shifts[ n ][ 0 ] + shifts[ n ][ 1 ] * size1
+					+ shifts[ n ][ 2 ] * sliceSize;
+
+		// output labels (value INIT is assigned to each voxel)
+		final LabelBuffer3D labels = LabelBuffer3D.create( size1, size2, size3,
+				labelStorage, INIT );
+
+		// direct access to input and mask values
+		final Object[] inputSlices = getSliceArrays( inputStack );
+		final int bitDepth = inputStack.getBitDepth();
+		final ImageProcessor[] maskSlices = null != maskStack ?
+				new ImageProcessor[ size3 ] : null;
+		if ( null != maskStack )
+			for ( int z = 0; z < size3; z++ )
+				maskSlices[ z ] = maskStack.getProcessor( z+1 );
+
+		// use one level per gray level for integer images
+		HierarchicalQueue levelQueue = null;
+		QuantizedHierarchicalQueue valueQueue = null;
+		if ( bitDepth == 8 )
+			levelQueue = new HierarchicalQueue( 256 );
+		else if ( bitDepth == 16 )
+			levelQueue = new HierarchicalQueue( 65536 );
+		else
+		{
+			float minValue = Float.POSITIVE_INFINITY;
+			float maxValue = Float.NEGATIVE_INFINITY;
+			for ( int z = 0; z < size3; z++ )
+				for ( int i = 0; i < sliceSize; i++ )
+				{
+					final float value = getValue( inputStack, inputSlices,
+							bitDepth, i, z );
+					if ( value < minValue && value != Float.NEGATIVE_INFINITY )
+						minValue = value;
+					if ( value > maxValue && value != Float.POSITIVE_INFINITY )
+						maxValue = value;
+				}
+			valueQueue = new QuantizedHierarchicalQueue( minValue, maxValue );
+		}
+
+		// Put the voxels adjacent to the markers into the queue
+		IJ.showStatus( "Extracting voxel values..." );
+		if( verbose ) IJ.log("  Extracting voxel values..." );
+		final long t0 = System.currentTimeMillis();
+
+		final ImageProcessor[] markerSlices = new ImageProcessor[ size3 ];
+		for ( int z = 0; z < size3; z++ )
+			markerSlices[ z ] = markerStack.getProcessor( z+1 );
+
+		for ( int z = 0; z < size3; ++z )
+		{
+			IJ.showProgress( z+1, size3 );
+
+			if ( Thread.currentThread().isInterrupted() )
+			{
+				IJ.showProgress( 1.0 );
+				return null;
+			}
+
+			final ImageProcessor ipSeed = markerSlices[ z ];
+			final ImageProcessor ipMask = null != maskStack ? maskSlices[ z ] : null;
+
+			for ( int x = 0; x < size1; ++x )
+				for ( int y = 0; y < size2; ++y )
+				{
+					final int i = x + y * size1;
+					if ( null != ipMask && ipMask.getf( i ) <= 0 )
+						continue;
+
+					final int label = (int) ipSeed.getf( i );
+					if ( label <= 0 )
+						continue;
+
+					final int index = i + z * sliceSize;
+					final boolean border = x == 0 || x == size1 - 1 || y == 0
+							|| y == size2 - 1 || z == 0 || z == size3 - 1;
+					for ( int n = 0; n < nNeighbors; n++ )
+					{
+						if ( border && !isInside( x + shifts[ n ][ 0 ], y + shifts[ n ][ 1 ],
+								z + shifts[ n ][ 2 ], size1, size2, size3 ) )
+							continue;
+
+						final int neighbor = index + offsets[ n ];
+						final int w = z + shifts[ n ][ 2 ];
+						if ( (int) markerSlices[ w ].getf( neighbor - w * sliceSize ) == 0
+								&& labels.get( neighbor ) != INQUEUE )
+						{
+							final float value = getValue( inputStack,
+									inputSlices, bitDepth, neighbor - w * sliceSize, w );
+							if ( null != levelQueue )
+								levelQueue.add( neighbor, (int) value );
+							else
+								valueQueue.add( neighbor, value );
+							labels.set( neighbor, INQUEUE );
+						}
+					}
+					labels.set( index, label );
+				}
+		}
+		IJ.showProgress( 1.0 );
+
+		final long t1 = System.currentTimeMillis();
+		if( verbose ) IJ.log("  Extraction took " + (t1-t0) + " ms.");
+
+		// Watershed
+		final long start = System.currentTimeMillis();
+
+		final int count = null != levelQueue ? levelQueue.size() : valueQueue.size();
+		if( verbose ) IJ.log( "  Flooding from " + count + " voxels..." );
+		IJ.showStatus( "Flooding from " + count + " voxels..." );
+
+		final double maxValue = Images3D.findMinAndMax( inputImage )[ 1 ];
+
+		// labels and indices of the neighbors of current voxel
+		final int[] neighborLabels = new int[ nNeighbors ];
+		final int[] neighborVoxels = new int[ nNeighbors ];
+
+		long iter = 0;
+		while ( null != levelQueue ? !levelQueue.isEmpty() : !valueQueue.isEmpty() )
+		{
+			final int index = null != levelQueue ? levelQueue.poll() : valueQueue.poll();
+			final int z = index / sliceSize;
+			final int y = ( index - z * sliceSize ) / size1;
+			final int x = index - z * sliceSize - y * size1;
+
+			if ( ( ++iter & 0xFFFF ) == 0 )
+			{
+				if ( Thread.currentThread().isInterrupted() )
+					return null;
+				// show progression along voxel values
+				IJ.showProgress( ( getValue( inputStack, inputSlices, bitDepth,
+						index - z * sliceSize, z ) + 1 ) / ( maxValue + 1 ) );
+			}
+
+			final boolean border = x == 0 || x == size1 - 1 || y == 0
+					|| y == size2 - 1 || z == 0 || z == size3 - 1;
+			int nLabels = 0;
+			int nVoxels = 0;
+			for ( int n = 0; n < nNeighbors; n++ )
+			{
+				if ( border && !isInside( x + shifts[ n ][ 0 ], y + shifts[ n ][ 1 ],
+						z + shifts[ n ][ 2 ], size1, size2, size3 ) )
+					continue;
+
+				final int neighbor = index + offsets[ n ];
+				final int neighborLabel = labels.get( neighbor );
+				// Unlabeled neighbors go into the queue if they are not there yet
+				if ( neighborLabel == INIT )
+				{
+					if ( null != maskSlices )
+					{
+						final int w = z + shifts[ n ][ 2 ];
+						if ( maskSlices[ w ].getf( neighbor - w * sliceSize ) <= 0 )
+							continue;
+					}
+					neighborVoxels[ nVoxels++ ] = neighbor;
+				}
+				else if ( neighborLabel > 0
+						&& !contains( neighborLabels, nLabels, neighborLabel ) )
+				{
+					// store labels of neighbors without repetitions
+					neighborLabels[ nLabels++ ] = neighborLabel;
+				}
+			}
+
+			if ( nLabels == 1 || ( nLabels > 1 && !getDams ) )
+			{
+				labels.set( index, neighborLabels[ 0 ] );
+				// now that we know the voxel is labeled, add unlabeled
+				// neighbors to the queue
+				for ( int n = 0; n < nVoxels; n++ )
+				{
+					final int neighbor = neighborVoxels[ n ];
+					labels.set( neighbor, INQUEUE );
+					final int w = neighbor / sliceSize;
+					final float value = getValue( inputStack, inputSlices,
+							bitDepth, neighbor - w * sliceSize, w );
+					if ( null != levelQueue )
+						levelQueue.add( neighbor, (int) value );
+					else
+						valueQueue.add( neighbor, value );
+				}
+			}
+			else if ( nLabels > 1 )
+				labels.set( index, WSHED );
+		}
+
+		final long end = System.currentTimeMillis();
+		if( verbose ) IJ.log("  Flooding took: " + (end-start) + " ms");
+		IJ.showStatus( "" );
+		IJ.showProgress( 1.0 );
+
+		return labels;
+	}
+
+	/**
+	 * Check if a position is within the bounds of the image.
+	 */
+	private static final boolean isInside( int x, int y, int z,
+			int size1, int size2, int size3 )
+	{
+		return x >= 0 && x < size1 && y >= 0 && y < size2 && z >= 0 && z < size3;
+	}
+
+	/**
+	 * Get the pixel arrays of the slices of a stack, for direct access
+	 * to voxel values.
+	 * 
+	 * @return the slice arrays, or null if some slices are not held in
+	 * memory, as for virtual stacks
+	 */
+	static final Object[] getSliceArrays( ImageStack stack )
+	{
+		final Object[] slices = stack.getImageArray();
+		if ( null == slices || slices.length < stack.getSize() )
+			return null;
+		for ( int z = 0; z < stack.getSize(); z++ )
+			if ( null == slices[ z ] )
+				return null;
+		return slices;
+	}
+
+	/**
+	 * Read the value of a voxel, directly from the slice arrays when
+	 * possible.
+	 * 
+	 * @param slices the slice arrays returned by getSliceArrays, or null
+	 * to read values from the stack
+	 */
+	static final float getValue(
+			final ImageStack stack,
+			final Object[] slices,
+			final int bitDepth,
+			final int index,
+			final int z )
+	{
+		if ( null == slices )
+			return (float) stack.getVoxel( index % stack.getWidth(),
+					index / stack.getWidth(), z );
+
+		switch ( bitDepth )
+		{
+		case 8:
+			return ( (byte[]) slices[ z ] )[ index ] & 0xFF;
+		case 16:
+			return ( (short[]) slices[ z ] )[ index ] & 0xFFFF;
+		case 32:
+			return ( (float[]) slices[ z ] )[ index ];
+		default:
+			return (float) stack.getVoxel( index % stack.getWidth(),
+					index / stack.getWidth(), z );
+		}
+	}
+
+	/**
+	 * Check if a label is contained within the first elements of an array.
+	 */
+	static final boolean contains( int[] labels, int count, int label )
+	{
+		for ( int i = 0; i < count; i++ )
+			if ( labels[ i ] == label )
+				return true;
+		return false;
+	}
+
 	/**
 	 * Extract voxel values from input and seed images
 	 * 
@@ -200,9 +200,9 @@ public class Watershed
 							binaryMask, connectivity );
 			wt.setVerbose( verbose );
 			if( getDams )
-				return wt.applyWithPriorityQueueAndDams();
+				return wt.applyWithHierarchicalQueueAndDams();
 			else 
-				return wt.applyWithPriorityQueue();
+				return wt.applyWithHierarchicalQueue();
 		}
 		else if( connectivity == 4 || connectivity == 8 )
 		{
@@ -214,9 +214,9 @@ public class Watershed
 			wt.setVerbose( verbose );
 			ImageProcessor ip;
 			if( getDams )
-				ip = wt.applyWithPriorityQueueAndDams();
+				ip = wt.applyWithHierarchicalQueueAndDams();
 			else 
-				ip = wt.applyWithPriorityQueue();
+				ip = wt.applyWithHierarchicalQueue();
 
 			if( null != ip )
 			{
@@ -341,9 +341,9 @@ public class Watershed
 						binaryMask, connectivity );
 		wt.setVerbose( verbose );
 		if( getDams )
-			return wt.applyWithPriorityQueueAndDams();
+			return wt.applyWithHierarchicalQueueAndDams();
 		else 
-			return wt.applyWithPriorityQueue();
+			return wt.applyWithHierarchicalQueue();
 	}
 
 	/**
@@ -363,9 +363,9 @@ public class Watershed
 	{
 		MarkerControlledWatershedTransform3D wt = new MarkerControlledWatershedTransform3D( input, marker, null, connectivity );
 		if( getDams )
-			return wt.applyWithPriorityQueueAndDams();
+			return wt.applyWithHierarchicalQueueAndDams();
 		else 
-			return wt.applyWithPriorityQueue();
+			return wt.applyWithHierarchicalQueue();
 	}
 	
 	/**
@@ -394,9 +394,9 @@ public class Watershed
 		ImagePlus ws = null;
 
 		if( getDams )			
-			ws = wt.applyWithPriorityQueueAndDams();							
+			ws = wt.applyWithHierarchicalQueueAndDams();							
 		else			
-			ws = wt.applyWithPriorityQueue();			
+			ws = wt.applyWithHierarchicalQueue();			
 		
 		if( null == ws )
 			return null;
@@ -422,9 +422,9 @@ public class Watershed
 				new MarkerControlledWatershedTransform2D( input, marker, 
 														  null, connectivity );		
 		if( getDams )			
-			return wt.applyWithPriorityQueueAndDams();							
+			return wt.applyWithHierarchicalQueueAndDams();							
 		else			
-			return wt.applyWithPriorityQueue();			
+			return wt.applyWithHierarchicalQueue();			
 	}
 	
 }
@@ -44,7 +44,6 @@ package inra.ijpb.watershed;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.LinkedList;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -251,7 +250,7 @@ public class WatershedTransform3D
 	    if( verbose ) IJ.log("  Extraction took " + (t1-t0) + " ms.");
 	    if( verbose ) IJ.log("  Sorting voxels by value..." );
 	    IJ.showStatus("Sorting voxels by value...");
-	    Collections.sort( voxelList );
+	    sortVoxels( voxelList );
 	    final long t2 = System.currentTimeMillis();
 	    if( verbose ) IJ.log("  Sorting took " + (t2-t1) + " ms.");
 	    
@@ -506,7 +505,7 @@ public class WatershedTransform3D
 	    if( verbose ) IJ.log("  Extraction took " + (t1-t0) + " ms.");
 	    if( verbose ) IJ.log("  Sorting voxels by value..." );
 	    IJ.showStatus("Sorting voxels by value...");
-	    Collections.sort( voxelList );
+	    sortVoxels( voxelList );
 	    final long t2 = System.currentTimeMillis();
 	    if( verbose ) IJ.log("  Sorting took " + (t2-t1) + " ms.");
 	    
@@ -699,6 +698,20 @@ public class WatershedTransform3D
 	}
 		
 
+	/**
+	 * Sort a list of voxels by ascending value, and by creation order
+	 * for equal values, using several threads.
+	 * 
+	 * @param voxelList list of voxels to sort
+	 */
+	static void sortVoxels( ArrayList<VoxelRecord> voxelList )
+	{
+		final VoxelRecord[] voxels = voxelList.toArray( new VoxelRecord[ voxelList.size() ] );
+		Arrays.parallelSort( voxels );
+		voxelList.clear();
+		voxelList.addAll( Arrays.asList( voxels ) );
+	}
+
 	/**
 	 * Extract voxel values from input image such that
 	 * they have value h, hMin &lt;= h &lt;= hMax. A binary
@@ -30,10 +30,13 @@ import org.junit.runners.Suite;
 	// generic classes
 	inra.ijpb.OpenResourceImage.class, 
 	inra.ijpb.binary.AllTestsRecurse.class,
-	inra.ijpb.label.AllTests.class,
+	inra.ijpb.data.AllTests.class,
+	inra.ijpb.data.image.AllTests.class,
+	inra.ijpb.label.AllTestsRecurse.class,
 	inra.ijpb.measure.AllTests.class,
 	inra.ijpb.morphology.AllTestsRecurse.class,
 	inra.ijpb.util.AllTests.class,
+	inra.ijpb.watershed.AllTests.class,
 	})
 public class AllTestsRecurse {
   //nothing
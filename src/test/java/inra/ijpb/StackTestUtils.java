@@ -0,0 +1,144 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import ij.ImageStack;
+
+/**
+ * Creation and comparison of 3D images shared by the unit tests.
+ * 
+ * @author David Legland
+ *
+ */
+public class StackTestUtils
+{
+	/**
+	 * Private constructor to prevent class instantiation.
+	 */
+	private StackTestUtils()
+	{
+	}
+	
+	/**
+	 * Creates a stack filled with random values. Integer stacks use the full
+	 * range of the data type, and float stacks use gaussian values with a
+	 * standard deviation of 100.
+	 * 
+	 * @param sizeX
+	 *            the size of the stack in the X direction
+	 * @param sizeY
+	 *            the size of the stack in the Y direction
+	 * @param sizeZ
+	 *            the size of the stack in the Z direction
+	 * @param bitDepth
+	 *            the bit depth of the stack (8, 16 or 32)
+	 * @param seed
+	 *            the seed of the random generator
+	 * @return a new stack with random values
+	 */
+	public static final ImageStack createRandomStack(int sizeX, int sizeY, int sizeZ, int bitDepth, long seed)
+	{
+		Random random = new Random(seed);
+		ImageStack image = ImageStack.create(sizeX, sizeY, sizeZ, bitDepth);
+		for (int z = 0; z < sizeZ; z++)
+		{
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					double value = bitDepth == 32 ? random.nextGaussian() * 100 : random.nextInt(bitDepth == 8 ? 256 : 65536);
+					image.setVoxel(x, y, z, value);
+				}
+			}
+		}
+		return image;
+	}
+	
+	/**
+	 * Creates a stack with random values between 100 and 249 within a
+	 * proportion of the voxels, and zero elsewhere.
+	 * 
+	 * @param sizeX
+	 *            the size of the stack in the X direction
+	 * @param sizeY
+	 *            the size of the stack in the Y direction
+	 * @param sizeZ
+	 *            the size of the stack in the Z direction
+	 * @param bitDepth
+	 *            the bit depth of the stack (8, 16 or 32)
+	 * @param density
+	 *            the proportion of voxels with a non-zero value
+	 * @param seed
+	 *            the seed of the random generator
+	 * @return a new stack with random values
+	 */
+	public static final ImageStack createSparseRandomStack(int sizeX, int sizeY, int sizeZ, int bitDepth, double density, long seed)
+	{
+		Random random = new Random(seed);
+		ImageStack image = ImageStack.create(sizeX, sizeY, sizeZ, bitDepth);
+		for (int z = 0; z < sizeZ; z++)
+		{
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					if (random.nextDouble() < density)
+					{
+						image.setVoxel(x, y, z, 100 + random.nextInt(150));
+					}
+				}
+			}
+		}
+		return image;
+	}
+	
+	/**
+	 * Checks that two stacks have the same size, the same bit depth, and the
+	 * same value at each voxel.
+	 * 
+	 * @param expected
+	 *            the expected stack
+	 * @param result
+	 *            the stack to check
+	 */
+	public static final void assertSameStacks(ImageStack expected, ImageStack result)
+	{
+		assertEquals(expected.getWidth(), result.getWidth());
+		assertEquals(expected.getHeight(), result.getHeight());
+		assertEquals(expected.getSize(), result.getSize());
+		assertEquals(expected.getBitDepth(), result.getBitDepth());
+		for (int z = 0; z < expected.getSize(); z++)
+		{
+			for (int y = 0; y < expected.getHeight(); y++)
+			{
+				for (int x = 0; x < expected.getWidth(); x++)
+				{
+					assertEquals(expected.getVoxel(x, y, z), result.getVoxel(x, y, z), 0);
+				}
+			}
+		}
+	}
+}
@@ -31,6 +31,13 @@ import ij.process.ByteProcessor;
 import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 import ij.process.ShortProcessor;
+import inra.ijpb.binary.geodesic.GeodesicDistanceTransform;
+import inra.ijpb.binary.geodesic.GeodesicDistanceTransformFloat;
+import inra.ijpb.binary.geodesic.GeodesicDistanceTransformFloat5x5;
+import inra.ijpb.binary.geodesic.GeodesicDistanceTransformShort;
+import inra.ijpb.binary.geodesic.GeodesicDistanceTransformShort5x5;
+
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -203,6 +210,55 @@ public class BinaryImagesTest {
 		assertEquals(255, sizeOpen10.get(5, 5));
 	}
 	
+	/**
+	 * Checks that the geodesic distance map gives the same result as the
+	 * chamfer scans, including on image borders, for 3-by-3 and 5-by-5
+	 * weights.
+	 */
+	@Test
+	public final void testGeodesicDistanceMap_MaskTouchingBorder() 
+	{
+		Random random = new Random(17);
+		ByteProcessor mask = new ByteProcessor(40, 30);
+		for (int y = 0; y < 30; y++)
+		{
+			for (int x = 0; x < 40; x++)
+			{
+				if (random.nextDouble() < 0.7)
+					mask.set(x, y, 255);
+			}
+		}
+		ByteProcessor marker = new ByteProcessor(40, 30);
+		marker.set(0, 0, 255);
+		mask.set(0, 0, 255);
+		marker.set(20, 15, 255);
+		mask.set(20, 15, 255);
+		
+		for (short[] weights : new short[][] { {3, 4}, {5, 7, 11} })
+		{
+			GeodesicDistanceTransform ref = weights.length == 2 
+					? new GeodesicDistanceTransformShort(weights, true)
+					: new GeodesicDistanceTransformShort5x5(weights, true);
+			ImageProcessor expected = ref.geodesicDistanceMap(marker, mask);
+			ImageProcessor map = BinaryImages.geodesicDistanceMap(marker, mask, weights, true);
+			for (int y = 0; y < 30; y++)
+				for (int x = 0; x < 40; x++)
+					assertEquals(expected.getf(x, y), map.getf(x, y), 0);
+		}
+		
+		for (float[] weights : new float[][] { {1, 1.41f}, {5, 7, 11} })
+		{
+			GeodesicDistanceTransform ref = weights.length == 2 
+					? new GeodesicDistanceTransformFloat(weights, true)
+					: new GeodesicDistanceTransformFloat5x5(weights, true);
+			ImageProcessor expected = ref.geodesicDistanceMap(marker, mask);
+			ImageProcessor map = BinaryImages.geodesicDistanceMap(marker, mask, weights, true);
+			for (int y = 0; y < 30; y++)
+				for (int x = 0; x < 40; x++)
+					assertEquals(expected.getf(x, y), map.getf(x, y), 0);
+		}
+	}
+	
 	/**
 	 * Creates a new binary image of a square.
 	 * @return
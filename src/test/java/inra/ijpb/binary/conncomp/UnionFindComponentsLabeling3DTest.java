@@ -0,0 +1,151 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.conncomp;
+
+import static inra.ijpb.StackTestUtils.assertSameStacks;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ij.ImageStack;
+
+public class UnionFindComponentsLabeling3DTest
+{
+	/**
+	 * Using 6 connectivity should result in nine connected components.
+	 */
+	@Test
+	public void testComputeLabels_C6_Byte()
+	{
+		ImageStack image = createNineCubesImage();
+		
+		UnionFindComponentsLabeling3D algo = new UnionFindComponentsLabeling3D(6, 8);
+		ImageStack result = algo.computeLabels(image);
+		
+		assertEquals(8, result.getBitDepth());
+		assertEquals(9, result.getVoxel(7, 7, 7), .1);
+	}
+
+	/**
+	 * Using 26 connectivity should result in one connected component.
+	 */
+	@Test
+	public void testComputeLabels_C26_Short()
+	{
+		ImageStack image = createNineCubesImage();
+		
+		UnionFindComponentsLabeling3D algo = new UnionFindComponentsLabeling3D(26, 16);
+		ImageStack result = algo.computeLabels(image);
+		
+		assertEquals(16, result.getBitDepth());
+		assertEquals(1, result.getVoxel(7, 7, 7), .1);
+	}
+
+	/**
+	 * Compares with flood-fill labeling on random images, for various numbers
+	 * of threads, including more threads than slices.
+	 */
+	@Test
+	public void testComputeLabels_CompareFloodFill()
+	{
+		Random random = new Random(42);
+		int[] connectivities = new int[] {6, 26};
+		int[] threadCounts = new int[] {1, 2, 3, 7, 40};
+		
+		for (int trial = 0; trial < 10; trial++)
+		{
+			ImageStack image = createRandomImage(random, 17, 13, 29, 0.4);
+			for (int conn : connectivities)
+			{
+				ImageStack expected = new FloodFillComponentsLabeling3D(conn, 32).computeLabels(image);
+				for (int nThreads : threadCounts)
+				{
+					UnionFindComponentsLabeling3D algo = new UnionFindComponentsLabeling3D(conn, 32);
+					algo.setNumberOfThreads(nThreads);
+					ImageStack result = algo.computeLabels(image);
+					assertSameStacks(expected, result);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks the same exception as flood-fill is thrown when the number of
+	 * labels exceeds the capacity of the result type.
+	 */
+	@Test(expected = RuntimeException.class)
+	public void testComputeLabels_TooManyLabels()
+	{
+		// 8 * 8 * 8 isolated voxels
+		ImageStack image = ImageStack.create(16, 16, 16, 8);
+		for (int z = 0; z < 16; z += 2)
+			for (int y = 0; y < 16; y += 2)
+				for (int x = 0; x < 16; x += 2)
+					image.setVoxel(x, y, z, 255);
+		
+		new UnionFindComponentsLabeling3D(6, 8).computeLabels(image);
+	}
+
+	private static final ImageStack createRandomImage(Random random,
+			int sizeX, int sizeY, int sizeZ, double density)
+	{
+		ImageStack image = ImageStack.create(sizeX, sizeY, sizeZ, 8);
+		for (int z = 0; z < sizeZ; z++)
+			for (int y = 0; y < sizeY; y++)
+				for (int x = 0; x < sizeX; x++)
+					if (random.nextDouble() < density)
+						image.setVoxel(x, y, z, 255);
+		return image;
+	}
+
+	/**
+	 * Create a 10-by-10-by-10 byte stack containing nine squares touching by
+	 * corners.
+	 * 
+	 * @return an image containing nine cubes touching by corners
+	 */
+	private final static ImageStack createNineCubesImage()
+	{
+		ImageStack image = ImageStack.create(10,  10,  10, 8);
+		for (int z = 0; z < 2; z++)
+		{
+			for (int y = 0; y < 2; y++)
+			{
+				for (int x = 0; x < 2; x++)
+				{
+					image.setVoxel(x + 2, y + 2, z + 2, 255);
+					image.setVoxel(x + 2, y + 6, z + 2, 255);
+					image.setVoxel(x + 6, y + 2, z + 2, 255);
+					image.setVoxel(x + 6, y + 6, z + 2, 255);
+					image.setVoxel(x + 4, y + 4, z + 4, 255);
+					image.setVoxel(x + 2, y + 2, z + 6, 255);
+					image.setVoxel(x + 2, y + 6, z + 6, 255);
+					image.setVoxel(x + 6, y + 2, z + 6, 255);
+					image.setVoxel(x + 6, y + 6, z + 6, 255);
+				}
+			}
+		}
+		return image;
+	}
+}
@@ -34,6 +34,8 @@ import org.junit.runners.Suite;
 	DistanceTransform5x5ShortTest.class,
 	DistanceTransform3DShortTest.class,
 	DistanceTransform3DFloatTest.class,
+	EuclideanDistanceTransformTest.class,
+	EuclideanDistanceTransform3DTest.class,
 })
 public class AllTests {
   //nothing
@@ -0,0 +1,104 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.distmap;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ij.ImageStack;
+
+public class EuclideanDistanceTransform3DTest
+{
+	/**
+	 * Distance from the voxels of a cube to the only background voxel in the
+	 * corner.
+	 */
+	@Test
+	public void testDistanceMap_SingleBackgroundVoxel()
+	{
+		ImageStack image = createFilledStack(6, 5, 4);
+		image.setVoxel(0, 0, 0, 0);
+		
+		ImageStack result = new EuclideanDistanceTransform3D().distanceMap(image);
+		
+		assertEquals(32, result.getBitDepth());
+		assertEquals(0, result.getVoxel(0, 0, 0), 1e-6);
+		assertEquals(Math.sqrt(25 + 16 + 9), result.getVoxel(5, 4, 3), 1e-5);
+	}
+	
+	/**
+	 * Compares with brute-force computation on random images with
+	 * anisotropic voxels.
+	 */
+	@Test
+	public void testDistanceMap_CompareBruteForce()
+	{
+		Random random = new Random(21);
+		double sx = 0.8, sy = 1.0, sz = 2.5;
+		int sizeX = 13, sizeY = 11, sizeZ = 9;
+		for (int trial = 0; trial < 3; trial++)
+		{
+			ImageStack image = createFilledStack(sizeX, sizeY, sizeZ);
+			for (int i = 0; i < 8; i++)
+			{
+				image.setVoxel(random.nextInt(sizeX), random.nextInt(sizeY), random.nextInt(sizeZ), 0);
+			}
+			
+			EuclideanDistanceTransform3D algo = new EuclideanDistanceTransform3D(sx, sy, sz);
+			algo.setNumberOfThreads(1 + 2 * trial);
+			ImageStack result = algo.distanceMap(image);
+			
+			for (int z = 0; z < sizeZ; z++)
+			{
+				for (int y = 0; y < sizeY; y++)
+				{
+					for (int x = 0; x < sizeX; x++)
+					{
+						double minDist = Double.POSITIVE_INFINITY;
+						for (int z2 = 0; z2 < sizeZ; z2++)
+							for (int y2 = 0; y2 < sizeY; y2++)
+								for (int x2 = 0; x2 < sizeX; x2++)
+									if (image.getVoxel(x2, y2, z2) == 0)
+									{
+										double dx = (x2 - x) * sx, dy = (y2 - y) * sy, dz = (z2 - z) * sz;
+										minDist = Math.min(minDist, Math.sqrt(dx * dx + dy * dy + dz * dz));
+									}
+						assertEquals(minDist, result.getVoxel(x, y, z), 1e-4);
+					}
+				}
+			}
+		}
+	}
+	
+	private static final ImageStack createFilledStack(int sizeX, int sizeY, int sizeZ)
+	{
+		ImageStack image = ImageStack.create(sizeX, sizeY, sizeZ, 8);
+		for (int z = 0; z < sizeZ; z++)
+			for (int y = 0; y < sizeY; y++)
+				for (int x = 0; x < sizeX; x++)
+					image.setVoxel(x, y, z, 255);
+		return image;
+	}
+}
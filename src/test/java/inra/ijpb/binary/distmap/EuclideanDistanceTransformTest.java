@@ -0,0 +1,107 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.distmap;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+public class EuclideanDistanceTransformTest
+{
+	/**
+	 * Distance from the center of a square to the only background pixel in
+	 * the corner.
+	 */
+	@Test
+	public void testDistanceMap_SingleBackgroundPixel()
+	{
+		ImageProcessor image = new ByteProcessor(7, 5);
+		image.setValue(255);
+		image.fill();
+		image.set(0, 0, 0);
+		
+		EuclideanDistanceTransform algo = new EuclideanDistanceTransform();
+		ImageProcessor result = algo.distanceMap(image);
+		
+		assertEquals(0, result.getf(0, 0), 1e-6);
+		assertEquals(5, result.getf(4, 3), 1e-6);
+		assertEquals(Math.hypot(6, 4), result.getf(6, 4), 1e-6);
+	}
+	
+	/**
+	 * Compares with brute-force computation on random images with
+	 * anisotropic pixels.
+	 */
+	@Test
+	public void testDistanceMap_CompareBruteForce()
+	{
+		Random random = new Random(12);
+		double sx = 0.7, sy = 1.3;
+		for (int trial = 0; trial < 5; trial++)
+		{
+			ImageProcessor image = new ByteProcessor(23, 17);
+			image.setValue(255);
+			image.fill();
+			for (int i = 0; i < 6; i++)
+			{
+				image.set(random.nextInt(23), random.nextInt(17), 0);
+			}
+			
+			EuclideanDistanceTransform algo = new EuclideanDistanceTransform(sx, sy);
+			algo.setNumberOfThreads(1 + trial);
+			ImageProcessor result = algo.distanceMap(image);
+			
+			for (int y = 0; y < 17; y++)
+			{
+				for (int x = 0; x < 23; x++)
+				{
+					double minDist = Double.POSITIVE_INFINITY;
+					for (int y2 = 0; y2 < 17; y2++)
+						for (int x2 = 0; x2 < 23; x2++)
+							if (image.get(x2, y2) == 0)
+								minDist = Math.min(minDist, Math.hypot((x2 - x) * sx, (y2 - y) * sy));
+					assertEquals(minDist, result.getf(x, y), 1e-4);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * An image without background pixel should result in maximal values.
+	 */
+	@Test
+	public void testDistanceMap_NoBackground()
+	{
+		ImageProcessor image = new ByteProcessor(5, 5);
+		image.setValue(255);
+		image.fill();
+		
+		ImageProcessor result = new EuclideanDistanceTransform().distanceMap(image);
+		
+		assertEquals(Float.MAX_VALUE, result.getf(2, 2), 1);
+	}
+}
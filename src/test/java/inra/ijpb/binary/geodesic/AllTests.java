@@ -32,6 +32,7 @@ import org.junit.runners.Suite;
 	GeodesicDistanceTransformShortTest.class,
 	GeodesicDistanceTransformFloat5x5Test.class,
 	GeodesicDistanceTransformShort5x5Test.class,
+	GeodesicDistanceTransformPropagationTest.class,
 	GeodesicDiameterFloatTest.class,
 	GeodesicDiameter3DFloatTest.class,
 })
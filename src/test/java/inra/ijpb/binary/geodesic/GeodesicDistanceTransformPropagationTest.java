@@ -0,0 +1,178 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.binary.geodesic;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.binary.ChamferWeights3D;
+
+/**
+ * Compares the results of the front propagation algorithms with those of the
+ * iterated chamfer scans.
+ */
+public class GeodesicDistanceTransformPropagationTest
+{
+	@Test
+	public void testShort_SameAsScans()
+	{
+		ImageProcessor mask = createRandomMask(60, 50, 1);
+		ImageProcessor marker = createMarker(mask, 2);
+		
+		short[][] weightsList = new short[][] { {1, 1}, {3, 4}, {5, 7, 11} };
+		for (short[] weights : weightsList)
+		{
+			for (boolean normalize : new boolean[] {false, true})
+			{
+				GeodesicDistanceTransform ref = weights.length == 2 
+						? new GeodesicDistanceTransformShort(weights, normalize)
+						: new GeodesicDistanceTransformShort5x5(weights, normalize);
+				GeodesicDistanceTransform algo = new GeodesicDistanceTransformShortPropagation(weights, normalize);
+				assertSameImages(ref.geodesicDistanceMap(marker, mask), algo.geodesicDistanceMap(marker, mask));
+			}
+		}
+	}
+
+	@Test
+	public void testFloat_SameAsScans()
+	{
+		ImageProcessor mask = createRandomMask(60, 50, 3);
+		ImageProcessor marker = createMarker(mask, 4);
+		
+		float[][] weightsList = new float[][] { {1, 1.41f}, {3, 4}, {5, 7, 11} };
+		for (float[] weights : weightsList)
+		{
+			for (boolean normalize : new boolean[] {false, true})
+			{
+				GeodesicDistanceTransform ref = weights.length == 2 
+						? new GeodesicDistanceTransformFloat(weights, normalize)
+						: new GeodesicDistanceTransformFloat5x5(weights, normalize);
+				GeodesicDistanceTransform algo = new GeodesicDistanceTransformFloatPropagation(weights, normalize);
+				assertSameImages(ref.geodesicDistanceMap(marker, mask), algo.geodesicDistanceMap(marker, mask));
+			}
+		}
+	}
+
+	/**
+	 * A serpentine mask requires many scans, but the result must remain the
+	 * same.
+	 */
+	@Test
+	public void testFloat_Serpentine()
+	{
+		int width = 40, height = 41;
+		ByteProcessor mask = new ByteProcessor(width, height);
+		for (int y = 1; y < height - 1; y += 2)
+		{
+			for (int x = 1; x < width - 1; x++)
+			{
+				mask.set(x, y, 255);
+			}
+			// connect to the next row, alternating sides
+			int x = (y / 2) % 2 == 0 ? width - 2 : 1;
+			mask.set(x, y + 1, 255);
+		}
+		ByteProcessor marker = new ByteProcessor(width, height);
+		marker.set(1, 1, 255);
+		
+		float[] weights = new float[] {1, 1.5f};
+		ImageProcessor ref = new GeodesicDistanceTransformFloat(weights, false).geodesicDistanceMap(marker, mask);
+		ImageProcessor map = new GeodesicDistanceTransformFloatPropagation(weights, false).geodesicDistanceMap(marker, mask);
+		assertSameImages(ref, map);
+	}
+
+	@Test
+	public void test3DFloat_SameAsScans()
+	{
+		Random random = new Random(5);
+		int sizeX = 20, sizeY = 18, sizeZ = 16;
+		ImageStack mask = ImageStack.create(sizeX, sizeY, sizeZ, 8);
+		for (int z = 0; z < sizeZ; z++)
+			for (int y = 0; y < sizeY; y++)
+				for (int x = 0; x < sizeX; x++)
+					if (random.nextDouble() < 0.6)
+						mask.setVoxel(x, y, z, 255);
+		ImageStack marker = ImageStack.create(sizeX, sizeY, sizeZ, 8);
+		marker.setVoxel(0, 0, 0, 255);
+		marker.setVoxel(10, 9, 8, 255);
+		
+		ChamferWeights3D[] weightsList = new ChamferWeights3D[] {
+				ChamferWeights3D.CITY_BLOCK, ChamferWeights3D.BORGEFORS };
+		for (ChamferWeights3D weights : weightsList)
+		{
+			ImageStack ref = new GeodesicDistanceTransform3DFloat(weights, true).geodesicDistanceMap(marker, mask);
+			ImageStack map = new GeodesicDistanceTransform3DFloatPropagation(weights, true).geodesicDistanceMap(marker, mask);
+			for (int z = 0; z < sizeZ; z++)
+				for (int y = 0; y < sizeY; y++)
+					for (int x = 0; x < sizeX; x++)
+						assertEquals(ref.getVoxel(x, y, z), map.getVoxel(x, y, z), 0);
+		}
+	}
+
+	/**
+	 * Creates a random binary mask, with a background margin of two pixels
+	 * as the scan algorithms with 5-by-5 masks do not process borders
+	 * completely.
+	 */
+	private static final ImageProcessor createRandomMask(int width, int height, long seed)
+	{
+		Random random = new Random(seed);
+		ByteProcessor mask = new ByteProcessor(width, height);
+		for (int y = 2; y < height - 2; y++)
+		{
+			for (int x = 2; x < width - 2; x++)
+			{
+				if (random.nextDouble() < 0.65)
+					mask.set(x, y, 255);
+			}
+		}
+		return mask;
+	}
+	
+	private static final ImageProcessor createMarker(ImageProcessor mask, long seed)
+	{
+		Random random = new Random(seed);
+		ByteProcessor marker = new ByteProcessor(mask.getWidth(), mask.getHeight());
+		for (int i = 0; i < 4; i++)
+		{
+			marker.set(2 + random.nextInt(mask.getWidth() - 4), 2 + random.nextInt(mask.getHeight() - 4), 255);
+		}
+		return marker;
+	}
+	
+	private static final void assertSameImages(ImageProcessor expected, ImageProcessor result)
+	{
+		for (int y = 0; y < expected.getHeight(); y++)
+		{
+			for (int x = 0; x < expected.getWidth(); x++)
+			{
+				assertEquals(expected.getf(x, y), result.getf(x, y), 0);
+			}
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+public class BucketQueueTest
+{
+	/**
+	 * Elements must be retrieved by increasing priority, and in insertion
+	 * order for a given priority.
+	 */
+	@Test
+	public void testPoll_IncreasingPriority()
+	{
+		BucketQueue queue = new BucketQueue(5);
+		queue.add(10, 3);
+		queue.add(11, 0);
+		queue.add(12, 5);
+		queue.add(13, 3);
+		
+		assertEquals(4, queue.size());
+		assertEquals(11, queue.poll());
+		assertEquals(0, queue.currentPriority());
+		assertEquals(10, queue.poll());
+		assertEquals(3, queue.currentPriority());
+		
+		// add elements relative to the new current priority
+		queue.add(14, 8);
+		queue.add(15, 4);
+		
+		assertEquals(13, queue.poll());
+		assertEquals(15, queue.poll());
+		assertEquals(4, queue.currentPriority());
+		assertEquals(12, queue.poll());
+		assertEquals(14, queue.poll());
+		assertEquals(8, queue.currentPriority());
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAdd_PriorityTooLarge()
+	{
+		BucketQueue queue = new BucketQueue(5);
+		queue.add(0, 6);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAdd_PriorityTooSmall()
+	{
+		BucketQueue queue = new BucketQueue(5);
+		queue.add(0, 2);
+		queue.poll();
+		queue.add(1, 1);
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void testPoll_Empty()
+	{
+		new BucketQueue(3).poll();
+	}
+}
@@ -0,0 +1,100 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+public class HierarchicalQueueTest
+{
+	/**
+	 * Elements must be retrieved by increasing level, then by insertion order.
+	 */
+	@Test
+	public void testPoll_LevelThenInsertionOrder()
+	{
+		HierarchicalQueue queue = new HierarchicalQueue(256);
+		queue.add(10, 5);
+		queue.add(11, 3);
+		queue.add(12, 5);
+		queue.add(13, 3);
+		queue.add(14, 200);
+		
+		assertEquals(5, queue.size());
+		assertEquals(11, queue.poll());
+		assertEquals(13, queue.poll());
+		assertEquals(10, queue.poll());
+		assertEquals(12, queue.poll());
+		assertEquals(14, queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+
+	/**
+	 * Adding an element below the current level makes it the next element.
+	 */
+	@Test
+	public void testAdd_BelowCurrentLevel()
+	{
+		HierarchicalQueue queue = new HierarchicalQueue(256);
+		queue.add(1, 10);
+		queue.add(2, 10);
+		assertEquals(1, queue.poll());
+		
+		queue.add(3, 4);
+		assertEquals(4, queue.getCurrentLevel());
+		assertEquals(3, queue.poll());
+		assertEquals(2, queue.poll());
+	}
+
+	/**
+	 * Interleaved additions and removals within a single level, to check
+	 * the growth and the compaction of the level arrays.
+	 */
+	@Test
+	public void testPoll_ManyElementsSameLevel()
+	{
+		HierarchicalQueue queue = new HierarchicalQueue(2);
+		int next = 0;
+		for (int i = 0; i < 1000; i++)
+		{
+			queue.add(2 * i, 1);
+			queue.add(2 * i + 1, 1);
+			assertEquals(next++, queue.poll());
+		}
+		while (!queue.isEmpty())
+		{
+			assertEquals(next++, queue.poll());
+		}
+		assertEquals(2000, next);
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void testPoll_Empty()
+	{
+		HierarchicalQueue queue = new HierarchicalQueue(16);
+		queue.poll();
+	}
+}
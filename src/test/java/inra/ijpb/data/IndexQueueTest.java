@@ -0,0 +1,105 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+public class IndexQueueTest
+{
+	/**
+	 * Elements must be retrieved in insertion order, also when they span
+	 * several chunks.
+	 */
+	@Test
+	public void testPoll_InsertionOrder()
+	{
+		IndexQueue queue = new IndexQueue();
+		int n = 3 * IndexQueue.CHUNK_SIZE + 17;
+		for (int i = 0; i < n; i++)
+		{
+			queue.add(5L * i + (1L << 40));
+		}
+		
+		assertEquals(n, queue.size());
+		for (int i = 0; i < n; i++)
+		{
+			assertEquals(5L * i + (1L << 40), queue.poll());
+		}
+		assertTrue(queue.isEmpty());
+	}
+
+	/**
+	 * Interleaving additions and retrievals must keep the FIFO order when
+	 * chunks are recycled.
+	 */
+	@Test
+	public void testAddPoll_Interleaved()
+	{
+		IndexQueue queue = new IndexQueue();
+		long next = 0;
+		long expected = 0;
+		for (int iter = 0; iter < 10 * IndexQueue.CHUNK_SIZE; iter++)
+		{
+			queue.add(next++);
+			if (iter % 3 != 0)
+				queue.add(next++);
+			assertEquals(expected++, queue.poll());
+		}
+		assertEquals(next - expected, queue.size());
+		while (!queue.isEmpty())
+		{
+			assertEquals(expected++, queue.poll());
+		}
+		assertEquals(next, expected);
+	}
+
+	/**
+	 * Clearing the queue removes all elements.
+	 */
+	@Test
+	public void testClear()
+	{
+		IndexQueue queue = new IndexQueue();
+		for (int i = 0; i < 2 * IndexQueue.CHUNK_SIZE; i++)
+		{
+			queue.add(i);
+		}
+		queue.clear();
+		assertTrue(queue.isEmpty());
+		queue.add(42);
+		assertEquals(42, queue.poll());
+	}
+
+	/**
+	 * Retrieving an element from an empty queue throws an exception.
+	 */
+	@Test(expected = NoSuchElementException.class)
+	public void testPoll_Empty()
+	{
+		new IndexQueue().poll();
+	}
+}
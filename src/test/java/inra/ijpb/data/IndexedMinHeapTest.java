@@ -0,0 +1,93 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IndexedMinHeapTest
+{
+	/**
+	 * Elements must be retrieved by increasing key, also after key updates.
+	 */
+	@Test
+	public void testPoll_RandomUpdates()
+	{
+		int n = 1000;
+		float[] keys = new float[n];
+		Arrays.fill(keys, Float.POSITIVE_INFINITY);
+		IndexedMinHeap heap = new IndexedMinHeap(n);
+		
+		Random random = new Random(42);
+		for (int i = 0; i < 5000; i++)
+		{
+			int index = random.nextInt(n);
+			float key = random.nextFloat() * 100;
+			keys[index] = key;
+			heap.update(index, key);
+		}
+		
+		int count = 0;
+		float previous = Float.NEGATIVE_INFINITY;
+		while (!heap.isEmpty())
+		{
+			float key = heap.minKey();
+			int index = heap.poll();
+			assertFalse(heap.contains(index));
+			assertEquals(keys[index], key, 0);
+			assertTrue(key >= previous);
+			previous = key;
+			keys[index] = Float.NaN;
+			count++;
+		}
+		
+		// all updated elements must have been retrieved exactly once
+		for (int i = 0; i < n; i++)
+		{
+			assertTrue(Float.isNaN(keys[i]) || Float.isInfinite(keys[i]));
+			if (Float.isNaN(keys[i]))
+				count--;
+		}
+		assertEquals(0, count);
+	}
+	
+	@Test
+	public void testUpdate_ContainsOnce()
+	{
+		IndexedMinHeap heap = new IndexedMinHeap(10);
+		heap.update(3, 5);
+		heap.update(3, 2);
+		heap.update(7, 4);
+		
+		assertEquals(2, heap.size());
+		assertTrue(heap.contains(3));
+		assertEquals(3, heap.poll());
+		assertEquals(7, heap.poll());
+		assertTrue(heap.isEmpty());
+	}
+}
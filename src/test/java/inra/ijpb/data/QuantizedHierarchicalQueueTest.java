@@ -0,0 +1,105 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class QuantizedHierarchicalQueueTest
+{
+	/**
+	 * Elements within the same quantization level must be sorted by value,
+	 * then by insertion order.
+	 */
+	@Test
+	public void testPoll_SameLevel()
+	{
+		QuantizedHierarchicalQueue queue = new QuantizedHierarchicalQueue(0, 100, 10);
+		queue.add(1, 5.5f);
+		queue.add(2, 5.1f);
+		queue.add(3, 5.5f);
+		queue.add(4, 5.1f);
+		queue.add(5, 2.0f);
+		
+		assertEquals(5, queue.poll());
+		assertEquals(2, queue.poll());
+		assertEquals(4, queue.poll());
+		assertEquals(1, queue.poll());
+		assertEquals(3, queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+
+	/**
+	 * Values outside of the quantization range are still ordered exactly.
+	 */
+	@Test
+	public void testPoll_OutOfRange()
+	{
+		QuantizedHierarchicalQueue queue = new QuantizedHierarchicalQueue(0, 10, 4);
+		queue.add(1, 25f);
+		queue.add(2, -3f);
+		queue.add(3, Float.POSITIVE_INFINITY);
+		queue.add(4, -7f);
+		queue.add(5, 12f);
+		
+		assertEquals(4, queue.poll());
+		assertEquals(2, queue.poll());
+		assertEquals(5, queue.poll());
+		assertEquals(1, queue.poll());
+		assertEquals(3, queue.poll());
+	}
+
+	/**
+	 * Compares the retrieval order with a sort on (value, insertion order),
+	 * while adding elements lower than the last retrieved ones.
+	 */
+	@Test
+	public void testPoll_RandomValues()
+	{
+		Random random = new Random(1234);
+		int n = 2000;
+		float[] values = new float[n];
+		for (int i = 0; i < n; i++)
+		{
+			values[i] = random.nextInt(50) + (random.nextBoolean() ? 0 : random.nextFloat());
+		}
+		
+		QuantizedHierarchicalQueue queue = new QuantizedHierarchicalQueue(0, 50, 16);
+		for (int i = 0; i < n; i++)
+		{
+			queue.add(i, values[i]);
+		}
+		
+		int previous = queue.poll();
+		while (!queue.isEmpty())
+		{
+			int current = queue.poll();
+			int cmp = Float.compare(values[previous], values[current]);
+			assertTrue(cmp < 0 || (cmp == 0 && previous < current));
+			previous = current;
+		}
+	}
+}
@@ -0,0 +1,247 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.data.image;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedImage3DTest
+{
+	File file;
+	
+	@Before
+	public void createFile() throws IOException
+	{
+		file = File.createTempFile("mapped", ".raw");
+	}
+	
+	@After
+	public void deleteFile()
+	{
+		file.delete();
+	}
+	
+	@Test
+	public final void testCreateMapped_Gray8() throws IOException
+	{
+		MappedImage3D image = Images3D.createMapped(file, 5, 4, 3, 8);
+		try
+		{
+			image.set(1, 2, 2, 200);
+			image.setValue(4, 3, 0, 12.7);
+		}
+		finally
+		{
+			image.close();
+		}
+		
+		assertEquals(5 * 4 * 3, file.length());
+		
+		image = Images3D.openMapped(file, 5, 4, 3, 8, 0, ByteOrder.nativeOrder(), false);
+		try
+		{
+			assertEquals(200, image.get(1, 2, 2));
+			assertEquals(13, image.getValue(4, 3, 0), 0);
+			assertEquals(0, image.get(0, 0, 0));
+		}
+		finally
+		{
+			image.close();
+		}
+	}
+	
+	@Test
+	public final void testCreateMapped_Gray16() throws IOException
+	{
+		MappedImage3D image = Images3D.createMapped(file, 5, 4, 3, 16);
+		try
+		{
+			image.set(1, 2, 2, 40000);
+			image.set(2, 2, 2, 70000);
+			image.set(3, 2, 2, -5);
+		}
+		finally
+		{
+			image.close();
+		}
+		
+		image = Images3D.openMapped(file, 5, 4, 3, 16, 0, ByteOrder.nativeOrder(), false);
+		try
+		{
+			assertEquals(40000, image.get(1, 2, 2));
+			assertEquals(65535, image.get(2, 2, 2));
+			assertEquals(0, image.get(3, 2, 2));
+		}
+		finally
+		{
+			image.close();
+		}
+	}
+	
+	@Test
+	public final void testOpenMapped_Float32WithOffsetAndOrder() throws IOException
+	{
+		MappedImage3D image = MappedImage3D.map(file, 3, 2, 2, 32, 10, ByteOrder.BIG_ENDIAN, true,
+				MappedImage3D.MAX_CHUNK_SIZE);
+		try
+		{
+			image.setValue(2, 1, 1, 3.25);
+		}
+		finally
+		{
+			image.close();
+		}
+		
+		assertEquals(10 + 3 * 2 * 2 * 4, file.length());
+		
+		image = Images3D.openMapped(file, 3, 2, 2, 32, 10, ByteOrder.BIG_ENDIAN, false);
+		try
+		{
+			assertEquals(3.25, image.getValue(2, 1, 1), 0);
+			assertEquals(3, image.get(2, 1, 1));
+		}
+		finally
+		{
+			image.close();
+		}
+	}
+	
+	/**
+	 * Uses small chunks to check the mapping of images larger than a chunk.
+	 */
+	@Test
+	public final void testChunks() throws IOException
+	{
+		int sizeX = 7, sizeY = 5, sizeZ = 11;
+		// chunks of two slices of 16-bit values
+		MappedImage3D image = MappedImage3D.map(file, sizeX, sizeY, sizeZ, 16, 0,
+				ByteOrder.nativeOrder(), true, sizeX * sizeY * 2 * 2 + 3);
+		try
+		{
+			assertEquals(6, image.chunks.length);
+			
+			for (int z = 0; z < sizeZ; z++)
+			{
+				for (int y = 0; y < sizeY; y++)
+				{
+					for (int x = 0; x < sizeX; x++)
+					{
+						image.set(x, y, z, (z * sizeY + y) * sizeX + x);
+					}
+				}
+			}
+		}
+		finally
+		{
+			image.close();
+		}
+		
+		image = Images3D.openMapped(file, sizeX, sizeY, sizeZ, 16, 0, ByteOrder.nativeOrder(), false);
+		try
+		{
+			for (int z = 0; z < sizeZ; z++)
+			{
+				for (int y = 0; y < sizeY; y++)
+				{
+					for (int x = 0; x < sizeX; x++)
+					{
+						assertEquals((z * sizeY + y) * sizeX + x, image.get(x, y, z));
+					}
+				}
+			}
+		}
+		finally
+		{
+			image.close();
+		}
+	}
+	
+	/**
+	 * Checks linear and row accessors across chunk boundaries.
+	 */
+	@Test
+	public final void testLinearAndRowAccess() throws IOException
+	{
+		int sizeX = 6, sizeY = 4, sizeZ = 5;
+		// chunks of two slices of float values
+		MappedImage3D image = MappedImage3D.map(file, sizeX, sizeY, sizeZ, 32, 0,
+				ByteOrder.nativeOrder(), true, sizeX * sizeY * 4 * 2);
+		try
+		{
+			assertTrue(image instanceof FloatImage3D);
+			FloatImage3D floatImage = (FloatImage3D) image;
+			
+			for (long index = 0; index < sizeX * sizeY * sizeZ; index++)
+			{
+				floatImage.setFloat(index, index + .5f);
+			}
+			assertEquals((3 * sizeY + 2) * sizeX + 1 + .5, image.getValue(1, 2, 3), 0);
+			
+			float[] row = new float[sizeX];
+			floatImage.getRow(1, 4, row);
+			assertEquals((4 * sizeY + 1) * sizeX + 5 + .5f, row[5], 0);
+			
+			double[] values = new double[]{1, 2, 3, 4, 5, 6};
+			image.setRowValues(3, 2, values);
+			assertEquals(4, image.get((2 * sizeY + 3) * sizeX + 3));
+		}
+		finally
+		{
+			image.close();
+		}
+		
+		// use another file, as the previous one may still be mapped
+		File file2 = File.createTempFile("mapped", ".raw");
+		try
+		{
+			image = Images3D.createMapped(file2, sizeX, sizeY, sizeZ, 8);
+			try
+			{
+				assertTrue(image instanceof ByteImage3D);
+				((ByteImage3D) image).setRow(2, 3, new byte[]{1, 2, 3, 4, 5, (byte) 250});
+				assertEquals(250, image.get((3 * sizeY + 2) * sizeX + 5));
+			}
+			finally
+			{
+				image.close();
+			}
+		}
+		finally
+		{
+			file2.delete();
+		}
+	}
+	
+	@Test(expected = IOException.class)
+	public final void testOpenMapped_FileTooSmall() throws IOException
+	{
+		Images3D.openMapped(file, 10, 10, 10, 8, 0, ByteOrder.nativeOrder(), false);
+	}
+}
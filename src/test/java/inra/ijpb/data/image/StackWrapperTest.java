@@ -0,0 +1,102 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.data.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ij.ImageStack;
+
+public class StackWrapperTest
+{
+	/**
+	 * Checks that linear indices and 3D coordinates address the same voxels.
+	 */
+	@Test
+	public final void testLinearIndex()
+	{
+		for (int bitDepth : new int[]{8, 16, 32})
+		{
+			ImageStack stack = ImageStack.create(5, 4, 3, bitDepth);
+			Image3D image = Images3D.createWrapper(stack);
+			
+			for (long index = 0; index < 5 * 4 * 3; index++)
+			{
+				image.set(index, (int) (index * 2));
+			}
+			assertEquals(2 * ((2 * 4 + 1) * 5 + 3), image.get(3, 1, 2));
+			assertEquals(2 * ((2 * 4 + 1) * 5 + 3), stack.getVoxel(3, 1, 2), 0);
+			
+			image.setValue(4, 3, 2, 17);
+			assertEquals(17, image.getValue(5 * 4 * 3 - 1), 0);
+		}
+	}
+	
+	@Test
+	public final void testRowValues()
+	{
+		for (int bitDepth : new int[]{8, 16, 32})
+		{
+			ImageStack stack = ImageStack.create(4, 3, 2, bitDepth);
+			Image3D image = Images3D.createWrapper(stack);
+			
+			image.setRowValues(2, 1, new double[]{1, 2, 3, 4});
+			assertEquals(3, stack.getVoxel(2, 2, 1), 0);
+			
+			double[] row = new double[4];
+			image.getRowValues(2, 1, row);
+			assertArrayEquals(new double[]{1, 2, 3, 4}, row, 0);
+			image.getRowValues(1, 1, row);
+			assertArrayEquals(new double[]{0, 0, 0, 0}, row, 0);
+		}
+	}
+	
+	@Test
+	public final void testTypedRows()
+	{
+		Image3D image = Images3D.createWrapper(ImageStack.create(4, 3, 2, 8));
+		assertTrue(image instanceof ByteImage3D);
+		((ByteImage3D) image).setRow(1, 1, new byte[]{1, 2, (byte) 200, 4});
+		assertEquals(200, image.get(2, 1, 1));
+		byte[] bytes = new byte[4];
+		((ByteImage3D) image).getRow(1, 1, bytes);
+		assertEquals((byte) 200, bytes[2]);
+		
+		image = Images3D.createWrapper(ImageStack.create(4, 3, 2, 16));
+		assertTrue(image instanceof ShortImage3D);
+		((ShortImage3D) image).setRow(2, 0, new short[]{1, 2, (short) 50000, 4});
+		assertEquals(50000, image.get(2, 2, 0));
+		
+		image = Images3D.createWrapper(ImageStack.create(4, 3, 2, 32));
+		assertTrue(image instanceof FloatImage3D);
+		FloatImage3D floatImage = (FloatImage3D) image;
+		floatImage.setRow(0, 1, new float[]{1.5f, 2.5f, 3.5f, 4.5f});
+		assertEquals(3.5f, floatImage.getFloat(12 + 2), 0);
+		floatImage.setFloat(23, 7.25f);
+		float[] floats = new float[4];
+		floatImage.getRow(2, 1, floats);
+		assertEquals(7.25f, floats[3], 0);
+	}
+}
@@ -30,7 +30,10 @@ import org.junit.runners.Suite;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
 	// generic classes
+	CroppedLabelExecutorTest.class,
+	LabelCensusTest.class,
 	LabelImagesTest.class, 
+	LabelRemapperTest.class,
 	})
 public class AllTests {
   //nothing
@@ -0,0 +1,141 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.label;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+public class CroppedLabelExecutorTest
+{
+	@Test
+	public void testBoundingBoxes_2D()
+	{
+		ImageProcessor image = createLabelImage();
+		int[][] boxes = CroppedLabelExecutor.boundingBoxes(image, new int[] {3, 7, 9});
+		
+		assertArrayEquals(new int[] {2, 5, 1, 3}, boxes[0]);
+		assertArrayEquals(new int[] {0, 9, 7, 7}, boxes[1]);
+		// label not found in image
+		assertEquals(true, boxes[2][0] > boxes[2][1]);
+	}
+	
+	@Test
+	public void testBoundingBoxes_3D()
+	{
+		ImageStack image = ImageStack.create(10, 8, 6, 16);
+		image.setVoxel(2, 3, 1, 300);
+		image.setVoxel(4, 1, 4, 300);
+		image.setVoxel(9, 7, 5, 5);
+		
+		int[][] boxes = CroppedLabelExecutor.boundingBoxes(image, new int[] {5, 300});
+		
+		assertArrayEquals(new int[] {9, 9, 7, 7, 5, 5}, boxes[0]);
+		assertArrayEquals(new int[] {2, 4, 1, 3, 1, 4}, boxes[1]);
+	}
+	
+	/**
+	 * Checks the operation is applied to binary crops enlarged by the border
+	 * and clipped to image bounds, and that results are in label order.
+	 */
+	@Test
+	public void testProcess_2D()
+	{
+		ImageProcessor image = createLabelImage();
+		int[] labels = new int[] {7, 9, 3};
+		
+		CroppedLabelExecutor executor = new CroppedLabelExecutor(1);
+		executor.setNumberOfThreads(3);
+		double[][] res = executor.process(image, labels, new CroppedLabelExecutor.Operation2D()
+		{
+			@Override
+			public double[] process(ImageProcessor mask, int label, int x0, int y0)
+			{
+				int count = 0;
+				for (int i = 0; i < mask.getPixelCount(); i++)
+				{
+					if (mask.get(i) == 255)
+						count++;
+				}
+				return new double[] {label, count, x0, y0, mask.getWidth(), mask.getHeight()};
+			}
+		});
+		
+		assertArrayEquals(new double[] {7, 10, 0, 6, 10, 2}, res[0], 0);
+		assertNull(res[1]);
+		assertArrayEquals(new double[] {3, 5, 1, 0, 6, 5}, res[2], 0);
+	}
+	
+	@Test
+	public void testProcess_3D()
+	{
+		ImageStack image = ImageStack.create(10, 8, 6, 8);
+		for (int z = 2; z < 4; z++)
+		{
+			for (int x = 3; x < 6; x++)
+			{
+				image.setVoxel(x, 4, z, 2);
+			}
+		}
+		image.setVoxel(0, 0, 0, 4);
+		
+		CroppedLabelExecutor executor = new CroppedLabelExecutor(2);
+		double[][] res = executor.process(image, new int[] {2, 4}, new CroppedLabelExecutor.Operation3D()
+		{
+			@Override
+			public double[] process(ImageStack mask, int label, int x0, int y0, int z0)
+			{
+				// value of the first voxel of the label, in crop coordinates
+				double value = label == 2 ? mask.getVoxel(3 - x0, 4 - y0, 2 - z0) : mask.getVoxel(0, 0, 0);
+				return new double[] {x0, y0, z0, mask.getWidth(), mask.getHeight(), mask.getSize(), value};
+			}
+		});
+		
+		assertArrayEquals(new double[] {1, 2, 0, 7, 5, 6, 255}, res[0], 0);
+		assertArrayEquals(new double[] {0, 0, 0, 3, 3, 3, 255}, res[1], 0);
+	}
+	
+	/**
+	 * Creates a 10-by-8 label image containing a rectangle with label 3 and
+	 * a horizontal line with label 7 crossing the image.
+	 */
+	private static final ImageProcessor createLabelImage()
+	{
+		ByteProcessor image = new ByteProcessor(10, 8);
+		image.set(2, 1, 3);
+		image.set(3, 2, 3);
+		image.set(4, 2, 3);
+		image.set(5, 2, 3);
+		image.set(5, 3, 3);
+		for (int x = 0; x < 10; x++)
+		{
+			image.set(x, 7, 7);
+		}
+		return image;
+	}
+}
@@ -0,0 +1,170 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.label;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.VirtualStack;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+public class LabelCensusTest
+{
+	@Test
+	public final void testCompute_ByteProcessor()
+	{
+		ImageProcessor image = new ByteProcessor(10, 8);
+		image.set(2, 1, 3);
+		image.set(4, 5, 3);
+		image.set(7, 2, 200);
+		
+		LabelCensus census = LabelCensus.compute(image, 3);
+		
+		assertArrayEquals(new int[]{3, 200}, census.getLabels());
+		assertArrayEquals(new int[]{2, 1}, census.getCounts());
+		int[][] boxes = census.getBoundingBoxes();
+		assertEquals(4, boxes[0].length);
+		assertArrayEquals(new int[]{2, 4, 1, 5}, boxes[0]);
+		assertArrayEquals(new int[]{7, 7, 2, 2}, boxes[1]);
+		assertEquals(1, census.indexOf(200));
+		assertEquals(-1, census.indexOf(4));
+	}
+	
+	@Test
+	public final void testCompute_FloatProcessorLargeLabels()
+	{
+		ImageProcessor image = new FloatProcessor(6, 4);
+		image.setf(0, 0, -7);
+		image.setf(5, 3, 1e8f);
+		image.setf(1, 2, 1e8f);
+		
+		LabelCensus census = LabelCensus.compute(image, 2);
+		
+		assertArrayEquals(new int[]{-7, 100000000}, census.getLabels());
+		assertArrayEquals(new int[]{1, 2}, census.getCounts());
+		assertArrayEquals(new int[]{1, 5, 2, 3}, census.getBoundingBoxes()[1]);
+	}
+	
+	/**
+	 * Compares the census of random 3D images of each type with the results
+	 * of findAllLabels, voxelCount and boundingBoxes.
+	 */
+	@Test
+	public final void testCompute_ImageStack_Random()
+	{
+		Random random = new Random(42);
+		for (int bitDepth : new int[]{8, 16, 32})
+		{
+			ImageStack image = ImageStack.create(12, 10, 7, bitDepth);
+			for (int z = 0; z < 7; z++)
+			{
+				for (int y = 0; y < 10; y++)
+				{
+					for (int x = 0; x < 12; x++)
+					{
+						int label = random.nextInt(2) == 0 ? 0 : 1 + random.nextInt(200);
+						if (bitDepth != 8)
+							label *= 300;
+						image.setVoxel(x, y, z, label);
+					}
+				}
+			}
+			
+			LabelCensus census = LabelCensus.compute(image, 4);
+			
+			int[] labels = LabelImages.findAllLabels(image);
+			assertArrayEquals(labels, census.getLabels());
+			assertArrayEquals(LabelImages.voxelCount(image, labels), census.getCounts());
+			int[][] boxes = CroppedLabelExecutor.boundingBoxes(image, labels);
+			int[][] boxes2 = census.getBoundingBoxes();
+			for (int i = 0; i < labels.length; i++)
+			{
+				assertArrayEquals(boxes[i], boxes2[i]);
+			}
+		}
+	}
+	
+	@Test
+	public final void testOf_CachedWithinProperties()
+	{
+		ImageProcessor image = new ByteProcessor(5, 5);
+		image.set(1, 1, 4);
+		ImagePlus imagePlus = new ImagePlus("labels", image);
+		
+		// finding labels does not cache the census
+		assertArrayEquals(new int[]{4}, LabelImages.findAllLabels(imagePlus));
+		assertNull(imagePlus.getProperty(LabelCensus.PROPERTY_KEY));
+		
+		LabelCensus census = LabelCensus.of(imagePlus);
+		assertSame(census, LabelCensus.of(imagePlus));
+		
+		// modification through LabelImages invalidates the census
+		LabelImages.replaceLabels(imagePlus, new int[]{4}, 6);
+		LabelCensus census2 = LabelCensus.of(imagePlus);
+		assertNotSame(census, census2);
+		assertArrayEquals(new int[]{6}, census2.getLabels());
+		
+		// replacing the pixel array also invalidates the census
+		ImageProcessor image2 = new ByteProcessor(5, 5);
+		image2.set(2, 2, 9);
+		imagePlus.setProcessor(image2);
+		assertArrayEquals(new int[]{9}, LabelCensus.of(imagePlus).getLabels());
+	}
+	
+	@Test
+	public final void testOf_VirtualStackNotCached()
+	{
+		final ImageProcessor slice = new ByteProcessor(5, 5);
+		slice.set(3, 2, 7);
+		VirtualStack stack = new VirtualStack(5, 5, null, null)
+		{
+			@Override
+			public ImageProcessor getProcessor(int n)
+			{
+				return slice.duplicate();
+			}
+			
+			@Override
+			public int getSize()
+			{
+				return 3;
+			}
+		};
+		ImagePlus imagePlus = new ImagePlus("labels", stack);
+		
+		LabelCensus census = LabelCensus.of(imagePlus);
+		assertArrayEquals(new int[]{7}, census.getLabels());
+		assertArrayEquals(new int[]{3}, census.getCounts());
+		assertNull(imagePlus.getProperty(LabelCensus.PROPERTY_KEY));
+	}
+}
@@ -31,6 +31,7 @@ import ij.ImagePlus;
 import ij.ImageStack;
 import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 import inra.ijpb.label.LabelImages;
 import inra.ijpb.util.ColorMaps.CommonLabelMaps;
@@ -99,6 +100,57 @@ public class LabelImagesTest
 		}
 	}
 
+	@Test
+	public final void testFindAllLabels_FloatProcessorLargeRange()
+	{
+		ImageProcessor image = new FloatProcessor(4, 2);
+		image.setf(0, 0, -3);
+		image.setf(1, 0, 1e9f);
+		image.setf(2, 0, 12);
+		image.setf(3, 1, 12);
+		
+		int[] labels = LabelImages.findAllLabels(image);
+		
+		assertEquals(3, labels.length);
+		assertEquals(-3, labels[0]);
+		assertEquals(12, labels[1]);
+		assertEquals(1000000000, labels[2]);
+	}
+	
+	@Test
+	public final void testRemapLabels_ImageStack()
+	{
+		ImageStack image = ImageStack.create(5, 4, 3, 16);
+		image.setVoxel(0, 0, 0, 40);
+		image.setVoxel(1, 1, 1, 7);
+		image.setVoxel(2, 2, 2, 3000);
+		image.setVoxel(3, 3, 2, 7);
+		
+		LabelImages.remapLabels(image);
+		
+		assertEquals(2, image.getVoxel(0, 0, 0), 0);
+		assertEquals(1, image.getVoxel(1, 1, 1), 0);
+		assertEquals(3, image.getVoxel(2, 2, 2), 0);
+		assertEquals(1, image.getVoxel(3, 3, 2), 0);
+		assertEquals(0, image.getVoxel(4, 3, 2), 0);
+	}
+	
+	@Test
+	public final void testKeepLabels_ImageProcessor()
+	{
+		ImageProcessor image = new ByteProcessor(3, 1);
+		image.set(0, 0, 1);
+		image.set(1, 0, 2);
+		image.set(2, 0, 3);
+		
+		ImageProcessor result = LabelImages.keepLabels(image, new int[]{1, 3});
+		
+		assertEquals(1, result.get(0, 0));
+		assertEquals(0, result.get(1, 0));
+		assertEquals(3, result.get(2, 0));
+		assertEquals(2, image.get(1, 0));
+	}
+	
 	@Test
 	public final void testKeepLargestLabelImageProcessor()
 	{
@@ -0,0 +1,129 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.label;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+public class LabelRemapperTest
+{
+	@Test
+	public final void testMap_Dense()
+	{
+		LabelRemapper remapper = new LabelRemapper(new int[]{3, 7, 5}, new int[]{30, 70, 50}, true, 0);
+		
+		assertEquals(30, remapper.map(3));
+		assertEquals(70, remapper.map(7));
+		assertEquals(50, remapper.map(5));
+		assertEquals(4, remapper.map(4));
+		assertEquals(0, remapper.map(0));
+		assertEquals(1000, remapper.map(1000));
+	}
+
+	@Test
+	public final void testMap_Sparse()
+	{
+		int[] labels = new int[]{Integer.MAX_VALUE, 12, -5, 1 << 28};
+		LabelRemapper remapper = new LabelRemapper(labels, new int[]{1, 2, 3, 4}, false, -1);
+		
+		assertEquals(1, remapper.map(Integer.MAX_VALUE));
+		assertEquals(2, remapper.map(12));
+		assertEquals(3, remapper.map(-5));
+		assertEquals(4, remapper.map(1 << 28));
+		assertEquals(-1, remapper.map(13));
+		assertEquals(-1, remapper.map(0));
+	}
+
+	@Test
+	public final void testIndexing()
+	{
+		LabelRemapper remapper = LabelRemapper.indexing(new int[]{4, 9, 2});
+		
+		assertEquals(0, remapper.map(4));
+		assertEquals(1, remapper.map(9));
+		assertEquals(2, remapper.map(2));
+		assertEquals(-1, remapper.map(3));
+	}
+
+	@Test
+	public final void testApplyTo_ByteProcessor()
+	{
+		ImageProcessor image = new ByteProcessor(4, 3);
+		image.set(0, 0, 2);
+		image.set(1, 0, 200);
+		image.set(2, 1, 7);
+		
+		LabelRemapper.consecutive(new int[]{2, 7, 200}).applyTo(image);
+		
+		assertEquals(1, image.get(0, 0));
+		assertEquals(3, image.get(1, 0));
+		assertEquals(2, image.get(2, 1));
+		assertEquals(0, image.get(3, 2));
+	}
+
+	@Test
+	public final void testApplyTo_FloatProcessor_KeepOthers()
+	{
+		ImageProcessor image = new FloatProcessor(3, 1);
+		image.setf(0, 0, 1e6f);
+		image.setf(1, 0, 2.5f);
+		image.setf(2, 0, 4);
+		
+		LabelRemapper.replacing(new int[]{4, 1000000}, 0).applyTo(image);
+		
+		assertEquals(0, image.getf(0, 0), 0);
+		assertEquals(2.5, image.getf(1, 0), 0);
+		assertEquals(0, image.getf(2, 0), 0);
+	}
+
+	@Test
+	public final void testApplyTo_Stack()
+	{
+		for (int bitDepth : new int[]{8, 16, 32})
+		{
+			ImageStack image = ImageStack.create(5, 4, 6, bitDepth);
+			for (int z = 0; z < 6; z++)
+			{
+				image.setVoxel(1, 1, z, 10 + z);
+				image.setVoxel(2, 2, z, 3);
+			}
+			
+			LabelRemapper remapper = LabelRemapper.keeping(new int[]{3, 12, 15});
+			remapper.setNumberOfThreads(3);
+			remapper.applyTo(image);
+			
+			for (int z = 0; z < 6; z++)
+			{
+				int expected = z == 2 || z == 5 ? 10 + z : 0;
+				assertEquals(expected, image.getVoxel(1, 1, z), 0);
+				assertEquals(3, image.getVoxel(2, 2, z), 0);
+				assertEquals(0, image.getVoxel(0, 0, z), 0);
+			}
+		}
+	}
+}
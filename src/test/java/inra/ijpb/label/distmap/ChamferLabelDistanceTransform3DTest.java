@@ -0,0 +1,67 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.label.distmap;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import ij.ImageStack;
+import inra.ijpb.binary.distmap.DistanceTransform3DFloat;
+
+public class ChamferLabelDistanceTransform3DTest
+{
+	/**
+	 * The distance map of each label must be the same as the distance map of
+	 * the binary image of this label.
+	 */
+	@Test
+	public void testDistanceMap_CompareBinary()
+	{
+		int sizeX = 12, sizeY = 10, sizeZ = 8;
+		ImageStack image = ImageStack.create(sizeX, sizeY, sizeZ, 8);
+		for (int z = 1; z < sizeZ - 1; z++)
+			for (int y = 0; y < sizeY; y++)
+				for (int x = 1; x < sizeX; x++)
+					image.setVoxel(x, y, z, 1 + (x / 6 + 2 * (z / 4)));
+		float[] weights = new float[]{3, 4, 5};
+		
+		ImageStack result = new ChamferLabelDistanceTransform3D(weights).distanceMap(image);
+		
+		assertEquals(32, result.getBitDepth());
+		for (int label = 1; label <= 4; label++)
+		{
+			ImageStack mask = ImageStack.create(sizeX, sizeY, sizeZ, 8);
+			for (int z = 0; z < sizeZ; z++)
+				for (int y = 0; y < sizeY; y++)
+					for (int x = 0; x < sizeX; x++)
+						mask.setVoxel(x, y, z, image.getVoxel(x, y, z) == label ? 255 : 0);
+			ImageStack expected = new DistanceTransform3DFloat(weights).distanceMap(mask);
+
+			for (int z = 0; z < sizeZ; z++)
+				for (int y = 0; y < sizeY; y++)
+					for (int x = 0; x < sizeX; x++)
+						if (image.getVoxel(x, y, z) == label)
+							assertEquals(expected.getVoxel(x, y, z), result.getVoxel(x, y, z), 1e-5);
+		}
+	}
+}
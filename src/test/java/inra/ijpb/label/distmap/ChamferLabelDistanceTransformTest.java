@@ -0,0 +1,106 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.label.distmap;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.binary.distmap.DistanceTransform3x3Float;
+
+public class ChamferLabelDistanceTransformTest
+{
+	/**
+	 * The distance map of each label must be the same as the distance map of
+	 * the binary image of this label.
+	 */
+	@Test
+	public void testDistanceMap_CompareBinary3x3()
+	{
+		ImageProcessor image = createTouchingLabels();
+		float[] weights = new float[]{3, 4};
+		
+		ImageProcessor result = new ChamferLabelDistanceTransform(weights).distanceMap(image);
+		
+		for (int label = 1; label <= 3; label++)
+		{
+			ImageProcessor mask = new ByteProcessor(image.getWidth(), image.getHeight());
+			for (int i = 0; i < image.getPixelCount(); i++)
+			{
+				mask.set(i, image.get(i) == label ? 255 : 0);
+			}
+			ImageProcessor expected = new DistanceTransform3x3Float(weights).distanceMap(mask);
+			
+			for (int i = 0; i < image.getPixelCount(); i++)
+			{
+				if (image.get(i) == label)
+				{
+					assertEquals(expected.getf(i), result.getf(i), 1e-5);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks knight-moves with touching labels.
+	 */
+	@Test
+	public void testDistanceMap_TouchingLabels5x5()
+	{
+		ImageProcessor image = new ByteProcessor(13, 9);
+		fillRect(image, 1, 6, 1, 7, 4);
+		fillRect(image, 7, 11, 1, 7, 9);
+		
+		ImageProcessor result = new ChamferLabelDistanceTransform(new float[]{5, 7, 11}).distanceMap(image);
+		
+		assertEquals(32, result.getBitDepth());
+		assertEquals(0, result.getf(0, 0), 1e-6);
+		assertEquals(1, result.getf(6, 4), 1e-6);
+		assertEquals(1, result.getf(7, 4), 1e-6);
+		assertEquals(3, result.getf(9, 4), 1e-6);
+		assertEquals(3, result.getf(4, 4), 1e-6);
+	}
+
+	private static final ImageProcessor createTouchingLabels()
+	{
+		ImageProcessor image = new ByteProcessor(15, 12);
+		fillRect(image, 1, 7, 1, 10, 1);
+		fillRect(image, 8, 13, 1, 5, 2);
+		fillRect(image, 8, 14, 6, 11, 3);
+		image.set(4, 5, 0);
+		return image;
+	}
+	
+	private static final void fillRect(ImageProcessor image, int xmin,
+			int xmax, int ymin, int ymax, double value)
+	{
+		for (int y = ymin; y <= ymax; y++)
+		{
+			for (int x = xmin; x <= xmax; x++) 
+			{
+				image.setf(x, y, (float) value);
+			}
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.label.distmap;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+public class EuclideanLabelDistanceTransformTest
+{
+	/**
+	 * Two touching rectangles must be processed independently.
+	 */
+	@Test
+	public void testDistanceMap_TouchingLabels()
+	{
+		ImageProcessor image = new ByteProcessor(12, 7);
+		fillRect(image, 1, 5, 1, 5, 3);
+		fillRect(image, 6, 10, 1, 5, 7);
+		
+		ImageProcessor result = new EuclideanLabelDistanceTransform().distanceMap(image);
+		
+		assertEquals(32, result.getBitDepth());
+		assertEquals(0, result.getf(0, 0), 1e-6);
+		assertEquals(3, result.getf(3, 3), 1e-6);
+		assertEquals(3, result.getf(8, 3), 1e-6);
+		assertEquals(1, result.getf(5, 3), 1e-6);
+		assertEquals(1, result.getf(6, 3), 1e-6);
+	}
+	
+	/**
+	 * Compares with brute-force computation on random label images with
+	 * anisotropic pixels.
+	 */
+	@Test
+	public void testDistanceMap_CompareBruteForce()
+	{
+		Random random = new Random(19);
+		double sx = 0.7, sy = 1.6;
+		int sizeX = 23, sizeY = 17;
+		for (int trial = 0; trial < 3; trial++)
+		{
+			ImageProcessor image = new ByteProcessor(sizeX, sizeY);
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					image.set(x, y, 1 + (x / 5 + 2 * (y / 4)) % 4);
+				}
+			}
+			for (int i = 0; i < 3 * trial; i++)
+			{
+				image.set(random.nextInt(sizeX), random.nextInt(sizeY), 0);
+			}
+			
+			EuclideanLabelDistanceTransform algo = new EuclideanLabelDistanceTransform(sx, sy);
+			algo.setNumberOfThreads(1 + 2 * trial);
+			ImageProcessor result = algo.distanceMap(image);
+			
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					int label = image.get(x, y);
+					double minDist = label == 0 ? 0 : Double.POSITIVE_INFINITY;
+					for (int y2 = 0; y2 < sizeY; y2++)
+						for (int x2 = 0; x2 < sizeX; x2++)
+							if (image.get(x2, y2) != label)
+							{
+								double dx = (x2 - x) * sx, dy = (y2 - y) * sy;
+								minDist = Math.min(minDist, Math.sqrt(dx * dx + dy * dy));
+							}
+					assertEquals(minDist, result.getf(x, y), 1e-4);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * A label filling the whole image has no boundary within the image.
+	 */
+	@Test
+	public void testDistanceMap_SingleLabel()
+	{
+		ImageProcessor image = new ByteProcessor(5, 4);
+		fillRect(image, 0, 4, 0, 3, 2);
+		
+		ImageProcessor result = new EuclideanLabelDistanceTransform().distanceMap(image);
+		
+		assertEquals(Float.MAX_VALUE, result.getf(2, 2), 1e-6);
+	}
+
+	private static final void fillRect(ImageProcessor image, int xmin,
+			int xmax, int ymin, int ymax, double value)
+	{
+		for (int y = ymin; y <= ymax; y++)
+		{
+			for (int x = xmin; x <= xmax; x++) 
+			{
+				image.setf(x, y, (float) value);
+			}
+		}
+	}
+}
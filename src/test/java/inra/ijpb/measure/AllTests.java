@@ -30,10 +30,14 @@ import org.junit.runners.Suite;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
 	// generic classes
+	CompactRegionAdjacencyGraphTest.class,
 	GeometricMeasures2DTest.class,
 	GeometricMeasures3DTest.class,
 	GeometryUtilsTest.class,
+	IntensityMeasuresTest.class,
+	LabelConfigurationCounter3DTest.class,
 	RegionAdjacencyGraphTest.class, 
+	RegionAnalyzer3DTest.class,
 	Vector3dTest.class,
 	})
 public class AllTests {
@@ -0,0 +1,137 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.measure;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+import org.junit.Test;
+
+public class CompactRegionAdjacencyGraphTest
+{
+	/**
+	 * Checks edges, contact counts and neighbors on a 2D image with five
+	 * regions separated by watershed lines.
+	 */
+	@Test
+	public void testCompute_FiveRegions()
+	{
+		byte[] data = new byte[]{
+				1, 1, 1, 0, 2, 2, 2, 
+				1, 1, 0, 5, 0, 2, 2, 
+				1, 0, 5, 5, 5, 0, 2, 
+				0, 5, 5, 5, 5, 5, 0,
+				3, 0, 5, 5, 5, 0, 4, 
+				3, 3, 0, 5, 0, 4, 4, 
+				3, 3, 3, 0, 4, 4, 4
+		};
+		ImageProcessor image = new ByteProcessor(7, 7, data);
+		
+		CompactRegionAdjacencyGraph graph = CompactRegionAdjacencyGraph.compute(image);
+		assertEquals(8, graph.getEdgeCount());
+		
+		// edges are sorted by labels
+		assertEquals(1, graph.getLabel1(0));
+		assertEquals(2, graph.getLabel2(0));
+		assertEquals(1, graph.getContactCount(0));
+		assertTrue(Double.isNaN(graph.getMeanBoundaryIntensity(0)));
+		
+		assertArrayEquals(new int[]{1, 2, 3, 4}, graph.getNeighbors(5));
+		assertArrayEquals(new int[]{2, 3, 5}, graph.getNeighbors(1));
+		assertEquals(-1, graph.findEdge(1, 4));
+		assertEquals(graph.findEdge(3, 5), graph.findEdge(5, 3));
+	}
+	
+	/**
+	 * Compares contact counts and boundary intensities with a direct
+	 * computation, using various numbers of threads.
+	 */
+	@Test
+	public void testCompute_RandomStack()
+	{
+		int sizeX = 12, sizeY = 10, sizeZ = 9;
+		Random random = new Random(1);
+		ImageStack labels = ImageStack.create(sizeX, sizeY, sizeZ, 16);
+		ImageStack intensity = ImageStack.create(sizeX, sizeY, sizeZ, 32);
+		for (int z = 0; z < sizeZ; z++)
+		{
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					labels.setVoxel(x, y, z, random.nextInt(4) == 0 ? 0 : 1 + random.nextInt(30));
+					intensity.setVoxel(x, y, z, random.nextInt(100));
+				}
+			}
+		}
+		
+		// compute expected contact counts and intensity sums
+		TreeMap<Long, double[]> expected = new TreeMap<Long, double[]>();
+		int[][] shifts = new int[][]{{1, 0, 0}, {0, 1, 0}, {0, 0, 1}};
+		for (int z = 0; z < sizeZ; z++)
+		{
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					int label = (int) labels.getVoxel(x, y, z);
+					for (int[] shift : shifts)
+					{
+						int x2 = x + 2 * shift[0], y2 = y + 2 * shift[1], z2 = z + 2 * shift[2];
+						if (label == 0 || x2 >= sizeX || y2 >= sizeY || z2 >= sizeZ)
+							continue;
+						int label2 = (int) labels.getVoxel(x2, y2, z2);
+						if (label2 == 0 || label2 == label)
+							continue;
+						long key = Math.min(label, label2) * 1000L + Math.max(label, label2);
+						if (!expected.containsKey(key))
+							expected.put(key, new double[2]);
+						expected.get(key)[0]++;
+						expected.get(key)[1] += intensity.getVoxel(x + shift[0], y + shift[1], z + shift[2]);
+					}
+				}
+			}
+		}
+		
+		for (int nThreads = 1; nThreads <= 5; nThreads += 2)
+		{
+			CompactRegionAdjacencyGraph graph = CompactRegionAdjacencyGraph.compute(labels, intensity, nThreads);
+			assertEquals(expected.size(), graph.getEdgeCount());
+			int e = 0;
+			for (long key : expected.keySet())
+			{
+				double[] values = expected.get(key);
+				assertEquals(key / 1000, graph.getLabel1(e));
+				assertEquals(key % 1000, graph.getLabel2(e));
+				assertEquals(values[0], graph.getContactCount(e), 0);
+				assertEquals(values[1] / values[0], graph.getMeanBoundaryIntensity(e), 1e-10);
+				e++;
+			}
+		}
+	}
+}
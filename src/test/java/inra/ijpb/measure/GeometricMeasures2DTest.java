@@ -221,6 +221,23 @@ public class GeometricMeasures2DTest
 		assertEquals(4, table.getValue("Radius", 3), .1);
 	}
 
+	/**
+	 * Test method for {@link ijt.measure.geometric.GeometricMeasures2D#maxInscribedCircle(ij.process.ImageProcessor)},
+	 * using touching particles.
+	 */
+	@Test
+	public final void testMaxInscribedCircle_TouchingLabels() 
+	{
+		ImageProcessor image = new ByteProcessor(9, 11);
+		fillRect(image, 1, 3, 1, 9, 2);
+		fillRect(image, 4, 6, 1, 9, 5);
+		
+		ResultsTable table = GeometricMeasures2D.maximumInscribedCircle(image);
+		
+		assertEquals(2, table.getValue("Radius", 0), .1);
+		assertEquals(2, table.getValue("Radius", 1), .1);
+	}
+
 	private static final void fillRect(ImageProcessor image, int xmin,
 			int xmax, int ymin, int ymax, double value)
 	{
@@ -120,6 +120,36 @@ public class GeometricMeasures3DTest {
 		assertEquals(10, table.getValue("Radius3", 0), .1);
 	}
 	
+	/**
+	 * Test method for {@link GeometricMeasures3D#maximumInscribedSphere(ImageStack, double[])},
+	 * using touching particles.
+	 */
+	@Test
+	public final void testMaximumInscribedSphere_TouchingLabels() 
+	{
+		ImageStack image = ImageStack.create(8, 9, 9, 8);
+		for (int z = 1; z < 8; z++)
+		{
+			for (int y = 1; y < 8; y++)
+			{
+				for (int x = 1; x < 4; x++)
+				{
+					image.setVoxel(x, y, z, 2);
+					image.setVoxel(x + 3, y, z, 5);
+				}
+			}
+		}
+		
+		ResultsTable table = GeometricMeasures3D.maximumInscribedSphere(image, new double[]{1, 1, 1});
+		
+		assertEquals(2, table.getValue("Label", 0), 0);
+		assertEquals(2, table.getValue("Radius", 0), .1);
+		assertEquals(2, table.getValue("xi", 0), .1);
+		assertEquals(5, table.getValue("Label", 1), 0);
+		assertEquals(2, table.getValue("Radius", 1), .1);
+		assertEquals(5, table.getValue("xi", 1), .1);
+	}
+	
 	
 	/**
 	 * Generate a ball of radius 20 in a discrete image of size 50x50x50. 
@@ -0,0 +1,236 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.measure;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.measure.ResultsTable;
+
+import org.junit.Test;
+
+public class IntensityMeasuresTest
+{
+	/**
+	 * Compares the measures computed on a 8-bit image with values computed
+	 * from the lists of voxel values of each label.
+	 */
+	@Test
+	public void testMeasures_Byte()
+	{
+		checkMeasures(8, 1);
+	}
+	
+	/**
+	 * Compares the measures computed on a 16-bit image with values computed
+	 * from the lists of voxel values of each label.
+	 */
+	@Test
+	public void testMeasures_Short()
+	{
+		checkMeasures(16, 2);
+	}
+	
+	/**
+	 * Compares the measures computed on a 32-bit image with values computed
+	 * from the lists of voxel values of each label.
+	 */
+	@Test
+	public void testMeasures_Float()
+	{
+		checkMeasures(32, 3);
+	}
+	
+	/**
+	 * Checks the median and the mode on a small image with known values.
+	 */
+	@Test
+	public void testMedianMode()
+	{
+		ImageStack image = ImageStack.create(5, 1, 1, 8);
+		ImageStack labels = ImageStack.create(5, 1, 1, 8);
+		int[] values = new int[]{5, 3, 3, 9, 7};
+		for (int x = 0; x < 5; x++)
+		{
+			image.setVoxel(x, 0, 0, values[x]);
+			labels.setVoxel(x, 0, 0, 4);
+		}
+		
+		IntensityMeasures im = new IntensityMeasures(new ImagePlus("image", image), new ImagePlus("labels", labels));
+		assertEquals(5, im.getMedian().getValue("Median", 0), 0);
+		assertEquals(3, im.getMode().getValue("Mode", 0), 0);
+		assertEquals(9, im.getMax().getValue("Max", 0), 0);
+		assertEquals(3, im.getMin().getValue("Min", 0), 0);
+		assertEquals(5.4, im.getMean().getValue("Mean", 0), 1e-10);
+	}
+	
+	/**
+	 * Checks the median of 16-bit labels whose histograms
+	 * exceed the number of bins a thread can keep, such that histograms are
+	 * merged while the slices are processed.
+	 */
+	@Test
+	public void testMedian_WideHistograms()
+	{
+		int sizeX = 40, sizeY = 40, sizeZ = 6, nLabels = 20;
+		Random random = new Random(9);
+		ImageStack image = ImageStack.create(sizeX, sizeY, sizeZ, 16);
+		ImageStack labels = ImageStack.create(sizeX, sizeY, sizeZ, 8);
+		
+		@SuppressWarnings("unchecked")
+		ArrayList<Double>[] lists = new ArrayList[nLabels];
+		for (int i = 0; i < nLabels; i++)
+		{
+			lists[i] = new ArrayList<Double>();
+		}
+		
+		for (int z = 0; z < sizeZ; z++)
+		{
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					// each label spans the whole range of 16-bit values
+					int index = (x + y * sizeX) % nLabels;
+					double value = random.nextInt(65536);
+					labels.setVoxel(x, y, z, index + 1);
+					image.setVoxel(x, y, z, value);
+					lists[index].add(value);
+				}
+			}
+		}
+		
+		IntensityMeasures im = new IntensityMeasures(new ImagePlus("image", image), new ImagePlus("labels", labels));
+		ResultsTable median = im.getMedian();
+		ResultsTable count = im.getNumberOfVoxels();
+		for (int i = 0; i < nLabels; i++)
+		{
+			ArrayList<Double> values = lists[i];
+			Collections.sort(values);
+			assertEquals(values.size(), count.getValue("NumberOfVoxels", i), 0);
+			assertEquals(values.get(values.size() / 2), median.getValue("Median", i), 0);
+		}
+	}
+	
+	private static final void checkMeasures(int bitDepth, long seed)
+	{
+		int sizeX = 20, sizeY = 15, sizeZ = 12;
+		Random random = new Random(seed);
+		ImageStack image = ImageStack.create(sizeX, sizeY, sizeZ, bitDepth);
+		ImageStack labels = ImageStack.create(sizeX, sizeY, sizeZ, 16);
+		int[] labelValues = new int[]{2, 5, 300, 1000};
+		
+		@SuppressWarnings("unchecked")
+		ArrayList<Double>[] lists = new ArrayList[labelValues.length];
+		for (int i = 0; i < lists.length; i++)
+		{
+			lists[i] = new ArrayList<Double>();
+		}
+		
+		for (int z = 0; z < sizeZ; z++)
+		{
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					// each label is a band of voxels along the z axis
+					int index = z / 3;
+					if (x == 0) continue;
+					labels.setVoxel(x, y, z, labelValues[index]);
+					
+					// use different ranges of values for each label
+					double value;
+					if (bitDepth == 8)
+						value = 50 * index + random.nextInt(40);
+					else if (bitDepth == 16)
+						value = 10000 * index + random.nextInt(3000);
+					else 
+						value = (float) (random.nextGaussian() * 10 - 5 * index);
+					image.setVoxel(x, y, z, value);
+					lists[index].add(value);
+				}
+			}
+		}
+		
+		IntensityMeasures im = new IntensityMeasures(new ImagePlus("image", image), new ImagePlus("labels", labels));
+		ResultsTable mean = im.getMean();
+		ResultsTable stdDev = im.getStdDev();
+		ResultsTable median = im.getMedian();
+		ResultsTable mode = im.getMode();
+		ResultsTable min = im.getMin();
+		ResultsTable max = im.getMax();
+		ResultsTable skewness = im.getSkewness();
+		ResultsTable count = im.getNumberOfVoxels();
+		
+		for (int i = 0; i < labelValues.length; i++)
+		{
+			ArrayList<Double> values = lists[i];
+			Collections.sort(values);
+			int n = values.size();
+			double sum = 0, sum2 = 0, sum3 = 0;
+			for (double v : values)
+			{
+				sum += v;
+				sum2 += v * v;
+				sum3 += v * v * v;
+			}
+			double mu = sum / n;
+			double var = 0;
+			for (double v : values)
+			{
+				var += (v - mu) * (v - mu);
+			}
+			var /= n;
+			double skew = ((sum3 - 3.0 * mu * sum2) / n + 2.0 * mu * mu * mu) / (var * Math.sqrt(var));
+			
+			// mode as smallest of the most frequent values
+			double modeValue = values.get(0);
+			int maxCount = 0;
+			for (int j = 0; j < n;)
+			{
+				int j2 = j + 1;
+				while (j2 < n && values.get(j2).equals(values.get(j))) j2++;
+				if (j2 - j > maxCount)
+				{
+					maxCount = j2 - j;
+					modeValue = values.get(j);
+				}
+				j = j2;
+			}
+			
+			assertEquals(Integer.toString(labelValues[i]), mean.getLabel(i));
+			assertEquals(n, count.getValue("NumberOfVoxels", i), 0);
+			assertEquals(mu, mean.getValue("Mean", i), 1e-6);
+			assertEquals(Math.sqrt(var), stdDev.getValue("StdDev", i), 1e-6);
+			assertEquals(values.get(n / 2), median.getValue("Median", i), 0);
+			assertEquals(modeValue, mode.getValue("Mode", i), 0);
+			assertEquals(values.get(0), min.getValue("Min", i), 0);
+			assertEquals(values.get(n - 1), max.getValue("Max", i), 0);
+			assertEquals(skew, skewness.getValue("Skewness", i), 1e-6);
+		}
+	}
+}
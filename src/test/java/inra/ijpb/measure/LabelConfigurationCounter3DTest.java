@@ -0,0 +1,125 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.measure;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import ij.ImageStack;
+
+import org.junit.Test;
+
+public class LabelConfigurationCounter3DTest
+{
+	/**
+	 * Compares histograms computed with various numbers of threads with a
+	 * direct computation.
+	 */
+	@Test
+	public void testCountConfigurations_RandomLabels()
+	{
+		ImageStack image = createRandomLabelImage(new int[]{3, 7, 12}, 16);
+		int[] labels = new int[]{12, 3, 7};
+		int[][] expected = countConfigurationsDirect(image, labels);
+		
+		LabelConfigurationCounter3D counter = new LabelConfigurationCounter3D(labels);
+		for (int nThreads = 1; nThreads <= 5; nThreads++)
+		{
+			int[][] histograms = counter.countConfigurations(image, nThreads);
+			for (int i = 0; i < labels.length; i++)
+			{
+				assertArrayEquals(expected[i], histograms[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Uses label values too sparse for a dense look-up table, and a label
+	 * that is not in the image.
+	 */
+	@Test
+	public void testCountConfigurations_SparseLabels()
+	{
+		ImageStack image = createRandomLabelImage(new int[]{5, 3000000, 16000000}, 32);
+		int[] labels = new int[]{16000000, 5, 3000000, 42};
+		int[][] expected = countConfigurationsDirect(image, labels);
+		
+		LabelConfigurationCounter3D counter = new LabelConfigurationCounter3D(labels);
+		int[][] histograms = counter.countConfigurations(image, 3);
+		for (int i = 0; i < 3; i++)
+		{
+			assertArrayEquals(expected[i], histograms[i]);
+		}
+		assertNull(histograms[3]);
+	}
+	
+	private static final ImageStack createRandomLabelImage(int[] labels, int bitDepth)
+	{
+		ImageStack image = ImageStack.create(13, 11, 9, bitDepth);
+		Random random = new Random(2);
+		for (int z = 0; z < 9; z++)
+		{
+			for (int y = 0; y < 11; y++)
+			{
+				for (int x = 0; x < 13; x++)
+				{
+					int k = random.nextInt(labels.length + 1);
+					image.setVoxel(x, y, z, k == 0 ? 0 : labels[k - 1]);
+				}
+			}
+		}
+		return image;
+	}
+	
+	private static final int[][] countConfigurationsDirect(ImageStack image, int[] labels)
+	{
+		int[][] histograms = new int[labels.length][256];
+		for (int z = 0; z < image.getSize() - 1; z++)
+		{
+			for (int y = 0; y < image.getHeight() - 1; y++)
+			{
+				for (int x = 0; x < image.getWidth() - 1; x++)
+				{
+					for (int i = 0; i < labels.length; i++)
+					{
+						int config = 0;
+						for (int k = 0; k < 8; k++)
+						{
+							int label = (int) image.getVoxel(x + (k & 1), y + ((k >> 1) & 1), z + (k >> 2));
+							if (label == labels[i])
+								config |= 1 << k;
+						}
+						histograms[i][config]++;
+					}
+				}
+			}
+		}
+		// configuration 0 is never counted
+		for (int i = 0; i < labels.length; i++)
+		{
+			histograms[i][0] = 0;
+		}
+		return histograms;
+	}
+}
@@ -0,0 +1,133 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.measure;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import ij.ImageStack;
+import inra.ijpb.label.LabelImages;
+
+import org.junit.Test;
+
+public class RegionAnalyzer3DTest
+{
+	/**
+	 * Compares all the features with the ones computed by GeometricMeasures3D,
+	 * using various numbers of threads.
+	 */
+	@Test
+	public void testFeatures_RandomBlobs()
+	{
+		ImageStack image = createBlobsImage();
+		int[] labels = LabelImages.findAllLabels(image);
+		double[] resol = new double[]{0.5, 1.2, 2.0};
+		
+		double[] volumes = GeometricMeasures3D.volume(image, labels, resol);
+		double[] surfaces3 = GeometricMeasures3D.surfaceAreaCrofton(image, labels, resol, 3);
+		double[] surfaces13 = GeometricMeasures3D.surfaceAreaCrofton(image, labels, resol, 13);
+		double[] euler6 = GeometricMeasures3D.eulerNumber(image, labels, 6);
+		double[] euler26 = GeometricMeasures3D.eulerNumber(image, labels, 26);
+		double[][] centroids = GeometricMeasures3D.centroids(image, labels);
+		double[][] ellipsoids = GeometricMeasures3D.inertiaEllipsoid(image, labels, resol);
+		double[][] boxes = GeometricMeasures3D.boundingBox(image, labels);
+		
+		for (int nThreads = 1; nThreads <= 4; nThreads++)
+		{
+			RegionAnalyzer3D analyzer = new RegionAnalyzer3D(image, labels, nThreads);
+			assertArrayEquals(volumes, analyzer.volume(resol), 1e-10);
+			assertArrayEquals(surfaces3, analyzer.surfaceAreaCrofton(resol, 3), 1e-8);
+			assertArrayEquals(surfaces13, analyzer.surfaceAreaCrofton(resol, 13), 1e-8);
+			assertArrayEquals(euler6, analyzer.eulerNumber(6), 1e-10);
+			assertArrayEquals(euler26, analyzer.eulerNumber(26), 1e-10);
+			
+			double[][] centroids2 = analyzer.centroids();
+			double[][] ellipsoids2 = analyzer.inertiaEllipsoid(resol);
+			double[][] boxes2 = analyzer.boundingBox();
+			for (int i = 0; i < labels.length; i++)
+			{
+				assertArrayEquals(centroids[i], centroids2[i], 1e-10);
+				assertArrayEquals(boxes[i], boxes2[i], 0);
+				// compare center and radii
+				for (int j = 0; j < 6; j++)
+				{
+					assertEquals(ellipsoids[i][j], ellipsoids2[i][j], 1e-8);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Labels that are not in the list are ignored.
+	 */
+	@Test
+	public void testVoxelCount_LabelSubset()
+	{
+		ImageStack image = createBlobsImage();
+		int[] labels = LabelImages.findAllLabels(image);
+		int[] counts = LabelImages.voxelCount(image, labels);
+		
+		int[] subset = new int[]{labels[3], labels[1]};
+		RegionAnalyzer3D analyzer = new RegionAnalyzer3D(image, subset, 2);
+		int[] counts2 = analyzer.voxelCount();
+		assertEquals(counts[3], counts2[0]);
+		assertEquals(counts[1], counts2[1]);
+	}
+	
+	/**
+	 * Generates a label image containing overlapping random balls.
+	 */
+	private static final ImageStack createBlobsImage()
+	{
+		int sizeX = 30, sizeY = 25, sizeZ = 20;
+		ImageStack image = ImageStack.create(sizeX, sizeY, sizeZ, 16);
+		Random random = new Random(1);
+		for (int label = 1; label <= 12; label++)
+		{
+			int cx = random.nextInt(sizeX), cy = random.nextInt(sizeY), cz = random.nextInt(sizeZ);
+			double r = 2 + random.nextInt(6);
+			for (int z = 0; z < sizeZ; z++)
+			{
+				for (int y = 0; y < sizeY; y++)
+				{
+					for (int x = 0; x < sizeX; x++)
+					{
+						double dx = x - cx, dy = y - cy, dz = z - cz;
+						if (dx * dx + dy * dy + dz * dz <= r * r)
+							image.setVoxel(x, y, z, label * 10);
+					}
+				}
+			}
+		}
+		return image;
+	}
+	
+	private static final void assertArrayEquals(double[] expected, double[] actual, double tol)
+	{
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++)
+		{
+			assertEquals(expected[i], actual[i], tol);
+		}
+	}
+}
@@ -0,0 +1,205 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology;
+
+import static inra.ijpb.StackTestUtils.assertSameStacks;
+import static inra.ijpb.StackTestUtils.createRandomStack;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.data.image.Images3D;
+import inra.ijpb.data.image.MappedImage3D;
+import inra.ijpb.morphology.StreamingMorphology3D.SliceWriter;
+import inra.ijpb.morphology.strel.BallStrel;
+import inra.ijpb.morphology.strel.Cross3DStrel;
+import inra.ijpb.morphology.strel.CuboidStrel;
+
+public class StreamingMorphology3DTest
+{
+	/**
+	 * Compares with dilation of whole stack, using a cuboid with even sizes.
+	 */
+	@Test
+	public final void testDilation_Cuboid()
+	{
+		ImageStack image = createRandomStack(20, 15, 12, 8, 12);
+		Strel3D strel = CuboidStrel.fromDiameterList(4, 3, 4);
+		
+		ImageStack expected = strel.dilation(image);
+		ImageStack result = process(new StreamingMorphology3D(strel), image, true);
+		
+		assertSameStacks(expected, result);
+	}
+	
+	@Test
+	public final void testErosion_Cuboid_Gray16()
+	{
+		ImageStack image = createRandomStack(20, 15, 12, 16, 12);
+		Strel3D strel = CuboidStrel.fromRadiusList(2, 1, 3);
+		
+		ImageStack expected = strel.erosion(image);
+		ImageStack result = process(new StreamingMorphology3D(strel), image, false);
+		
+		assertSameStacks(expected, result);
+	}
+	
+	/**
+	 * Uses a structuring element whose sections are not rectangles.
+	 */
+	@Test
+	public final void testDilation_Cross3D_Float()
+	{
+		ImageStack image = createRandomStack(12, 10, 8, 32, 12);
+		Strel3D strel = new Cross3DStrel();
+		
+		ImageStack expected = strel.dilation(image);
+		ImageStack result = process(new StreamingMorphology3D(strel), image, true);
+		
+		assertSameStacks(expected, result);
+	}
+	
+	/**
+	 * Uses a ball deeper than the stack, whose sections are not rectangles.
+	 */
+	@Test
+	public final void testErosion_Ball_DeeperThanStack()
+	{
+		ImageStack image = createRandomStack(16, 14, 5, 8, 12);
+		Strel3D strel = BallStrel.fromRadius(3);
+		
+		ImageStack expected = strel.erosion(image);
+		ImageStack result = process(new StreamingMorphology3D(strel), image, false);
+		
+		assertSameStacks(expected, result);
+	}
+	
+	/**
+	 * Infinite values of float stacks must be kept.
+	 */
+	@Test
+	public final void testDilation_Cuboid_InfiniteValues()
+	{
+		ImageStack image = createRandomStack(12, 10, 8, 32, 12);
+		image.setVoxel(3, 4, 2, Float.POSITIVE_INFINITY);
+		image.setVoxel(8, 2, 6, Float.NEGATIVE_INFINITY);
+		Strel3D strel = CuboidStrel.fromRadiusList(1, 1, 1);
+		
+		ImageStack result = process(new StreamingMorphology3D(strel), image, false);
+		assertEquals(Float.NEGATIVE_INFINITY, result.getVoxel(7, 3, 5), 0);
+		assertEquals(Float.NEGATIVE_INFINITY, result.getVoxel(9, 1, 7), 0);
+		
+		result = process(new StreamingMorphology3D(strel), image, true);
+		assertEquals(Float.POSITIVE_INFINITY, result.getVoxel(2, 5, 1), 0);
+		assertEquals(Float.POSITIVE_INFINITY, result.getVoxel(4, 3, 3), 0);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public final void testDilation_ColorStack()
+	{
+		ImageStack image = ImageStack.create(10, 8, 6, 24);
+		process(new StreamingMorphology3D(CuboidStrel.fromRadiusList(1, 1, 1)), image, true);
+	}
+	
+	@Test
+	public final void testRawWriter() throws IOException
+	{
+		ImageStack image = createRandomStack(10, 8, 6, 16, 12);
+		Strel3D strel = CuboidStrel.fromRadiusList(1, 1, 1);
+		ImageStack expected = strel.dilation(image);
+		
+		File file = File.createTempFile("dilation", ".raw");
+		try
+		{
+			SliceWriter writer = StreamingMorphology3D.rawWriter(file, ByteOrder.BIG_ENDIAN);
+			try
+			{
+				new StreamingMorphology3D(strel).dilation(image, writer);
+			}
+			finally
+			{
+				writer.close();
+			}
+			assertEquals(10 * 8 * 6 * 2, file.length());
+			
+			MappedImage3D result = Images3D.openMapped(file, 10, 8, 6, 16, 0, ByteOrder.BIG_ENDIAN, false);
+			try
+			{
+				for (int z = 0; z < 6; z++)
+				{
+					for (int y = 0; y < 8; y++)
+					{
+						for (int x = 0; x < 10; x++)
+						{
+							assertEquals(expected.getVoxel(x, y, z), result.getValue(x, y, z), 0);
+						}
+					}
+				}
+			}
+			finally
+			{
+				result.close();
+			}
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+	
+	private static final ImageStack process(StreamingMorphology3D filter, ImageStack image, boolean dilation)
+	{
+		final ImageStack result = new ImageStack(image.getWidth(), image.getHeight());
+		SliceWriter writer = new SliceWriter()
+		{
+			@Override
+			public void write(ImageProcessor slice)
+			{
+				result.addSlice("", slice.duplicate());
+			}
+			
+			@Override
+			public void close()
+			{
+			}
+		};
+		
+		try
+		{
+			if (dilation)
+				filter.dilation(image, writer);
+			else
+				filter.erosion(image, writer);
+		}
+		catch (IOException ex)
+		{
+			throw new RuntimeException(ex);
+		}
+		return result;
+	}
+}
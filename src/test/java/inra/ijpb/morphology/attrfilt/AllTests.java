@@ -30,6 +30,10 @@ import org.junit.runners.Suite;
 	// generic classes
 	AreaOpeningQueueTest.class,
 	SizeOpening3DQueueTest.class,
+	AreaOpeningMaxTreeTest.class,
+	BoxDiagonalOpeningMaxTreeTest.class,
+	SizeOpening3DMaxTreeTest.class,
+	ComponentTreeTest.class,
 	})
 public class AllTests {
   //nothing
@@ -0,0 +1,134 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.attrfilt;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+import org.junit.Test;
+
+public class AreaOpeningMaxTreeTest
+{
+	@Test
+	public void testProcess()
+	{
+		int sizeX = 4;
+		int sizeY = 4;
+		ImageProcessor image = new ByteProcessor(sizeX, sizeY);
+		image.set(1, 1, 5);
+		image.set(2, 1, 4);
+		image.set(1, 2, 3);
+		image.set(2, 2, 2);
+		
+		AreaOpening algo = new AreaOpeningMaxTree();
+
+		ImageProcessor output = algo.process(image, 4);
+		
+		assertEquals(2, output.get(1, 1));
+		assertEquals(2, output.get(2, 1));
+		assertEquals(2, output.get(1, 2));
+		assertEquals(2, output.get(2, 2));
+	}
+	
+	@Test
+	public void testProcessTwoMaxima()
+	{
+		int sizeX = 6;
+		int sizeY = 4;
+		ImageProcessor image = new ByteProcessor(sizeX, sizeY);
+		image.set(1, 1, 5);
+		image.set(1, 2, 4);
+		image.set(2, 1, 3);
+		image.set(2, 2, 2);
+		image.set(3, 1, 6);
+		image.set(3, 2, 5);
+		
+		AreaOpening algo = new AreaOpeningMaxTree();
+
+		ImageProcessor output = algo.process(image, 4);
+		
+		assertEquals(3, output.get(1, 1));
+		assertEquals(3, output.get(2, 1));
+		assertEquals(3, output.get(3, 1));
+		assertEquals(3, output.get(1, 2));
+		assertEquals(2, output.get(2, 2));
+		assertEquals(3, output.get(3, 2));
+	}
+
+	/**
+	 * Compares with the priority queue algorithm on random images, using both
+	 * connectivities.
+	 */
+	@Test
+	public void testProcess_CompareQueue()
+	{
+		Random random = new Random(5);
+		for (int trial = 0; trial < 20; trial++)
+		{
+			ImageProcessor image = new ByteProcessor(15, 12);
+			for (int i = 0; i < 15 * 12; i++)
+			{
+				image.set(i, random.nextInt(5) * 50);
+			}
+			int minArea = 2 + random.nextInt(15);
+			
+			for (int conn : new int[] {4, 8})
+			{
+				AreaOpeningQueue ref = new AreaOpeningQueue();
+				ref.setConnectivity(conn);
+				AreaOpeningMaxTree algo = new AreaOpeningMaxTree();
+				algo.setConnectivity(conn);
+				
+				ImageProcessor expected = ref.process(image, minArea);
+				ImageProcessor output = algo.process(image, minArea);
+				for (int i = 0; i < 15 * 12; i++)
+				{
+					assertEquals(expected.get(i), output.get(i));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks float images are processed without rounding values.
+	 */
+	@Test
+	public void testProcess_Float()
+	{
+		ImageProcessor image = new FloatProcessor(5, 3);
+		image.setf(1, 1, 2.5f);
+		image.setf(2, 1, 2.25f);
+		image.setf(3, 1, 7.5f);
+		
+		ImageProcessor output = new AreaOpeningMaxTree().process(image, 2);
+		
+		assertEquals(2.25f, output.getf(1, 1), 1e-6);
+		assertEquals(2.25f, output.getf(2, 1), 1e-6);
+		assertEquals(2.25f, output.getf(3, 1), 1e-6);
+		assertEquals(0, output.getf(0, 0), 1e-6);
+	}
+}
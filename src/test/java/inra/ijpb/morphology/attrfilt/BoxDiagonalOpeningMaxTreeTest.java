@@ -0,0 +1,94 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.attrfilt;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+import org.junit.Test;
+
+public class BoxDiagonalOpeningMaxTreeTest
+{
+	/**
+	 * A thin line is kept, whereas a compact square with the same area is
+	 * removed.
+	 */
+	@Test
+	public void testProcess()
+	{
+		ImageProcessor image = new ByteProcessor(10, 6);
+		for (int x = 1; x < 9; x++)
+		{
+			image.set(x, 1, 100);
+		}
+		for (int y = 3; y < 5; y++)
+		{
+			for (int x = 1; x < 5; x++)
+			{
+				image.set(x, y, 200);
+			}
+		}
+		
+		AreaOpening algo = new BoxDiagonalOpeningMaxTree();
+		ImageProcessor output = algo.process(image, 5);
+		
+		assertEquals(100, output.get(4, 1));
+		assertEquals(0, output.get(2, 3));
+	}
+	
+	/**
+	 * Compares with the priority queue algorithm on random images.
+	 */
+	@Test
+	public void testProcess_CompareQueue()
+	{
+		Random random = new Random(8);
+		for (int trial = 0; trial < 20; trial++)
+		{
+			ImageProcessor image = new ByteProcessor(14, 11);
+			for (int i = 0; i < 14 * 11; i++)
+			{
+				image.set(i, random.nextInt(4) * 60);
+			}
+			int minDiag = 1 + random.nextInt(6);
+			
+			for (int conn : new int[] {4, 8})
+			{
+				BoxDiagonalOpeningQueue ref = new BoxDiagonalOpeningQueue();
+				ref.setConnectivity(conn);
+				BoxDiagonalOpeningMaxTree algo = new BoxDiagonalOpeningMaxTree();
+				algo.setConnectivity(conn);
+				
+				ImageProcessor expected = ref.process(image, minDiag);
+				ImageProcessor output = algo.process(image, minDiag);
+				for (int i = 0; i < 14 * 11; i++)
+				{
+					assertEquals(expected.get(i), output.get(i));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,168 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.attrfilt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import org.junit.Test;
+
+public class ComponentTreeTest
+{
+	/**
+	 * Checks the attributes of the nodes of a simple image with two nested
+	 * components.
+	 */
+	@Test
+	public void testAttributes()
+	{
+		ImageProcessor image = createNestedSquaresImage();
+		ComponentTree tree = new ComponentTree(image, 4);
+		
+		// background, square, inner square
+		assertEquals(3, tree.getNodeCount());
+		
+		int node = tree.getNode(2 + 2 * 8);
+		assertEquals(10, tree.getLevel(node), 1e-6);
+		assertEquals(16, tree.getArea(node));
+		assertEquals(20, tree.getHeight(node), 1e-6);
+		assertEquals((12 * 10 + 4 * 30) / 16.0, tree.getMean(node), 1e-6);
+		int[] box = tree.getBoundingBox(node);
+		assertEquals(2, box[0]);
+		assertEquals(5, box[1]);
+		assertEquals(2, box[2]);
+		assertEquals(5, box[3]);
+		
+		int inner = tree.getNode(3 + 3 * 8);
+		assertEquals(4, tree.getArea(inner));
+		assertTrue(tree.isCanonical(inner));
+		assertEquals(node, tree.getParent(inner));
+	}
+
+	/**
+	 * Filtering with various attributes and thresholds reuses the same tree.
+	 */
+	@Test
+	public void testFilterImage()
+	{
+		ImageProcessor image = createNestedSquaresImage();
+		ComponentTree tree = new ComponentTree(image, 4);
+		
+		ImageProcessor result = tree.filterImage(ComponentTree.Attribute.AREA, 5);
+		assertEquals(8, result.getBitDepth());
+		assertEquals(10, result.get(3, 3));
+		assertEquals(10, result.get(2, 2));
+		
+		result = tree.filterImage(ComponentTree.Attribute.AREA, 20);
+		assertEquals(0, result.get(3, 3));
+		
+		// the inner square is a leaf with height zero
+		result = tree.filterImage(ComponentTree.Attribute.HEIGHT, 15);
+		assertEquals(10, result.get(3, 3));
+		assertEquals(10, result.get(2, 2));
+		
+		result = tree.filterImage(ComponentTree.Attribute.HEIGHT, 25);
+		assertEquals(0, result.get(2, 2));
+		
+		result = tree.filterImage(ComponentTree.Attribute.BOX_DIAGONAL, 2);
+		assertEquals(10, result.get(3, 3));
+		
+		result = tree.filterImage(ComponentTree.Attribute.MEAN, 20);
+		assertEquals(30, result.get(3, 3));
+		assertEquals(0, result.get(2, 2));
+	}
+	
+	/**
+	 * Compares area filtering with the priority queue algorithm for several
+	 * thresholds, on 16-bit random images.
+	 */
+	@Test
+	public void testFilterImage_CompareQueue()
+	{
+		Random random = new Random(3);
+		ImageProcessor image = new ShortProcessor(20, 15);
+		for (int i = 0; i < 20 * 15; i++)
+		{
+			image.set(i, random.nextInt(6) * 1000);
+		}
+		ComponentTree tree = new ComponentTree(image, 8);
+		AreaOpeningQueue ref = new AreaOpeningQueue();
+		ref.setConnectivity(8);
+		
+		for (int minArea = 1; minArea < 40; minArea += 3)
+		{
+			ImageProcessor expected = ref.process(image, minArea);
+			ImageProcessor result = tree.filterImage(ComponentTree.Attribute.AREA, minArea);
+			for (int i = 0; i < 20 * 15; i++)
+			{
+				assertEquals(expected.get(i), result.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Checks volume of nodes within a 3D image.
+	 */
+	@Test
+	public void testFilterStack()
+	{
+		ImageStack image = ImageStack.create(5, 5, 5, 8);
+		for (int z = 1; z < 4; z++)
+			for (int y = 1; y < 4; y++)
+				for (int x = 1; x < 4; x++)
+					image.setVoxel(x, y, z, 100);
+		image.setVoxel(2, 2, 2, 200);
+		
+		ComponentTree tree = new ComponentTree(image, 6);
+		assertEquals(27, tree.getArea(tree.getNode(1 + 1 * 5 + 1 * 25)));
+		
+		ImageStack result = tree.filterStack(ComponentTree.Attribute.AREA, 2);
+		assertEquals(100, result.getVoxel(2, 2, 2), .1);
+		assertEquals(100, result.getVoxel(1, 1, 1), .1);
+		
+		result = tree.filterStack(ComponentTree.Attribute.AREA, 30);
+		assertEquals(0, result.getVoxel(2, 2, 2), .1);
+	}
+	
+	/**
+	 * Creates an 8-by-8 image containing a 4-by-4 square with value 10, and a
+	 * 2-by-2 square with value 30 within it.
+	 */
+	private static final ImageProcessor createNestedSquaresImage()
+	{
+		ImageProcessor image = new ByteProcessor(8, 8);
+		for (int y = 2; y < 6; y++)
+			for (int x = 2; x < 6; x++)
+				image.set(x, y, 10);
+		for (int y = 3; y < 5; y++)
+			for (int x = 3; x < 5; x++)
+				image.set(x, y, 30);
+		return image;
+	}
+}
@@ -33,6 +33,7 @@ import org.junit.runners.Suite;
 	GeodesicReconstruction3DHybrid0Gray8Test.class,
 	GeodesicReconstruction3DHybrid0Gray16Test.class,
 	GeodesicReconstruction3DHybrid1Image3DTest.class,
+	GeodesicReconstruction3DParallelTest.class,
 	GeodesicReconstructionByDilation3DGray8Test.class,
 	GeodesicReconstructionByDilation3DScanningGray8Test.class,
 	GeodesicReconstructionByDilation3DScanningTest.class,
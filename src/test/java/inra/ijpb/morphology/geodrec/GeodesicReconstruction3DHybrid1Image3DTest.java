@@ -24,9 +24,16 @@ package inra.ijpb.morphology.geodrec;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
 import ij.IJ;
 import ij.ImagePlus;
 import ij.ImageStack;
+import inra.ijpb.data.image.Images3D;
+import inra.ijpb.data.image.MappedImage3D;
 import inra.ijpb.morphology.Morphology;
 import inra.ijpb.morphology.strel.CubeStrel;
 
@@ -49,6 +56,59 @@ public class GeodesicReconstruction3DHybrid1Image3DTest {
 		assertEquals(255, result.getVoxel(5, 15, 5), .01);
 	}
 
+	/**
+	 * Computes reconstruction on images mapped into memory, and compares with
+	 * the reconstruction of the corresponding image stacks.
+	 */
+	@Test
+	public final void testDilationCubicMeshC26_MappedImages() throws IOException {
+		ImageStack mask = createCubicMeshImage();
+		
+		ImageStack marker = ImageStack.create(20, 20, 20, 8);
+		marker.setVoxel(5, 5, 5, 255);
+		
+		GeodesicReconstruction3DHybrid1Image3D algo = new GeodesicReconstruction3DHybrid1Image3D();
+		algo.setConnectivity(26);
+		ImageStack expected = algo.applyTo(marker, mask);
+
+		File markerFile = File.createTempFile("marker", ".raw");
+		File maskFile = File.createTempFile("mask", ".raw");
+		File resultFile = File.createTempFile("result", ".raw");
+		try {
+			MappedImage3D marker2 = Images3D.createMapped(markerFile, 20, 20, 20, 8);
+			MappedImage3D mask2 = Images3D.createMapped(maskFile, 20, 20, 20, 8);
+			MappedImage3D result2 = Images3D.createMapped(resultFile, 20, 20, 20, 8);
+			try {
+				for(int z = 0; z < 20; z++) {
+					for(int y = 0; y < 20; y++) {
+						for(int x = 0; x < 20; x++) {
+							marker2.set(x, y, z, (int) marker.getVoxel(x, y, z));
+							mask2.set(x, y, z, (int) mask.getVoxel(x, y, z));
+						}
+					}
+				}
+				
+				algo.applyTo(marker2, mask2, result2);
+				
+				for(int z = 0; z < 20; z++) {
+					for(int y = 0; y < 20; y++) {
+						for(int x = 0; x < 20; x++) {
+							assertEquals(expected.getVoxel(x, y, z), result2.getValue(x, y, z), .01);
+						}
+					}
+				}
+			} finally {
+				marker2.close();
+				mask2.close();
+				result2.close();
+			}
+		} finally {
+			markerFile.delete();
+			maskFile.delete();
+			resultFile.delete();
+		}
+	}
+
 	@Test
 	public final void testErosionCubicMeshC6() {
 		ImageStack mask = createCubicMeshImage();
@@ -204,6 +264,34 @@ public class GeodesicReconstruction3DHybrid1Image3DTest {
 	}
 	
 
+	/**
+	 * Compares with the algorithm working on byte arrays, on random
+	 * grayscale images, for both types of reconstruction and both
+	 * connectivities.
+	 */
+	@Test
+	public final void testRandomGray8_SameAsHybrid0Gray8() {
+		Random random = new Random(42);
+		ImageStack mask = ImageStack.create(17, 13, 11, 8);
+		ImageStack marker = ImageStack.create(17, 13, 11, 8);
+		for (int z = 0; z < 11; z++) {
+			for (int y = 0; y < 13; y++) {
+				for (int x = 0; x < 17; x++) {
+					mask.setVoxel(x, y, z, random.nextInt(256));
+					marker.setVoxel(x, y, z, random.nextInt(20) == 0 ? random.nextInt(256) : 0);
+				}
+			}
+		}
+		
+		for (GeodesicReconstructionType type : GeodesicReconstructionType.values()) {
+			for (int connectivity : new int[] {6, 26}) {
+				ImageStack expected = new GeodesicReconstruction3DHybrid0Gray8(type, connectivity).applyTo(marker, mask);
+				ImageStack result = new GeodesicReconstruction3DHybrid1Image3D(type, connectivity).applyTo(marker, mask);
+				assertStackEquals(expected, result);
+			}
+		}
+	}
+
 	private ImageStack createCubicMeshImage() {
 		int sizeX = 20;
 		int sizeY = 20;
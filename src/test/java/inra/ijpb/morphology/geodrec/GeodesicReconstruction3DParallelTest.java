@@ -0,0 +1,145 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.geodrec;
+
+import static inra.ijpb.StackTestUtils.assertSameStacks;
+import static inra.ijpb.StackTestUtils.createSparseRandomStack;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ij.ImageStack;
+
+public class GeodesicReconstruction3DParallelTest
+{
+	/**
+	 * The marker is located at the bottom of a tube that goes up to the last
+	 * slice, and down again, crossing all tiles twice.
+	 */
+	@Test
+	public final void testDilationFoldedTube()
+	{
+		int sizeX = 10, sizeY = 10, sizeZ = 64;
+		ImageStack mask = ImageStack.create(sizeX, sizeY, sizeZ, 8);
+		for (int z = 0; z < sizeZ; z++)
+		{
+			mask.setVoxel(1, 1, z, 200);
+			mask.setVoxel(8, 8, z, 200);
+		}
+		for (int i = 1; i < 9; i++)
+		{
+			mask.setVoxel(i, i, sizeZ - 1, 200);
+			mask.setVoxel(i + 1, i, sizeZ - 1, 200);
+		}
+		ImageStack marker = ImageStack.create(sizeX, sizeY, sizeZ, 8);
+		marker.setVoxel(1, 1, 0, 255);
+		
+		GeodesicReconstruction3DParallel algo = new GeodesicReconstruction3DParallel(
+				GeodesicReconstructionType.BY_DILATION, 6);
+		algo.setNumberOfThreads(4);
+		ImageStack result = algo.applyTo(marker, mask);
+		
+		assertEquals(200, result.getVoxel(1, 1, sizeZ - 1), .01);
+		assertEquals(200, result.getVoxel(8, 8, 0), .01);
+		assertEquals(0, result.getVoxel(5, 5, 0), .01);
+	}
+	
+	/**
+	 * Compares the results with those of the sequential algorithm, for
+	 * various number of threads, bit depths, types and connectivities.
+	 */
+	@Test
+	public final void testApplyTo_SameAsHybrid()
+	{
+		int[] bitDepths = new int[] {8, 16, 32};
+		GeodesicReconstructionType[] types = new GeodesicReconstructionType[] {
+				GeodesicReconstructionType.BY_DILATION,
+				GeodesicReconstructionType.BY_EROSION };
+		int[] connectivities = new int[] {6, 26};
+		
+		for (int bitDepth : bitDepths)
+		{
+			ImageStack mask = createSparseRandomStack(20, 15, 70, bitDepth, 0.7, 1);
+			for (GeodesicReconstructionType type : types)
+			{
+				ImageStack marker = createMarker(mask, type, 2);
+				for (int conn : connectivities)
+				{
+					ImageStack expected = createHybrid(type, conn, bitDepth).applyTo(marker, mask);
+					for (int nThreads = 1; nThreads <= 5; nThreads++)
+					{
+						GeodesicReconstruction3DParallel algo = new GeodesicReconstruction3DParallel(type, conn);
+						algo.setNumberOfThreads(nThreads);
+						ImageStack result = algo.applyTo(marker, mask);
+						assertSameStacks(expected, result);
+					}
+				}
+			}
+		}
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public final void testSetNumberOfThreads_Invalid()
+	{
+		new GeodesicReconstruction3DParallel().setNumberOfThreads(0);
+	}
+	
+	private static final GeodesicReconstruction3DAlgo createHybrid(GeodesicReconstructionType type, int conn, int bitDepth)
+	{
+		switch (bitDepth)
+		{
+		case 8: return new GeodesicReconstruction3DHybrid0Gray8(type, conn);
+		case 16: return new GeodesicReconstruction3DHybrid0Gray16(type, conn);
+		default: return new GeodesicReconstruction3DHybrid0Float(type, conn);
+		}
+	}
+	
+	/**
+	 * Creates a marker with a few isolated seeds, either bright (dilation) or
+	 * dark (erosion).
+	 */
+	private static final ImageStack createMarker(ImageStack mask, GeodesicReconstructionType type, long seed)
+	{
+		int sizeX = mask.getWidth();
+		int sizeY = mask.getHeight();
+		int sizeZ = mask.getSize();
+		boolean dilation = type == GeodesicReconstructionType.BY_DILATION;
+		
+		ImageStack marker = ImageStack.create(sizeX, sizeY, sizeZ, mask.getBitDepth());
+		if (!dilation)
+		{
+			for (int z = 0; z < sizeZ; z++)
+				for (int y = 0; y < sizeY; y++)
+					for (int x = 0; x < sizeX; x++)
+						marker.setVoxel(x, y, z, 255);
+		}
+		
+		Random random = new Random(seed);
+		for (int i = 0; i < 5; i++)
+		{
+			marker.setVoxel(random.nextInt(sizeX), random.nextInt(sizeY), random.nextInt(sizeZ), dilation ? 255 : 0);
+		}
+		return marker;
+	}
+}
@@ -28,10 +28,14 @@ import org.junit.runners.Suite;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
 	// First linear strels
+	LocalExtremumVanHerkTest.class,
 	LinearHorizontalStrelTest.class, 
 	LinearVerticalStrelTest.class,
 	LinearDiagDownStrelTest.class, 
 	LinearDiagUpStrelTest.class,
+	// 3D strels
+	ChordExtremumFilter3DTest.class,
+	ParallelStrel3DTest.class,
 	// compound of linear 
 	SquareStrelTest.class, 
 	OctagonStrelTest.class,
@@ -0,0 +1,88 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.strel;
+
+import static inra.ijpb.StackTestUtils.assertSameStacks;
+import static inra.ijpb.StackTestUtils.createRandomStack;
+
+import ij.ImageStack;
+import ij.plugin.Filters3D;
+
+import org.junit.Test;
+
+public class ChordExtremumFilter3DTest
+{
+	/**
+	 * Compares dilation and erosion by balls with the result of the Filters3D
+	 * class, for integer and non integer radii.
+	 */
+	@Test
+	public void testBallStrel_Byte()
+	{
+		ImageStack image = createRandomStack(15, 12, 10, 8, 1);
+		
+		float[] radii = new float[]{0, .5f, 1, 1.5f, 2, 2.3f, 3, 4.7f};
+		for (float r : radii)
+		{
+			BallStrel strel = BallStrel.fromRadius(r);
+			assertSameStacks(Filters3D.filter(image, Filters3D.MAX, r, r, r), strel.dilation(image));
+			assertSameStacks(Filters3D.filter(image, Filters3D.MIN, r, r, r), strel.erosion(image));
+		}
+	}
+	
+	/**
+	 * Compares dilation and erosion by ellipsoids with the result of the
+	 * Filters3D class, using a radius larger than the image in some
+	 * directions.
+	 */
+	@Test
+	public void testEllipsoidStrel_Short()
+	{
+		ImageStack image = createRandomStack(13, 9, 7, 16, 2);
+		
+		float[][] radii = new float[][]{{2, 1, 0}, {0, 3, 1.5f}, {3.2f, 1.7f, 2.5f}, {10, 2, 1}, {1, 1, 8}};
+		for (float[] r : radii)
+		{
+			EllipsoidStrel strel = EllipsoidStrel.fromRadiusList(r[0], r[1], r[2]);
+			assertSameStacks(Filters3D.filter(image, Filters3D.MAX, r[0], r[1], r[2]), strel.dilation(image));
+			assertSameStacks(Filters3D.filter(image, Filters3D.MIN, r[0], r[1], r[2]), strel.erosion(image));
+		}
+	}
+	
+	/**
+	 * Checks that results on float images do not depend on the number of
+	 * threads.
+	 */
+	@Test
+	public void testProcess_FloatThreads()
+	{
+		ImageStack image = createRandomStack(11, 10, 9, 32, 3);
+		ImageStack expected = Filters3D.filter(image, Filters3D.MAX, 2.5f, 1.5f, 2f);
+		
+		for (int nThreads = 1; nThreads <= 4; nThreads++)
+		{
+			ChordExtremumFilter3D filter = new ChordExtremumFilter3D(2.5f, 1.5f, 2f);
+			filter.setNumberOfThreads(nThreads);
+			assertSameStacks(expected, filter.process(image, LocalExtremum.Type.MAXIMUM));
+		}
+	}
+}
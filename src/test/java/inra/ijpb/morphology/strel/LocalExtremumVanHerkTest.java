@@ -0,0 +1,160 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.strel;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import org.junit.Test;
+
+public class LocalExtremumVanHerkTest
+{
+	/**
+	 * Compares with brute-force computation on byte arrays, using various
+	 * window sizes and offsets, including windows longer than the line.
+	 */
+	@Test
+	public void testProcessLine_Byte()
+	{
+		Random random = new Random(1);
+		for (int trial = 0; trial < 100; trial++)
+		{
+			int count = 1 + random.nextInt(30);
+			int size = 1 + random.nextInt(40);
+			int before = random.nextInt(size);
+			byte[] array = new byte[count];
+			double[] values = new double[count];
+			for (int i = 0; i < count; i++)
+			{
+				array[i] = (byte) random.nextInt(256);
+				values[i] = array[i] & 0x00FF;
+			}
+			
+			LocalExtremum.Type type = trial % 2 == 0 ? LocalExtremum.Type.MAXIMUM : LocalExtremum.Type.MINIMUM;
+			new LocalExtremumVanHerk(size, before, type).processLine(array, 0, 1, count);
+			
+			for (int i = 0; i < count; i++)
+			{
+				assertEquals(extremum(values, i - before, i - before + size - 1, type), array[i] & 0x00FF, .1);
+			}
+		}
+	}
+	
+	/**
+	 * Processes every other element of short and float arrays, in reverse
+	 * order.
+	 */
+	@Test
+	public void testProcessLine_ShortFloatStride()
+	{
+		Random random = new Random(2);
+		for (int trial = 0; trial < 50; trial++)
+		{
+			int count = 1 + random.nextInt(30);
+			int size = 1 + random.nextInt(20);
+			int before = random.nextInt(size);
+			short[] shortArray = new short[2 * count];
+			float[] floatArray = new float[2 * count];
+			double[] shortValues = new double[count];
+			double[] floatValues = new double[count];
+			for (int i = 0; i < count; i++)
+			{
+				int index = 2 * (count - 1 - i);
+				shortArray[index] = (short) random.nextInt(65536);
+				shortValues[i] = shortArray[index] & 0x00FFFF;
+				floatArray[index] = (float) random.nextGaussian();
+				floatValues[i] = floatArray[index];
+			}
+			
+			LocalExtremum.Type type = trial % 2 == 0 ? LocalExtremum.Type.MAXIMUM : LocalExtremum.Type.MINIMUM;
+			LocalExtremumVanHerk filter = new LocalExtremumVanHerk(size, before, type);
+			filter.processLine(shortArray, 2 * (count - 1), -2, count);
+			filter.processLine(floatArray, 2 * (count - 1), -2, count);
+			
+			for (int i = 0; i < count; i++)
+			{
+				int index = 2 * (count - 1 - i);
+				assertEquals(extremum(shortValues, i - before, i - before + size - 1, type), shortArray[index] & 0x00FFFF, .1);
+				assertEquals(extremum(floatValues, i - before, i - before + size - 1, type), floatArray[index], 1e-6);
+			}
+		}
+	}
+	
+	/**
+	 * Dilation of a 16-bit image with a horizontal line longer than the
+	 * image width.
+	 */
+	@Test
+	public void testLinearHorizontalStrel_Short_LongLine()
+	{
+		ImageProcessor image = new ShortProcessor(4, 2);
+		image.set(0, 0, 1000);
+		image.set(3, 0, 50000);
+		image.set(1, 1, 2000);
+		
+		new LinearHorizontalStrel(9, 1).inPlaceDilation(image);
+		
+		// window from x-1 to x+7
+		for (int x = 0; x < 4; x++)
+		{
+			assertEquals(50000, image.get(x, 0));
+		}
+		assertEquals(2000, image.get(0, 1));
+		assertEquals(2000, image.get(2, 1));
+		assertEquals(0, image.get(3, 1));
+	}
+
+	/**
+	 * Erosion of a 3D float image along the z direction.
+	 */
+	@Test
+	public void testLinearDepthStrel3D_Float()
+	{
+		ImageStack image = ImageStack.create(3, 2, 6, 32);
+		for (int z = 0; z < 6; z++)
+		{
+			image.setVoxel(1, 1, z, 10 - z);
+		}
+		
+		new LinearDepthStrel3D(3, 1).inPlaceErosion(image);
+		
+		assertEquals(9, image.getVoxel(1, 1, 0), 1e-6);
+		assertEquals(7, image.getVoxel(1, 1, 2), 1e-6);
+		assertEquals(5, image.getVoxel(1, 1, 5), 1e-6);
+		assertEquals(0, image.getVoxel(0, 0, 3), 1e-6);
+	}
+	
+	private static final double extremum(double[] values, int i0, int i1, LocalExtremum.Type type)
+	{
+		double res = type == LocalExtremum.Type.MAXIMUM ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+		for (int i = Math.max(i0, 0); i <= Math.min(i1, values.length - 1); i++)
+		{
+			res = type == LocalExtremum.Type.MAXIMUM ? Math.max(res, values[i]) : Math.min(res, values[i]);
+		}
+		return res;
+	}
+}
@@ -0,0 +1,218 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.morphology.strel;
+
+import static inra.ijpb.StackTestUtils.assertSameStacks;
+import static inra.ijpb.StackTestUtils.createRandomStack;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ij.ImageStack;
+import inra.ijpb.algo.AlgoEvent;
+import inra.ijpb.algo.AlgoListener;
+import inra.ijpb.morphology.Morphology;
+import inra.ijpb.morphology.Strel3D;
+
+import org.junit.Test;
+
+public class ParallelStrel3DTest
+{
+	/**
+	 * Compares the results of dilation, erosion, opening and closing with the
+	 * results of the wrapped strel, using various numbers of threads.
+	 */
+	@Test
+	public void testMorphologicalFilters_VariousStrels()
+	{
+		ImageStack image = createRandomStack(10, 8, 13, 8, 1);
+		
+		Strel3D[] strels = new Strel3D[]{
+				CubeStrel.fromDiameter(3),
+				CuboidStrel.fromDiameterList(3, 1, 5),
+				new Cross3DStrel(),
+				new LinearDepthStrel3D(4, 1),
+				new ExtrudedStrel(new SquareStrel(3), 3, 0),
+				new OctagonStrel(5),
+		};
+		
+		for (Strel3D strel : strels)
+		{
+			ImageStack dilated = strel.dilation(image);
+			ImageStack eroded = strel.erosion(image);
+			ImageStack opened = strel.opening(image);
+			ImageStack closed = strel.closing(image);
+			
+			for (int nThreads = 1; nThreads <= 5; nThreads++)
+			{
+				ParallelStrel3D strel2 = new ParallelStrel3D(strel, nThreads);
+				assertSameStacks(dilated, strel2.dilation(image));
+				assertSameStacks(eroded, strel2.erosion(image));
+				assertSameStacks(opened, strel2.opening(image));
+				assertSameStacks(closed, strel2.closing(image));
+			}
+		}
+	}
+	
+	/**
+	 * Checks that the morphological gradient does not depend on the number of
+	 * threads, including more threads than slices.
+	 */
+	@Test
+	public void testGradient_MoreThreadsThanSlices()
+	{
+		ImageStack image = createRandomStack(9, 9, 6, 8, 2);
+		Strel3D strel = CubeStrel.fromDiameter(5);
+		
+		ImageStack expected = Morphology.gradient(image, strel, 1);
+		for (int nThreads = 2; nThreads <= 8; nThreads += 3)
+		{
+			assertSameStacks(expected, Morphology.gradient(image, strel, nThreads));
+		}
+	}
+	
+	/**
+	 * Checks that the wrapped strel is never used by several threads at the
+	 * same time, and that its settings are left unchanged.
+	 */
+	@Test
+	public void testDilation_NoConcurrentUseOfWrappedStrel()
+	{
+		ImageStack image = createRandomStack(8, 8, 12, 8, 3);
+		final AtomicBoolean concurrentUse = new AtomicBoolean(false);
+		ExclusiveStrel strel = new ExclusiveStrel(concurrentUse);
+		
+		ImageStack expected = CubeStrel.fromDiameter(3).dilation(image);
+		ImageStack result = new ParallelStrel3D(strel, 4).dilation(image);
+		
+		assertSameStacks(expected, result);
+		assertFalse(concurrentUse.get());
+		assertTrue(strel.showProgress());
+	}
+	
+	/**
+	 * Checks that the progress of the chunks is reported to the listeners of
+	 * the wrapped strel.
+	 */
+	@Test
+	public void testDilation_ProgressForwardedToWrappedStrel()
+	{
+		ImageStack image = createRandomStack(8, 8, 12, 8, 4);
+		Strel3D strel = CubeStrel.fromDiameter(3);
+		final AtomicInteger nEvents = new AtomicInteger(0);
+		final AtomicInteger maxStep = new AtomicInteger(0);
+		strel.addAlgoListener(new AlgoListener()
+		{
+			@Override
+			public void algoProgressChanged(AlgoEvent evt)
+			{
+				nEvents.incrementAndGet();
+				maxStep.set(Math.max(maxStep.get(), (int) evt.getCurrentProgress()));
+			}
+			
+			@Override
+			public void algoStatusChanged(AlgoEvent evt)
+			{
+			}
+		});
+		
+		new ParallelStrel3D(strel, 3).dilation(image);
+		
+		assertEquals(3, nEvents.get());
+		assertEquals(3, maxStep.get());
+	}
+	
+	/**
+	 * A cube strel that records whether one of its instances is used by
+	 * several threads at the same time.
+	 */
+	private static final class ExclusiveStrel extends AbstractStrel3D
+	{
+		final Strel3D cube = CubeStrel.fromDiameter(3);
+		final AtomicInteger nUsers = new AtomicInteger(0);
+		final AtomicBoolean concurrentUse;
+		
+		ExclusiveStrel(AtomicBoolean concurrentUse)
+		{
+			this.concurrentUse = concurrentUse;
+		}
+		
+		@Override
+		public int[] getSize()
+		{
+			return cube.getSize();
+		}
+		
+		@Override
+		public int[][][] getMask3D()
+		{
+			return cube.getMask3D();
+		}
+		
+		@Override
+		public int[] getOffset()
+		{
+			return cube.getOffset();
+		}
+		
+		@Override
+		public int[][] getShifts3D()
+		{
+			return cube.getShifts3D();
+		}
+		
+		@Override
+		public Strel3D reverse()
+		{
+			return new ExclusiveStrel(concurrentUse);
+		}
+		
+		@Override
+		public ImageStack dilation(ImageStack image)
+		{
+			if (nUsers.incrementAndGet() > 1)
+			{
+				concurrentUse.set(true);
+			}
+			try
+			{
+				Thread.sleep(20);
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+			}
+			ImageStack result = cube.dilation(image);
+			nUsers.decrementAndGet();
+			return result;
+		}
+		
+		@Override
+		public ImageStack erosion(ImageStack image)
+		{
+			return cube.erosion(image);
+		}
+	}
+}
@@ -29,6 +29,7 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({
 	// generic classes
 	ColorMapsTest.class, 
+	SlabSchedulerTest.class,
 	})
 public class AllTests {
   //nothing
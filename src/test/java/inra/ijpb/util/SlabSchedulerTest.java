@@ -0,0 +1,94 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+public class SlabSchedulerTest
+{
+	/**
+	 * Propagates a value from the last slab to the first one, each slab
+	 * reading the value of its neighbors.
+	 */
+	@Test
+	public void testRun_Propagation()
+	{
+		final int nSlabs = 17;
+		for (int nThreads = 1; nThreads <= 4; nThreads++)
+		{
+			final AtomicIntegerArray values = new AtomicIntegerArray(nSlabs);
+			values.set(nSlabs - 1, 5);
+
+			int nRuns = new SlabScheduler(nSlabs).run(new SlabScheduler.SlabProcessor()
+			{
+				public int process(int slab)
+				{
+					int value = values.get(slab);
+					if (slab > 0)
+						value = Math.max(value, values.get(slab - 1));
+					if (slab < nSlabs - 1)
+						value = Math.max(value, values.get(slab + 1));
+					if (value == values.get(slab))
+						return 0;
+					values.set(slab, value);
+					return SlabScheduler.LOWER_FACE | SlabScheduler.UPPER_FACE;
+				}
+			}, nThreads);
+
+			for (int s = 0; s < nSlabs; s++)
+			{
+				assertEquals(5, values.get(s));
+			}
+			assertTrue(nRuns >= nSlabs);
+		}
+	}
+
+	/**
+	 * The exception thrown by the process of a slab must be thrown again by
+	 * the scheduler, without waiting for the other threads forever.
+	 */
+	@Test(timeout = 10000)
+	public void testRun_Failure()
+	{
+		try
+		{
+			new SlabScheduler(8).run(new SlabScheduler.SlabProcessor()
+			{
+				public int process(int slab)
+				{
+					if (slab == 3)
+						throw new IllegalStateException("slab " + slab);
+					return SlabScheduler.LOWER_FACE | SlabScheduler.UPPER_FACE;
+				}
+			}, 3);
+			fail("The failure of a slab must be propagated");
+		}
+		catch (IllegalStateException ex)
+		{
+			assertEquals("slab 3", ex.getMessage());
+		}
+	}
+}
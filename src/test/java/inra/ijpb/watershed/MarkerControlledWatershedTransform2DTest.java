@@ -0,0 +1,140 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.watershed;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+public class MarkerControlledWatershedTransform2DTest
+{
+	/**
+	 * The hierarchical queue must give the same result as the priority queue
+	 * for 8-bit, 16-bit and 32-bit images, with and without dams and mask.
+	 */
+	@Test
+	public void testApplyWithHierarchicalQueue_SameAsPriorityQueue()
+	{
+		Random random = new Random( 42 );
+		for ( int bitDepth : new int[] { 8, 16, 32 } )
+		{
+			for ( int connectivity : new int[] { 4, 8 } )
+			{
+				ImageProcessor input = createRandomImage( random, 40, 30, bitDepth );
+				ImageProcessor marker = createRandomMarkers( random, 40, 30, 5 );
+				ImageProcessor mask = createRandomMask( random, 40, 30 );
+
+				for ( ImageProcessor maskImage : new ImageProcessor[] { null, mask } )
+				{
+					MarkerControlledWatershedTransform2D wt =
+							new MarkerControlledWatershedTransform2D( input, marker, maskImage, connectivity );
+					wt.setVerbose( false );
+
+					assertSameImages( wt.applyWithPriorityQueue(), wt.applyWithHierarchicalQueue() );
+					assertSameImages( wt.applyWithPriorityQueueAndDams(), wt.applyWithHierarchicalQueueAndDams() );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Two markers separated by a ridge: the dam must follow the ridge.
+	 */
+	@Test
+	public void testApplyWithHierarchicalQueueAndDams_Ridge()
+	{
+		ImageProcessor input = new ByteProcessor( 7, 3 );
+		for ( int y = 0; y < 3; y++ )
+		{
+			input.set( 3, y, 10 );
+		}
+		ImageProcessor marker = new ByteProcessor( 7, 3 );
+		marker.set( 0, 1, 1 );
+		marker.set( 6, 1, 2 );
+
+		MarkerControlledWatershedTransform2D wt =
+				new MarkerControlledWatershedTransform2D( input, marker, null, 4 );
+		wt.setVerbose( false );
+		ImageProcessor result = wt.applyWithHierarchicalQueueAndDams();
+
+		for ( int y = 0; y < 3; y++ )
+		{
+			assertEquals( 1, result.getf( 2, y ), .01 );
+			assertEquals( 0, result.getf( 3, y ), .01 );
+			assertEquals( 2, result.getf( 4, y ), .01 );
+		}
+	}
+
+	private static final ImageProcessor createRandomImage( Random random,
+			int sizeX, int sizeY, int bitDepth )
+	{
+		ImageProcessor image;
+		if ( bitDepth == 8 )
+			image = new ByteProcessor( sizeX, sizeY );
+		else if ( bitDepth == 16 )
+			image = new ShortProcessor( sizeX, sizeY );
+		else
+			image = new FloatProcessor( sizeX, sizeY );
+
+		for ( int i = 0; i < sizeX * sizeY; i++ )
+		{
+			// few gray levels to create many ties
+			float value = random.nextInt( 12 );
+			if ( bitDepth == 32 && random.nextBoolean() )
+				value += random.nextFloat();
+			image.setf( i, value );
+		}
+		return image;
+	}
+
+	private static final ImageProcessor createRandomMarkers( Random random,
+			int sizeX, int sizeY, int nMarkers )
+	{
+		ImageProcessor marker = new ByteProcessor( sizeX, sizeY );
+		for ( int label = 1; label <= nMarkers; label++ )
+			marker.set( random.nextInt( sizeX ), random.nextInt( sizeY ), label );
+		return marker;
+	}
+
+	private static final ImageProcessor createRandomMask( Random random,
+			int sizeX, int sizeY )
+	{
+		ImageProcessor mask = new ByteProcessor( sizeX, sizeY );
+		for ( int i = 0; i < sizeX * sizeY; i++ )
+			mask.set( i, random.nextInt( 8 ) == 0 ? 0 : 255 );
+		return mask;
+	}
+
+	private static final void assertSameImages( ImageProcessor expected, ImageProcessor result )
+	{
+		assertEquals( expected.getBitDepth(), result.getBitDepth() );
+		for ( int i = 0; i < expected.getPixelCount(); i++ )
+			assertEquals( expected.getf( i ), result.getf( i ), .01 );
+	}
+}
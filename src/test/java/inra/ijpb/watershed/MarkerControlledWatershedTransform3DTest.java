@@ -0,0 +1,351 @@
+/*-
+ * #%L
+ * Mathematical morphology library and plugins for ImageJ/Fiji.
+ * %%
+ * Copyright (C) 2014 - 2017 INRA.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+package inra.ijpb.watershed;
+
+import static inra.ijpb.StackTestUtils.assertSameStacks;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.VirtualStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.morphology.Reconstruction3D;
+
+public class MarkerControlledWatershedTransform3DTest
+{
+	/**
+	 * The hierarchical queue must give the same result as the priority queue
+	 * for 8-bit, 16-bit and 32-bit images, with and without dams and mask.
+	 */
+	@Test
+	public void testApplyWithHierarchicalQueue_SameAsPriorityQueue()
+	{
+		Random random = new Random( 42 );
+		for ( int bitDepth : new int[] { 8, 16, 32 } )
+		{
+			for ( int connectivity : new int[] { 6, 26 } )
+			{
+				ImagePlus input = new ImagePlus( "input", createRandomImage( random, 12, 10, 8, bitDepth ) );
+				ImagePlus marker = new ImagePlus( "marker", createRandomMarkers( random, 12, 10, 8, 5 ) );
+				ImagePlus mask = new ImagePlus( "mask", createRandomMask( random, 12, 10, 8 ) );
+
+				for ( ImagePlus maskImage : new ImagePlus[] { null, mask } )
+				{
+					MarkerControlledWatershedTransform3D wt =
+							new MarkerControlledWatershedTransform3D( input, marker, maskImage, connectivity );
+					wt.setVerbose( false );
+
+					assertSameStacks( wt.applyWithPriorityQueue().getStack(),
+							wt.applyWithHierarchicalQueue().getStack() );
+					assertSameStacks( wt.applyWithPriorityQueueAndDams().getStack(),
+							wt.applyWithHierarchicalQueueAndDams().getStack() );
+				}
+			}
+		}
+	}
+
+	/**
+	 * The result of the hierarchical queue must not depend on the storage
+	 * of labels.
+	 */
+	@Test
+	public void testApplyWithHierarchicalQueue_LabelStorage()
+	{
+		Random random = new Random( 7 );
+		ImagePlus input = new ImagePlus( "input", createRandomImage( random, 15, 11, 9, 16 ) );
+		ImagePlus marker = new ImagePlus( "marker", createRandomMarkers( random, 15, 11, 9, 6 ) );
+		ImagePlus mask = new ImagePlus( "mask", createRandomMask( random, 15, 11, 9 ) );
+
+		for ( int connectivity : new int[] { 6, 26 } )
+		{
+			MarkerControlledWatershedTransform3D wt =
+					new MarkerControlledWatershedTransform3D( input, marker, mask, connectivity );
+			wt.setVerbose( false );
+			wt.labelStorage = LabelBuffer3D.Storage.FLAT;
+			ImageStack expected = wt.applyWithHierarchicalQueueAndDams().getStack();
+
+			for ( LabelBuffer3D.Storage storage : new LabelBuffer3D.Storage[] {
+					LabelBuffer3D.Storage.SLICED, LabelBuffer3D.Storage.MAPPED } )
+			{
+				wt.labelStorage = storage;
+				assertSameStacks( expected, wt.applyWithHierarchicalQueueAndDams().getStack() );
+			}
+		}
+	}
+
+	/**
+	 * The hierarchical queue must give the same result as the priority queue
+	 * on a deep volume without mask, whose few catchment basins extend over
+	 * many slices.
+	 */
+	@Test
+	public void testApplyWithHierarchicalQueue_DeepBasins()
+	{
+		Random random = new Random( 3 );
+		for ( int bitDepth : new int[] { 8, 32 } )
+		{
+			for ( int connectivity : new int[] { 6, 26 } )
+			{
+				ImagePlus input = new ImagePlus( "input", createRandomImage( random, 10, 9, 48, bitDepth ) );
+				ImagePlus marker = new ImagePlus( "marker", createRandomMarkers( random, 10, 9, 48, 3 ) );
+
+				MarkerControlledWatershedTransform3D wt =
+						new MarkerControlledWatershedTransform3D( input, marker, null, connectivity );
+				wt.setVerbose( false );
+
+				assertSameStacks( wt.applyWithPriorityQueue().getStack(),
+						wt.applyWithHierarchicalQueue().getStack() );
+				assertSameStacks( wt.applyWithPriorityQueueAndDams().getStack(),
+						wt.applyWithHierarchicalQueueAndDams().getStack() );
+			}
+		}
+	}
+
+	/**
+	 * On a large volume without mask, both the sequential flood and the
+	 * flood on blocks of slices must give to each voxel the label of a
+	 * marker that reaches it at its flooding level, and the flood on blocks
+	 * must not depend on the number of threads.
+	 */
+	@Test
+	public void testApplyWithParallelBlocks_LargeVolume()
+	{
+		Random random = new Random( 11 );
+		final int sizeX = 48, sizeY = 48, sizeZ = 64;
+		ImageStack inputStack = createRandomImage( random, sizeX, sizeY, sizeZ, 8 );
+		ImageStack markerStack = createRandomMarkers( random, sizeX, sizeY, sizeZ, 6 );
+		// markers are not part of the flooding paths
+		for ( int z = 0; z < sizeZ; z++ )
+			for ( int y = 0; y < sizeY; y++ )
+				for ( int x = 0; x < sizeX; x++ )
+					if ( markerStack.getVoxel( x, y, z ) > 0 )
+						inputStack.setVoxel( x, y, z, 0 );
+		ImagePlus input = new ImagePlus( "input", inputStack );
+		ImagePlus marker = new ImagePlus( "marker", markerStack );
+
+		for ( int connectivity : new int[] { 6, 26 } )
+		{
+			ImageStack[] levels = computeFloodingLevels( inputStack, markerStack, 6, connectivity );
+
+			MarkerControlledWatershedTransform3D wt =
+					new MarkerControlledWatershedTransform3D( input, marker, null, connectivity );
+			wt.setVerbose( false );
+			assertOptimalLabels( levels, wt.applyWithHierarchicalQueue().getStack() );
+			assertOptimalLabels( levels, wt.applyWithHierarchicalQueueAndDams().getStack() );
+
+			wt.setNumberOfThreads( 1 );
+			ImageStack expected = wt.applyWithParallelBlocks().getStack();
+			ImageStack expectedDams = wt.applyWithParallelBlocksAndDams().getStack();
+			assertOptimalLabels( levels, expected );
+			assertOptimalLabels( levels, expectedDams );
+
+			for ( int nThreads : new int[] { 2, 3, 5 } )
+			{
+				wt.setNumberOfThreads( nThreads );
+				assertSameStacks( expected, wt.applyWithParallelBlocks().getStack() );
+				assertSameStacks( expectedDams, wt.applyWithParallelBlocksAndDams().getStack() );
+			}
+		}
+	}
+
+	/**
+	 * The flood on blocks of slices must not depend on the number of threads
+	 * nor on the storage of labels, for 16-bit and 32-bit images with a mask.
+	 */
+	@Test
+	public void testApplyWithParallelBlocks_MaskAndBitDepth()
+	{
+		Random random = new Random( 5 );
+		for ( int bitDepth : new int[] { 16, 32 } )
+		{
+			ImagePlus input = new ImagePlus( "input", createRandomImage( random, 14, 12, 40, bitDepth ) );
+			ImagePlus marker = new ImagePlus( "marker", createRandomMarkers( random, 14, 12, 40, 5 ) );
+			ImagePlus mask = new ImagePlus( "mask", createRandomMask( random, 14, 12, 40 ) );
+
+			MarkerControlledWatershedTransform3D wt =
+					new MarkerControlledWatershedTransform3D( input, marker, mask, 26 );
+			wt.setVerbose( false );
+			wt.labelStorage = LabelBuffer3D.Storage.FLAT;
+			wt.setNumberOfThreads( 1 );
+			ImageStack expected = wt.applyWithParallelBlocksAndDams().getStack();
+
+			wt.labelStorage = LabelBuffer3D.Storage.SLICED;
+			for ( int nThreads : new int[] { 2, 4 } )
+			{
+				wt.setNumberOfThreads( nThreads );
+				assertSameStacks( expected, wt.applyWithParallelBlocksAndDams().getStack() );
+			}
+		}
+	}
+
+	/**
+	 * The floods must read the values of virtual stacks, whose slices are
+	 * not held in memory, and give the same result as for regular stacks.
+	 */
+	@Test
+	public void testApplyWithHierarchicalQueue_VirtualStack()
+	{
+		Random random = new Random( 13 );
+		final ImageStack inputStack = createRandomImage( random, 12, 10, 20, 8 );
+		ImagePlus input = new ImagePlus( "input", inputStack );
+		ImagePlus marker = new ImagePlus( "marker", createRandomMarkers( random, 12, 10, 20, 4 ) );
+
+		VirtualStack virtualStack = new VirtualStack( 12, 10, null, null )
+		{
+			@Override
+			public ImageProcessor getProcessor( int n )
+			{
+				return inputStack.getProcessor( n ).duplicate();
+			}
+
+			@Override
+			public Object getPixels( int n )
+			{
+				return getProcessor( n ).getPixels();
+			}
+
+			@Override
+			public int getSize()
+			{
+				return inputStack.getSize();
+			}
+
+			@Override
+			public int getBitDepth()
+			{
+				return 8;
+			}
+		};
+		ImagePlus virtualInput = new ImagePlus( "virtual", virtualStack );
+
+		MarkerControlledWatershedTransform3D wt =
+				new MarkerControlledWatershedTransform3D( input, marker, null, 6 );
+		wt.setVerbose( false );
+		MarkerControlledWatershedTransform3D virtualWt =
+				new MarkerControlledWatershedTransform3D( virtualInput, marker, null, 6 );
+		virtualWt.setVerbose( false );
+
+		assertSameStacks( wt.applyWithHierarchicalQueue().getStack(),
+				virtualWt.applyWithHierarchicalQueue().getStack() );
+		assertSameStacks( wt.applyWithHierarchicalQueueAndDams().getStack(),
+				virtualWt.applyWithHierarchicalQueueAndDams().getStack() );
+
+		wt.setNumberOfThreads( 2 );
+		virtualWt.setNumberOfThreads( 2 );
+		assertSameStacks( wt.applyWithParallelBlocksAndDams().getStack(),
+				virtualWt.applyWithParallelBlocksAndDams().getStack() );
+	}
+
+	/**
+	 * Computes for each label the flooding level of each voxel, that is the
+	 * lowest value of the highest voxel along a path from the markers of the
+	 * label that avoids the markers of other labels.
+	 */
+	private static final ImageStack[] computeFloodingLevels( ImageStack input,
+			ImageStack markers, int nLabels, int connectivity )
+	{
+		ImageStack[] levels = new ImageStack[ nLabels ];
+		for ( int label = 1; label <= nLabels; label++ )
+		{
+			ImageStack seed = input.duplicate();
+			ImageStack mask = input.duplicate();
+			for ( int z = 0; z < input.getSize(); z++ )
+				for ( int y = 0; y < input.getHeight(); y++ )
+					for ( int x = 0; x < input.getWidth(); x++ )
+					{
+						final int markerLabel = (int) markers.getVoxel( x, y, z );
+						if ( markerLabel == label )
+							seed.setVoxel( x, y, z, 0 );
+						else
+						{
+							seed.setVoxel( x, y, z, 255 );
+							if ( markerLabel > 0 )
+								mask.setVoxel( x, y, z, 255 );
+						}
+					}
+			levels[ label - 1 ] = Reconstruction3D.reconstructByErosion( seed, mask, connectivity );
+		}
+		return levels;
+	}
+
+	/**
+	 * Checks that each labeled voxel has the label of a marker reaching it at
+	 * the lowest flooding level.
+	 */
+	private static final void assertOptimalLabels( ImageStack[] levels, ImageStack result )
+	{
+		for ( int z = 0; z < result.getSize(); z++ )
+			for ( int y = 0; y < result.getHeight(); y++ )
+				for ( int x = 0; x < result.getWidth(); x++ )
+				{
+					final int label = (int) result.getVoxel( x, y, z );
+					if ( label <= 0 )
+						continue;
+					double minLevel = Double.MAX_VALUE;
+					for ( ImageStack level : levels )
+						minLevel = Math.min( minLevel, level.getVoxel( x, y, z ) );
+					assertTrue( levels[ label - 1 ].getVoxel( x, y, z ) == minLevel );
+				}
+	}
+
+	private static final ImageStack createRandomImage( Random random,
+			int sizeX, int sizeY, int sizeZ, int bitDepth )
+	{
+		ImageStack image = ImageStack.create( sizeX, sizeY, sizeZ, bitDepth );
+		for ( int z = 0; z < sizeZ; z++ )
+			for ( int y = 0; y < sizeY; y++ )
+				for ( int x = 0; x < sizeX; x++ )
+				{
+					// few gray levels to create many ties
+					double value = random.nextInt( 12 );
+					if ( bitDepth == 32 && random.nextBoolean() )
+						value += random.nextFloat();
+					image.setVoxel( x, y, z, value );
+				}
+		return image;
+	}
+
+	private static final ImageStack createRandomMarkers( Random random,
+			int sizeX, int sizeY, int sizeZ, int nMarkers )
+	{
+		ImageStack marker = ImageStack.create( sizeX, sizeY, sizeZ, 8 );
+		for ( int label = 1; label <= nMarkers; label++ )
+			marker.setVoxel( random.nextInt( sizeX ), random.nextInt( sizeY ),
+					random.nextInt( sizeZ ), label );
+		return marker;
+	}
+
+	private static final ImageStack createRandomMask( Random random,
+			int sizeX, int sizeY, int sizeZ )
+	{
+		ImageStack mask = ImageStack.create( sizeX, sizeY, sizeZ, 8 );
+		for ( int z = 0; z < sizeZ; z++ )
+			for ( int y = 0; y < sizeY; y++ )
+				for ( int x = 0; x < sizeX; x++ )
+					mask.setVoxel( x, y, z, random.nextInt( 8 ) == 0 ? 0 : 255 );
+		return mask;
+	}
+}